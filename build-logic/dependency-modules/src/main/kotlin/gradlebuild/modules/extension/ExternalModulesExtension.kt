@@ -70,7 +70,10 @@ abstract class ExternalModulesExtension {
     val gson = "com.google.code.gson:gson"
     val guava = "com.google.guava:guava"
     val hamcrest = "org.hamcrest:hamcrest-core"
+    val httpclient5 = "org.apache.httpcomponents.client5:httpclient5"
     val httpcore = "org.apache.httpcomponents:httpcore"
+    val httpcore5 = "org.apache.httpcomponents.core5:httpcore5"
+    val httpcore5H2 = "org.apache.httpcomponents.core5:httpcore5-h2"
     val inject = "javax.inject:javax.inject"
     val ivy = "org.apache.ivy:ivy"
     val jacksonAnnotations = "com.fasterxml.jackson.core:jackson-annotations"
@@ -143,6 +146,7 @@ abstract class ExternalModulesExtension {
     val jacksonKotlin = "com.fasterxml.jackson.module:jackson-module-kotlin"
     val javaParser = "com.github.javaparser:javaparser-core"
     val jetty = "org.eclipse.jetty:jetty-http"
+    val jettyHttp2Server = "org.eclipse.jetty.http2:http2-server"
     val jettySecurity = "org.eclipse.jetty:jetty-security"
     val jettyWebApp = "org.eclipse.jetty:jetty-webapp"
     val joptSimple = "net.sf.jopt-simple:jopt-simple"
@@ -169,6 +173,7 @@ abstract class ExternalModulesExtension {
     val xmlunit = "xmlunit:xmlunit"
 
     val licenses = mapOf(
+        aircompressor to License.Apache2,
         ansiControlSequenceUtil to License.Apache2,
         ant to License.Apache2,
         antLauncher to License.Apache2,
@@ -201,7 +206,10 @@ abstract class ExternalModulesExtension {
         gson to License.Apache2,
         guava to License.Apache2,
         hamcrest to License.BSD3,
+        httpclient5 to License.Apache2,
         httpcore to License.Apache2,
+        httpcore5 to License.Apache2,
+        httpcore5H2 to License.Apache2,
         hikariCP to License.Apache2,
         inject to License.Apache2,
         ivy to License.Apache2,
@@ -33,4 +33,4 @@ dependencies {
     jmh(libs.guava)
 }
 
-jmh.include = listOf("HashingAlgorithmsBenchmark")
+jmh.include = listOf("HashingAlgorithmsBenchmark", "ResourceLockCoordinationBenchmark")
@@ -0,0 +1,106 @@
+/*
+ * Copyright 2021 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.internal.resources;
+
+import org.gradle.api.Action;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.Random;
+
+import static org.gradle.internal.resources.DefaultResourceLockCoordinationService.lock;
+import static org.gradle.internal.resources.DefaultResourceLockCoordinationService.unlock;
+
+/**
+ * Simulates many workers competing for a limited number of worker leases and for the locks of a set of projects.
+ */
+@Fork(1)
+@Threads(64)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+@State(Scope.Benchmark)
+public class ResourceLockCoordinationBenchmark {
+    private static final String WORKERS = "workers";
+
+    @Param({"default", "fine-grained"})
+    String coordination;
+
+    @Param({"16"})
+    int maxWorkers;
+
+    @Param({"4", "64"})
+    int projectCount;
+
+    @Param({"100"})
+    int workTokens;
+
+    ResourceLockCoordinationService coordinationService;
+    SharedResourceLeaseRegistry workerLeases;
+    ResourceLock[] projectLocks;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        coordinationService = coordination.equals("fine-grained")
+            ? new FineGrainedResourceLockCoordinationService()
+            : new DefaultResourceLockCoordinationService();
+        workerLeases = new SharedResourceLeaseRegistry(coordinationService);
+        workerLeases.registerSharedResource(WORKERS, maxWorkers);
+        projectLocks = new ResourceLock[projectCount];
+        for (int i = 0; i < projectCount; i++) {
+            projectLocks[i] = new ProjectLock(":project" + i, coordinationService, NoOpAction.INSTANCE, NoOpAction.INSTANCE);
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class Worker {
+        final Random random = new Random();
+        ResourceLock workerLease;
+
+        @Setup(Level.Trial)
+        public void setUp(ResourceLockCoordinationBenchmark benchmark) {
+            workerLease = benchmark.workerLeases.getResourceLock(WORKERS, 1);
+        }
+    }
+
+    @Benchmark
+    public void runProjectWork(Worker worker) {
+        ResourceLock projectLock = projectLocks[worker.random.nextInt(projectCount)];
+        coordinationService.withStateLock(lock(worker.workerLease, projectLock));
+        try {
+            Blackhole.consumeCPU(workTokens);
+        } finally {
+            coordinationService.withStateLock(unlock(projectLock, worker.workerLease));
+        }
+    }
+
+    private enum NoOpAction implements Action<ResourceLock> {
+        INSTANCE;
+
+        @Override
+        public void execute(ResourceLock resourceLock) {
+        }
+    }
+}
@@ -88,6 +88,13 @@ private void failIfNotInResourceLockStateChange() {
         }
     }
 
+    /**
+     * Returns the key that threads waiting for this lock are parked on. Releasing any lock with the same key may allow this lock to be acquired.
+     */
+    protected Object getWaitKey() {
+        return this;
+    }
+
     abstract protected boolean acquireLock();
 
     abstract protected void releaseLock();
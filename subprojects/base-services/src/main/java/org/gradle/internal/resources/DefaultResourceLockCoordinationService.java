@@ -22,6 +22,7 @@
 import org.gradle.internal.UncheckedException;
 
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
 import java.util.Set;
 
@@ -96,7 +97,7 @@ public void notifyStateChange() {
         }
     }
 
-    private static class DefaultResourceLockState implements ResourceLockState {
+    static class DefaultResourceLockState implements ResourceLockState {
         private Set<ResourceLock> lockedResources;
         private Set<ResourceLock> unlockedResources;
         boolean rollback;
@@ -125,6 +126,10 @@ boolean hasUnlockedResources() {
             return unlockedResources != null && !unlockedResources.isEmpty();
         }
 
+        Set<ResourceLock> getUnlockedResources() {
+            return unlockedResources == null ? Collections.<ResourceLock>emptySet() : unlockedResources;
+        }
+
         @Override
         public void releaseLocks() {
             if (lockedResources != null) {
@@ -183,7 +188,7 @@ public static Transformer<ResourceLockState.Disposition, ResourceLockState> unlo
         return unlock(Arrays.asList(resourceLocks));
     }
 
-    private static class AcquireLocks implements Transformer<ResourceLockState.Disposition, ResourceLockState> {
+    static class AcquireLocks implements Transformer<ResourceLockState.Disposition, ResourceLockState> {
         private final Iterable<? extends ResourceLock> resourceLocks;
         private final boolean blocking;
 
@@ -192,6 +197,10 @@ private static class AcquireLocks implements Transformer<ResourceLockState.Dispo
             this.blocking = blocking;
         }
 
+        Iterable<? extends ResourceLock> getResourceLocks() {
+            return resourceLocks;
+        }
+
         @Override
         public ResourceLockState.Disposition transform(ResourceLockState resourceLockState) {
             for (ResourceLock resourceLock : resourceLocks) {
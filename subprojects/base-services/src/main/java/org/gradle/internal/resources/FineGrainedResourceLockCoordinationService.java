@@ -0,0 +1,217 @@
+/*
+ * Copyright 2021 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.internal.resources;
+
+import com.google.common.collect.Lists;
+import org.gradle.api.Transformer;
+import org.gradle.internal.UncheckedException;
+
+import javax.annotation.Nullable;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * A {@link ResourceLockCoordinationService} that parks waiting threads on the resources they are waiting for.
+ *
+ * Changes to the lock state are still made by one thread at a time, as the state lock actions rely on running exclusively.
+ * However, a thread blocked in {@link DefaultResourceLockCoordinationService#lock(Iterable)} is only woken up when a resource it needs is released,
+ * instead of whenever any resource is released. Other state lock actions that ask to be retried are woken up by any change, as before.
+ */
+public class FineGrainedResourceLockCoordinationService implements ResourceLockCoordinationService {
+    /**
+     * Enables this coordination service instead of {@link DefaultResourceLockCoordinationService}.
+     */
+    public static final String FINE_GRAINED_COORDINATION_PROPERTY = "org.gradle.unsafe.fine-grained-resource-coordination";
+
+    private final ReentrantLock stateLock = new ReentrantLock();
+    // The waiters are guarded by the state lock
+    private final Map<Object, Set<Waiter>> waitersByKey = new HashMap<Object, Set<Waiter>>();
+    private final Set<Waiter> waitersForAnyChange = new LinkedHashSet<Waiter>();
+    private final ThreadLocal<List<ResourceLockState>> currentState = new ThreadLocal<List<ResourceLockState>>() {
+        @Override
+        protected List<ResourceLockState> initialValue() {
+            return Lists.newArrayList();
+        }
+    };
+
+    @Override
+    public boolean withStateLock(Transformer<ResourceLockState.Disposition, ResourceLockState> stateLockAction) {
+        stateLock.lock();
+        try {
+            while (true) {
+                DefaultResourceLockCoordinationService.DefaultResourceLockState resourceLockState = new DefaultResourceLockCoordinationService.DefaultResourceLockState();
+                ResourceLockState.Disposition disposition;
+                try {
+                    currentState.get().add(resourceLockState);
+                    disposition = stateLockAction.transform(resourceLockState);
+
+                    switch (disposition) {
+                        case RETRY:
+                            resourceLockState.releaseLocks();
+                            try {
+                                awaitStateChange(waitKeysOf(stateLockAction));
+                            } catch (InterruptedException e) {
+                                throw UncheckedException.throwAsUncheckedException(e);
+                            }
+                            break;
+                        case FINISHED:
+                            maybeNotifyStateChange(resourceLockState);
+                            return true;
+                        case FAILED:
+                            resourceLockState.releaseLocks();
+                            return false;
+                        default:
+                            throw new IllegalArgumentException("Unhandled disposition type: " + disposition.name());
+                    }
+                } catch (Throwable t) {
+                    resourceLockState.releaseLocks();
+                    throw UncheckedException.throwAsUncheckedException(t);
+                } finally {
+                    currentState.get().remove(resourceLockState);
+                }
+            }
+        } finally {
+            stateLock.unlock();
+        }
+    }
+
+    @Override
+    public ResourceLockState getCurrent() {
+        List<ResourceLockState> current = currentState.get();
+        if (!current.isEmpty()) {
+            int numStates = current.size();
+            return current.get(numStates - 1);
+        } else {
+            return null;
+        }
+    }
+
+    @Override
+    public void notifyStateChange() {
+        stateLock.lock();
+        try {
+            signal(waitersForAnyChange);
+            for (Set<Waiter> waiters : waitersByKey.values()) {
+                signal(waiters);
+            }
+        } finally {
+            stateLock.unlock();
+        }
+    }
+
+    private void maybeNotifyStateChange(DefaultResourceLockCoordinationService.DefaultResourceLockState resourceLockState) {
+        if (resourceLockState.hasUnlockedResources()) {
+            signal(waitersForAnyChange);
+            for (ResourceLock unlockedResource : resourceLockState.getUnlockedResources()) {
+                Object waitKey = waitKeyOf(unlockedResource);
+                if (waitKey == null) {
+                    notifyStateChange();
+                    return;
+                }
+                Set<Waiter> waiters = waitersByKey.get(waitKey);
+                if (waiters != null) {
+                    signal(waiters);
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns the keys to wait on before retrying the given action, or null when the action has to be retried after any change.
+     */
+    @Nullable
+    private static List<Object> waitKeysOf(Transformer<ResourceLockState.Disposition, ResourceLockState> stateLockAction) {
+        if (!(stateLockAction instanceof DefaultResourceLockCoordinationService.AcquireLocks)) {
+            return null;
+        }
+        List<Object> waitKeys = new ArrayList<Object>();
+        for (ResourceLock resourceLock : ((DefaultResourceLockCoordinationService.AcquireLocks) stateLockAction).getResourceLocks()) {
+            Object waitKey = waitKeyOf(resourceLock);
+            if (waitKey == null) {
+                return null;
+            }
+            waitKeys.add(waitKey);
+        }
+        return waitKeys;
+    }
+
+    @Nullable
+    private static Object waitKeyOf(ResourceLock resourceLock) {
+        return resourceLock instanceof AbstractTrackedResourceLock
+            ? ((AbstractTrackedResourceLock) resourceLock).getWaitKey()
+            : null;
+    }
+
+    private void awaitStateChange(@Nullable List<Object> waitKeys) throws InterruptedException {
+        Waiter waiter = new Waiter(stateLock.newCondition());
+        if (waitKeys == null) {
+            waitersForAnyChange.add(waiter);
+        } else {
+            for (Object waitKey : waitKeys) {
+                Set<Waiter> waiters = waitersByKey.get(waitKey);
+                if (waiters == null) {
+                    waiters = new LinkedHashSet<Waiter>();
+                    waitersByKey.put(waitKey, waiters);
+                }
+                waiters.add(waiter);
+            }
+        }
+        try {
+            while (!waiter.signalled) {
+                waiter.condition.await();
+            }
+        } finally {
+            if (waitKeys == null) {
+                waitersForAnyChange.remove(waiter);
+            } else {
+                for (Object waitKey : waitKeys) {
+                    Set<Waiter> waiters = waitersByKey.get(waitKey);
+                    if (waiters != null) {
+                        waiters.remove(waiter);
+                        if (waiters.isEmpty()) {
+                            waitersByKey.remove(waitKey);
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    private static void signal(Set<Waiter> waiters) {
+        for (Waiter waiter : waiters) {
+            if (!waiter.signalled) {
+                waiter.signalled = true;
+                waiter.condition.signal();
+            }
+        }
+    }
+
+    private static class Waiter {
+        private final Condition condition;
+        private boolean signalled;
+
+        Waiter(Condition condition) {
+            this.condition = condition;
+        }
+    }
+}
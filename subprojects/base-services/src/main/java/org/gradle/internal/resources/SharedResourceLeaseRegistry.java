@@ -73,6 +73,11 @@ protected boolean acquireLock() {
             return doIsLockedByCurrentThread();
         }
 
+        @Override
+        protected Object getWaitKey() {
+            return semaphore;
+        }
+
         @Override
         protected void releaseLock() {
             if (Thread.currentThread() != ownerThread) {
@@ -410,6 +410,12 @@ protected boolean doIsLockedByCurrentThread() {
             return active && Thread.currentThread() == ownerThread;
         }
 
+        @Override
+        protected Object getWaitKey() {
+            // Leases are granted from the same pool of workers, so releasing any lease can allow this one to start
+            return root;
+        }
+
         @Override
         protected boolean acquireLock() {
             if (parent.grantLease()) {
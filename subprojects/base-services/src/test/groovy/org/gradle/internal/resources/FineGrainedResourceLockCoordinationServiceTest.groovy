@@ -0,0 +1,197 @@
+/*
+ * Copyright 2021 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.internal.resources
+
+import org.gradle.api.Action
+import org.gradle.api.Transformer
+import org.gradle.test.fixtures.ConcurrentTestUtil
+import org.gradle.test.fixtures.concurrent.ConcurrentSpec
+
+import java.util.concurrent.atomic.AtomicInteger
+
+import static org.gradle.internal.resources.DefaultResourceLockCoordinationService.lock
+import static org.gradle.internal.resources.DefaultResourceLockCoordinationService.tryLock
+import static org.gradle.internal.resources.DefaultResourceLockCoordinationService.unlock
+import static org.gradle.internal.resources.ResourceLockState.Disposition.FINISHED
+import static org.gradle.internal.resources.ResourceLockState.Disposition.RETRY
+
+class FineGrainedResourceLockCoordinationServiceTest extends ConcurrentSpec {
+    def coordinationService = new FineGrainedResourceLockCoordinationService()
+
+    def "can acquire and release locks"() {
+        def lock1 = resourceLock("lock1", false)
+        def lock2 = resourceLock("lock2", lock2Locked)
+
+        when:
+        def acquired = coordinationService.withStateLock(tryLock(lock1, lock2))
+
+        then:
+        acquired == !lock2Locked
+        lock1.lockedState == !lock2Locked
+
+        when:
+        coordinationService.withStateLock(unlock(lock1, lock2))
+
+        then:
+        !lock1.lockedState
+        lock2.lockedState == lock2Locked
+
+        where:
+        lock2Locked << [true, false]
+    }
+
+    def "thread blocked on a lock is only woken up when that lock is released"() {
+        def attempts = new AtomicInteger()
+        def lock1 = countingResourceLock("lock1", attempts)
+        def lock2 = resourceLock("lock2", true)
+
+        when:
+        async {
+            start {
+                coordinationService.withStateLock(lock(lock1))
+                instant.acquired
+            }
+
+            ConcurrentTestUtil.poll {
+                assert attempts.get() == 1
+            }
+
+            release(lock2)
+            sleep(200)
+            assert attempts.get() == 1
+
+            release(lock1)
+            thread.blockUntil.acquired
+        }
+
+        then:
+        attempts.get() == 2
+        lock1.lockedState
+    }
+
+    def "thread blocked on other state is woken up when any lock is released"() {
+        def lock1 = resourceLock("lock1", true)
+        def lock2 = resourceLock("lock2", true)
+        def attempts = new AtomicInteger()
+
+        when:
+        async {
+            start {
+                coordinationService.withStateLock(new Transformer<ResourceLockState.Disposition, ResourceLockState>() {
+                    @Override
+                    ResourceLockState.Disposition transform(ResourceLockState resourceLockState) {
+                        attempts.incrementAndGet()
+                        return lock1.lockedState ? RETRY : FINISHED
+                    }
+                })
+                instant.finished
+            }
+
+            ConcurrentTestUtil.poll {
+                assert attempts.get() == 1
+            }
+
+            release(lock2)
+            ConcurrentTestUtil.poll {
+                assert attempts.get() == 2
+            }
+
+            release(lock1)
+            thread.blockUntil.finished
+        }
+
+        then:
+        attempts.get() == 3
+    }
+
+    def "notifying about a state change wakes up all blocked threads"() {
+        def attempts = new AtomicInteger()
+        def lock1 = countingResourceLock("lock1", attempts)
+
+        when:
+        async {
+            start {
+                coordinationService.withStateLock(lock(lock1))
+                instant.acquired
+            }
+
+            ConcurrentTestUtil.poll {
+                assert attempts.get() == 1
+            }
+
+            coordinationService.notifyStateChange()
+            ConcurrentTestUtil.poll {
+                assert attempts.get() == 2
+            }
+
+            release(lock1)
+            thread.blockUntil.acquired
+        }
+
+        then:
+        attempts.get() == 3
+    }
+
+    def "locks are rolled back when a blocked thread retries"() {
+        def lock1 = resourceLock("lock1", false)
+        def lock2 = resourceLock("lock2", true)
+
+        when:
+        async {
+            start {
+                coordinationService.withStateLock(lock(lock1, lock2))
+                instant.acquired
+            }
+
+            ConcurrentTestUtil.poll {
+                assert !lock1.lockedState
+            }
+
+            release(lock2)
+            thread.blockUntil.acquired
+        }
+
+        then:
+        lock1.lockedState
+        lock2.lockedState
+    }
+
+    private void release(TestTrackedResourceLock resourceLock) {
+        resourceLock.lockedState = false
+        coordinationService.withStateLock(new Transformer<ResourceLockState.Disposition, ResourceLockState>() {
+            @Override
+            ResourceLockState.Disposition transform(ResourceLockState resourceLockState) {
+                resourceLockState.registerUnlocked(resourceLock)
+                return FINISHED
+            }
+        })
+    }
+
+    TestTrackedResourceLock resourceLock(String displayName, boolean locked) {
+        return new TestTrackedResourceLock(displayName, coordinationService, Mock(Action), Mock(Action), locked)
+    }
+
+    TestTrackedResourceLock countingResourceLock(String displayName, AtomicInteger attempts) {
+        return new TestTrackedResourceLock(displayName, coordinationService, Mock(Action), Mock(Action), true) {
+            @Override
+            protected boolean acquireLock() {
+                attempts.incrementAndGet()
+                return super.acquireLock()
+            }
+        }
+    }
+}
@@ -14,12 +14,16 @@ dependencies {
     implementation(libs.slf4jApi)
     implementation(libs.guava)
     implementation(libs.commonsHttpclient)
+    implementation(libs.httpclient5)
+    implementation(libs.httpcore5)
+    implementation(libs.httpcore5H2)
     implementation(libs.inject)
 
     testImplementation(testFixtures(project(":core")))
     testImplementation(libs.servletApi)
 
     integTestImplementation(libs.jetty)
+    integTestImplementation(libs.jettyHttp2Server)
 
     integTestDistributionRuntimeOnly(project(":distributions-basics"))
 }
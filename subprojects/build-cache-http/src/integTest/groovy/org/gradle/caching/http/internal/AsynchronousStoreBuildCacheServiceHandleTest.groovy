@@ -0,0 +1,238 @@
+/*
+ * Copyright 2021 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.caching.http.internal
+
+import org.apache.http.HttpStatus
+import org.gradle.api.internal.DocumentationRegistry
+import org.gradle.caching.BuildCacheKey
+import org.gradle.caching.BuildCacheServiceFactory
+import org.gradle.caching.http.HttpBuildCache
+import org.gradle.caching.internal.controller.service.AsynchronousStoreBuildCacheServiceHandle
+import org.gradle.caching.internal.controller.service.BuildCacheServiceRole
+import org.gradle.caching.internal.controller.service.StoreTarget
+import org.gradle.caching.internal.operations.BuildCacheRemoteStoreBuildOperationType
+import org.gradle.internal.hash.HashCode
+import org.gradle.internal.operations.TestBuildOperationExecutor
+import org.gradle.internal.resource.transport.http.DefaultSslContextFactory
+import org.gradle.internal.resource.transport.http.HttpClientHelper
+import org.gradle.test.fixtures.file.TestNameTestDirectoryProvider
+import org.gradle.test.fixtures.server.http.HttpServer
+import org.junit.Rule
+import spock.lang.Specification
+
+import javax.servlet.http.HttpServletRequest
+import javax.servlet.http.HttpServletResponse
+import java.time.Duration
+import java.util.concurrent.CountDownLatch
+
+class AsynchronousStoreBuildCacheServiceHandleTest extends Specification {
+    @Rule
+    HttpServer server = new HttpServer()
+    @Rule
+    TestNameTestDirectoryProvider tempDir = new TestNameTestDirectoryProvider(getClass())
+
+    def key = Stub(BuildCacheKey) {
+        getHashCode() >> HashCode.fromString("01234567abcdef").toString()
+        getDisplayName() >> "01234567abcdef"
+    }
+    def otherKey = Stub(BuildCacheKey) {
+        getHashCode() >> HashCode.fromString("89abcdef012345").toString()
+        getDisplayName() >> "89abcdef012345"
+    }
+    def buildOperationExecutor = new TestBuildOperationExecutor()
+    HttpBuildCacheService httpService
+
+    def setup() {
+        server.start()
+        def config = new HttpBuildCache()
+        config.url = server.uri.resolve("/cache/")
+        httpService = new DefaultHttpBuildCacheServiceFactory(new DefaultSslContextFactory(), {}, HttpClientHelper.Factory.createFactory(new DocumentationRegistry()))
+            .createBuildCacheService(config, Stub(BuildCacheServiceFactory.Describer)) as HttpBuildCacheService
+    }
+
+    def "stores entry in the background and finishes the store operation when the upload completes"() {
+        def handle = handle(true, 1024)
+        def destFile = tempDir.file("cached.zip")
+        def content = "Data".bytes
+        def uploadStarted = new CountDownLatch(1)
+        def storeReturned = new CountDownLatch(1)
+        server.expect("/cache/${key.hashCode}", ["PUT"], new HttpServer.ActionSupport("slow put") {
+            void handle(HttpServletRequest request, HttpServletResponse response) {
+                uploadStarted.countDown()
+                storeReturned.await()
+                destFile.bytes = request.inputStream.bytes
+                response.setStatus(HttpStatus.SC_OK)
+            }
+        })
+
+        when:
+        handle.store(key, target(content))
+        uploadStarted.await()
+
+        then:
+        buildOperationExecutor.log.mostRecent(BuildCacheRemoteStoreBuildOperationType).result == null
+
+        when:
+        storeReturned.countDown()
+        handle.close()
+
+        then:
+        destFile.bytes == content
+        buildOperationExecutor.log.mostRecentResult(BuildCacheRemoteStoreBuildOperationType).stored
+    }
+
+    def "failure to store entry in the background is reported for that entry and disables the remote cache"() {
+        def handle = handle(true, 1024)
+        expectError(key, HttpStatus.SC_INTERNAL_SERVER_ERROR)
+
+        when:
+        handle.store(key, target("Data".bytes))
+        handle.close()
+
+        then:
+        noExceptionThrown()
+        !handle.canStore()
+        !handle.canLoad()
+        buildOperationExecutor.log.mostRecentFailure(BuildCacheRemoteStoreBuildOperationType).message == "Storing entry at '${server.uri}/cache/${key.hashCode}' response status 500: broken"
+    }
+
+    def "failure to store entry in the background does not fail later stores"() {
+        def handle = handle(false, 1024)
+        def destFile = tempDir.file("cached.zip")
+        def content = "Data".bytes
+        expectError(key, HttpStatus.SC_INTERNAL_SERVER_ERROR)
+        server.expect("/cache/${otherKey.hashCode}", ["PUT"], new HttpServer.ActionSupport("put") {
+            void handle(HttpServletRequest request, HttpServletResponse response) {
+                destFile.bytes = request.inputStream.bytes
+                response.setStatus(HttpStatus.SC_OK)
+            }
+        })
+
+        when:
+        handle.store(key, target("Failing".bytes))
+        handle.store(otherKey, target(content))
+        handle.close()
+
+        then:
+        noExceptionThrown()
+        handle.canStore()
+        destFile.bytes == content
+        def operations = buildOperationExecutor.log.all(BuildCacheRemoteStoreBuildOperationType)
+        operations.size() == 2
+        operations.count { it.failure != null } == 1
+    }
+
+    def "stores entry synchronously when buffer limit is exceeded"() {
+        def handle = handle(true, 3)
+        expectError(key, HttpStatus.SC_INTERNAL_SERVER_ERROR)
+
+        when:
+        handle.store(key, target("Data".bytes))
+
+        then:
+        !handle.canStore()
+        buildOperationExecutor.log.mostRecentFailure(BuildCacheRemoteStoreBuildOperationType) != null
+
+        cleanup:
+        handle.close()
+    }
+
+    def "store operations are children of the operation spanning the background stores"() {
+        def handle = handle(true, 1024)
+        server.expect("/cache/${key.hashCode}", ["PUT"], new HttpServer.ActionSupport("put") {
+            void handle(HttpServletRequest request, HttpServletResponse response) {
+                response.setStatus(HttpStatus.SC_OK)
+            }
+        })
+
+        when:
+        handle.store(key, target("Data".bytes))
+        handle.close()
+
+        then:
+        buildOperationExecutor.operations*.displayName.contains("Store entries in remote build cache in the background")
+        buildOperationExecutor.log.mostRecent(BuildCacheRemoteStoreBuildOperationType).descriptor.parentId == buildOperationExecutor.currentOperation.id
+    }
+
+    def "does not store queued entries once the remote cache has been disabled"() {
+        def handle = handle(true, 1024)
+        def uploadStarted = new CountDownLatch(1)
+        def otherStoreQueued = new CountDownLatch(1)
+        server.expect("/cache/${key.hashCode}", ["PUT"], new HttpServer.ActionSupport("failing put") {
+            void handle(HttpServletRequest request, HttpServletResponse response) {
+                uploadStarted.countDown()
+                otherStoreQueued.await()
+                response.setStatus(HttpStatus.SC_INTERNAL_SERVER_ERROR)
+            }
+        })
+
+        when:
+        handle.store(key, target("Failing".bytes))
+        uploadStarted.await()
+        handle.store(otherKey, target("Data".bytes))
+        otherStoreQueued.countDown()
+        handle.close()
+
+        then:
+        !handle.canStore()
+        buildOperationExecutor.log.all(BuildCacheRemoteStoreBuildOperationType).size() == 1
+    }
+
+    def "cancels stores which do not finish within the close timeout"() {
+        def handle = handle(true, 1024, Duration.ofMillis(100))
+        def uploadStarted = new CountDownLatch(1)
+        def releaseUpload = new CountDownLatch(1)
+        server.expect("/cache/${key.hashCode}", ["PUT"], new HttpServer.ActionSupport("hanging put") {
+            void handle(HttpServletRequest request, HttpServletResponse response) {
+                uploadStarted.countDown()
+                releaseUpload.await()
+                response.setStatus(HttpStatus.SC_OK)
+            }
+        })
+
+        when:
+        handle.store(key, target("Data".bytes))
+        uploadStarted.await()
+        handle.close()
+
+        then:
+        noExceptionThrown()
+
+        cleanup:
+        releaseUpload.countDown()
+    }
+
+    private AsynchronousStoreBuildCacheServiceHandle handle(boolean disableOnError, long maxBufferedBytes, Duration closeTimeout = Duration.ofMinutes(1)) {
+        new AsynchronousStoreBuildCacheServiceHandle(httpService, true, BuildCacheServiceRole.REMOTE, buildOperationExecutor, false, disableOnError, 1, maxBufferedBytes, closeTimeout)
+    }
+
+    private StoreTarget target(byte[] content) {
+        def file = tempDir.createFile("entry-${content.length}-${System.nanoTime()}")
+        file.bytes = content
+        new StoreTarget(file)
+    }
+
+    private void expectError(BuildCacheKey key, int httpCode) {
+        server.expect("/cache/${key.hashCode}", false, ["PUT"], new HttpServer.ActionSupport("return ${httpCode} broken") {
+            @Override
+            void handle(HttpServletRequest request, HttpServletResponse response) {
+                //noinspection GrDeprecatedAPIUsage
+                response.setStatus(httpCode, "broken")
+            }
+        })
+    }
+}
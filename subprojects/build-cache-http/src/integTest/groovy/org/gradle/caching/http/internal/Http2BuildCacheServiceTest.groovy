@@ -0,0 +1,259 @@
+/*
+ * Copyright 2021 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.caching.http.internal
+
+import org.apache.http.HttpStatus
+import org.eclipse.jetty.http2.server.HTTP2CServerConnectionFactory
+import org.eclipse.jetty.io.ConnectionStatistics
+import org.eclipse.jetty.server.HttpConfiguration
+import org.eclipse.jetty.server.Request
+import org.eclipse.jetty.server.Server
+import org.eclipse.jetty.server.ServerConnector
+import org.eclipse.jetty.server.handler.AbstractHandler
+import org.gradle.api.UncheckedIOException
+import org.gradle.api.internal.DocumentationRegistry
+import org.gradle.caching.BuildCacheEntryWriter
+import org.gradle.caching.BuildCacheException
+import org.gradle.caching.BuildCacheKey
+import org.gradle.caching.BuildCacheService
+import org.gradle.caching.BuildCacheServiceFactory
+import org.gradle.caching.http.HttpBuildCache
+import org.gradle.internal.resource.transport.http.DefaultSslContextFactory
+import org.gradle.internal.resource.transport.http.HttpClientHelper
+import org.gradle.util.SetSystemProperties
+import org.junit.Rule
+import spock.lang.Specification
+
+import javax.servlet.http.HttpServletRequest
+import javax.servlet.http.HttpServletResponse
+import java.util.concurrent.ConcurrentHashMap
+import java.util.concurrent.CopyOnWriteArrayList
+import java.util.concurrent.CountDownLatch
+import java.util.concurrent.Executors
+import java.util.concurrent.TimeUnit
+
+/**
+ * Runs the HTTP/2 transport against an in-process Jetty server that speaks HTTP/2 with prior knowledge (h2c).
+ */
+class Http2BuildCacheServiceTest extends Specification {
+    @Rule
+    SetSystemProperties systemProperties = new SetSystemProperties([(DefaultHttpBuildCacheServiceFactory.HTTP2_PROPERTY): "true"])
+
+    Server server = new Server()
+    ConnectionStatistics connections = new ConnectionStatistics()
+    Map<String, byte[]> entries = new ConcurrentHashMap<>()
+    List<String> protocols = new CopyOnWriteArrayList<>()
+    List<Map<String, String>> receivedHeaders = new CopyOnWriteArrayList<>()
+    Closure handler = this.&serveEntries
+    HttpBuildCache config = new HttpBuildCache()
+    BuildCacheService cache
+
+    def setup() {
+        def connector = new ServerConnector(server, new HTTP2CServerConnectionFactory(new HttpConfiguration()))
+        connector.addBean(connections)
+        server.addConnector(connector)
+        server.handler = new AbstractHandler() {
+            @Override
+            void handle(String target, Request baseRequest, HttpServletRequest request, HttpServletResponse response) {
+                protocols << request.protocol
+                // HTTP/2 sends header names in lower case
+                receivedHeaders << Collections.list(request.headerNames).collectEntries(new TreeMap<String, String>(String.CASE_INSENSITIVE_ORDER)) { [it, request.getHeader(it)] }
+                handler.call(request, response)
+                baseRequest.handled = true
+            }
+        }
+        server.start()
+
+        config.url = URI.create("http://localhost:${connector.localPort}/cache/")
+        config.allowInsecureProtocol = true
+    }
+
+    def cleanup() {
+        cache?.close()
+        server.stop()
+    }
+
+    def "uses HTTP/2 transport when enabled"() {
+        expect:
+        createCache() instanceof Http2BuildCacheService
+    }
+
+    def "stores and loads entries over HTTP/2"() {
+        createCache()
+        def key = key("0123abcd")
+
+        when:
+        cache.store(key, writer("Data".bytes))
+        def loaded = null
+        def found = cache.load(key) { input -> loaded = input.text }
+
+        then:
+        found
+        loaded == "Data"
+        entries.keySet() == ["/cache/0123abcd"] as Set
+        protocols == ["HTTP/2.0", "HTTP/2.0"]
+        receivedHeaders[0]["Content-Type"] == HttpBuildCacheService.BUILD_CACHE_CONTENT_TYPE
+    }
+
+    def "reports cache miss on 404"() {
+        createCache()
+
+        when:
+        def found = cache.load(key("0123abcd")) { input ->
+            throw new RuntimeException("That should never be called")
+        }
+
+        then:
+        !found
+    }
+
+    def "multiplexes concurrent requests over a single connection"() {
+        createCache()
+        def concurrentRequests = 8
+        def allInFlight = new CountDownLatch(concurrentRequests)
+        handler = { HttpServletRequest request, HttpServletResponse response ->
+            allInFlight.countDown()
+            assert allInFlight.await(10, TimeUnit.SECONDS)
+            serveEntries(request, response)
+        }
+        def keys = (1..concurrentRequests).collect { key("abcd000${it}") }
+        def executor = Executors.newFixedThreadPool(concurrentRequests)
+
+        when:
+        def results = keys.collect { key ->
+            executor.submit {
+                if (key.hashCode.endsWith("1") || key.hashCode.endsWith("2")) {
+                    cache.store(key, writer(key.hashCode.bytes))
+                } else {
+                    cache.load(key) { input -> }
+                }
+            }
+        }
+        results*.get(20, TimeUnit.SECONDS)
+
+        then:
+        allInFlight.count == 0
+        connections.connectionsTotal == 1
+        entries.size() == 2
+
+        cleanup:
+        executor.shutdownNow()
+    }
+
+    def "sends customized headers and credentials with every request"() {
+        config.credentials.username = "user"
+        config.credentials.password = "secret"
+        createCache()
+
+        when:
+        cache.load(key("0123abcd")) { input -> }
+        cache.store(key("0123abcd"), writer("Data".bytes))
+
+        then:
+        receivedHeaders.size() == 2
+        receivedHeaders.every {
+            it["X-Gradle-Version"] == "3.0" && it["Authorization"] == "Basic " + "user:secret".bytes.encodeBase64().toString()
+        }
+    }
+
+    def "load reports recoverable error on http code 500"() {
+        createCache()
+        handler = { HttpServletRequest request, HttpServletResponse response -> response.sendError(HttpStatus.SC_INTERNAL_SERVER_ERROR) }
+
+        when:
+        cache.load(key("0123abcd")) { input -> }
+
+        then:
+        BuildCacheException exception = thrown()
+        exception.message == "Loading entry from '${config.url.resolve("0123abcd")}' response status 500: Internal Server Error"
+    }
+
+    def "store reports non-recoverable error on http code 401"() {
+        createCache()
+        handler = { HttpServletRequest request, HttpServletResponse response -> response.sendError(HttpStatus.SC_UNAUTHORIZED) }
+
+        when:
+        cache.store(key("0123abcd"), writer("Data".bytes))
+
+        then:
+        UncheckedIOException exception = thrown()
+        exception.message == "Storing entry at '${config.url.resolve("0123abcd")}' response status 401: Unauthorized"
+    }
+
+    def "does not follow redirects"() {
+        createCache()
+        handler = { HttpServletRequest request, HttpServletResponse response -> response.sendRedirect("/redirect${request.requestURI}") }
+
+        when:
+        cache.load(key("0123abcd")) { input -> }
+
+        then:
+        BuildCacheException exception = thrown()
+        exception.message == "Received unexpected redirect (HTTP 302) to ${config.url.resolve("/redirect/cache/0123abcd")} when loading entry from '${config.url.resolve("0123abcd")}'. Ensure the configured URL for the remote build cache is correct."
+    }
+
+    private BuildCacheService createCache() {
+        def describer = new BuildCacheServiceFactory.Describer() {
+            @Override
+            BuildCacheServiceFactory.Describer type(String type) {
+                return this
+            }
+
+            @Override
+            BuildCacheServiceFactory.Describer config(String name, String value) {
+                return this
+            }
+        }
+        cache = new DefaultHttpBuildCacheServiceFactory(new DefaultSslContextFactory(), { it.addHeader("X-Gradle-Version", "3.0") }, HttpClientHelper.Factory.createFactory(new DocumentationRegistry()))
+            .createBuildCacheService(config, describer)
+        return cache
+    }
+
+    private void serveEntries(HttpServletRequest request, HttpServletResponse response) {
+        if (request.method == "PUT") {
+            entries[request.requestURI] = request.inputStream.bytes
+            response.status = HttpStatus.SC_CREATED
+        } else {
+            def entry = entries[request.requestURI]
+            if (entry == null) {
+                response.status = HttpStatus.SC_NOT_FOUND
+            } else {
+                response.outputStream.write(entry)
+            }
+        }
+    }
+
+    private BuildCacheKey key(String hashCode) {
+        Stub(BuildCacheKey) {
+            getHashCode() >> hashCode
+        }
+    }
+
+    private static BuildCacheEntryWriter writer(byte[] content) {
+        return new BuildCacheEntryWriter() {
+            @Override
+            void writeTo(OutputStream output) throws IOException {
+                output << content
+            }
+
+            @Override
+            long getSize() {
+                return content.length
+            }
+        }
+    }
+}
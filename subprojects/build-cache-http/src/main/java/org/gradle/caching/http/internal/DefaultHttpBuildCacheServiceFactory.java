@@ -28,9 +28,13 @@
 import org.gradle.internal.deprecation.Documentation;
 import org.gradle.internal.resource.transport.http.DefaultHttpSettings;
 import org.gradle.internal.resource.transport.http.HttpClientHelper;
+import org.gradle.internal.resource.transport.http.HttpProxySettings;
+import org.gradle.internal.resource.transport.http.HttpSettings;
 import org.gradle.internal.resource.transport.http.SslContextFactory;
 import org.gradle.internal.verifier.HttpRedirectVerifier;
 import org.gradle.internal.verifier.HttpRedirectVerifierFactory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 import javax.inject.Inject;
 import java.net.URI;
@@ -43,6 +47,14 @@
  */
 public class DefaultHttpBuildCacheServiceFactory implements BuildCacheServiceFactory<HttpBuildCache> {
 
+    /**
+     * When set to {@code true}, the remote cache is accessed over a single multiplexed HTTP/2 connection instead of a pool of HTTP/1.1 connections.
+     * Caches reached through a proxy keep using HTTP/1.1.
+     */
+    public static final String HTTP2_PROPERTY = "org.gradle.unsafe.build-cache.http2";
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(DefaultHttpBuildCacheServiceFactory.class);
+
     private final SslContextFactory sslContextFactory;
     private final HttpBuildCacheRequestCustomizer requestCustomizer;
     private final HttpClientHelper.Factory httpClientHelperFactory;
@@ -91,7 +103,7 @@ public BuildCacheService createBuildCacheService(HttpBuildCache configuration, D
         } else {
             builder.withSslContextFactory(sslContextFactory);
         }
-        HttpClientHelper httpClientHelper = httpClientHelperFactory.create(builder.build());
+        HttpSettings httpSettings = builder.build();
 
         describer.type("HTTP")
             .config("url", noUserInfoUrl.toASCIIString())
@@ -99,9 +111,24 @@ public BuildCacheService createBuildCacheService(HttpBuildCache configuration, D
             .config("allowUntrustedServer", Boolean.toString(allowUntrustedServer))
             .config("allowInsecureProtocol", Boolean.toString(allowInsecureProtocol));
 
+        if (Boolean.getBoolean(HTTP2_PROPERTY)) {
+            if (usesProxy(httpSettings, noUserInfoUrl)) {
+                LOGGER.info("Not using HTTP/2 for the build cache at {}, as it is accessed through a proxy.", noUserInfoUrl);
+            } else {
+                describer.config("protocol", "HTTP/2");
+                return new Http2BuildCacheService(httpSettings, noUserInfoUrl, authenticated ? credentials : null, requestCustomizer);
+            }
+        }
+
+        HttpClientHelper httpClientHelper = httpClientHelperFactory.create(httpSettings);
         return new HttpBuildCacheService(httpClientHelper, noUserInfoUrl, requestCustomizer);
     }
 
+    private static boolean usesProxy(HttpSettings httpSettings, URI url) {
+        HttpProxySettings proxySettings = "https".equals(url.getScheme()) ? httpSettings.getSecureProxySettings() : httpSettings.getProxySettings();
+        return proxySettings.getProxy(url.getHost()) != null;
+    }
+
     private HttpRedirectVerifier createRedirectVerifier(URI url, boolean allowInsecureProtocol) {
         return HttpRedirectVerifierFactory
             .create(
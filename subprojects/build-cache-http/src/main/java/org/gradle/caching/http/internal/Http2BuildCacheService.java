@@ -0,0 +1,227 @@
+/*
+ * Copyright 2021 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.caching.http.internal;
+
+import org.apache.hc.client5.http.async.methods.SimpleHttpRequest;
+import org.apache.hc.client5.http.async.methods.SimpleHttpResponse;
+import org.apache.hc.client5.http.config.RequestConfig;
+import org.apache.hc.client5.http.impl.async.CloseableHttpAsyncClient;
+import org.apache.hc.client5.http.impl.async.HttpAsyncClients;
+import org.apache.hc.client5.http.ssl.DefaultClientTlsStrategy;
+import org.apache.hc.core5.http.ContentType;
+import org.apache.hc.core5.http.HttpHeaders;
+import org.apache.hc.core5.http.HttpStatus;
+import org.apache.hc.core5.http.impl.EnglishReasonPhraseCatalog;
+import org.apache.hc.core5.http.nio.ssl.TlsStrategy;
+import org.apache.hc.core5.io.CloseMode;
+import org.apache.hc.core5.reactor.IOReactorConfig;
+import org.apache.hc.core5.util.Timeout;
+import org.apache.http.Header;
+import org.apache.http.message.BasicHttpRequest;
+import org.gradle.api.credentials.PasswordCredentials;
+import org.gradle.caching.BuildCacheEntryReader;
+import org.gradle.caching.BuildCacheEntryWriter;
+import org.gradle.caching.BuildCacheException;
+import org.gradle.caching.BuildCacheKey;
+import org.gradle.caching.BuildCacheService;
+import org.gradle.internal.resource.transport.http.HttpSettings;
+import org.gradle.internal.resource.transport.http.HttpTimeoutSettings;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.annotation.Nullable;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.Locale;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+
+import static org.gradle.caching.http.internal.HttpBuildCacheService.BUILD_CACHE_CONTENT_TYPE;
+import static org.gradle.caching.http.internal.HttpBuildCacheService.handleRedirect;
+import static org.gradle.caching.http.internal.HttpBuildCacheService.isHttpSuccess;
+import static org.gradle.caching.http.internal.HttpBuildCacheService.isRedirect;
+import static org.gradle.caching.http.internal.HttpBuildCacheService.safeUri;
+import static org.gradle.caching.http.internal.HttpBuildCacheService.throwHttpStatusCodeException;
+import static org.gradle.caching.http.internal.HttpBuildCacheService.wrap;
+
+/**
+ * Build cache implementation that talks HTTP/2 to the remote cache.
+ *
+ * All requests to the cache are multiplexed as separate streams over a single connection,
+ * so concurrent loads and background stores don't each need a connection of their own.
+ * Plain {@code http} URLs use HTTP/2 with prior knowledge (h2c), {@code https} URLs negotiate HTTP/2 via ALPN.
+ *
+ * Entries are buffered in memory while they are sent or received.
+ */
+public class Http2BuildCacheService implements BuildCacheService {
+    private static final Logger LOGGER = LoggerFactory.getLogger(Http2BuildCacheService.class);
+
+    private final URI root;
+    private final CloseableHttpAsyncClient client;
+    private final HttpBuildCacheRequestCustomizer requestCustomizer;
+    @Nullable
+    private final String authorization;
+
+    public Http2BuildCacheService(HttpSettings settings, URI url, @Nullable PasswordCredentials credentials, HttpBuildCacheRequestCustomizer requestCustomizer) {
+        if (!url.getPath().endsWith("/")) {
+            throw new IllegalArgumentException("HTTP cache root URI must end with '/'");
+        }
+        this.root = url;
+        this.requestCustomizer = requestCustomizer;
+        this.authorization = credentials == null ? null : basicAuthorization(credentials);
+        this.client = createClient(settings);
+        this.client.start();
+    }
+
+    private static CloseableHttpAsyncClient createClient(HttpSettings settings) {
+        HttpTimeoutSettings timeouts = settings.getTimeoutSettings();
+        TlsStrategy tlsStrategy = new DefaultClientTlsStrategy(settings.getSslContextFactory().createSslContext(), settings.getHostnameVerifier());
+        return HttpAsyncClients.customHttp2()
+            .setTlsStrategy(tlsStrategy)
+            .setIOReactorConfig(IOReactorConfig.custom()
+                .setSoTimeout(Timeout.ofMilliseconds(timeouts.getSocketTimeoutMs()))
+                .build())
+            .setDefaultRequestConfig(RequestConfig.custom()
+                .setConnectTimeout(Timeout.ofMilliseconds(timeouts.getConnectionTimeoutMs()))
+                .setResponseTimeout(Timeout.ofMilliseconds(timeouts.getSocketTimeoutMs()))
+                .build())
+            .disableRedirectHandling()
+            .disableAutomaticRetries()
+            .build();
+    }
+
+    private static String basicAuthorization(PasswordCredentials credentials) {
+        String userPass = credentials.getUsername() + ":" + credentials.getPassword();
+        return "Basic " + Base64.getEncoder().encodeToString(userPass.getBytes(StandardCharsets.UTF_8));
+    }
+
+    @Override
+    public boolean load(BuildCacheKey key, BuildCacheEntryReader reader) throws BuildCacheException {
+        URI uri = root.resolve("./" + key.getHashCode());
+        SimpleHttpRequest request = new SimpleHttpRequest("GET", uri);
+        request.addHeader(HttpHeaders.ACCEPT, BUILD_CACHE_CONTENT_TYPE + ", */*");
+        customize(request);
+
+        try {
+            SimpleHttpResponse response = execute(request);
+            if (LOGGER.isDebugEnabled()) {
+                LOGGER.debug("Response for GET {}: {} {}", safeUri(uri), response.getCode(), reasonPhrase(response));
+            }
+            int statusCode = response.getCode();
+            if (isHttpSuccess(statusCode)) {
+                byte[] body = response.getBodyBytes();
+                reader.readFrom(new ByteArrayInputStream(body == null ? new byte[0] : body));
+                return true;
+            } else if (statusCode == HttpStatus.SC_NOT_FOUND) {
+                return false;
+            } else {
+                String defaultMessage = String.format("Loading entry from '%s' response status %d: %s", safeUri(uri), statusCode, reasonPhrase(response));
+                if (isRedirect(statusCode)) {
+                    return handleRedirect(uri, locationOf(response), statusCode, defaultMessage, "loading entry from");
+                } else {
+                    return throwHttpStatusCodeException(statusCode, defaultMessage);
+                }
+            }
+        } catch (IOException e) {
+            throw wrap(e);
+        }
+    }
+
+    @Override
+    public void store(BuildCacheKey key, BuildCacheEntryWriter output) throws BuildCacheException {
+        URI uri = root.resolve(key.getHashCode());
+        SimpleHttpRequest request = new SimpleHttpRequest("PUT", uri);
+        customize(request);
+
+        try {
+            ByteArrayOutputStream content = new ByteArrayOutputStream((int) output.getSize());
+            output.writeTo(content);
+            request.setBody(content.toByteArray(), ContentType.create(BUILD_CACHE_CONTENT_TYPE));
+
+            SimpleHttpResponse response = execute(request);
+            if (LOGGER.isDebugEnabled()) {
+                LOGGER.debug("Response for PUT {}: {} {}", safeUri(uri), response.getCode(), reasonPhrase(response));
+            }
+            int statusCode = response.getCode();
+            if (!isHttpSuccess(statusCode)) {
+                String defaultMessage = String.format("Storing entry at '%s' response status %d: %s", safeUri(uri), statusCode, reasonPhrase(response));
+                if (isRedirect(statusCode)) {
+                    handleRedirect(uri, locationOf(response), statusCode, defaultMessage, "storing entry at");
+                } else {
+                    throwHttpStatusCodeException(statusCode, defaultMessage);
+                }
+            }
+        } catch (IOException e) {
+            throw wrap(e);
+        }
+    }
+
+    /**
+     * Applies the headers the customizer adds to the HTTP/1.1 requests.
+     */
+    private void customize(SimpleHttpRequest request) {
+        BasicHttpRequest headers = new BasicHttpRequest(request.getMethod(), request.getRequestUri());
+        requestCustomizer.customize(headers);
+        for (Header header : headers.getAllHeaders()) {
+            request.addHeader(header.getName(), header.getValue());
+        }
+        if (authorization != null) {
+            request.setHeader(HttpHeaders.AUTHORIZATION, authorization);
+        }
+    }
+
+    private SimpleHttpResponse execute(SimpleHttpRequest request) throws IOException {
+        Future<SimpleHttpResponse> response = client.execute(request, null);
+        try {
+            return response.get();
+        } catch (InterruptedException e) {
+            response.cancel(true);
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException(String.format("Interrupted while waiting for response to %s %s", request.getMethod(), safeUri(root)));
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            throw wrap(cause);
+        }
+    }
+
+    /**
+     * HTTP/2 responses carry no reason phrase, so use the standard one for the status code.
+     */
+    private static String reasonPhrase(SimpleHttpResponse response) {
+        String reasonPhrase = response.getReasonPhrase();
+        return reasonPhrase != null ? reasonPhrase : EnglishReasonPhraseCatalog.INSTANCE.getReason(response.getCode(), Locale.ENGLISH);
+    }
+
+    @Nullable
+    private static String locationOf(SimpleHttpResponse response) {
+        org.apache.hc.core5.http.Header location = response.getFirstHeader(HttpHeaders.LOCATION);
+        return location == null ? null : location.getValue();
+    }
+
+    @Override
+    public void close() {
+        client.close(CloseMode.GRACEFUL);
+    }
+}
@@ -14,6 +14,7 @@ dependencies {
     implementation(project(":base-annotations"))
 
     implementation(libs.guava)
+    implementation(libs.aircompressor)
     implementation(libs.commonsCompress)
     implementation(libs.commonsIo)
 
@@ -0,0 +1,118 @@
+/*
+ * Copyright 2021 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.caching.internal.packaging.impl;
+
+import io.airlift.compress.snappy.SnappyFramedInputStream;
+import io.airlift.compress.snappy.SnappyFramedOutputStream;
+
+import javax.annotation.Nullable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Locale;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * The compression applied to build cache entries by {@link CompressingBuildCacheEntryPacker}.
+ *
+ * The compression of new entries can be changed via the {@value #SYSTEM_PROPERTY} system property.
+ * Entries are always unpacked with the compression they were packed with.
+ *
+ * Previous versions can only unpack GZIP entries, but may share a build cache with this version.
+ * So entries with any other compression are stored under different cache keys, see {@link #getCacheKeyFormat()}.
+ */
+public enum BuildCacheEntryCompression {
+    /**
+     * A plain GZIP stream, the format used by all previous versions.
+     */
+    GZIP((byte) 0) {
+        @Override
+        OutputStream compress(OutputStream output) throws IOException {
+            return new GZIPOutputStream(output);
+        }
+
+        @Override
+        InputStream decompress(InputStream input) throws IOException {
+            return new GZIPInputStream(input);
+        }
+    },
+    /**
+     * The Snappy framing format, which packs and unpacks several times faster than GZIP, at the cost of larger entries.
+     */
+    SNAPPY((byte) 1) {
+        @Override
+        OutputStream compress(OutputStream output) throws IOException {
+            return new SnappyFramedOutputStream(output);
+        }
+
+        @Override
+        InputStream decompress(InputStream input) throws IOException {
+            return new SnappyFramedInputStream(input);
+        }
+    };
+
+    public static final String SYSTEM_PROPERTY = "org.gradle.unsafe.build-cache.compression";
+
+    private final byte id;
+
+    BuildCacheEntryCompression(byte id) {
+        this.id = id;
+    }
+
+    byte getId() {
+        return id;
+    }
+
+    /**
+     * Returns the entry format to add to the cache keys of entries packed with this compression.
+     *
+     * @return the format, or {@code null} for {@link #GZIP}, which keeps the cache keys of previous versions.
+     */
+    @Nullable
+    public String getCacheKeyFormat() {
+        if (this == GZIP) {
+            return null;
+        }
+        return "entry-format-" + CompressingBuildCacheEntryPacker.FORMAT_VERSION + "-" + name().toLowerCase(Locale.ROOT);
+    }
+
+    abstract OutputStream compress(OutputStream output) throws IOException;
+
+    abstract InputStream decompress(InputStream input) throws IOException;
+
+    static BuildCacheEntryCompression fromId(byte id) throws IOException {
+        for (BuildCacheEntryCompression compression : values()) {
+            if (compression.id == id) {
+                return compression;
+            }
+        }
+        throw new IOException(String.format("Unknown build cache entry compression %d.", id));
+    }
+
+    public static BuildCacheEntryCompression fromSystemProperties() {
+        String value = System.getProperty(SYSTEM_PROPERTY);
+        if (value == null || value.isEmpty()) {
+            return GZIP;
+        }
+        try {
+            return valueOf(value.toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException(String.format("Unknown build cache entry compression '%s' set via system property '%s'.", value, SYSTEM_PROPERTY), e);
+        }
+    }
+}
@@ -0,0 +1,64 @@
+/*
+ * Copyright 2021 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.caching.internal.packaging.impl;
+
+import org.gradle.internal.snapshot.impl.FileHashingPool;
+
+import java.io.Closeable;
+
+/**
+ * The threads used by {@link TarBuildCacheEntryPacker} to write and hash the files of unpacked entries.
+ *
+ * Parallel unpacking is enabled via the {@value #SYSTEM_PROPERTY} system property,
+ * set either to {@code true} to use a thread per processor, or to the number of threads to use.
+ */
+public class BuildCacheUnpackPool implements Closeable {
+    public static final String SYSTEM_PROPERTY = "org.gradle.unsafe.build-cache.unpack-threads";
+
+    private final FileHashingPool pool;
+
+    private BuildCacheUnpackPool(FileHashingPool pool) {
+        this.pool = pool;
+    }
+
+    public FileHashingPool getPool() {
+        return pool;
+    }
+
+    public static BuildCacheUnpackPool fromSystemProperties() {
+        String threads = System.getProperty(SYSTEM_PROPERTY);
+        if (threads == null || threads.isEmpty() || "false".equalsIgnoreCase(threads)) {
+            return new BuildCacheUnpackPool(FileHashingPool.SEQUENTIAL);
+        }
+        int parallelism;
+        if ("true".equalsIgnoreCase(threads)) {
+            parallelism = Runtime.getRuntime().availableProcessors();
+        } else {
+            try {
+                parallelism = Integer.parseInt(threads, 10);
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException(String.format("Invalid number of threads '%s' set via system property '%s'.", threads, SYSTEM_PROPERTY), e);
+            }
+        }
+        return new BuildCacheUnpackPool(FileHashingPool.withParallelism(parallelism));
+    }
+
+    @Override
+    public void close() {
+        pool.close();
+    }
+}
@@ -0,0 +1,103 @@
+/*
+ * Copyright 2021 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.caching.internal.packaging.impl;
+
+import org.gradle.caching.internal.CacheableEntity;
+import org.gradle.caching.internal.origin.OriginReader;
+import org.gradle.caching.internal.origin.OriginWriter;
+import org.gradle.caching.internal.packaging.BuildCacheEntryPacker;
+import org.gradle.internal.snapshot.FileSystemSnapshot;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PushbackInputStream;
+import java.util.Arrays;
+import java.util.Map;
+
+/**
+ * Compresses the entries packed by another packer.
+ *
+ * Entries compressed with {@link BuildCacheEntryCompression#GZIP} are plain GZIP streams, like the entries of previous versions.
+ * Other entries start with a header identifying the format version and the compression.
+ * The header never starts like a GZIP stream, so both kinds of entries can be unpacked.
+ */
+public class CompressingBuildCacheEntryPacker implements BuildCacheEntryPacker {
+    private static final byte[] MAGIC = {'G', 'B', 'C', 'E'};
+    static final byte FORMAT_VERSION = 1;
+    private static final int HEADER_LENGTH = MAGIC.length + 2;
+    private static final int GZIP_MAGIC_FIRST_BYTE = 0x1f;
+
+    private final BuildCacheEntryPacker delegate;
+    private final BuildCacheEntryCompression compression;
+
+    public CompressingBuildCacheEntryPacker(BuildCacheEntryPacker delegate, BuildCacheEntryCompression compression) {
+        this.delegate = delegate;
+        this.compression = compression;
+    }
+
+    @Override
+    public PackResult pack(CacheableEntity entity, Map<String, ? extends FileSystemSnapshot> snapshots, OutputStream output, OriginWriter writeOrigin) throws IOException {
+        if (compression != BuildCacheEntryCompression.GZIP) {
+            output.write(MAGIC);
+            output.write(FORMAT_VERSION);
+            output.write(compression.getId());
+        }
+        try (OutputStream compressedOutput = compression.compress(output)) {
+            return delegate.pack(entity, snapshots, compressedOutput, writeOrigin);
+        }
+    }
+
+    @Override
+    public UnpackResult unpack(CacheableEntity entity, InputStream input, OriginReader readOrigin) throws IOException {
+        PushbackInputStream headerInput = new PushbackInputStream(input, 1);
+        BuildCacheEntryCompression entryCompression = readCompression(headerInput);
+        try (InputStream decompressedInput = entryCompression.decompress(headerInput)) {
+            return delegate.unpack(entity, decompressedInput, readOrigin);
+        }
+    }
+
+    private static BuildCacheEntryCompression readCompression(PushbackInputStream input) throws IOException {
+        int first = input.read();
+        if (first == GZIP_MAGIC_FIRST_BYTE) {
+            input.unread(first);
+            return BuildCacheEntryCompression.GZIP;
+        }
+        if (first == -1) {
+            throw new EOFException("Build cache entry is empty.");
+        }
+        byte[] header = new byte[HEADER_LENGTH];
+        header[0] = (byte) first;
+        int read = 1;
+        while (read < HEADER_LENGTH) {
+            int count = input.read(header, read, HEADER_LENGTH - read);
+            if (count == -1) {
+                throw new EOFException("Build cache entry header is truncated.");
+            }
+            read += count;
+        }
+        if (!Arrays.equals(Arrays.copyOf(header, MAGIC.length), MAGIC)) {
+            throw new IOException("Build cache entry has an unknown format.");
+        }
+        byte version = header[MAGIC.length];
+        if (version != FORMAT_VERSION) {
+            throw new IOException(String.format("Build cache entry has unsupported format version %d.", version));
+        }
+        return BuildCacheEntryCompression.fromId(header[MAGIC.length + 1]);
+    }
+}
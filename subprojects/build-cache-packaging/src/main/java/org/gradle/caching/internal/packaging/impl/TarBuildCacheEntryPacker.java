@@ -47,9 +47,11 @@
 import org.gradle.internal.snapshot.RelativePathTracker;
 import org.gradle.internal.snapshot.RelativePathTrackingFileSystemSnapshotHierarchyVisitor;
 import org.gradle.internal.snapshot.SnapshotVisitResult;
+import org.gradle.internal.snapshot.impl.FileHashingPool;
 
 import javax.annotation.Nullable;
 import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.FileInputStream;
@@ -63,9 +65,14 @@
 import java.net.URLEncoder;
 import java.nio.charset.Charset;
 import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ForkJoinTask;
 import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -91,22 +98,40 @@ private interface UnixPermissions {
     private static final Pattern TREE_PATH = Pattern.compile("(missing-)?tree-([^/]+)(?:/(.*))?");
     private static final int BUFFER_SIZE = 64 * 1024;
     private static final ThreadLocal<byte[]> COPY_BUFFERS = ThreadLocal.withInitial(() -> new byte[BUFFER_SIZE]);
+    private static final int MAX_PARALLEL_UNPACK_FILE_SIZE = 1024 * 1024;
+    private static final long MAX_PARALLEL_UNPACK_PENDING_BYTES = 64 * 1024 * 1024;
 
     private final TarPackerFileSystemSupport fileSystemSupport;
     private final FilePermissionAccess filePermissionAccess;
     private final StreamHasher streamHasher;
     private final Interner<String> stringInterner;
+    private final FileHashingPool unpackPool;
 
     public TarBuildCacheEntryPacker(
         TarPackerFileSystemSupport fileSystemSupport,
         FilePermissionAccess filePermissionAccess,
         StreamHasher streamHasher,
         Interner<String> stringInterner
+    ) {
+        this(fileSystemSupport, filePermissionAccess, streamHasher, stringInterner, FileHashingPool.SEQUENTIAL);
+    }
+
+    /**
+     * Creates a packer that writes and hashes the small files of unpacked directory trees in the given pool,
+     * while the archive is read on the calling thread.
+     */
+    public TarBuildCacheEntryPacker(
+        TarPackerFileSystemSupport fileSystemSupport,
+        FilePermissionAccess filePermissionAccess,
+        StreamHasher streamHasher,
+        Interner<String> stringInterner,
+        FileHashingPool unpackPool
     ) {
         this.fileSystemSupport = fileSystemSupport;
         this.filePermissionAccess = filePermissionAccess;
         this.streamHasher = streamHasher;
         this.stringInterner = stringInterner;
+        this.unpackPool = unpackPool;
     }
 
     @Override
@@ -268,45 +293,133 @@ private RegularFileSnapshot unpackFile(TarArchiveInputStream input, TarArchiveEn
             chmodUnpackedFile(entry, file);
             String internedAbsolutePath = stringInterner.intern(file.getAbsolutePath());
             String internedFileName = stringInterner.intern(fileName);
-            return new RegularFileSnapshot(internedAbsolutePath, internedFileName, hash, DefaultFileMetadata.file(output.getCount(), file.lastModified(), DIRECT));
+            return new RegularFileSnapshot(internedAbsolutePath, internedFileName, hash, DefaultFileMetadata.file(file.lastModified(), output.getCount(), DIRECT));
+        }
+    }
+
+    private RegularFileSnapshot unpackFile(byte[] content, TarArchiveEntry entry, File file, String fileName) {
+        try (FileOutputStream output = new FileOutputStream(file)) {
+            output.write(content);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
         }
+        HashCode hash = streamHasher.hash(new ByteArrayInputStream(content));
+        chmodUnpackedFile(entry, file);
+        String internedAbsolutePath = stringInterner.intern(file.getAbsolutePath());
+        String internedFileName = stringInterner.intern(fileName);
+        return new RegularFileSnapshot(internedAbsolutePath, internedFileName, hash, DefaultFileMetadata.file(file.lastModified(), content.length, DIRECT));
     }
 
     @Nullable
     private TarArchiveEntry unpackDirectoryTree(TarArchiveInputStream input, TarArchiveEntry rootEntry, Map<String, FileSystemLocationSnapshot> snapshots, AtomicLong entries, File treeRoot, String treeName) throws IOException {
         RelativePathParser parser = new RelativePathParser(rootEntry.getName());
 
-        MerkleDirectorySnapshotBuilder builder = MerkleDirectorySnapshotBuilder.noSortingRequired();
-        builder.enterDirectory(DIRECT, stringInterner.intern(treeRoot.getAbsolutePath()), stringInterner.intern(treeRoot.getName()), INCLUDE_EMPTY_DIRS);
+        UnpackedTreeBuilder builder = new UnpackedTreeBuilder(unpackPool);
+        String internedRootPath = stringInterner.intern(treeRoot.getAbsolutePath());
+        String internedRootName = stringInterner.intern(treeRoot.getName());
+        builder.record(it -> it.enterDirectory(DIRECT, internedRootPath, internedRootName, INCLUDE_EMPTY_DIRS));
 
-        TarArchiveEntry entry;
-
-        while ((entry = input.getNextTarEntry()) != null) {
-            boolean isDir = entry.isDirectory();
-            boolean outsideOfRoot = parser.nextPath(entry.getName(), isDir, builder::leaveDirectory);
-            if (outsideOfRoot) {
-                break;
+        try {
+            TarArchiveEntry entry;
+            while ((entry = input.getNextTarEntry()) != null) {
+                boolean isDir = entry.isDirectory();
+                boolean outsideOfRoot = parser.nextPath(entry.getName(), isDir, builder::leaveDirectory);
+                if (outsideOfRoot) {
+                    break;
+                }
+                entries.incrementAndGet();
+
+                File file = new File(treeRoot, parser.getRelativePath());
+                if (isDir) {
+                    FileUtils.forceMkdir(file);
+                    chmodUnpackedFile(entry, file);
+                    String internedAbsolutePath = stringInterner.intern(file.getAbsolutePath());
+                    String internedName = stringInterner.intern(parser.getName());
+                    builder.record(it -> it.enterDirectory(DIRECT, internedAbsolutePath, internedName, INCLUDE_EMPTY_DIRS));
+                } else if (builder.isParallel() && entry.getSize() <= MAX_PARALLEL_UNPACK_FILE_SIZE) {
+                    // Read the file on this thread, as the archive can only be read sequentially, and write and hash it in parallel
+                    byte[] content = new byte[(int) entry.getSize()];
+                    IOUtils.readFully(input, content);
+                    TarArchiveEntry fileEntry = entry;
+                    String fileName = parser.getName();
+                    builder.visitLeafElement(content.length, () -> unpackFile(content, fileEntry, file, fileName));
+                } else {
+                    RegularFileSnapshot fileSnapshot = unpackFile(input, entry, file, parser.getName());
+                    builder.record(it -> it.visitLeafElement(fileSnapshot));
+                }
             }
-            entries.incrementAndGet();
 
-            File file = new File(treeRoot, parser.getRelativePath());
-            if (isDir) {
-                FileUtils.forceMkdir(file);
-                chmodUnpackedFile(entry, file);
-                String internedAbsolutePath = stringInterner.intern(file.getAbsolutePath());
-                String internedName = stringInterner.intern(parser.getName());
-                builder.enterDirectory(DIRECT, internedAbsolutePath, internedName, INCLUDE_EMPTY_DIRS);
+            parser.exitToRoot(builder::leaveDirectory);
+            builder.leaveDirectory();
+
+            snapshots.put(treeName, builder.getResult());
+            return entry;
+        } catch (IOException | RuntimeException e) {
+            builder.awaitPendingFilesQuietly();
+            throw e;
+        }
+    }
+
+    /**
+     * Builds the snapshot of an unpacked directory tree.
+     *
+     * When files are unpacked in parallel, the steps are deferred until all files have been unpacked,
+     * since the hashes of directories can only be calculated once all their files have been hashed.
+     */
+    private static class UnpackedTreeBuilder {
+        private final MerkleDirectorySnapshotBuilder builder = MerkleDirectorySnapshotBuilder.noSortingRequired();
+        private final FileHashingPool pool;
+        private final List<Consumer<MerkleDirectorySnapshotBuilder>> pendingSteps = new ArrayList<>();
+        private final List<ForkJoinTask<RegularFileSnapshot>> pendingFiles = new ArrayList<>();
+        private long pendingBytes;
+
+        public UnpackedTreeBuilder(FileHashingPool pool) {
+            this.pool = pool;
+        }
+
+        public boolean isParallel() {
+            return pool.isParallel();
+        }
+
+        public void record(Consumer<MerkleDirectorySnapshotBuilder> step) {
+            if (!pool.isParallel()) {
+                step.accept(builder);
             } else {
-                RegularFileSnapshot fileSnapshot = unpackFile(input, entry, file, parser.getName());
-                builder.visitLeafElement(fileSnapshot);
+                pendingSteps.add(step);
+            }
+        }
+
+        public void leaveDirectory() {
+            record(MerkleDirectorySnapshotBuilder::leaveDirectory);
+        }
+
+        public void visitLeafElement(int size, Supplier<RegularFileSnapshot> unpackFile) {
+            if (pendingBytes + size > MAX_PARALLEL_UNPACK_PENDING_BYTES) {
+                // Limit the memory held by the contents of files not written yet
+                pendingFiles.forEach(ForkJoinTask::join);
+                pendingFiles.clear();
+                pendingBytes = 0;
             }
+            ForkJoinTask<RegularFileSnapshot> fileSnapshot = pool.submit(unpackFile);
+            pendingFiles.add(fileSnapshot);
+            pendingBytes += size;
+            record(it -> it.visitLeafElement(fileSnapshot.join()));
         }
 
-        parser.exitToRoot(builder::leaveDirectory);
-        builder.leaveDirectory();
+        public void awaitPendingFilesQuietly() {
+            for (ForkJoinTask<RegularFileSnapshot> pendingFile : pendingFiles) {
+                pendingFile.quietlyJoin();
+            }
+        }
 
-        snapshots.put(treeName, builder.getResult());
-        return entry;
+        public FileSystemLocationSnapshot getResult() {
+            // Replay the steps in the original order, so the result is the same as when unpacking sequentially
+            for (Consumer<MerkleDirectorySnapshotBuilder> step : pendingSteps) {
+                step.accept(builder);
+            }
+            pendingSteps.clear();
+            return builder.getResult();
+        }
     }
 
     private void chmodUnpackedFile(TarArchiveEntry entry, File file) {
@@ -0,0 +1,65 @@
+/*
+ * Copyright 2021 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.caching.internal.packaging.impl
+
+import org.gradle.util.SetSystemProperties
+import org.junit.Rule
+import spock.lang.Specification
+
+class BuildCacheUnpackPoolTest extends Specification {
+    @Rule
+    SetSystemProperties systemProperties = new SetSystemProperties()
+
+    def "unpacks sequentially by default"() {
+        expect:
+        !BuildCacheUnpackPool.fromSystemProperties().pool.parallel
+    }
+
+    def "unpacks sequentially when set to '#value'"() {
+        System.setProperty(BuildCacheUnpackPool.SYSTEM_PROPERTY, value)
+
+        expect:
+        !BuildCacheUnpackPool.fromSystemProperties().pool.parallel
+
+        where:
+        value << ["", "false", "1"]
+    }
+
+    def "unpacks in parallel when set to a number of threads"() {
+        System.setProperty(BuildCacheUnpackPool.SYSTEM_PROPERTY, "4")
+
+        when:
+        def unpackPool = BuildCacheUnpackPool.fromSystemProperties()
+
+        then:
+        unpackPool.pool.parallel
+
+        cleanup:
+        unpackPool?.close()
+    }
+
+    def "reports invalid number of threads"() {
+        System.setProperty(BuildCacheUnpackPool.SYSTEM_PROPERTY, "many")
+
+        when:
+        BuildCacheUnpackPool.fromSystemProperties()
+
+        then:
+        def e = thrown(IllegalArgumentException)
+        e.message == "Invalid number of threads 'many' set via system property '${BuildCacheUnpackPool.SYSTEM_PROPERTY}'."
+    }
+}
@@ -0,0 +1,98 @@
+/*
+ * Copyright 2021 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.caching.internal.packaging.impl
+
+import org.gradle.caching.internal.CacheableEntity
+import org.gradle.caching.internal.origin.OriginReader
+import org.gradle.caching.internal.origin.OriginWriter
+import org.gradle.caching.internal.packaging.BuildCacheEntryPacker
+import spock.lang.Specification
+
+import java.util.zip.GZIPInputStream
+
+import static org.gradle.caching.internal.packaging.impl.BuildCacheEntryCompression.GZIP
+import static org.gradle.caching.internal.packaging.impl.BuildCacheEntryCompression.SNAPPY
+
+class CompressingBuildCacheEntryPackerTest extends Specification {
+    def entity = Stub(CacheableEntity)
+    def content = ("content " * 1000).bytes
+    def delegate = new BuildCacheEntryPacker() {
+        @Override
+        BuildCacheEntryPacker.PackResult pack(CacheableEntity entity, Map snapshots, OutputStream output, OriginWriter writeOrigin) {
+            output.write(content)
+            new BuildCacheEntryPacker.PackResult(1)
+        }
+
+        @Override
+        BuildCacheEntryPacker.UnpackResult unpack(CacheableEntity entity, InputStream input, OriginReader readOrigin) {
+            assert input.bytes == content
+            new BuildCacheEntryPacker.UnpackResult(null, 1, [:])
+        }
+    }
+
+    def "GZIP entries are plain GZIP streams"() {
+        when:
+        def entry = pack(GZIP)
+
+        then:
+        new GZIPInputStream(new ByteArrayInputStream(entry)).bytes == content
+    }
+
+    def "can unpack #packedWith entry when new entries are packed with #unpackedWith"() {
+        def entry = pack(packedWith)
+
+        when:
+        def result = new CompressingBuildCacheEntryPacker(delegate, unpackedWith).unpack(entity, new ByteArrayInputStream(entry), Stub(OriginReader))
+
+        then:
+        result.entries == 1
+
+        where:
+        packedWith | unpackedWith
+        GZIP       | GZIP
+        GZIP       | SNAPPY
+        SNAPPY     | SNAPPY
+        SNAPPY     | GZIP
+    }
+
+    def "only entries not readable by previous versions change the cache key"() {
+        expect:
+        GZIP.cacheKeyFormat == null
+        SNAPPY.cacheKeyFormat == "entry-format-1-snappy"
+    }
+
+    def "fails to unpack entry with unknown format"() {
+        when:
+        new CompressingBuildCacheEntryPacker(delegate, GZIP).unpack(entity, new ByteArrayInputStream(entry as byte[]), Stub(OriginReader))
+
+        then:
+        def exception = thrown(IOException)
+        exception.message == message
+
+        where:
+        entry                           | message
+        []                              | "Build cache entry is empty."
+        [1, 2, 3, 4, 5, 6]              | "Build cache entry has an unknown format."
+        [71, 66, 67, 69, 2, 1]          | "Build cache entry has unsupported format version 2."
+    }
+
+    private byte[] pack(BuildCacheEntryCompression compression) {
+        def output = new ByteArrayOutputStream()
+        new CompressingBuildCacheEntryPacker(delegate, compression).pack(entity, [:], output, Stub(OriginWriter))
+        return output.toByteArray()
+    }
+}
@@ -19,6 +19,9 @@ package org.gradle.caching.internal.packaging.impl
 import org.gradle.api.internal.file.TestFiles
 import org.gradle.internal.file.Deleter
 import org.gradle.internal.nativeintegration.filesystem.FileSystem
+import org.gradle.internal.snapshot.DirectorySnapshot
+import org.gradle.internal.snapshot.RegularFileSnapshot
+import org.gradle.internal.snapshot.impl.FileHashingPool
 import org.gradle.util.Requires
 import org.gradle.util.TestPrecondition
 import spock.lang.Unroll
@@ -64,6 +67,55 @@ class TarBuildCacheEntryPackerTest extends AbstractTarBuildCacheEntryPackerSpec
         result.entries == 4
     }
 
+    def "unpacks same directory snapshot when writing files in parallel"() {
+        def sourceOutputDir = temporaryFolder.file("source").createDir()
+        (1..20).each { sourceOutputDir.file("dir${it % 3}/file${it}.txt") << "content ${it}" }
+        sourceOutputDir.file("empty").createDir()
+        def output = new ByteArrayOutputStream()
+        pack output, prop(DIRECTORY, sourceOutputDir)
+        def hashingPool = FileHashingPool.withParallelism(4)
+        def parallelPacker = new TarBuildCacheEntryPacker(fileSystemSupport, filePermissionAccess, streamHasher, stringInterner, hashingPool)
+        def targetOutputDir = temporaryFolder.file("target")
+
+        when:
+        def sequentialResult = unpack new ByteArrayInputStream(output.toByteArray()), prop(DIRECTORY, temporaryFolder.file("sequential"))
+        def parallelResult = parallelPacker.unpack(entity(prop(DIRECTORY, targetOutputDir)), new ByteArrayInputStream(output.toByteArray()), readOrigin)
+
+        then:
+        parallelResult.entries == sequentialResult.entries
+        parallelResult.snapshots["test"].hash == sequentialResult.snapshots["test"].hash
+        targetOutputDir.file("dir1/file4.txt").text == "content 4"
+        targetOutputDir.file("empty").directory
+
+        cleanup:
+        hashingPool.close()
+    }
+
+    @Unroll
+    def "records length and last modified time of unpacked files (parallelism: #parallelism)"() {
+        def sourceOutputDir = temporaryFolder.file("source").createDir()
+        sourceOutputDir.file("data.txt") << "some output"
+        def output = new ByteArrayOutputStream()
+        pack output, prop(DIRECTORY, sourceOutputDir)
+        def hashingPool = FileHashingPool.withParallelism(parallelism)
+        def packer = new TarBuildCacheEntryPacker(fileSystemSupport, filePermissionAccess, streamHasher, stringInterner, hashingPool)
+        def targetOutputDir = temporaryFolder.file("target")
+
+        when:
+        def result = packer.unpack(entity(prop(DIRECTORY, targetOutputDir)), new ByteArrayInputStream(output.toByteArray()), readOrigin)
+        def fileSnapshot = (result.snapshots["test"] as DirectorySnapshot).children.find { it.name == "data.txt" } as RegularFileSnapshot
+
+        then:
+        fileSnapshot.metadata.length == "some output".length()
+        fileSnapshot.metadata.lastModified == targetOutputDir.file("data.txt").lastModified()
+
+        cleanup:
+        hashingPool.close()
+
+        where:
+        parallelism << [1, 4]
+    }
+
     @Unroll
     def "can pack tree with missing #type (pre-existing as: #preExistsAs)"() {
         def sourceOutput = temporaryFolder.file("source")
@@ -0,0 +1,71 @@
+/*
+ * Copyright 2021 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.caching.internal.tasks;
+
+import org.apache.commons.compress.archivers.tar.TarArchiveEntry;
+import org.apache.commons.compress.archivers.tar.TarArchiveInputStream;
+import org.apache.commons.io.IOUtils;
+import org.gradle.internal.hash.Hashing;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+/**
+ * Reads the archive sequentially, but writes and hashes the unpacked files in parallel,
+ * like {@code TarBuildCacheEntryPacker} does when unpacking with a parallel hashing pool.
+ */
+public class ParallelCommonsTarPacker implements Packer {
+    private static final ForkJoinPool POOL = new ForkJoinPool(Runtime.getRuntime().availableProcessors());
+
+    private final CommonsTarPacker delegate;
+
+    public ParallelCommonsTarPacker(int bufferSizeInKBytes) {
+        this.delegate = new CommonsTarPacker(bufferSizeInKBytes);
+    }
+
+    @Override
+    public void pack(List<DataSource> inputs, DataTarget output) throws IOException {
+        delegate.pack(inputs, output);
+    }
+
+    @Override
+    public void unpack(DataSource input, DataTargetFactory targetFactory) throws IOException {
+        List<ForkJoinTask<?>> pendingFiles = new ArrayList<>();
+        try (TarArchiveInputStream tarInput = new TarArchiveInputStream(input.openInput())) {
+            TarArchiveEntry entry;
+            while ((entry = tarInput.getNextTarEntry()) != null) {
+                byte[] content = new byte[(int) entry.getSize()];
+                IOUtils.readFully(tarInput, content);
+                String name = entry.getName();
+                pendingFiles.add(POOL.submit(() -> {
+                    try (OutputStream output = targetFactory.createDataTarget(name).openOutput()) {
+                        output.write(content);
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                    Hashing.hashBytes(content);
+                }));
+            }
+        }
+        pendingFiles.forEach(ForkJoinTask::join);
+    }
+}
@@ -16,9 +16,11 @@
 
 package org.gradle.caching.internal.controller;
 
+import org.gradle.caching.BuildCacheKey;
 import org.gradle.caching.BuildCacheService;
 
 import java.io.Closeable;
+import java.util.Collection;
 import java.util.Optional;
 
 /**
@@ -32,6 +34,16 @@ public interface BuildCacheController extends Closeable {
 
     boolean isEmitDebugLogging();
 
+    /**
+     * Whether entries requested via {@link #prefetch(Collection)} are loaded ahead of time.
+     */
+    boolean isPrefetchEnabled();
+
+    /**
+     * Starts loading the given entries in the background, so they can be loaded faster later.
+     */
+    void prefetch(Collection<BuildCacheKey> keys);
+
     <T> Optional<T> load(BuildCacheLoadCommand<T> command);
 
     void store(BuildCacheStoreCommand command);
@@ -0,0 +1,215 @@
+/*
+ * Copyright 2021 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.caching.internal.controller;
+
+import org.gradle.caching.BuildCacheKey;
+import org.gradle.caching.internal.controller.operations.PrefetchOperationDetails;
+import org.gradle.caching.internal.controller.operations.PrefetchOperationResult;
+import org.gradle.caching.internal.controller.service.BackgroundBuildOperation;
+import org.gradle.caching.internal.controller.service.BuildCacheServiceHandle;
+import org.gradle.caching.internal.controller.service.LoadTarget;
+import org.gradle.caching.internal.controller.service.LocalBuildCacheServiceHandle;
+import org.gradle.caching.local.internal.BuildCacheTempFileStore;
+import org.gradle.internal.UncheckedException;
+import org.gradle.internal.operations.BuildOperationDescriptor;
+import org.gradle.internal.operations.BuildOperationExecutor;
+import org.gradle.internal.operations.BuildOperationRef;
+import org.gradle.internal.operations.CurrentBuildOperationRef;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.annotation.Nullable;
+import java.io.Closeable;
+import java.util.Collection;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Loads entries from the remote build cache into the local build cache in the background.
+ *
+ * A load of an entry whose prefetch is running waits for the prefetch, and is then served from the local build cache.
+ * A load of an entry the prefetch did not find in the remote build cache skips the remote build cache.
+ * A load of an entry whose prefetch has not started yet takes the entry over, and the prefetch is skipped.
+ *
+ * The remote loads are children of a {@link org.gradle.caching.internal.operations.BuildCachePrefetchBuildOperationType} operation,
+ * which finishes when the prefetcher is closed and reports how many of the prefetched entries were used.
+ */
+class BuildCachePrefetcher implements Closeable {
+    private static final Logger LOGGER = LoggerFactory.getLogger(BuildCachePrefetcher.class);
+
+    private final BuildCacheServiceHandle remote;
+    private final LocalBuildCacheServiceHandle local;
+    private final BuildCacheTempFileStore tmp;
+    private final BuildOperationExecutor buildOperationExecutor;
+    private final int threads;
+    private final ExecutorService executor;
+
+    private final ConcurrentMap<String, Prefetch> prefetches = new ConcurrentHashMap<>();
+    private final AtomicLong requested = new AtomicLong();
+    private final AtomicLong prefetched = new AtomicLong();
+    private final AtomicLong missed = new AtomicLong();
+    private final AtomicLong hits = new AtomicLong();
+    private final Object lock = new Object();
+    private BackgroundBuildOperation prefetchOperation;
+
+    BuildCachePrefetcher(
+        BuildCacheServiceHandle remote,
+        LocalBuildCacheServiceHandle local,
+        BuildCacheTempFileStore tmp,
+        BuildOperationExecutor buildOperationExecutor,
+        int threads
+    ) {
+        this.remote = remote;
+        this.local = local;
+        this.tmp = tmp;
+        this.buildOperationExecutor = buildOperationExecutor;
+        this.threads = threads;
+        AtomicInteger threadCount = new AtomicInteger();
+        this.executor = Executors.newFixedThreadPool(threads, runnable -> {
+            Thread thread = new Thread(runnable, "Build cache prefetch thread " + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    public void prefetch(Collection<BuildCacheKey> keys) {
+        if (!remote.canLoad() || !local.canStore()) {
+            return;
+        }
+        BuildOperationRef parent = getPrefetchOperation();
+        for (BuildCacheKey key : keys) {
+            Prefetch prefetch = new Prefetch();
+            if (prefetches.putIfAbsent(key.getHashCode(), prefetch) == null) {
+                requested.incrementAndGet();
+                executor.execute(() -> download(key, prefetch, parent));
+            }
+        }
+    }
+
+    private void download(BuildCacheKey key, Prefetch prefetch, @Nullable BuildOperationRef parent) {
+        if (!prefetch.claimed.compareAndSet(false, true)) {
+            // Already loaded by the work itself, or the build has finished
+            return;
+        }
+        CurrentBuildOperationRef.instance().set(parent);
+        try {
+            AtomicBoolean found = new AtomicBoolean();
+            if (remote.canLoad()) {
+                tmp.withTempFile(key, file -> {
+                    LoadTarget loadTarget = new LoadTarget(file);
+                    remote.load(key, loadTarget);
+                    if (loadTarget.isLoaded()) {
+                        local.store(key, file);
+                        found.set(true);
+                    }
+                });
+            }
+            (found.get() ? prefetched : missed).incrementAndGet();
+            prefetch.result.complete(found.get());
+        } catch (Exception e) {
+            LOGGER.debug("Could not prefetch build cache entry {}", key.getHashCode(), e);
+            prefetch.result.completeExceptionally(e);
+        } finally {
+            CurrentBuildOperationRef.instance().clear();
+        }
+    }
+
+    /**
+     * Waits for the prefetch of the given entry, if it is running.
+     *
+     * @return whether the entry has been stored in the local build cache, or {@code null} if the entry should be loaded as if it had not been prefetched.
+     */
+    @Nullable
+    public Boolean awaitPrefetch(BuildCacheKey key) {
+        Prefetch prefetch = prefetches.remove(key.getHashCode());
+        if (prefetch == null) {
+            return null;
+        }
+        if (prefetch.claimed.compareAndSet(false, true)) {
+            // The download has not started yet, so loading the entry directly is faster than waiting for it
+            return null;
+        }
+        try {
+            return prefetch.result.get();
+        } catch (InterruptedException e) {
+            throw UncheckedException.throwAsUncheckedException(e);
+        } catch (ExecutionException e) {
+            return null;
+        }
+    }
+
+    public void recordHit() {
+        hits.incrementAndGet();
+    }
+
+    @Nullable
+    private BuildOperationRef getPrefetchOperation() {
+        synchronized (lock) {
+            if (prefetchOperation == null) {
+                prefetchOperation = new BackgroundBuildOperation(
+                    buildOperationExecutor,
+                    BuildOperationDescriptor.displayName("Prefetch entries from remote build cache")
+                        .details(new PrefetchOperationDetails(threads)),
+                    "Build cache prefetches"
+                );
+                prefetchOperation.start();
+            }
+            return prefetchOperation.getRef();
+        }
+    }
+
+    @Override
+    public void close() {
+        // Skip the downloads that have not started, nothing is going to load them anymore
+        prefetches.values().forEach(prefetch -> prefetch.claimed.set(true));
+        executor.shutdown();
+        try {
+            // Wait for running downloads, as they use the build cache services
+            executor.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            throw UncheckedException.throwAsUncheckedException(e);
+        }
+        synchronized (lock) {
+            if (prefetchOperation != null) {
+                long wasted = prefetches.values().stream()
+                    .filter(Prefetch::isPrefetched)
+                    .count();
+                prefetchOperation.finish(new PrefetchOperationResult(requested.get(), prefetched.get(), missed.get(), hits.get(), wasted));
+            }
+        }
+    }
+
+    private static class Prefetch {
+        /**
+         * Set by whichever comes first: the download, the load of the entry, or closing the prefetcher.
+         */
+        final AtomicBoolean claimed = new AtomicBoolean();
+        final CompletableFuture<Boolean> result = new CompletableFuture<>();
+
+        boolean isPrefetched() {
+            return result.isDone() && !result.isCompletedExceptionally() && result.join();
+        }
+    }
+}
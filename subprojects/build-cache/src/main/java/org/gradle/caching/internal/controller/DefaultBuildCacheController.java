@@ -27,6 +27,7 @@
 import org.gradle.caching.internal.controller.operations.PackOperationResult;
 import org.gradle.caching.internal.controller.operations.UnpackOperationDetails;
 import org.gradle.caching.internal.controller.operations.UnpackOperationResult;
+import org.gradle.caching.internal.controller.service.AsynchronousStoreBuildCacheServiceHandle;
 import org.gradle.caching.internal.controller.service.BuildCacheServiceHandle;
 import org.gradle.caching.internal.controller.service.BuildCacheServiceRole;
 import org.gradle.caching.internal.controller.service.BuildCacheServicesConfiguration;
@@ -51,10 +52,15 @@
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.time.Duration;
+import java.util.Collection;
 import java.util.Optional;
 
 public class DefaultBuildCacheController implements BuildCacheController {
 
+    private static final long MAX_BUFFERED_REMOTE_STORE_BYTES = 64 * 1024 * 1024;
+    private static final Duration REMOTE_STORE_CLOSE_TIMEOUT = Duration.ofMinutes(1);
+
     @VisibleForTesting
     final BuildCacheServiceHandle remote;
 
@@ -64,6 +70,8 @@ public class DefaultBuildCacheController implements BuildCacheController {
     private final BuildCacheTempFileStore tmp;
     private final BuildOperationExecutor buildOperationExecutor;
     private final boolean emitDebugLogging;
+    @Nullable
+    private final BuildCachePrefetcher prefetcher;
 
     private boolean closed;
 
@@ -74,12 +82,40 @@ public DefaultBuildCacheController(
         boolean logStackTraces,
         boolean emitDebugLogging,
         boolean disableRemoteOnError
+    ) {
+        this(config, buildOperationExecutor, temporaryFileProvider, logStackTraces, emitDebugLogging, disableRemoteOnError, 0);
+    }
+
+    public DefaultBuildCacheController(
+        BuildCacheServicesConfiguration config,
+        BuildOperationExecutor buildOperationExecutor,
+        TemporaryFileProvider temporaryFileProvider,
+        boolean logStackTraces,
+        boolean emitDebugLogging,
+        boolean disableRemoteOnError,
+        int remoteStoreThreads
+    ) {
+        this(config, buildOperationExecutor, temporaryFileProvider, logStackTraces, emitDebugLogging, disableRemoteOnError, remoteStoreThreads, 0);
+    }
+
+    public DefaultBuildCacheController(
+        BuildCacheServicesConfiguration config,
+        BuildOperationExecutor buildOperationExecutor,
+        TemporaryFileProvider temporaryFileProvider,
+        boolean logStackTraces,
+        boolean emitDebugLogging,
+        boolean disableRemoteOnError,
+        int remoteStoreThreads,
+        int prefetchThreads
     ) {
         this.buildOperationExecutor = buildOperationExecutor;
         this.emitDebugLogging = emitDebugLogging;
         this.local = toLocalHandle(config.getLocal(), config.isLocalPush());
-        this.remote = toRemoteHandle(config.getRemote(), config.isRemotePush(), buildOperationExecutor, logStackTraces, disableRemoteOnError);
+        this.remote = toRemoteHandle(config.getRemote(), config.isRemotePush(), buildOperationExecutor, logStackTraces, disableRemoteOnError, remoteStoreThreads);
         this.tmp = toTempFileStore(config.getLocal(), temporaryFileProvider);
+        this.prefetcher = prefetchThreads > 0 && config.getRemote() != null && config.getLocal() != null
+            ? new BuildCachePrefetcher(remote, local, tmp, buildOperationExecutor, prefetchThreads)
+            : null;
     }
 
     @Override
@@ -92,9 +128,24 @@ public boolean isEmitDebugLogging() {
         return emitDebugLogging;
     }
 
+    @Override
+    public boolean isPrefetchEnabled() {
+        return prefetcher != null;
+    }
+
+    @Override
+    public void prefetch(Collection<BuildCacheKey> keys) {
+        if (prefetcher != null) {
+            prefetcher.prefetch(keys);
+        }
+    }
+
     @Override
     public <T> Optional<T> load(BuildCacheLoadCommand<T> command) {
         final Unpack<T> unpack = new Unpack<>(command);
+        Boolean prefetched = prefetcher == null
+            ? null
+            : prefetcher.awaitPrefetch(command.getKey());
 
         if (local.canLoad()) {
             try {
@@ -104,11 +155,15 @@ public <T> Optional<T> load(BuildCacheLoadCommand<T> command) {
             }
 
             if (unpack.result != null) {
+                if (Boolean.TRUE.equals(prefetched)) {
+                    prefetcher.recordHit();
+                }
                 return Optional.of(unpack.result.getMetadata());
             }
         }
 
-        if (remote.canLoad()) {
+        // No need to ask the remote cache again when the prefetch did not find the entry
+        if (remote.canLoad() && !Boolean.FALSE.equals(prefetched)) {
             tmp.withTempFile(command.getKey(), file -> {
                 LoadTarget loadTarget = new LoadTarget(file);
                 remote.load(command.getKey(), loadTarget);
@@ -225,13 +280,20 @@ public void close() throws IOException {
             Closer closer = Closer.create();
             closer.register(local);
             closer.register(remote);
+            if (prefetcher != null) {
+                // Registered last, so it is closed before the services it uses
+                closer.register(prefetcher);
+            }
             closer.close();
         }
     }
 
-    private static BuildCacheServiceHandle toRemoteHandle(@Nullable BuildCacheService service, boolean push, BuildOperationExecutor buildOperationExecutor, boolean logStackTraces, boolean disableOnError) {
-        return service == null
-            ? NullBuildCacheServiceHandle.INSTANCE
+    private static BuildCacheServiceHandle toRemoteHandle(@Nullable BuildCacheService service, boolean push, BuildOperationExecutor buildOperationExecutor, boolean logStackTraces, boolean disableOnError, int storeThreads) {
+        if (service == null) {
+            return NullBuildCacheServiceHandle.INSTANCE;
+        }
+        return push && storeThreads > 0
+            ? new AsynchronousStoreBuildCacheServiceHandle(service, push, BuildCacheServiceRole.REMOTE, buildOperationExecutor, logStackTraces, disableOnError, storeThreads, MAX_BUFFERED_REMOTE_STORE_BYTES, REMOTE_STORE_CLOSE_TIMEOUT)
             : new OpFiringBuildCacheServiceHandle(service, push, BuildCacheServiceRole.REMOTE, buildOperationExecutor, logStackTraces, disableOnError);
     }
 
@@ -16,6 +16,9 @@
 
 package org.gradle.caching.internal.controller;
 
+import org.gradle.caching.BuildCacheKey;
+
+import java.util.Collection;
 import java.util.Optional;
 
 public class NoOpBuildCacheController implements BuildCacheController {
@@ -35,6 +38,16 @@ public boolean isEmitDebugLogging() {
         return false;
     }
 
+    @Override
+    public boolean isPrefetchEnabled() {
+        return false;
+    }
+
+    @Override
+    public void prefetch(Collection<BuildCacheKey> keys) {
+
+    }
+
     @Override
     public <T> Optional<T> load(BuildCacheLoadCommand<T> command) {
         return Optional.empty();
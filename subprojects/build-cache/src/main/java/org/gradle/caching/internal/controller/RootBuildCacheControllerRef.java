@@ -16,6 +16,9 @@
 
 package org.gradle.caching.internal.controller;
 
+import org.gradle.caching.BuildCacheKey;
+
+import java.util.Collection;
 import java.util.Optional;
 
 public class RootBuildCacheControllerRef {
@@ -58,6 +61,16 @@ public boolean isEmitDebugLogging() {
             return delegate.isEmitDebugLogging();
         }
 
+        @Override
+        public boolean isPrefetchEnabled() {
+            return delegate.isPrefetchEnabled();
+        }
+
+        @Override
+        public void prefetch(Collection<BuildCacheKey> keys) {
+            delegate.prefetch(keys);
+        }
+
         @Override
         public <T> Optional<T> load(BuildCacheLoadCommand<T> command) {
             return delegate.load(command);
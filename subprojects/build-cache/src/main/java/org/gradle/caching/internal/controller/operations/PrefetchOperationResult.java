@@ -0,0 +1,62 @@
+/*
+ * Copyright 2021 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.caching.internal.controller.operations;
+
+import org.gradle.caching.internal.operations.BuildCachePrefetchBuildOperationType;
+
+public class PrefetchOperationResult implements BuildCachePrefetchBuildOperationType.Result {
+
+    private final long requestedEntryCount;
+    private final long prefetchedEntryCount;
+    private final long missedEntryCount;
+    private final long hitEntryCount;
+    private final long wastedEntryCount;
+
+    public PrefetchOperationResult(long requestedEntryCount, long prefetchedEntryCount, long missedEntryCount, long hitEntryCount, long wastedEntryCount) {
+        this.requestedEntryCount = requestedEntryCount;
+        this.prefetchedEntryCount = prefetchedEntryCount;
+        this.missedEntryCount = missedEntryCount;
+        this.hitEntryCount = hitEntryCount;
+        this.wastedEntryCount = wastedEntryCount;
+    }
+
+    @Override
+    public long getRequestedEntryCount() {
+        return requestedEntryCount;
+    }
+
+    @Override
+    public long getPrefetchedEntryCount() {
+        return prefetchedEntryCount;
+    }
+
+    @Override
+    public long getMissedEntryCount() {
+        return missedEntryCount;
+    }
+
+    @Override
+    public long getHitEntryCount() {
+        return hitEntryCount;
+    }
+
+    @Override
+    public long getWastedEntryCount() {
+        return wastedEntryCount;
+    }
+
+}
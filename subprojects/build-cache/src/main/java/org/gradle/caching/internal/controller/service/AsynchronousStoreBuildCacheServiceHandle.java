@@ -0,0 +1,229 @@
+/*
+ * Copyright 2021 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.caching.internal.controller.service;
+
+import org.gradle.caching.BuildCacheEntryWriter;
+import org.gradle.caching.BuildCacheKey;
+import org.gradle.caching.BuildCacheService;
+import org.gradle.caching.internal.controller.operations.StoreOperationDetails;
+import org.gradle.caching.internal.controller.operations.StoreOperationResult;
+import org.gradle.internal.UncheckedException;
+import org.gradle.internal.operations.BuildOperationContext;
+import org.gradle.internal.operations.BuildOperationDescriptor;
+import org.gradle.internal.operations.BuildOperationExecutor;
+import org.gradle.internal.operations.BuildOperationRef;
+import org.gradle.internal.operations.RunnableBuildOperation;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.annotation.Nullable;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.time.Duration;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Stores entries in the background, so the work producing an entry does not wait for the upload.
+ *
+ * Entries are buffered in memory until they have been stored.
+ * When the buffered entries would exceed the limit, entries are stored synchronously instead.
+ * Entries still waiting to be stored are dropped once storing to the cache has been disabled.
+ *
+ * The store operation of an entry runs on the upload thread, and finishes when the upload completes.
+ * The work storing the entry usually finishes before the upload does, and an operation cannot outlive its parent.
+ * So the store operations are children of an operation that spans all background stores, which finishes when the handle is closed.
+ * A failure to store an entry is reported for that entry, the same way as for a synchronous store.
+ *
+ * On close, the handle waits for the remaining stores up to the given timeout, and then cancels them.
+ */
+public class AsynchronousStoreBuildCacheServiceHandle extends OpFiringBuildCacheServiceHandle {
+    private static final Logger LOGGER = LoggerFactory.getLogger(AsynchronousStoreBuildCacheServiceHandle.class);
+
+    private final BuildOperationExecutor buildOperationExecutor;
+    private final long maxBufferedBytes;
+    private final Duration closeTimeout;
+    private final ExecutorService executor;
+    private final AtomicLong bufferedBytes = new AtomicLong();
+    private final AtomicInteger pendingStores = new AtomicInteger();
+    private final Object lock = new Object();
+    private BackgroundBuildOperation backgroundStoresOperation;
+
+    public AsynchronousStoreBuildCacheServiceHandle(
+        BuildCacheService service,
+        boolean push,
+        BuildCacheServiceRole role,
+        BuildOperationExecutor buildOperationExecutor,
+        boolean logStackTraces,
+        boolean disableOnError,
+        int threads,
+        long maxBufferedBytes,
+        Duration closeTimeout
+    ) {
+        super(service, push, role, buildOperationExecutor, logStackTraces, disableOnError);
+        this.buildOperationExecutor = buildOperationExecutor;
+        this.maxBufferedBytes = maxBufferedBytes;
+        this.closeTimeout = closeTimeout;
+        AtomicInteger threadCount = new AtomicInteger();
+        this.executor = Executors.newFixedThreadPool(threads, runnable -> {
+            Thread thread = new Thread(runnable, "Build cache upload thread " + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    @Override
+    protected void storeInner(String description, BuildCacheKey key, StoreTarget storeTarget) {
+        long size = storeTarget.getSize();
+        if (!reserve(size)) {
+            super.storeInner(description, key, storeTarget);
+            return;
+        }
+
+        byte[] entry;
+        try {
+            ByteArrayOutputStream buffer = new ByteArrayOutputStream((int) size);
+            storeTarget.writeTo(buffer);
+            entry = buffer.toByteArray();
+        } catch (IOException e) {
+            bufferedBytes.addAndGet(-size);
+            throw new UncheckedIOException(e);
+        }
+
+        BuildOperationRef parent = getBackgroundStoresOperation();
+        pendingStores.incrementAndGet();
+        executor.execute(() -> {
+            try {
+                if (canStore()) {
+                    storeInBackground(parent, description, key, entry);
+                } else {
+                    LOGGER.debug("Not storing entry {} in {} build cache, as storing has been disabled", key.getDisplayName(), role.getDisplayName());
+                }
+            } catch (Exception e) {
+                failure("store", "in", key, e);
+            } finally {
+                bufferedBytes.addAndGet(-size);
+                pendingStores.decrementAndGet();
+            }
+        });
+    }
+
+    private void storeInBackground(@Nullable BuildOperationRef parent, String description, BuildCacheKey key, byte[] entry) {
+        buildOperationExecutor.run(new RunnableBuildOperation() {
+            @Override
+            public void run(BuildOperationContext context) {
+                BufferedEntryWriter writer = new BufferedEntryWriter(entry);
+                service.store(key, writer);
+                context.setResult(writer.isStored() ? StoreOperationResult.STORED : StoreOperationResult.NOT_STORED);
+            }
+
+            @Override
+            public BuildOperationDescriptor.Builder description() {
+                return BuildOperationDescriptor.displayName(description)
+                    .details(new StoreOperationDetails(key, entry.length))
+                    .progressDisplayName("Uploading to remote build cache")
+                    .parent(parent);
+            }
+        });
+    }
+
+    @Nullable
+    private BuildOperationRef getBackgroundStoresOperation() {
+        synchronized (lock) {
+            if (backgroundStoresOperation == null) {
+                backgroundStoresOperation = new BackgroundBuildOperation(
+                    buildOperationExecutor,
+                    BuildOperationDescriptor.displayName("Store entries in " + role.getDisplayName() + " build cache in the background"),
+                    "Build cache background stores"
+                );
+                backgroundStoresOperation.start();
+            }
+            return backgroundStoresOperation.getRef();
+        }
+    }
+
+    private boolean reserve(long size) {
+        if (size > Integer.MAX_VALUE) {
+            return false;
+        }
+        long buffered = bufferedBytes.addAndGet(size);
+        if (buffered > maxBufferedBytes) {
+            bufferedBytes.addAndGet(-size);
+            return false;
+        }
+        return true;
+    }
+
+    @Override
+    public void close() {
+        executor.shutdown();
+        try {
+            // Wait for running uploads, so their failures are reported before the service is closed
+            if (!executor.awaitTermination(closeTimeout.toMillis(), TimeUnit.MILLISECONDS)) {
+                int cancelled = pendingStores.get();
+                executor.shutdownNow();
+                LOGGER.warn("Cancelled storing {} entries in the {} build cache, as they were not stored within {} seconds after the build finished.", cancelled, role.getDisplayName(), closeTimeout.getSeconds());
+            }
+        } catch (InterruptedException e) {
+            executor.shutdownNow();
+            throw UncheckedException.throwAsUncheckedException(e);
+        } finally {
+            try {
+                finishBackgroundStoresOperation();
+            } finally {
+                super.close();
+            }
+        }
+    }
+
+    private void finishBackgroundStoresOperation() {
+        synchronized (lock) {
+            if (backgroundStoresOperation != null) {
+                backgroundStoresOperation.finish(null);
+            }
+        }
+    }
+
+    private static class BufferedEntryWriter implements BuildCacheEntryWriter {
+        private final byte[] entry;
+        private boolean stored;
+
+        public BufferedEntryWriter(byte[] entry) {
+            this.entry = entry;
+        }
+
+        @Override
+        public void writeTo(OutputStream output) throws IOException {
+            stored = true;
+            output.write(entry);
+        }
+
+        public boolean isStored() {
+            return stored;
+        }
+
+        @Override
+        public long getSize() {
+            return entry.length;
+        }
+    }
+}
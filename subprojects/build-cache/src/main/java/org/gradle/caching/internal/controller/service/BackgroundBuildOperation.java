@@ -0,0 +1,95 @@
+/*
+ * Copyright 2021 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.caching.internal.controller.service;
+
+import org.gradle.internal.UncheckedException;
+import org.gradle.internal.operations.BuildOperationContext;
+import org.gradle.internal.operations.BuildOperationDescriptor;
+import org.gradle.internal.operations.BuildOperationExecutor;
+import org.gradle.internal.operations.BuildOperationRef;
+import org.gradle.internal.operations.RunnableBuildOperation;
+
+import javax.annotation.Nullable;
+import java.util.concurrent.CountDownLatch;
+
+/**
+ * An operation spanning work done on background threads, which may outlive the operation that started the work.
+ *
+ * Runs on its own thread without a parent, since it lasts until it is finished explicitly.
+ * The operations of the background work are started as its children.
+ */
+public class BackgroundBuildOperation implements RunnableBuildOperation {
+    private final BuildOperationExecutor buildOperationExecutor;
+    private final BuildOperationDescriptor.Builder descriptor;
+    private final CountDownLatch started = new CountDownLatch(1);
+    private final CountDownLatch finished = new CountDownLatch(1);
+    private final Thread thread;
+    private volatile BuildOperationRef ref;
+    private volatile Object result;
+
+    public BackgroundBuildOperation(BuildOperationExecutor buildOperationExecutor, BuildOperationDescriptor.Builder descriptor, String threadName) {
+        this.buildOperationExecutor = buildOperationExecutor;
+        this.descriptor = descriptor;
+        this.thread = new Thread(() -> {
+            try {
+                buildOperationExecutor.run(this);
+            } finally {
+                started.countDown();
+            }
+        }, threadName);
+    }
+
+    public void start() {
+        thread.setDaemon(true);
+        thread.start();
+        try {
+            started.await();
+        } catch (InterruptedException e) {
+            throw UncheckedException.throwAsUncheckedException(e);
+        }
+    }
+
+    @Nullable
+    public BuildOperationRef getRef() {
+        return ref;
+    }
+
+    public void finish(@Nullable Object result) {
+        this.result = result;
+        finished.countDown();
+        try {
+            thread.join();
+        } catch (InterruptedException e) {
+            throw UncheckedException.throwAsUncheckedException(e);
+        }
+    }
+
+    @Override
+    public void run(BuildOperationContext context) throws InterruptedException {
+        ref = buildOperationExecutor.getCurrentOperation();
+        started.countDown();
+        finished.await();
+        if (result != null) {
+            context.setResult(result);
+        }
+    }
+
+    @Override
+    public BuildOperationDescriptor.Builder description() {
+        return descriptor;
+    }
+}
@@ -35,7 +35,7 @@ public class BaseBuildCacheServiceHandle implements BuildCacheServiceHandle {
     private final boolean logStackTraces;
     private final boolean disableOnError;
 
-    private boolean disabled;
+    private volatile boolean disabled;
 
     public BaseBuildCacheServiceHandle(
         BuildCacheService service,
@@ -101,7 +101,7 @@ protected void storeInner(String description, BuildCacheKey key, StoreTarget sto
         service.store(key, storeTarget);
     }
 
-    private void failure(String verb, String preposition, BuildCacheKey key, Throwable e) {
+    protected void failure(String verb, String preposition, BuildCacheKey key, Throwable e) {
         if (disableOnError) {
             disabled = true;
         }
@@ -0,0 +1,69 @@
+/*
+ * Copyright 2021 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.caching.internal.operations;
+
+import org.gradle.internal.operations.BuildOperationType;
+
+/**
+ * Spans the prefetching of entries from the remote build cache into the local build cache during a build.
+ *
+ * Started when the first entry is requested to be prefetched, and finished when the build cache is closed.
+ * The remote loads of the prefetched entries are its children.
+ */
+public final class BuildCachePrefetchBuildOperationType implements BuildOperationType<BuildCachePrefetchBuildOperationType.Details, BuildCachePrefetchBuildOperationType.Result> {
+
+    public interface Details {
+
+        /**
+         * The number of threads loading entries from the remote cache.
+         */
+        int getThreadCount();
+
+    }
+
+    public interface Result {
+
+        /**
+         * The number of entries requested to be prefetched.
+         */
+        long getRequestedEntryCount();
+
+        /**
+         * The number of entries found in the remote cache and stored in the local cache.
+         */
+        long getPrefetchedEntryCount();
+
+        /**
+         * The number of entries not found in the remote cache.
+         */
+        long getMissedEntryCount();
+
+        /**
+         * The number of loads served from the local cache by a prefetched entry.
+         */
+        long getHitEntryCount();
+
+        /**
+         * The number of prefetched entries that were never loaded.
+         */
+        long getWastedEntryCount();
+
+    }
+
+    private BuildCachePrefetchBuildOperationType() {
+    }
+}
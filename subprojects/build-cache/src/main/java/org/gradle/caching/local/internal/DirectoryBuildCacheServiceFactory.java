@@ -23,6 +23,7 @@
 import org.gradle.cache.PersistentCache;
 import org.gradle.cache.internal.CacheScopeMapping;
 import org.gradle.cache.internal.CleanupActionFactory;
+import org.gradle.cache.internal.FilesFinder;
 import org.gradle.cache.internal.LeastRecentlyUsedCacheCleanup;
 import org.gradle.cache.internal.SingleDepthFilesFinder;
 import org.gradle.cache.internal.VersionStrategy;
@@ -44,6 +45,11 @@
 public class DirectoryBuildCacheServiceFactory implements BuildCacheServiceFactory<DirectoryBuildCache> {
     public static final String FAILED_READ_SUFFIX = ".failed";
 
+    /**
+     * Enables storing the entries of the local build cache in shard directories, without locking loads and stores.
+     */
+    public static final String SHARDED_LAYOUT_PROPERTY = "org.gradle.unsafe.build-cache.local.sharded";
+
     private static final String BUILD_CACHE_VERSION = "1";
     private static final String BUILD_CACHE_KEY = "build-cache-" + BUILD_CACHE_VERSION;
     private static final String DIRECTORY_BUILD_CACHE_TYPE = "directory";
@@ -80,22 +86,32 @@ public BuildCacheService createBuildCacheService(DirectoryBuildCache configurati
         }
         checkDirectory(target);
 
+        boolean sharded = Boolean.getBoolean(SHARDED_LAYOUT_PROPERTY);
+        int fileTreeDepth = sharded ? ShardedDirectoryBuildCacheService.ENTRY_DEPTH : FILE_TREE_DEPTH_TO_TRACK_AND_CLEANUP;
+
         int removeUnusedEntriesAfterDays = configuration.getRemoveUnusedEntriesAfterDays();
         describer.type(DIRECTORY_BUILD_CACHE_TYPE).
             config("location", target.getAbsolutePath()).
             config("removeUnusedEntriesAfter", String.valueOf(removeUnusedEntriesAfterDays) + " days");
+        if (sharded) {
+            describer.config("layout", "sharded");
+        }
 
-        PathKeyFileStore fileStore = fileStoreFactory.createFileStore(target);
+        FilesFinder entriesFinder = sharded ? ShardedDirectoryBuildCacheService.entriesFinder() : new SingleDepthFilesFinder(FILE_TREE_DEPTH_TO_TRACK_AND_CLEANUP);
         PersistentCache persistentCache = cacheRepository
             .cache(target)
-            .withCleanup(cleanupActionFactory.create(new LeastRecentlyUsedCacheCleanup(new SingleDepthFilesFinder(FILE_TREE_DEPTH_TO_TRACK_AND_CLEANUP), fileAccessTimeJournal, removeUnusedEntriesAfterDays)))
+            .withCleanup(cleanupActionFactory.create(new LeastRecentlyUsedCacheCleanup(entriesFinder, fileAccessTimeJournal, removeUnusedEntriesAfterDays)))
             .withDisplayName("Build cache")
             .withLockOptions(mode(OnDemand))
             .withCrossVersionCache(CacheBuilder.LockTarget.DefaultTarget)
             .open();
-        BuildCacheTempFileStore tempFileStore = new DefaultBuildCacheTempFileStore(temporaryFileProvider);
-        FileAccessTracker fileAccessTracker = new SingleDepthFileAccessTracker(fileAccessTimeJournal, target, FILE_TREE_DEPTH_TO_TRACK_AND_CLEANUP);
+        FileAccessTracker fileAccessTracker = new SingleDepthFileAccessTracker(fileAccessTimeJournal, target, fileTreeDepth);
+        if (sharded) {
+            return new ShardedDirectoryBuildCacheService(target, persistentCache, fileAccessTracker, FAILED_READ_SUFFIX);
+        }
 
+        PathKeyFileStore fileStore = fileStoreFactory.createFileStore(target);
+        BuildCacheTempFileStore tempFileStore = new DefaultBuildCacheTempFileStore(temporaryFileProvider);
         return new DirectoryBuildCacheService(fileStore, persistentCache, tempFileStore, fileAccessTracker, FAILED_READ_SUFFIX);
     }
 
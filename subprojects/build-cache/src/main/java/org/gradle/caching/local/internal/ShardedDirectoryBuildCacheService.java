@@ -0,0 +1,229 @@
+/*
+ * Copyright 2021 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.caching.local.internal;
+
+import com.google.common.collect.Iterables;
+import org.gradle.api.Action;
+import org.gradle.api.UncheckedIOException;
+import org.gradle.cache.PersistentCache;
+import org.gradle.cache.internal.FilesFinder;
+import org.gradle.cache.internal.SingleDepthFilesFinder;
+import org.gradle.caching.BuildCacheEntryReader;
+import org.gradle.caching.BuildCacheEntryWriter;
+import org.gradle.caching.BuildCacheException;
+import org.gradle.caching.BuildCacheKey;
+import org.gradle.caching.BuildCacheService;
+import org.gradle.internal.UncheckedException;
+import org.gradle.internal.file.FileAccessTracker;
+import org.gradle.util.GFileUtils;
+
+import java.io.File;
+import java.io.FileFilter;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.AccessDeniedException;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+
+/**
+ * A local build cache that stores each entry in a shard directory named after the first characters of the cache key.
+ *
+ * Unlike {@link DirectoryBuildCacheService}, loads and stores do not take any lock, neither within the process nor across processes.
+ * Entries are written to a temporary file inside their shard directory first, and then atomically renamed to their final location,
+ * so readers only ever see complete entries. Since entries are content addressed, a concurrent store of the same key can be ignored.
+ * Cleanup still happens under the exclusive lock of the {@link PersistentCache}, and entries are marked as accessed before they are read,
+ * so cleanup does not remove entries that are in use.
+ *
+ * Cleanup also removes the entries left directly in the base directory by {@link DirectoryBuildCacheService}
+ * once they have not been used for long enough, see {@link #entriesFinder()}.
+ */
+public class ShardedDirectoryBuildCacheService implements LocalBuildCacheService, BuildCacheService {
+    /**
+     * The depth at which the entries are stored below the base directory.
+     */
+    public static final int ENTRY_DEPTH = 2;
+
+    private static final int SHARD_PREFIX_LENGTH = 2;
+    private static final int MAX_SHARD_CREATION_ATTEMPTS = 3;
+
+    private final File baseDir;
+    private final PersistentCache persistentCache;
+    private final FileAccessTracker fileAccessTracker;
+    private final String failedFileSuffix;
+
+    /**
+     * Finds the entries in the shard directories, and the entries of the flat layout which are still in the base directory.
+     */
+    public static FilesFinder entriesFinder() {
+        FilesFinder shardedEntriesFinder = new SingleDepthFilesFinder(ENTRY_DEPTH);
+        FilesFinder topLevelFilesFinder = new SingleDepthFilesFinder(1);
+        return (File baseDir, FileFilter filter) -> Iterables.concat(
+            Iterables.filter(topLevelFilesFinder.find(baseDir, filter), File::isFile),
+            shardedEntriesFinder.find(baseDir, filter)
+        );
+    }
+
+    public ShardedDirectoryBuildCacheService(File baseDir, PersistentCache persistentCache, FileAccessTracker fileAccessTracker, String failedFileSuffix) {
+        this.baseDir = baseDir;
+        this.persistentCache = persistentCache;
+        this.fileAccessTracker = fileAccessTracker;
+        this.failedFileSuffix = failedFileSuffix;
+    }
+
+    @Override
+    public boolean load(BuildCacheKey key, BuildCacheEntryReader reader) throws BuildCacheException {
+        File file = getEntryFile(key);
+        if (!file.isFile()) {
+            return false;
+        }
+        fileAccessTracker.markAccessed(file);
+        InputStream input;
+        try {
+            input = new FileInputStream(file);
+        } catch (FileNotFoundException e) {
+            // Removed since we checked
+            return false;
+        }
+        readEntry(file, () -> {
+            try {
+                try {
+                    reader.readFrom(input);
+                } finally {
+                    input.close();
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        });
+        return true;
+    }
+
+    @Override
+    public void loadLocally(BuildCacheKey key, Action<? super File> reader) {
+        File file = getEntryFile(key);
+        if (!file.isFile()) {
+            return;
+        }
+        fileAccessTracker.markAccessed(file);
+        readEntry(file, () -> reader.execute(file));
+    }
+
+    private void readEntry(File file, Runnable action) {
+        try {
+            action.run();
+        } catch (Exception e) {
+            // Try to move the file out of the way in case its permanently corrupt
+            // Don't delete, so that it can be potentially used for debugging
+            File failedFile = new File(file.getAbsolutePath() + failedFileSuffix);
+            GFileUtils.deleteQuietly(failedFile);
+            //noinspection ResultOfMethodCallIgnored
+            file.renameTo(failedFile);
+
+            throw UncheckedException.throwAsUncheckedException(e);
+        }
+    }
+
+    @Override
+    public void store(BuildCacheKey key, BuildCacheEntryWriter writer) throws BuildCacheException {
+        withTempFile(key, file -> {
+            try {
+                try (OutputStream output = new FileOutputStream(file)) {
+                    writer.writeTo(output);
+                }
+            } catch (IOException e) {
+                throw UncheckedException.throwAsUncheckedException(e);
+            }
+            storeLocally(key, file);
+        });
+    }
+
+    @Override
+    public void storeLocally(BuildCacheKey key, File file) {
+        File entryFile = getEntryFile(key);
+        File shardDir = entryFile.getParentFile();
+        try {
+            File tempFile = file;
+            if (!shardDir.equals(file.getParentFile())) {
+                // Renames are only atomic within the same directory, so bring the file next to its final location first
+                tempFile = createTempFile(key, shardDir);
+                Files.copy(file.toPath(), tempFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            }
+            try {
+                Files.move(tempFile.toPath(), entryFile.toPath(), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            } catch (FileAlreadyExistsException | AccessDeniedException e) {
+                // On some file systems an entry that is being read cannot be replaced.
+                // Another process has stored the same entry in the meantime, so there is nothing left to do.
+                if (!entryFile.isFile()) {
+                    throw e;
+                }
+            } finally {
+                if (tempFile != file) {
+                    GFileUtils.deleteQuietly(tempFile);
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(String.format("Could not store entry %s in %s", key.getHashCode(), baseDir), e);
+        }
+        fileAccessTracker.markAccessed(entryFile);
+    }
+
+    @Override
+    public void withTempFile(BuildCacheKey key, Action<? super File> action) {
+        File tempFile;
+        try {
+            tempFile = createTempFile(key, getEntryFile(key).getParentFile());
+        } catch (IOException e) {
+            throw new UncheckedIOException(String.format("Could not create temporary file for entry %s in %s", key.getHashCode(), baseDir), e);
+        }
+        try {
+            action.execute(tempFile);
+        } finally {
+            GFileUtils.deleteQuietly(tempFile);
+        }
+    }
+
+    private static File createTempFile(BuildCacheKey key, File shardDir) throws IOException {
+        // Cleanup in another process may remove the shard directory once it becomes empty, so retry creating it
+        for (int attempt = 1; ; attempt++) {
+            //noinspection ResultOfMethodCallIgnored
+            shardDir.mkdirs();
+            try {
+                return File.createTempFile(key.getHashCode() + "-", PARTIAL_FILE_SUFFIX, shardDir);
+            } catch (IOException e) {
+                if (attempt == MAX_SHARD_CREATION_ATTEMPTS) {
+                    throw e;
+                }
+            }
+        }
+    }
+
+    private File getEntryFile(BuildCacheKey key) {
+        String hashCode = key.getHashCode();
+        String shard = hashCode.substring(0, Math.min(SHARD_PREFIX_LENGTH, hashCode.length()));
+        return new File(new File(baseDir, shard), hashCode);
+    }
+
+    @Override
+    public void close() {
+        persistentCache.close();
+    }
+}
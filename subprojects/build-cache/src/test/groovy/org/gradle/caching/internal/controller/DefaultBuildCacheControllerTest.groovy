@@ -23,12 +23,15 @@ import org.gradle.caching.BuildCacheEntryWriter
 import org.gradle.caching.BuildCacheKey
 import org.gradle.caching.BuildCacheService
 import org.gradle.caching.internal.controller.service.BuildCacheServicesConfiguration
+import org.gradle.caching.internal.operations.BuildCachePrefetchBuildOperationType
 import org.gradle.caching.local.internal.LocalBuildCacheService
 import org.gradle.internal.operations.TestBuildOperationExecutor
 import org.gradle.test.fixtures.file.TestNameTestDirectoryProvider
 import spock.lang.Specification
 import org.junit.Rule
 
+import java.util.concurrent.CountDownLatch
+
 class DefaultBuildCacheControllerTest extends Specification {
 
     def key = Mock(BuildCacheKey) {
@@ -84,7 +87,7 @@ class DefaultBuildCacheControllerTest extends Specification {
 
     interface Local extends BuildCacheService, LocalBuildCacheService {}
 
-    BuildCacheController getController(boolean disableRemoteOnError = true) {
+    BuildCacheController getController(boolean disableRemoteOnError = true, int prefetchThreads = 0) {
         new DefaultBuildCacheController(
             new BuildCacheServicesConfiguration(
                 local,
@@ -96,7 +99,9 @@ class DefaultBuildCacheControllerTest extends Specification {
             TestFiles.tmpDirTemporaryFileProvider(tmpDir.root),
             false,
             false,
-            disableRemoteOnError
+            disableRemoteOnError,
+            0,
+            prefetchThreads
         )
     }
 
@@ -273,6 +278,90 @@ class DefaultBuildCacheControllerTest extends Specification {
         1 * remote.store(key, _)
     }
 
+    def "load is served from local after remote entry has been prefetched"() {
+        def localEntries = [:]
+        def prefetched = new CountDownLatch(1)
+
+        when:
+        def controller = getController(true, 2)
+        controller.prefetch([key])
+        prefetched.await()
+        def result = controller.load(loadCommand)
+        controller.close()
+
+        then:
+        1 * remote.load(key, _) >> { BuildCacheKey key, BuildCacheEntryReader reader ->
+            reader.readFrom(new ByteArrayInputStream("foo".bytes))
+            true
+        }
+        1 * local.storeLocally(key, _) >> { BuildCacheKey key, File file ->
+            def entry = tmpDir.file("entry")
+            entry.bytes = file.bytes
+            localEntries[key] = entry
+            prefetched.countDown()
+        }
+        1 * local.loadLocally(key, _) >> { BuildCacheKey key, Action<File> action ->
+            action.execute(localEntries[key])
+        }
+        result.get() == loadmetadata
+
+        and:
+        def prefetchResult = operations.log.mostRecentResult(BuildCachePrefetchBuildOperationType)
+        prefetchResult.requestedEntryCount == 1
+        prefetchResult.prefetchedEntryCount == 1
+        prefetchResult.hitEntryCount == 1
+        prefetchResult.wastedEntryCount == 0
+    }
+
+    def "does not load from remote again when prefetch missed"() {
+        def missed = new CountDownLatch(1)
+
+        when:
+        def controller = getController(true, 2)
+        controller.prefetch([key])
+        missed.await()
+        def result = controller.load(loadCommand)
+        controller.close()
+
+        then:
+        1 * remote.load(key, _) >> {
+            missed.countDown()
+            false
+        }
+        1 * local.loadLocally(key, _)
+        0 * local.storeLocally(key, _)
+        !result.present
+
+        and:
+        def prefetchResult = operations.log.mostRecentResult(BuildCachePrefetchBuildOperationType)
+        prefetchResult.missedEntryCount == 1
+        prefetchResult.hitEntryCount == 0
+    }
+
+    def "reports prefetched entries that are never loaded as wasted"() {
+        def prefetched = new CountDownLatch(1)
+
+        when:
+        def controller = getController(true, 2)
+        controller.prefetch([key])
+        prefetched.await()
+        controller.close()
+
+        then:
+        1 * remote.load(key, _) >> { BuildCacheKey key, BuildCacheEntryReader reader ->
+            reader.readFrom(new ByteArrayInputStream("foo".bytes))
+            true
+        }
+        1 * local.storeLocally(key, _) >> {
+            prefetched.countDown()
+        }
+
+        and:
+        def prefetchResult = operations.log.mostRecentResult(BuildCachePrefetchBuildOperationType)
+        prefetchResult.prefetchedEntryCount == 1
+        prefetchResult.wastedEntryCount == 1
+    }
+
     def "close only closes once"() {
         when:
         def controller = getController()
@@ -0,0 +1,181 @@
+/*
+ * Copyright 2021 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.caching.local.internal
+
+import org.gradle.api.UncheckedIOException
+import org.gradle.cache.PersistentCache
+import org.gradle.caching.BuildCacheEntryReader
+import org.gradle.caching.BuildCacheEntryWriter
+import org.gradle.caching.BuildCacheKey
+import org.gradle.internal.file.FileAccessTracker
+import org.gradle.test.fixtures.file.CleanupTestDirectory
+import org.gradle.test.fixtures.file.TestNameTestDirectoryProvider
+import org.junit.Rule
+import spock.lang.Specification
+
+import java.util.concurrent.Callable
+import java.util.concurrent.Executors
+
+@CleanupTestDirectory
+class ShardedDirectoryBuildCacheServiceTest extends Specification {
+    @Rule TestNameTestDirectoryProvider temporaryFolder = new TestNameTestDirectoryProvider(getClass())
+    def cacheDir = temporaryFolder.createDir("cache")
+    def persistentCache = Mock(PersistentCache)
+    def fileAccessTracker = Mock(FileAccessTracker)
+    def service = new ShardedDirectoryBuildCacheService(cacheDir, persistentCache, fileAccessTracker, ".failed")
+    def hashCode = "1234abcd"
+    def key = Mock(BuildCacheKey) {
+        getHashCode() >> hashCode
+    }
+
+    def "stores and loads entries in shard directory without locking"() {
+        when:
+        service.store(key, writer("foo"))
+
+        then:
+        1 * fileAccessTracker.markAccessed(cacheDir.file("12/1234abcd"))
+        0 * persistentCache._
+        cacheDir.file("12").listFiles()*.name == [hashCode]
+
+        when:
+        def loaded = service.load(key, new BuildCacheEntryReader() {
+            @Override
+            void readFrom(InputStream input) throws IOException {
+                assert input.text == "foo"
+            }
+        })
+
+        then:
+        loaded
+        1 * fileAccessTracker.markAccessed(cacheDir.file("12/1234abcd"))
+        0 * persistentCache._
+    }
+
+    def "stores file from outside of the cache directory"() {
+        def originalFile = temporaryFolder.createFile("foo")
+        originalFile.text = "bar"
+
+        when:
+        service.storeLocally(key, originalFile)
+
+        then:
+        1 * fileAccessTracker.markAccessed(cacheDir.file("12/1234abcd"))
+        originalFile.text == "bar"
+
+        when:
+        String loaded = null
+        service.loadLocally(key, { File file -> loaded = file.text })
+
+        then:
+        loaded == "bar"
+    }
+
+    def "does not store partial result"() {
+        when:
+        service.store(key, new BuildCacheEntryWriter() {
+            @Override
+            void writeTo(OutputStream output) throws IOException {
+                def shardFiles = cacheDir.file("12").listFiles()
+                assert shardFiles.length == 1
+                assert shardFiles[0].name.startsWith(hashCode)
+                assert shardFiles[0].name.endsWith(BuildCacheTempFileStore.PARTIAL_FILE_SUFFIX)
+
+                output << "abcd"
+                throw new RuntimeException("Simulated write error")
+            }
+
+            @Override
+            long getSize() {
+                return 100
+            }
+        })
+
+        then:
+        def ex = thrown RuntimeException
+        ex.message == "Simulated write error"
+        cacheDir.file("12").listFiles() as List == []
+        0 * fileAccessTracker.markAccessed(_)
+    }
+
+    def "does not find missing entry"() {
+        expect:
+        !service.load(key, Mock(BuildCacheEntryReader))
+    }
+
+    def "moves corrupt entry out of the way"() {
+        service.store(key, writer("foo"))
+
+        when:
+        service.load(key, new BuildCacheEntryReader() {
+            @Override
+            void readFrom(InputStream input) throws IOException {
+                throw new IOException("Corrupt")
+            }
+        })
+
+        then:
+        thrown UncheckedIOException
+        cacheDir.file("12").listFiles()*.name == ["1234abcd.failed"]
+    }
+
+    def "can store the same entry concurrently"() {
+        def executor = Executors.newFixedThreadPool(8)
+
+        when:
+        def results = executor.invokeAll((1..32).collect { index ->
+            { ->
+                service.store(key, writer("foo"))
+                String loaded = null
+                service.loadLocally(key, { File file -> loaded = file.text })
+                return loaded
+            } as Callable<String>
+        })*.get()
+
+        then:
+        results.every { it == "foo" }
+        cacheDir.file("12").listFiles()*.name == [hashCode]
+
+        cleanup:
+        executor.shutdownNow()
+    }
+
+    def "cleanup finds entries in shard directories and entries left by the flat layout"() {
+        def shardedEntry = cacheDir.createFile("12/1234abcd")
+        def flatEntry = cacheDir.createFile("5678abcd")
+        def reservedFile = cacheDir.createFile("gc.properties")
+
+        when:
+        def entries = ShardedDirectoryBuildCacheService.entriesFinder().find(cacheDir, { it != reservedFile } as FileFilter).toList()
+
+        then:
+        entries as Set == [shardedEntry, flatEntry] as Set
+    }
+
+    private static BuildCacheEntryWriter writer(String content) {
+        new BuildCacheEntryWriter() {
+            @Override
+            void writeTo(OutputStream output) throws IOException {
+                output << content
+            }
+
+            @Override
+            long getSize() {
+                return content.length()
+            }
+        }
+    }
+}
@@ -0,0 +1,104 @@
+/*
+ * Copyright 2021 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.configurationcache
+
+import org.gradle.api.provider.Property
+import org.gradle.api.services.BuildService
+import org.gradle.api.services.BuildServiceParameters
+import org.gradle.api.tasks.Internal
+import org.gradle.api.tasks.TaskAction
+import org.gradle.build.event.BuildEventsListenerRegistry
+import org.gradle.tooling.events.FinishEvent
+import org.gradle.tooling.events.OperationCompletionListener
+
+import javax.inject.Inject
+import java.util.concurrent.atomic.AtomicInteger
+
+class ConfigurationCacheParallelLoadIntegrationTest extends AbstractConfigurationCacheIntegrationTest {
+
+    private static final String PARALLEL_LOAD = "-Dorg.gradle.unsafe.configuration-cache.parallel-load=true"
+
+    def "loads state shared between the tasks of different projects and the build listeners"() {
+        given:
+        def configurationCache = newConfigurationCacheFixture()
+        settingsFile << """
+            include 'a', 'b', 'c'
+        """
+        buildFile << """
+            abstract class CountingService implements ${BuildService.name}<${BuildServiceParameters.name}.None>, ${OperationCompletionListener.name} {
+
+                private final ${AtomicInteger.name} count = new ${AtomicInteger.name}()
+
+                int increment() {
+                    return count.incrementAndGet()
+                }
+
+                @Override
+                void onFinish(${FinishEvent.name} event) {
+                    println("EVENT: \${event.descriptor.taskPath} count=\${count.get()}")
+                }
+            }
+
+            abstract class CountingTask extends DefaultTask {
+
+                @${Internal.name}
+                abstract ${Property.name}<CountingService> getCounter()
+
+                @${TaskAction.name}
+                void count() {
+                    println("COUNT: \${path} => \${counter.get().increment()}")
+                }
+            }
+
+            abstract class CountingPlugin implements Plugin<Project> {
+
+                @${Inject.name}
+                abstract ${BuildEventsListenerRegistry.name} getListenerRegistry()
+
+                void apply(Project project) {
+                    def counter = project.gradle.sharedServices.registerIfAbsent("counter", CountingService) { }
+                    listenerRegistry.onTaskCompletion(counter)
+                    project.tasks.register("count", CountingTask) {
+                        it.counter.set(counter)
+                    }
+                }
+            }
+
+            subprojects {
+                apply plugin: CountingPlugin
+            }
+        """
+
+        when:
+        configurationCacheRun PARALLEL_LOAD, "a:count", "b:count", "c:count"
+
+        then:
+        configurationCache.assertStateStored()
+        output.count("COUNT:") == 3
+        output.count("EVENT:") == 3
+
+        when:
+        configurationCacheRun PARALLEL_LOAD, "a:count", "b:count", "c:count"
+
+        then: 'tasks and listeners share the same service'
+        configurationCache.assertStateLoaded()
+        output.count("COUNT:") == 3
+        outputContains("=> 3")
+        output.count("EVENT:") == 3
+        !output.contains("count=0")
+    }
+}
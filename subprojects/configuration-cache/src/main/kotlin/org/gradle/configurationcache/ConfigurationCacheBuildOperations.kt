@@ -17,30 +17,140 @@
 package org.gradle.configurationcache
 
 import org.gradle.internal.operations.BuildOperationContext
+import org.gradle.internal.operations.CallableBuildOperation
 import org.gradle.internal.operations.BuildOperationDescriptor
 import org.gradle.internal.operations.BuildOperationExecutor
+import org.gradle.internal.operations.BuildOperationType
 import org.gradle.internal.operations.RunnableBuildOperation
+import java.io.File
 
 
+/**
+ * The configuration cache state files written or read by an operation.
+ */
+interface ConfigurationCacheStateFiles {
+
+    /**
+     * The number of state files, one for the root build and one for each included build.
+     */
+    val stateFileCount: Int
+
+    /**
+     * The total size of the state files on disk, in bytes.
+     */
+    val stateFileSize: Long
+}
+
+
+/**
+ * Loading the configuration cache state of a build tree.
+ */
+class ConfigurationCacheLoadBuildOperationType private constructor() :
+    BuildOperationType<ConfigurationCacheLoadBuildOperationType.Details, ConfigurationCacheLoadBuildOperationType.Result> {
+
+    interface Details
+
+    interface Result : ConfigurationCacheStateFiles
+}
+
+
+/**
+ * Storing the configuration cache state of a build tree.
+ */
+class ConfigurationCacheStoreBuildOperationType private constructor() :
+    BuildOperationType<ConfigurationCacheStoreBuildOperationType.Details, ConfigurationCacheStoreBuildOperationType.Result> {
+
+    interface Details
+
+    interface Result : ConfigurationCacheStateFiles
+}
+
+
+/**
+ * Checking the fingerprint of the configuration cache entry of a build tree, to decide whether the entry can be reused.
+ */
+class ConfigurationCacheCheckFingerprintBuildOperationType private constructor() :
+    BuildOperationType<ConfigurationCacheCheckFingerprintBuildOperationType.Details, ConfigurationCacheCheckFingerprintBuildOperationType.Result> {
+
+    interface Details
+
+    interface Result {
+
+        /**
+         * Why the entry cannot be reused, or `null` when all inputs are up-to-date.
+         */
+        val invalidationReason: String?
+    }
+}
+
+
+/**
+ * Runs the given [block] that checks the configuration cache fingerprint and returns why the entry cannot be reused, if so.
+ */
 internal
-fun BuildOperationExecutor.withLoadOperation(block: () -> Unit) =
-    withOperation("Load configuration cache state", block)
+fun BuildOperationExecutor.withFingerprintCheckOperation(block: () -> String?): String? =
+    call(object : CallableBuildOperation<String?> {
 
+        override fun description(): BuildOperationDescriptor.Builder =
+            BuildOperationDescriptor.displayName("Check configuration cache fingerprint").details(CheckFingerprintDetails)
 
+        override fun call(context: BuildOperationContext): String? =
+            block().also { reason ->
+                context.setResult(CheckFingerprintResult(reason))
+            }
+    })
+
+
+/**
+ * Runs the given [block] that loads the configuration cache state and returns the state files it read.
+ */
 internal
-fun BuildOperationExecutor.withStoreOperation(block: () -> Unit) =
-    withOperation("Store configuration cache state", block)
+fun BuildOperationExecutor.withLoadOperation(block: () -> List<File>) =
+    withOperation("Load configuration cache state", LoadDetails, block)
+
+
+/**
+ * Runs the given [block] that stores the configuration cache state and returns the state files it wrote.
+ */
+internal
+fun BuildOperationExecutor.withStoreOperation(block: () -> List<File>) =
+    withOperation("Store configuration cache state", StoreDetails, block)
 
 
 private
-fun BuildOperationExecutor.withOperation(displayName: String, block: () -> Unit) {
+fun BuildOperationExecutor.withOperation(displayName: String, details: Any, block: () -> List<File>) {
     run(object : RunnableBuildOperation {
 
         override fun description(): BuildOperationDescriptor.Builder =
-            BuildOperationDescriptor.displayName(displayName)
+            BuildOperationDescriptor.displayName(displayName).details(details)
 
         override fun run(context: BuildOperationContext) {
-            block()
+            context.setResult(StateFilesResult(block()))
         }
     })
 }
+
+
+private
+object LoadDetails : ConfigurationCacheLoadBuildOperationType.Details
+
+
+private
+object StoreDetails : ConfigurationCacheStoreBuildOperationType.Details
+
+
+private
+object CheckFingerprintDetails : ConfigurationCacheCheckFingerprintBuildOperationType.Details
+
+
+private
+class CheckFingerprintResult(override val invalidationReason: String?) : ConfigurationCacheCheckFingerprintBuildOperationType.Result
+
+
+private
+class StateFilesResult(stateFiles: List<File>) : ConfigurationCacheLoadBuildOperationType.Result, ConfigurationCacheStoreBuildOperationType.Result {
+
+    override val stateFileCount: Int = stateFiles.size
+
+    override val stateFileSize: Long = stateFiles.sumOf { it.length() }
+}
@@ -32,8 +32,11 @@ import org.gradle.configurationcache.serialization.writeCollection
 import org.gradle.internal.serialize.Encoder
 import org.gradle.internal.serialize.kryo.KryoBackedDecoder
 import org.gradle.internal.serialize.kryo.KryoBackedEncoder
+import org.gradle.internal.serialize.kryo.StringDeduplicatingKryoBackedDecoder
+import org.gradle.internal.serialize.kryo.StringDeduplicatingKryoBackedEncoder
 import org.gradle.internal.service.scopes.Scopes
 import org.gradle.internal.service.scopes.ServiceScope
+import java.io.BufferedInputStream
 import java.io.ByteArrayInputStream
 import java.io.ByteArrayOutputStream
 import java.io.DataInputStream
@@ -41,6 +44,9 @@ import java.io.DataOutputStream
 import java.io.File
 import java.io.InputStream
 import java.io.OutputStream
+import java.util.zip.Deflater
+import java.util.zip.DeflaterOutputStream
+import java.util.zip.InflaterInputStream
 
 
 @ServiceScope(Scopes.Gradle::class)
@@ -51,6 +57,14 @@ class ConfigurationCacheIO internal constructor(
     private val beanConstructors: BeanConstructors
 ) {
 
+    companion object {
+
+        /**
+         * Enables compressing the configuration cache state files.
+         */
+        const val COMPRESS_STATE_PROPERTY = "org.gradle.unsafe.configuration-cache.compress-state"
+    }
+
     /**
      * See [ConfigurationCacheState.writeRootBuildState].
      */
@@ -64,8 +78,8 @@ class ConfigurationCacheIO internal constructor(
 
     internal
     fun readRootBuildStateFrom(stateFile: ConfigurationCacheStateFile) {
-        withReadContextFor(stateFile.inputStream()) { codecs ->
-            ConfigurationCacheState(codecs, stateFile).run {
+        withReadContextFor(stateInputStreamFor(stateFile)) { codecs ->
+            ConfigurationCacheState(codecs, stateFile, this@ConfigurationCacheIO::codecs).run {
                 readRootBuildState(host::createBuild)
             }
         }
@@ -82,8 +96,8 @@ class ConfigurationCacheIO internal constructor(
 
     internal
     fun readIncludedBuildStateFrom(stateFile: ConfigurationCacheStateFile, includedBuild: ConfigurationCacheBuild) {
-        withReadContextFor(stateFile.inputStream()) { codecs ->
-            ConfigurationCacheState(codecs, stateFile).run {
+        withReadContextFor(stateInputStreamFor(stateFile)) { codecs ->
+            ConfigurationCacheState(codecs, stateFile, this@ConfigurationCacheIO::codecs).run {
                 readBuildState(includedBuild)
             }
         }
@@ -95,18 +109,26 @@ class ConfigurationCacheIO internal constructor(
         action: suspend DefaultWriteContext.(ConfigurationCacheState) -> T
     ): T {
         val build = host.currentBuild
-        val (context, codecs) = writerContextFor(stateFile.outputStream(), build.gradle.rootProject.name + " state")
+        val (context, codecs) = writerContextFor(stateOutputStreamFor(stateFile), build.gradle.rootProject.name + " state")
         return context.useToRun {
             runWriteOperation {
-                action(ConfigurationCacheState(codecs, stateFile))
+                action(ConfigurationCacheState(codecs, stateFile, this@ConfigurationCacheIO::codecs))
             }
         }
     }
 
+    private
+    fun stateOutputStreamFor(stateFile: ConfigurationCacheStateFile): OutputStream =
+        writeConfigurationCacheStateHeaderTo(stateFile.outputStream(), java.lang.Boolean.getBoolean(COMPRESS_STATE_PROPERTY))
+
+    private
+    fun stateInputStreamFor(stateFile: ConfigurationCacheStateFile): InputStream =
+        readConfigurationCacheStateHeaderFrom(stateFile.inputStream())
+
     internal
     fun writerContextFor(outputStream: OutputStream, profile: String): Pair<DefaultWriteContext, Codecs> =
         codecs().let { codecs ->
-            KryoBackedEncoder(outputStream).let { encoder ->
+            StringDeduplicatingKryoBackedEncoder(outputStream).let { encoder ->
                 writeContextFor(
                     encoder,
                     if (logger.isDebugEnabled) LoggingTracer(profile, encoder::getWritePosition, logger)
@@ -122,7 +144,7 @@ class ConfigurationCacheIO internal constructor(
         readOperation: suspend DefaultReadContext.(Codecs) -> R
     ): R =
         codecs().let { codecs ->
-            KryoBackedDecoder(inputStream).use { decoder ->
+            StringDeduplicatingKryoBackedDecoder(inputStream).use { decoder ->
                 readContextFor(decoder, codecs).run {
                     initClassLoader(javaClass.classLoader)
                     runReadOperation {
@@ -148,7 +170,7 @@ class ConfigurationCacheIO internal constructor(
 
     private
     fun readContextFor(
-        decoder: KryoBackedDecoder,
+        decoder: StringDeduplicatingKryoBackedDecoder,
         codecs: Codecs
     ) = DefaultReadContext(
         codecs.userTypesCodec,
@@ -200,6 +222,64 @@ class ConfigurationCacheIO internal constructor(
 }
 
 
+private
+const val UNCOMPRESSED_STATE = 0
+
+
+private
+const val COMPRESSED_STATE = 1
+
+
+private
+const val COMPRESSION_BUFFER_SIZE = 64 * 1024
+
+
+/**
+ * Writes a header recording whether the state written to the returned stream is compressed.
+ */
+internal
+fun writeConfigurationCacheStateHeaderTo(outputStream: OutputStream, compress: Boolean): OutputStream =
+    if (compress) {
+        outputStream.write(COMPRESSED_STATE)
+        FastDeflaterOutputStream(outputStream)
+    } else {
+        outputStream.write(UNCOMPRESSED_STATE)
+        outputStream
+    }
+
+
+/**
+ * Reads the header written by [writeConfigurationCacheStateHeaderTo], returning a stream of the state that follows it.
+ */
+internal
+fun readConfigurationCacheStateHeaderFrom(inputStream: InputStream): InputStream =
+    when (val header = inputStream.read()) {
+        COMPRESSED_STATE -> InflaterInputStream(BufferedInputStream(inputStream, COMPRESSION_BUFFER_SIZE))
+        UNCOMPRESSED_STATE -> inputStream
+        else -> {
+            inputStream.close()
+            throw IllegalStateException("Unexpected configuration cache state header: $header")
+        }
+    }
+
+
+/**
+ * A [DeflaterOutputStream] favoring speed over compression ratio.
+ */
+private
+class FastDeflaterOutputStream(outputStream: OutputStream) :
+    DeflaterOutputStream(outputStream, Deflater(Deflater.BEST_SPEED), COMPRESSION_BUFFER_SIZE) {
+
+    override fun close() {
+        try {
+            super.close()
+        } finally {
+            def.end()
+        }
+    }
+}
+
+
 internal
 fun writeConfigurationCacheFingerprintHeaderTo(outputStream: OutputStream, header: ConfigurationCacheFingerprint.Header) {
     val buildRootDirs = header.includedBuildRootDirs
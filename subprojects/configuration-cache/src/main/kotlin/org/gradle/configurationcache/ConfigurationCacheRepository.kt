@@ -69,15 +69,22 @@ class ConfigurationCacheRepository(
         class Invalid(val reason: String) : CheckedFingerprint()
     }
 
-    fun useForStateLoad(cacheKey: String, action: (ConfigurationCacheStateFile) -> Unit) {
+    /**
+     * Runs the given [action] and returns the state files it read.
+     */
+    fun useForStateLoad(cacheKey: String, action: (ConfigurationCacheStateFile) -> Unit): List<File> =
         withBaseCacheDirFor(cacheKey) { cacheDir ->
+            val stateFiles = mutableListOf<File>()
             action(
-                ReadableConfigurationCacheStateFile(cacheDir.stateFile)
+                ReadableConfigurationCacheStateFile(cacheDir.stateFile, stateFiles::add)
             )
+            stateFiles
         }
-    }
 
-    fun useForStore(cacheKey: String, action: (Layout) -> Unit) {
+    /**
+     * Runs the given [action] and returns the state files it wrote.
+     */
+    fun useForStore(cacheKey: String, action: (Layout) -> Unit): List<File> =
         withBaseCacheDirFor(cacheKey) { cacheDir ->
             // TODO GlobalCache require(!cacheDir.isDirectory)
             cacheDir.mkdirs()
@@ -95,8 +102,8 @@ class ConfigurationCacheRepository(
                         chmod(it, 384) // octal 0600
                     }
             }
+            stateFiles
         }
-    }
 
     class Layout(
         val fingerprint: File,
@@ -109,18 +116,20 @@ class ConfigurationCacheRepository(
 
     private
     inner class ReadableConfigurationCacheStateFile(
-        private val file: File
+        private val file: File,
+        private val onFileAccess: (File) -> Unit
     ) : ConfigurationCacheStateFile {
 
         override fun outputStream(): OutputStream =
             throw UnsupportedOperationException()
 
         override fun inputStream(): InputStream =
-            file.also(::markAccessed).inputStream()
+            file.also(::markAccessed).also(onFileAccess).inputStream()
 
         override fun stateFileForIncludedBuild(build: BuildDefinition): ConfigurationCacheStateFile =
             ReadableConfigurationCacheStateFile(
-                includedBuildFileFor(file, build)
+                includedBuildFileFor(file, build),
+                onFileAccess
             )
     }
 
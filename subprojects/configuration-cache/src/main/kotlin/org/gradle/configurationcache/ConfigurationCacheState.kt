@@ -79,7 +79,8 @@ interface ConfigurationCacheStateFile {
 internal
 class ConfigurationCacheState(
     private val codecs: Codecs,
-    private val stateFile: ConfigurationCacheStateFile
+    private val stateFile: ConfigurationCacheStateFile,
+    private val segmentCodecs: () -> Codecs
 ) {
     /**
      * Writes the state for the whole build starting from the given root [build] and returns the set
@@ -179,14 +180,14 @@ class ConfigurationCacheState(
 
     private
     suspend fun DefaultWriteContext.writeWorkGraphOf(gradle: GradleInternal, scheduledNodes: List<Node>) {
-        WorkNodeCodec(gradle, internalTypesCodec).run {
+        WorkNodeCodec(gradle, internalTypesCodec, codecs.taskNodeCodec, segmentCodecs).run {
             writeWork(scheduledNodes)
         }
     }
 
     private
     suspend fun DefaultReadContext.readWorkGraph(gradle: GradleInternal) =
-        WorkNodeCodec(gradle, internalTypesCodec).run {
+        WorkNodeCodec(gradle, internalTypesCodec, codecs.taskNodeCodec, segmentCodecs).run {
             readWork()
         }
 
@@ -228,7 +228,9 @@ class DefaultConfigurationCache internal constructor(
     private
     fun checkFingerprint(fingerprintFile: File): InvalidationReason? {
         loadGradleProperties()
-        return checkConfigurationCacheFingerprintFile(fingerprintFile)
+        return buildOperationExecutor.withFingerprintCheckOperation {
+            checkConfigurationCacheFingerprintFile(fingerprintFile)
+        }
     }
 
     private
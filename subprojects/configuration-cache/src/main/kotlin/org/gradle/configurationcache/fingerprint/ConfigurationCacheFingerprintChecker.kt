@@ -25,14 +25,29 @@ import org.gradle.configurationcache.serialization.ReadContext
 import org.gradle.internal.hash.HashCode
 import org.gradle.internal.util.NumberUtil.ordinal
 import java.io.File
+import java.util.concurrent.CompletableFuture
+import java.util.concurrent.CompletionException
+import java.util.concurrent.Executor
+import java.util.concurrent.atomic.AtomicInteger
+import java.util.function.Supplier
 
 
 internal
 typealias InvalidationReason = String
 
 
+/**
+ * Checks the recorded inputs of a configuration cache entry.
+ *
+ * File and task inputs are hashed concurrently on the given [executor], while the remaining inputs,
+ * such as value sources, are checked on the calling thread. The reported reason is the same as when
+ * checking the inputs one after the other.
+ */
 internal
-class ConfigurationCacheFingerprintChecker(private val host: Host) {
+class ConfigurationCacheFingerprintChecker(
+    private val host: Host,
+    private val executor: Executor = Executor(Runnable::run)
+) {
 
     interface Host {
         val gradleUserHomeDir: File
@@ -44,53 +59,107 @@ class ConfigurationCacheFingerprintChecker(private val host: Host) {
         fun instantiateValueSourceOf(obtainedValue: ObtainedValue): ValueSource<Any, ValueSourceParameters>
     }
 
+    /**
+     * Checks the recorded inputs and reports the first one that has changed.
+     */
     suspend fun ReadContext.checkFingerprint(): InvalidationReason? {
         // TODO: log some debug info
-        while (true) {
-            when (val input = read()) {
-                null -> return null
-                is ConfigurationCacheFingerprint.TaskInputs -> input.run {
-                    val currentFingerprint = host.fingerprintOf(fileSystemInputs)
-                    if (currentFingerprint != fileSystemInputsFingerprint) {
-                        // TODO: summarize what has changed (see https://github.com/gradle/configuration-cache/issues/282)
-                        return "an input to task '$taskPath' has changed"
+        val checks = ArrayList<CompletableFuture<InvalidationReason?>>()
+        // The position of the first changed input, inputs after it don't need to be checked
+        val firstInvalidation = AtomicInteger(Int.MAX_VALUE)
+        try {
+            while (firstInvalidation.get() == Int.MAX_VALUE) {
+                val input = readFingerprint() ?: break
+                val position = checks.size
+                val check = {
+                    when {
+                        firstInvalidation.get() < position -> null
+                        else -> check(input)?.also {
+                            firstInvalidation.accumulateAndGet(position, ::minOf)
+                        }
                     }
                 }
-                is ConfigurationCacheFingerprint.InputFile -> input.run {
-                    if (hasFileChanged(file, hash)) {
-                        return "file '${displayNameOf(file)}' has changed"
+                checks.add(
+                    when {
+                        input.isCheckedConcurrently -> CompletableFuture.supplyAsync(Supplier(check), executor)
+                        else -> CompletableFuture.completedFuture(check())
                     }
+                )
+            }
+            return checks.asSequence().map(::await).firstOrNull { it != null }
+        } finally {
+            // Skip the checks that have not started yet
+            firstInvalidation.set(-1)
+        }
+    }
+
+    private
+    suspend fun ReadContext.readFingerprint(): ConfigurationCacheFingerprint? =
+        when (val input = read()) {
+            null -> null
+            is ConfigurationCacheFingerprint -> input
+            else -> throw IllegalStateException("Unexpected configuration cache fingerprint: $input")
+        }
+
+    private
+    val ConfigurationCacheFingerprint.isCheckedConcurrently: Boolean
+        get() = when (this) {
+            is ConfigurationCacheFingerprint.InputFile,
+            is ConfigurationCacheFingerprint.TaskInputs -> true
+            else -> false
+        }
+
+    private
+    fun await(check: CompletableFuture<InvalidationReason?>): InvalidationReason? =
+        try {
+            check.join()
+        } catch (e: CompletionException) {
+            throw e.cause ?: e
+        }
+
+    private
+    fun check(input: ConfigurationCacheFingerprint): InvalidationReason? =
+        when (input) {
+            is ConfigurationCacheFingerprint.TaskInputs -> input.run {
+                val currentFingerprint = host.fingerprintOf(fileSystemInputs)
+                when {
+                    // TODO: summarize what has changed (see https://github.com/gradle/configuration-cache/issues/282)
+                    currentFingerprint != fileSystemInputsFingerprint -> "an input to task '$taskPath' has changed"
+                    else -> null
                 }
-                is ConfigurationCacheFingerprint.ValueSource -> input.run {
-                    val reason = checkFingerprintValueIsUpToDate(obtainedValue)
-                    if (reason != null) return reason
-                }
-                is ConfigurationCacheFingerprint.InitScripts -> input.run {
-                    val reason = checkInitScriptsAreUpToDate(fingerprints, host.allInitScripts)
-                    if (reason != null) return reason
+            }
+            is ConfigurationCacheFingerprint.InputFile -> input.run {
+                when {
+                    hasFileChanged(file, hash) -> "file '${displayNameOf(file)}' has changed"
+                    else -> null
                 }
-                is ConfigurationCacheFingerprint.UndeclaredSystemProperty -> input.run {
-                    if (isDefined(key)) {
-                        return "system property '$key' has changed"
-                    }
+            }
+            is ConfigurationCacheFingerprint.ValueSource -> input.run {
+                checkFingerprintValueIsUpToDate(obtainedValue)
+            }
+            is ConfigurationCacheFingerprint.InitScripts -> input.run {
+                checkInitScriptsAreUpToDate(fingerprints, host.allInitScripts)
+            }
+            is ConfigurationCacheFingerprint.UndeclaredSystemProperty -> input.run {
+                when {
+                    isDefined(key) -> "system property '$key' has changed"
+                    else -> null
                 }
-                is ConfigurationCacheFingerprint.ChangingDependencyResolutionValue -> input.run {
-                    if (host.buildStartTime >= expireAt) {
-                        return input.reason
-                    }
+            }
+            is ConfigurationCacheFingerprint.ChangingDependencyResolutionValue -> input.run {
+                when {
+                    host.buildStartTime >= expireAt -> reason
+                    else -> null
                 }
-                is ConfigurationCacheFingerprint.GradleEnvironment -> input.run {
-                    if (host.gradleUserHomeDir != gradleUserHomeDir) {
-                        return "Gradle user home directory has changed"
-                    }
-                    if (jvmFingerprint() != jvm) {
-                        return "JVM has changed"
-                    }
+            }
+            is ConfigurationCacheFingerprint.GradleEnvironment -> input.run {
+                when {
+                    host.gradleUserHomeDir != gradleUserHomeDir -> "Gradle user home directory has changed"
+                    jvmFingerprint() != jvm -> "JVM has changed"
+                    else -> null
                 }
-                else -> throw IllegalStateException("Unexpected configuration cache fingerprint: $input")
             }
         }
-    }
 
     private
     fun checkInitScriptsAreUpToDate(
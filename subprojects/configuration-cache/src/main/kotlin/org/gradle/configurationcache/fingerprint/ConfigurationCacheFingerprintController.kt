@@ -27,6 +27,7 @@ import org.gradle.configurationcache.extensions.hashCodeOf
 import org.gradle.configurationcache.initialization.ConfigurationCacheStartParameter
 import org.gradle.configurationcache.serialization.DefaultWriteContext
 import org.gradle.configurationcache.serialization.ReadContext
+import org.gradle.internal.concurrent.ExecutorFactory
 import org.gradle.internal.concurrent.Stoppable
 import org.gradle.internal.event.ListenerManager
 import org.gradle.internal.execution.fingerprint.FileCollectionFingerprinterRegistry
@@ -37,6 +38,7 @@ import org.gradle.internal.hash.HashCode
 import org.gradle.internal.service.scopes.Scopes
 import org.gradle.internal.service.scopes.ServiceScope
 import org.gradle.internal.vfs.FileSystemAccess
+import org.gradle.internal.work.WorkerLeaseService
 import org.gradle.util.BuildCommencedTimeProvider
 import org.gradle.util.GFileUtils
 import java.io.ByteArrayOutputStream
@@ -59,7 +61,9 @@ class ConfigurationCacheFingerprintController internal constructor(
     private val listenerManager: ListenerManager,
     private val buildTreeListenerManager: BuildTreeListenerManager,
     private val fileCollectionFactory: FileCollectionFactory,
-    private val directoryFileTreeFactory: DirectoryFileTreeFactory
+    private val directoryFileTreeFactory: DirectoryFileTreeFactory,
+    private val executorFactory: ExecutorFactory,
+    private val workerLeaseService: WorkerLeaseService
 ) : Stoppable {
     private
     val fileCollectionFingerprinter = fingerprinterRegistry.getFingerprinter(DefaultFileNormalizationSpec.from(AbsolutePathInputNormalizer::class.java, DirectorySensitivity.DEFAULT))
@@ -154,10 +158,16 @@ class ConfigurationCacheFingerprintController internal constructor(
         writingState = writingState.dispose()
     }
 
-    suspend fun ReadContext.checkFingerprint(): InvalidationReason? =
-        ConfigurationCacheFingerprintChecker(CacheFingerprintComponentHost()).run {
-            checkFingerprint()
+    suspend fun ReadContext.checkFingerprint(): InvalidationReason? {
+        val executor = executorFactory.create("Configuration cache fingerprint checker", workerLeaseService.maxWorkerCount)
+        try {
+            return ConfigurationCacheFingerprintChecker(CacheFingerprintComponentHost(), executor).run {
+                checkFingerprint()
+            }
+        } finally {
+            executor.stop()
         }
+    }
 
     private
     fun addListener(listener: ConfigurationCacheFingerprintWriter) {
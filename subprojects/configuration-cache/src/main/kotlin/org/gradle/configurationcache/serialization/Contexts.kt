@@ -37,7 +37,8 @@ import org.gradle.internal.serialize.Encoder
 
 internal
 class DefaultWriteContext(
-    codec: Codec<Any?>,
+    private
+    val codec: Codec<Any?>,
 
     private
     val encoder: Encoder,
@@ -50,20 +51,31 @@ class DefaultWriteContext(
     override val tracer: Tracer?,
 
     private
-    val problemsListener: ProblemsListener
-
-) : AbstractIsolateContext<WriteIsolate>(codec), WriteContext, Encoder by encoder, AutoCloseable {
+    val problemsListener: ProblemsListener,
 
-    override val sharedIdentities = WriteIdentities()
+    override val sharedIdentities: WriteIdentities = WriteIdentities(),
 
     private
-    val beanPropertyWriters = hashMapOf<Class<*>, BeanStateWriter>()
+    val classes: WriteIdentities = WriteIdentities(),
 
     private
-    val classes = WriteIdentities()
+    val scopes: WriteIdentities = WriteIdentities()
+
+) : AbstractIsolateContext<WriteIsolate>(codec), WriteContext, Encoder by encoder, AutoCloseable {
 
     private
-    val scopes = WriteIdentities()
+    val beanPropertyWriters = hashMapOf<Class<*>, BeanStateWriter>()
+
+    internal
+    val identityCounts: IdentityCounts
+        get() = IdentityCounts(sharedIdentities.size, classes.size, scopes.size)
+
+    /**
+     * Creates a context writing to the given [encoder] that shares the identities, classes and scopes of this context.
+     */
+    internal
+    fun segmentContextFor(encoder: Encoder) =
+        DefaultWriteContext(codec, encoder, scopeLookup, logger, null, problemsListener, sharedIdentities, classes, scopes)
 
     /**
      * Closes the given [encoder] if it is [AutoCloseable].
@@ -134,7 +146,6 @@ class DefaultWriteContext(
         }
     }
 
-    // TODO: consider interning strings
     override fun writeString(string: CharSequence) =
         encoder.writeString(string)
 
@@ -211,20 +222,20 @@ class DefaultReadContext(
     override val logger: Logger,
 
     private
-    val problemsListener: ProblemsListener
-
-) : AbstractIsolateContext<ReadIsolate>(codec), ReadContext, Decoder by decoder {
+    val problemsListener: ProblemsListener,
 
-    override val sharedIdentities = ReadIdentities()
+    override val sharedIdentities: ReadIdentities = ReadIdentities(),
 
     private
-    val beanStateReaders = hashMapOf<Class<*>, BeanStateReader>()
+    val classes: ReadIdentities = ReadIdentities(),
 
     private
-    val classes = ReadIdentities()
+    val scopes: ReadIdentities = ReadIdentities()
+
+) : AbstractIsolateContext<ReadIsolate>(codec), ReadContext, Decoder by decoder {
 
     private
-    val scopes = ReadIdentities()
+    val beanStateReaders = hashMapOf<Class<*>, BeanStateReader>()
 
     private
     lateinit var projectProvider: ProjectProvider
@@ -241,6 +252,38 @@ class DefaultReadContext(
         this.projectProvider = projectProvider
     }
 
+    /**
+     * Creates a context reading the segment written between the [start] and [end] identity counts from the given [decoder].
+     *
+     * The segment can be read concurrently with the other segments sharing the given [identities],
+     * as long as each segment is read with its own [codec].
+     */
+    internal
+    fun segmentContextFor(decoder: Decoder, codec: Codec<Any?>, identities: SegmentIdentities, start: IdentityCounts, end: IdentityCounts) =
+        DefaultReadContext(
+            codec,
+            decoder,
+            instantiatorFactory,
+            constructors,
+            logger,
+            problemsListener,
+            identities.sharedIdentitiesOf(sharedIdentities, start, end),
+            identities.classesOf(classes, start, end),
+            identities.scopesOf(scopes, start, end)
+        ).also {
+            it.initClassLoader(classLoader)
+            it.initProjectProvider(projectProvider)
+        }
+
+    /**
+     * Makes the identities read by the segments sharing the given [identities] available to this context,
+     * once all the segments have been read.
+     */
+    internal
+    fun mergeSegmentIdentities(identities: SegmentIdentities) {
+        identities.copyTo(sharedIdentities, classes, scopes)
+    }
+
     override var immediateMode: Boolean = false
 
     override suspend fun read(): Any? = getCodec().run {
@@ -17,6 +17,7 @@
 package org.gradle.configurationcache.serialization
 
 import java.util.IdentityHashMap
+import java.util.concurrent.ConcurrentHashMap
 
 
 class WriteIdentities {
@@ -24,6 +25,9 @@ class WriteIdentities {
     private
     val instanceIds = IdentityHashMap<Any, Int>()
 
+    val size: Int
+        get() = instanceIds.size
+
     fun getId(instance: Any) = instanceIds[instance]
 
     fun putInstance(instance: Any): Int {
@@ -34,14 +38,169 @@ class WriteIdentities {
 }
 
 
-class ReadIdentities {
+open class ReadIdentities {
 
     private
     val instanceIds = HashMap<Int, Any>()
 
-    fun getInstance(id: Int) = instanceIds[id]
+    open fun getInstance(id: Int): Any? = instanceIds[id]
+
+    open fun putInstance(id: Int, instance: Any) {
+        instanceIds[id] = instance
+    }
+}
+
+
+/**
+ * Identities read concurrently by the segments of a work graph.
+ *
+ * Segments await the identities defined by the segments before them.
+ */
+internal
+class ConcurrentReadIdentities {
+
+    private
+    val instanceIds = ConcurrentHashMap<Int, Any>()
+
+    private
+    val lock = Object()
+
+    private
+    var waiters = 0
+
+    private
+    var failure: Throwable? = null
+
+    fun getInstance(id: Int): Any? = instanceIds[id]
 
     fun putInstance(id: Int, instance: Any) {
         instanceIds[id] = instance
+        synchronized(lock) {
+            if (waiters > 0) {
+                lock.notifyAll()
+            }
+        }
+    }
+
+    fun awaitInstance(id: Int): Any {
+        instanceIds[id]?.let { return it }
+        synchronized(lock) {
+            waiters++
+            try {
+                while (true) {
+                    instanceIds[id]?.let { return it }
+                    failure?.let { throw IllegalStateException("Identity $id could not be read.", it) }
+                    lock.wait()
+                }
+            } finally {
+                waiters--
+            }
+        }
+    }
+
+    /**
+     * Puts all the identities read by the segments into the given [target].
+     */
+    fun copyTo(target: ReadIdentities) {
+        instanceIds.forEach { (id, instance) ->
+            target.putInstance(id, instance)
+        }
+    }
+
+    /**
+     * Wakes up the segments awaiting identities that will never be read because of the given [failure].
+     */
+    fun fail(failure: Throwable) {
+        synchronized(lock) {
+            this.failure = failure
+            lock.notifyAll()
+        }
+    }
+}
+
+
+/**
+ * The identities of a single segment of a work graph.
+ *
+ * Identities below [segmentStart] were either read before the segments, in which case they are found in [preceding],
+ * or by an earlier segment, in which case they are awaited. Identities from [segmentStart] to [segmentEnd] are read
+ * by this segment.
+ */
+internal
+class SegmentReadIdentities(
+    private val preceding: ReadIdentities,
+    private val precedingEnd: Int,
+    private val segmentStart: Int,
+    private val segmentEnd: Int,
+    private val segments: ConcurrentReadIdentities
+) : ReadIdentities() {
+
+    override fun getInstance(id: Int): Any? = when {
+        id < precedingEnd -> preceding.getInstance(id)
+        id < segmentStart -> segments.awaitInstance(id)
+        id < segmentEnd -> segments.getInstance(id)
+        else -> throw IllegalStateException("Identity $id is not defined before segment [$segmentStart, $segmentEnd).")
+    }
+
+    override fun putInstance(id: Int, instance: Any) {
+        require(id in segmentStart until segmentEnd) {
+            "Identity $id does not belong to segment [$segmentStart, $segmentEnd)."
+        }
+        segments.putInstance(id, instance)
+    }
+}
+
+
+/**
+ * The number of shared identities, classes and class loader scopes known to a context.
+ */
+internal
+data class IdentityCounts(
+    val sharedIdentities: Int,
+    val classes: Int,
+    val scopes: Int
+)
+
+
+/**
+ * The identities shared by the segments of a work graph that are read concurrently
+ * after [preceding] identities have been read by the main context.
+ */
+internal
+class SegmentIdentities(
+    private val preceding: IdentityCounts
+) {
+    private
+    val sharedIdentities = ConcurrentReadIdentities()
+
+    private
+    val classes = ConcurrentReadIdentities()
+
+    private
+    val scopes = ConcurrentReadIdentities()
+
+    fun sharedIdentitiesOf(main: ReadIdentities, start: IdentityCounts, end: IdentityCounts) =
+        SegmentReadIdentities(main, preceding.sharedIdentities, start.sharedIdentities, end.sharedIdentities, sharedIdentities)
+
+    fun classesOf(main: ReadIdentities, start: IdentityCounts, end: IdentityCounts) =
+        SegmentReadIdentities(main, preceding.classes, start.classes, end.classes, classes)
+
+    fun scopesOf(main: ReadIdentities, start: IdentityCounts, end: IdentityCounts) =
+        SegmentReadIdentities(main, preceding.scopes, start.scopes, end.scopes, scopes)
+
+    /**
+     * Makes the identities read by the segments available to the main context, which reads the identities
+     * defined after the segments and may refer back to the identities defined by the segments.
+     */
+    fun copyTo(mainSharedIdentities: ReadIdentities, mainClasses: ReadIdentities, mainScopes: ReadIdentities) {
+        sharedIdentities.copyTo(mainSharedIdentities)
+        classes.copyTo(mainClasses)
+        scopes.copyTo(mainScopes)
+    }
+
+    fun fail(failure: Throwable) {
+        sharedIdentities.fail(failure)
+        classes.fail(failure)
+        scopes.fail(failure)
     }
 }
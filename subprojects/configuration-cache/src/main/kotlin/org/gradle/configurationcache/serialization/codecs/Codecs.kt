@@ -192,6 +192,8 @@ class Codecs(
         bind(reentrant(BeanCodec()))
     }
 
+    val taskNodeCodec = TaskNodeCodec(userTypesCodec, taskNodeFactory)
+
     val internalTypesCodec = BindingsBackedCodec {
         baseTypes()
 
@@ -199,7 +201,7 @@ class Codecs(
         fileCollectionTypes(directoryFileTreeFactory, fileCollectionFactory, artifactSetConverter, fileOperations, fileFactory, patternSetFactory)
 
         bind(BuildIdentifierSerializer())
-        bind(TaskNodeCodec(userTypesCodec, taskNodeFactory))
+        bind(taskNodeCodec)
         bind(TaskInAnotherBuildCodec(includedTaskGraph))
         bind(DelegatingCodec<TransformationNode>(userTypesCodec))
         bind(ActionNodeCodec(userTypesCodec))
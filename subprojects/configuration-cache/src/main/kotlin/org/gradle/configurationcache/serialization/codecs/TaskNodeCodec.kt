@@ -77,44 +77,99 @@ class TaskNodeCodec(
         return node
     }
 
+    /**
+     * Writes the type, project and name of the task of the given [node], but not its state.
+     */
+    internal
+    fun WriteContext.writeTaskNodeHeader(node: LocalTaskNode) {
+        writeTaskHeader(node.task)
+    }
+
+    /**
+     * Reads the task node written by [writeTaskNodeHeader], creating its task without any state.
+     */
+    internal
+    fun ReadContext.readTaskNodeHeader(): LocalTaskNode {
+        val task = readTaskHeader()
+        val node = taskNodeFactory.getOrCreateNode(task) as LocalTaskNode
+        node.isolated()
+        return node
+    }
+
+    /**
+     * Writes the state of the task of the given [node], see [writeTaskNodeHeader].
+     */
+    internal
+    suspend fun WriteContext.writeTaskNodeState(node: LocalTaskNode) {
+        val task = node.task
+        withDebugFrame({ task.path }) {
+            writeTaskState(task)
+        }
+    }
+
+    /**
+     * Reads the state written by [writeTaskNodeState] into the task of the given [node].
+     */
+    internal
+    suspend fun ReadContext.readTaskNodeState(node: LocalTaskNode) {
+        readTaskState(node.task)
+    }
+
     private
     suspend fun WriteContext.writeTask(task: TaskInternal) {
         withDebugFrame({ task.path }) {
-            val taskType = GeneratedSubclasses.unpackType(task)
-            val projectPath = task.project.path
-            val taskName = task.name
-            writeClass(taskType)
-            writeString(projectPath)
-            writeString(taskName)
-
-            withDebugFrame({ taskType.name }) {
-                withTaskOf(taskType, task, userTypesCodec) {
-                    writeUpToDateSpec(task)
-                    writeCollection(task.outputs.cacheIfSpecs)
-                    writeCollection(task.outputs.doNotCacheIfSpecs)
-                    beanStateWriterFor(task.javaClass).run {
-                        writeStateOf(task)
-                        writeRegisteredPropertiesOf(
-                            task,
-                            this as BeanPropertyWriter
-                        )
-                    }
-                    writeDestroyablesOf(task)
-                    writeLocalStateOf(task)
-                    writeRegisteredServicesOf(task)
-                }
-            }
+            writeTaskHeader(task)
+            writeTaskState(task)
         }
     }
 
     private
     suspend fun ReadContext.readTask(): Task {
+        val task = readTaskHeader()
+        readTaskState(task)
+        return task
+    }
+
+    private
+    fun WriteContext.writeTaskHeader(task: TaskInternal) {
+        writeClass(GeneratedSubclasses.unpackType(task))
+        writeString(task.project.path)
+        writeString(task.name)
+    }
+
+    private
+    fun ReadContext.readTaskHeader(): TaskInternal {
         val taskType = readClassOf<Task>()
         val projectPath = readString()
         val taskName = readString()
+        return createTask(projectPath, taskName, taskType)
+    }
 
-        val task = createTask(projectPath, taskName, taskType)
+    private
+    suspend fun WriteContext.writeTaskState(task: TaskInternal) {
+        val taskType = GeneratedSubclasses.unpackType(task)
+        withDebugFrame({ taskType.name }) {
+            withTaskOf(taskType, task, userTypesCodec) {
+                writeUpToDateSpec(task)
+                writeCollection(task.outputs.cacheIfSpecs)
+                writeCollection(task.outputs.doNotCacheIfSpecs)
+                beanStateWriterFor(task.javaClass).run {
+                    writeStateOf(task)
+                    writeRegisteredPropertiesOf(
+                        task,
+                        this as BeanPropertyWriter
+                    )
+                }
+                writeDestroyablesOf(task)
+                writeLocalStateOf(task)
+                writeRegisteredServicesOf(task)
+            }
+        }
+    }
 
+    private
+    suspend fun ReadContext.readTaskState(task: TaskInternal) {
+        val taskType = GeneratedSubclasses.unpackType(task)
         withTaskOf(taskType, task, userTypesCodec) {
             readUpToDateSpec(task)
             readCollectionInto { task.outputs.cacheIfSpecs.uncheckedCast() }
@@ -127,8 +182,6 @@ class TaskNodeCodec(
             readLocalStateOf(task)
             readRegisteredServicesOf(task)
         }
-
-        return task
     }
 
     private
@@ -17,33 +17,80 @@
 package org.gradle.configurationcache.serialization.codecs
 
 import org.gradle.api.internal.GradleInternal
+import org.gradle.configurationcache.extensions.serviceOf
 import org.gradle.configurationcache.serialization.Codec
+import org.gradle.configurationcache.serialization.DefaultReadContext
+import org.gradle.configurationcache.serialization.DefaultWriteContext
+import org.gradle.configurationcache.serialization.IdentityCounts
 import org.gradle.configurationcache.serialization.ReadContext
+import org.gradle.configurationcache.serialization.SegmentIdentities
 import org.gradle.configurationcache.serialization.WriteContext
+import org.gradle.configurationcache.serialization.readCollectionInto
 import org.gradle.configurationcache.serialization.readNonNull
+import org.gradle.configurationcache.serialization.runReadOperation
 import org.gradle.configurationcache.serialization.withGradleIsolate
+import org.gradle.configurationcache.serialization.writeCollection
+import org.gradle.execution.plan.LocalTaskNode
 import org.gradle.execution.plan.Node
 import org.gradle.execution.plan.TaskInAnotherBuild
 import org.gradle.execution.plan.TaskNode
+import org.gradle.internal.concurrent.ExecutorFactory
+import org.gradle.internal.serialize.Decoder
+import org.gradle.internal.serialize.Encoder
+import org.gradle.internal.serialize.kryo.StringDeduplicatingKryoBackedDecoder
+import org.gradle.internal.serialize.kryo.StringDeduplicatingKryoBackedEncoder
+import org.gradle.internal.work.WorkerLeaseService
+import java.io.ByteArrayInputStream
+import java.io.ByteArrayOutputStream
+import java.util.concurrent.ExecutionException
+import java.util.concurrent.Future
 
 
+/**
+ * Writes and reads the scheduled work graph.
+ *
+ * When [PARALLEL_LOAD_PROPERTY] is set, the state of the local tasks is written as one segment per project
+ * after the graph itself, so the segments can be read concurrently once all the nodes have been created.
+ */
 internal
 class WorkNodeCodec(
     private val owner: GradleInternal,
-    private val internalTypesCodec: Codec<Any?>
+    private val internalTypesCodec: Codec<Any?>,
+    private val taskNodeCodec: TaskNodeCodec,
+    private val segmentCodecs: () -> Codecs
 ) {
 
-    suspend fun WriteContext.writeWork(nodes: List<Node>) {
+    companion object {
+
+        /**
+         * Enables loading the state of the tasks of different projects in parallel.
+         */
+        const val PARALLEL_LOAD_PROPERTY = "org.gradle.unsafe.configuration-cache.parallel-load"
+    }
+
+    suspend fun DefaultWriteContext.writeWork(nodes: List<Node>) {
+        val segmented = java.lang.Boolean.getBoolean(PARALLEL_LOAD_PROPERTY)
+        writeBoolean(segmented)
         // Share bean instances across all nodes (except tasks, which have their own isolate)
         withGradleIsolate(owner, internalTypesCodec) {
-            writeNodes(nodes)
+            if (segmented) {
+                writeSegmentedNodes(nodes)
+            } else {
+                writeNodes(nodes)
+            }
         }
     }
 
-    suspend fun ReadContext.readWork(): List<Node> =
-        withGradleIsolate(owner, internalTypesCodec) {
-            readNodes()
+    suspend fun DefaultReadContext.readWork(): List<Node> {
+        val segmented = readBoolean()
+        return withGradleIsolate(owner, internalTypesCodec) {
+            if (segmented) {
+                readSegmentedNodes()
+            } else {
+                readNodes()
+            }
         }
+    }
 
     private
     suspend fun WriteContext.writeNodes(nodes: List<Node>) {
@@ -69,6 +116,186 @@ class WorkNodeCodec(
         return nodes
     }
 
+    private
+    suspend fun DefaultWriteContext.writeSegmentedNodes(nodes: List<Node>) {
+        val nodeCount = nodes.size
+        writeSmallInt(nodeCount)
+        val scheduledNodeIds = HashMap<Node, Int>(nodeCount)
+        val taskNodesByProject = LinkedHashMap<String, MutableList<LocalTaskNode>>()
+        nodes.forEachIndexed { nodeId, node ->
+            if (node is LocalTaskNode) {
+                // Only the header is written here, the state of the task goes into the segment of its project
+                writeBoolean(true)
+                taskNodeCodec.run {
+                    writeTaskNodeHeader(node)
+                }
+                taskNodesByProject.getOrPut(node.task.project.path) { ArrayList() }.add(node)
+            } else {
+                writeBoolean(false)
+                write(node)
+            }
+            writeSuccessorReferencesOf(node, scheduledNodeIds)
+            writeExecutionStateOf(node)
+            scheduledNodeIds[node] = nodeId
+        }
+        writeTaskStateSegments(taskNodesByProject.values, scheduledNodeIds)
+    }
+
+    private
+    suspend fun DefaultReadContext.readSegmentedNodes(): List<Node> {
+        val nodeCount = readSmallInt()
+        val nodes = ArrayList<Node>(nodeCount)
+        val nodesById = HashMap<Int, Node>(nodeCount)
+        for (nodeId in 0 until nodeCount) {
+            val node = if (readBoolean()) {
+                taskNodeCodec.run {
+                    readTaskNodeHeader()
+                }
+            } else {
+                readNonNull()
+            }
+            readSuccessorReferencesOf(node, nodesById)
+            readExecutionStateOf(node)
+            nodesById[nodeId] = node
+            nodes.add(node)
+        }
+        readTaskStateSegments(nodesById)
+        return nodes
+    }
+
+    /**
+     * Writes an index of the segments followed by the segments themselves.
+     *
+     * Each segment is written by its own context, sharing the identities of this context. The segments are written
+     * one after the other, so the identities first written by a segment form a range, which is recorded in the index.
+     */
+    private
+    suspend fun DefaultWriteContext.writeTaskStateSegments(segments: Collection<List<LocalTaskNode>>, nodeIds: Map<Node, Int>) {
+        writeIdentityCounts(identityCounts)
+        val segmentContents = ArrayList<Pair<ByteArray, IdentityCounts>>(segments.size)
+        for (taskNodes in segments) {
+            val outputStream = ByteArrayOutputStream()
+            StringDeduplicatingKryoBackedEncoder(outputStream).use { encoder ->
+                val segmentContext = segmentContextFor(encoder)
+                taskNodeCodec.run {
+                    for (taskNode in taskNodes) {
+                        segmentContext.writeTaskNodeState(taskNode)
+                    }
+                }
+            }
+            segmentContents.add(outputStream.toByteArray() to identityCounts)
+        }
+        writeSmallInt(segments.size)
+        segments.forEachIndexed { index, taskNodes ->
+            val (bytes, end) = segmentContents[index]
+            writeCollection(taskNodes) {
+                writeSmallInt(nodeIds.getValue(it))
+            }
+            writeIdentityCounts(end)
+            writeSmallInt(bytes.size)
+        }
+        for ((bytes, _) in segmentContents) {
+            writeBytes(bytes)
+        }
+    }
+
+    /**
+     * Reads the segments written by [writeTaskStateSegments], using a thread per segment up to the maximum number of workers.
+     *
+     * A segment only waits for identities read by an earlier segment, and segments are started in order,
+     * so the earliest segment that is not yet complete can always make progress. Once all segments have been read,
+     * their identities are merged into this context.
+     */
+    private
+    fun DefaultReadContext.readTaskStateSegments(nodesById: Map<Int, Node>) {
+        val preceding = readIdentityCounts()
+        val identities = SegmentIdentities(preceding)
+        var start = preceding
+        val segments = ArrayList<TaskStateSegment>()
+        val segmentCount = readSmallInt()
+        for (index in 0 until segmentCount) {
+            val taskNodes = readCollectionInto({ size -> ArrayList<LocalTaskNode>(size) }) {
+                nodesById.getValue(readSmallInt()) as LocalTaskNode
+            }
+            val end = readIdentityCounts()
+            val size = readSmallInt()
+            segments.add(TaskStateSegment(taskNodes, start, end, size))
+            start = end
+        }
+        for (segment in segments) {
+            segment.bytes = ByteArray(segment.size).also { readBytes(it) }
+        }
+        if (segments.isEmpty()) {
+            return
+        }
+
+        val threadCount = minOf(segments.size, owner.serviceOf<WorkerLeaseService>().maxWorkerCount)
+        val executor = owner.serviceOf<ExecutorFactory>().create("Configuration cache task state loader", threadCount)
+        try {
+            val results = ArrayList<Future<*>>(segments.size)
+            for (segment in segments) {
+                results.add(
+                    executor.submit(
+                        Runnable {
+                            try {
+                                readTaskStateSegment(segment, identities)
+                            } catch (e: Throwable) {
+                                identities.fail(e)
+                                throw e
+                            }
+                        }
+                    )
+                )
+            }
+            for (result in results) {
+                try {
+                    result.get()
+                } catch (e: ExecutionException) {
+                    throw e.cause ?: e
+                }
+            }
+            // What follows the work graph may refer to identities first read by a segment
+            mergeSegmentIdentities(identities)
+        } finally {
+            executor.stop()
+        }
+    }
+
+    private
+    fun DefaultReadContext.readTaskStateSegment(segment: TaskStateSegment, identities: SegmentIdentities) {
+        val codecs = segmentCodecs()
+        StringDeduplicatingKryoBackedDecoder(ByteArrayInputStream(segment.bytes)).use { decoder ->
+            segmentContextFor(decoder, codecs.userTypesCodec, identities, segment.start, segment.end).runReadOperation {
+                codecs.taskNodeCodec.run {
+                    for (taskNode in segment.taskNodes) {
+                        readTaskNodeState(taskNode)
+                    }
+                }
+            }
+        }
+    }
+
+    private
+    fun Encoder.writeIdentityCounts(counts: IdentityCounts) {
+        writeSmallInt(counts.sharedIdentities)
+        writeSmallInt(counts.classes)
+        writeSmallInt(counts.scopes)
+    }
+
+    private
+    fun Decoder.readIdentityCounts() =
+        IdentityCounts(readSmallInt(), readSmallInt(), readSmallInt())
+
+    private
+    class TaskStateSegment(
+        val taskNodes: List<LocalTaskNode>,
+        val start: IdentityCounts,
+        val end: IdentityCounts,
+        val size: Int
+    ) {
+        lateinit var bytes: ByteArray
+    }
+
     private
     suspend fun WriteContext.writeNode(
         node: Node,
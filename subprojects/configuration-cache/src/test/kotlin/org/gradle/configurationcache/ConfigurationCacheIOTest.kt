@@ -0,0 +1,251 @@
+/*
+ * Copyright 2021 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.configurationcache
+
+import com.nhaarman.mockitokotlin2.mock
+import org.gradle.cache.internal.TestCrossBuildInMemoryCacheFactory
+import org.gradle.configurationcache.fingerprint.ConfigurationCacheFingerprint
+import org.gradle.configurationcache.serialization.DefaultReadContext
+import org.gradle.configurationcache.serialization.DefaultWriteContext
+import org.gradle.configurationcache.serialization.IdentityCounts
+import org.gradle.configurationcache.serialization.IsolateOwner
+import org.gradle.configurationcache.serialization.MutableIsolateContext
+import org.gradle.configurationcache.serialization.SegmentIdentities
+import org.gradle.configurationcache.serialization.beans.BeanConstructors
+import org.gradle.configurationcache.serialization.codecs.AbstractUserTypeCodecTest
+import org.gradle.configurationcache.serialization.runReadOperation
+import org.gradle.configurationcache.serialization.runWriteOperation
+import org.gradle.configurationcache.serialization.withIsolate
+import org.gradle.internal.hash.HashCode
+import org.gradle.internal.serialize.Decoder
+import org.gradle.internal.serialize.Encoder
+import org.gradle.internal.serialize.kryo.StringDeduplicatingKryoBackedDecoder
+import org.gradle.internal.serialize.kryo.StringDeduplicatingKryoBackedEncoder
+import org.gradle.util.TestUtil
+import org.hamcrest.CoreMatchers.equalTo
+import org.hamcrest.MatcherAssert.assertThat
+import org.junit.Assert.assertTrue
+import org.junit.Test
+import java.io.ByteArrayInputStream
+import java.io.ByteArrayOutputStream
+import java.io.File
+
+
+class ConfigurationCacheIOTest : AbstractUserTypeCodecTest() {
+
+    private
+    val codec = codecs().userTypesCodec
+
+    private
+    val state = arrayListOf(
+        "org.gradle.api.DefaultTask",
+        File("build/classes/java/main"),
+        arrayListOf("org.gradle.api.DefaultTask", "compileJava", "compileJava"),
+        42
+    )
+
+    @Test
+    fun `reads uncompressed state`() {
+        val bytes = writeState(compress = false)
+
+        assertThat(bytes[0].toInt(), equalTo(0))
+        assertThat(readState(bytes), equalTo<Any>(state))
+    }
+
+    @Test
+    fun `reads compressed state`() {
+        val bytes = writeState(compress = true)
+
+        assertThat(bytes[0].toInt(), equalTo(1))
+        assertThat(readState(bytes), equalTo<Any>(state))
+    }
+
+    @Test
+    fun `compresses state`() {
+        val repetitiveState = (1..1000).map { "org.gradle.api.DefaultTask.property$it" }
+
+        assertTrue(writeState(repetitiveState, compress = true).size < writeState(repetitiveState, compress = false).size)
+    }
+
+    @Test(expected = IllegalStateException::class)
+    fun `rejects state with unknown header`() {
+        readConfigurationCacheStateHeaderFrom(ByteArrayInputStream(byteArrayOf(2)))
+    }
+
+    @Test
+    fun `reads fingerprint`() {
+        val header = ConfigurationCacheFingerprint.Header(setOf(File("included-a"), File("included-b")))
+        val fingerprint = listOf(
+            ConfigurationCacheFingerprint.InputFile(File("build.gradle.kts"), HashCode.fromInt(1)),
+            ConfigurationCacheFingerprint.InputFile(File("settings.gradle.kts"), null),
+            ConfigurationCacheFingerprint.UndeclaredSystemProperty("org.gradle.test.property")
+        )
+        val outputStream = ByteArrayOutputStream()
+        writeConfigurationCacheFingerprintHeaderTo(outputStream, header)
+        writeTo(StringDeduplicatingKryoBackedEncoder(outputStream)) {
+            fingerprint.forEach { write(it) }
+            write(null)
+        }
+
+        val inputStream = ByteArrayInputStream(outputStream.toByteArray())
+        assertThat(readConfigurationCacheFingerprintHeaderFrom(inputStream), equalTo(header))
+        assertThat(
+            readFrom(StringDeduplicatingKryoBackedDecoder(inputStream)) {
+                val inputs = ArrayList<Any>()
+                while (true) {
+                    inputs.add(read() ?: break)
+                }
+                inputs
+            },
+            equalTo<Any>(fingerprint)
+        )
+    }
+
+    @Test
+    fun `deduplicates strings`() {
+        val string = "org.gradle.api.internal.AbstractTask.property"
+        val strings = List(100) { string }
+
+        // Repeated strings are written as references to the first occurrence
+        assertTrue(writeState(strings, compress = false).size < string.length * strings.size / 4)
+        assertThat(readState(writeState(strings, compress = false)), equalTo<Any>(strings))
+    }
+
+    @Test
+    fun `reads strings shared by the main context and its segments`() {
+        val shared = "org.gradle.api.DefaultTask"
+        val mainOutput = ByteArrayOutputStream()
+        val segmentOutputs = listOf(ByteArrayOutputStream(), ByteArrayOutputStream())
+        writeTo(StringDeduplicatingKryoBackedEncoder(mainOutput)) {
+            write(shared)
+            write("main")
+            segmentOutputs.forEachIndexed { index, segmentOutput ->
+                StringDeduplicatingKryoBackedEncoder(segmentOutput).use { encoder ->
+                    segmentContextFor(encoder).writeIn {
+                        write(shared)
+                        write("segment $index")
+                        write(shared)
+                    }
+                }
+            }
+            write(shared)
+        }
+
+        val read = readFrom(StringDeduplicatingKryoBackedDecoder(ByteArrayInputStream(mainOutput.toByteArray()))) {
+            initProjectProvider { throw IllegalStateException("Unexpected project '$it'.") }
+            val main = listOf(read(), read())
+            // Strings don't have identities
+            val counts = IdentityCounts(0, 0, 0)
+            val identities = SegmentIdentities(counts)
+            val segments = segmentOutputs.map { segmentOutput ->
+                StringDeduplicatingKryoBackedDecoder(ByteArrayInputStream(segmentOutput.toByteArray())).use { decoder ->
+                    segmentContextFor(decoder, codec, identities, counts, counts).readIn {
+                        listOf(read(), read(), read())
+                    }
+                }
+            }
+            listOf(main, segments, read())
+        }
+
+        assertThat(
+            read,
+            equalTo<Any>(
+                listOf(
+                    listOf(shared, "main"),
+                    listOf(listOf(shared, "segment 0", shared), listOf(shared, "segment 1", shared)),
+                    shared
+                )
+            )
+        )
+    }
+
+    private
+    fun writeState(value: Any = state, compress: Boolean): ByteArray {
+        val outputStream = ByteArrayOutputStream()
+        writeTo(StringDeduplicatingKryoBackedEncoder(writeConfigurationCacheStateHeaderTo(outputStream, compress))) {
+            write(value)
+        }
+        return outputStream.toByteArray()
+    }
+
+    private
+    fun readState(bytes: ByteArray): Any? =
+        readFrom(StringDeduplicatingKryoBackedDecoder(readConfigurationCacheStateHeaderFrom(ByteArrayInputStream(bytes)))) {
+            read()
+        }
+
+    private
+    fun writeTo(encoder: StringDeduplicatingKryoBackedEncoder, writeOperation: suspend DefaultWriteContext.() -> Unit) {
+        writeContextFor(encoder).use { context ->
+            context.writeIn(writeOperation)
+        }
+    }
+
+    private
+    fun DefaultWriteContext.writeIn(writeOperation: suspend DefaultWriteContext.() -> Unit) {
+        withIsolateMock {
+            runWriteOperation {
+                writeOperation()
+            }
+        }
+    }
+
+    private
+    fun <T> readFrom(decoder: StringDeduplicatingKryoBackedDecoder, readOperation: suspend DefaultReadContext.() -> T): T =
+        decoder.use {
+            readContextFor(it).run {
+                initClassLoader(javaClass.classLoader)
+                readIn(readOperation)
+            }
+        }
+
+    private
+    fun <T> DefaultReadContext.readIn(readOperation: suspend DefaultReadContext.() -> T): T =
+        withIsolateMock {
+            runReadOperation {
+                readOperation()
+            }
+        }
+
+    private
+    inline fun <R> MutableIsolateContext.withIsolateMock(block: () -> R): R =
+        withIsolate(IsolateOwner.OwnerGradle(mock()), codec) {
+            block()
+        }
+
+    private
+    fun writeContextFor(encoder: Encoder) =
+        DefaultWriteContext(
+            codec = codec,
+            encoder = encoder,
+            scopeLookup = mock(),
+            logger = mock(),
+            tracer = null,
+            problemsListener = mock()
+        )
+
+    private
+    fun readContextFor(decoder: Decoder) =
+        DefaultReadContext(
+            codec = codec,
+            decoder = decoder,
+            instantiatorFactory = TestUtil.instantiatorFactory(),
+            constructors = BeanConstructors(TestCrossBuildInMemoryCacheFactory()),
+            logger = mock(),
+            problemsListener = mock()
+        )
+}
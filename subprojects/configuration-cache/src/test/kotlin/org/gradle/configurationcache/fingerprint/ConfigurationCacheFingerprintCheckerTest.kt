@@ -19,6 +19,8 @@ package org.gradle.configurationcache.fingerprint
 import com.nhaarman.mockitokotlin2.any
 import com.nhaarman.mockitokotlin2.doReturn
 import com.nhaarman.mockitokotlin2.mock
+import com.nhaarman.mockitokotlin2.never
+import com.nhaarman.mockitokotlin2.verify
 import org.gradle.api.Describable
 import org.gradle.api.internal.project.ProjectInternal
 import org.gradle.api.logging.Logger
@@ -49,6 +51,9 @@ import org.junit.Test
 import java.io.File
 import java.io.InputStream
 import java.io.OutputStream
+import java.util.concurrent.CountDownLatch
+import java.util.concurrent.Executor
+import java.util.concurrent.Executors
 
 
 class ConfigurationCacheFingerprintCheckerTest {
@@ -197,6 +202,60 @@ class ConfigurationCacheFingerprintCheckerTest {
         )
     }
 
+    @Test
+    fun `changed input invalidates without checking the inputs after it`() {
+        val changedScript = File("a/build.gradle.kts")
+        val otherScript = File("b/build.gradle.kts")
+        val host = mock<ConfigurationCacheFingerprintChecker.Host> {
+            on { hashCodeOf(changedScript) } doReturn HashCode.fromInt(2)
+            on { displayNameOf(any()) }.then { invocation ->
+                invocation.getArgument<File>(0).path
+            }
+        }
+        assertThat(
+            checkFingerprintGiven(
+                host,
+                ConfigurationCacheFingerprint.InputFile(changedScript, HashCode.fromInt(1)),
+                ConfigurationCacheFingerprint.InputFile(otherScript, HashCode.fromInt(1))
+            ),
+            equalTo("file '${changedScript.path}' has changed")
+        )
+        verify(host, never()).hashCodeOf(otherScript)
+    }
+
+    @Test
+    fun `invalidation reason does not depend on the order in which concurrent checks complete`() {
+        val firstChangedScript = File("a/build.gradle.kts")
+        val secondChangedScript = File("b/build.gradle.kts")
+        val secondChecked = CountDownLatch(1)
+        val executor = Executors.newFixedThreadPool(2)
+        try {
+            assertThat(
+                checkFingerprintGiven(
+                    mock {
+                        on { hashCodeOf(firstChangedScript) }.then {
+                            secondChecked.await()
+                            HashCode.fromInt(2)
+                        }
+                        on { hashCodeOf(secondChangedScript) }.then {
+                            secondChecked.countDown()
+                            HashCode.fromInt(2)
+                        }
+                        on { displayNameOf(any()) }.then { invocation ->
+                            invocation.getArgument<File>(0).path
+                        }
+                    },
+                    executor,
+                    ConfigurationCacheFingerprint.InputFile(firstChangedScript, HashCode.fromInt(1)),
+                    ConfigurationCacheFingerprint.InputFile(secondChangedScript, HashCode.fromInt(1))
+                ),
+                equalTo("file '${firstChangedScript.path}' has changed")
+            )
+        } finally {
+            executor.shutdownNow()
+        }
+    }
+
     private
     fun invalidationReasonForInitScriptsChange(
         from: Iterable<Pair<File, HashCode?>>,
@@ -221,16 +280,24 @@ class ConfigurationCacheFingerprintCheckerTest {
     private
     fun checkFingerprintGiven(
         host: ConfigurationCacheFingerprintChecker.Host,
-        fingerprint: ConfigurationCacheFingerprint
+        vararg fingerprints: ConfigurationCacheFingerprint
+    ): InvalidationReason? =
+        checkFingerprintGiven(host, Executor(Runnable::run), *fingerprints)
+
+    private
+    fun checkFingerprintGiven(
+        host: ConfigurationCacheFingerprintChecker.Host,
+        executor: Executor,
+        vararg fingerprints: ConfigurationCacheFingerprint
     ): InvalidationReason? {
 
         val readContext = recordWritingOf {
-            write(fingerprint)
+            fingerprints.forEach { write(it) }
             write(null)
         }
 
         return readContext.runReadOperation {
-            ConfigurationCacheFingerprintChecker(host).run {
+            ConfigurationCacheFingerprintChecker(host, executor).run {
                 checkFingerprint()
             }
         }
@@ -0,0 +1,103 @@
+/*
+ * Copyright 2021 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.configurationcache.serialization
+
+import org.hamcrest.CoreMatchers.equalTo
+import org.hamcrest.CoreMatchers.nullValue
+import org.hamcrest.CoreMatchers.sameInstance
+import org.hamcrest.MatcherAssert.assertThat
+import org.junit.Test
+import java.util.concurrent.CountDownLatch
+import java.util.concurrent.Executors
+import java.util.concurrent.TimeUnit
+
+
+class SegmentReadIdentitiesTest {
+
+    private
+    val main = ReadIdentities().apply {
+        putInstance(0, "main")
+    }
+
+    private
+    val segments = ConcurrentReadIdentities()
+
+    @Test
+    fun `reads identities of the main context and of the segment itself`() {
+        val segment = SegmentReadIdentities(main, 1, 1, 3, segments)
+
+        assertThat(segment.getInstance(0), equalTo<Any>("main"))
+        assertThat(segment.getInstance(1), nullValue())
+
+        segment.putInstance(1, "own")
+
+        assertThat(segment.getInstance(1), equalTo<Any>("own"))
+    }
+
+    @Test
+    fun `awaits identities read by an earlier segment`() {
+        val earlier = SegmentReadIdentities(main, 1, 1, 2, segments)
+        val later = SegmentReadIdentities(main, 1, 2, 3, segments)
+        val instance = Any()
+        val executor = Executors.newSingleThreadExecutor()
+        try {
+            val started = CountDownLatch(1)
+            val result = executor.submit<Any?> {
+                started.countDown()
+                later.getInstance(1)
+            }
+            started.await()
+
+            earlier.putInstance(1, instance)
+
+            assertThat(result.get(10, TimeUnit.SECONDS), sameInstance<Any?>(instance))
+        } finally {
+            executor.shutdownNow()
+        }
+    }
+
+    @Test
+    fun `makes identities read by the segments available to the main context`() {
+        val identities = SegmentIdentities(IdentityCounts(1, 0, 0))
+        val start = IdentityCounts(1, 0, 0)
+        val end = IdentityCounts(3, 0, 0)
+        val segment = identities.sharedIdentitiesOf(main, start, end)
+        val instance = Any()
+        segment.putInstance(1, instance)
+        segment.putInstance(2, "other")
+
+        identities.copyTo(main, ReadIdentities(), ReadIdentities())
+
+        assertThat(main.getInstance(0), equalTo<Any>("main"))
+        assertThat(main.getInstance(1), sameInstance<Any?>(instance))
+        assertThat(main.getInstance(2), equalTo<Any>("other"))
+    }
+
+    @Test(expected = IllegalStateException::class)
+    fun `fails to await identities of an earlier segment that failed`() {
+        val later = SegmentReadIdentities(main, 1, 2, 3, segments)
+
+        segments.fail(RuntimeException("broken segment"))
+
+        later.getInstance(1)
+    }
+
+    @Test(expected = IllegalArgumentException::class)
+    fun `rejects identities outside of the segment`() {
+        SegmentReadIdentities(main, 1, 1, 2, segments).putInstance(2, "other")
+    }
+}
@@ -1,5 +1,6 @@
 plugins {
     id("gradlebuild.distribution.api-java")
+    id("gradlebuild.jmh")
 }
 
 configurations {
@@ -157,6 +158,7 @@ dependencies {
     integTestImplementation(testFixtures(project(":native")))
     integTestImplementation(testFixtures(project(":file-temp")))
 
+    jmhImplementation(platform(project(":distributions-dependencies")))
 
     testRuntimeOnly(project(":distributions-core")) {
         because("ProjectBuilder tests load services from a Gradle distribution.")
@@ -0,0 +1,246 @@
+/*
+ * Copyright 2021 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.execution.plan;
+
+import org.gradle.api.Action;
+import org.gradle.api.internal.project.ProjectInternal;
+import org.gradle.internal.resources.ResourceLock;
+import org.gradle.internal.resources.ResourceLockState;
+import org.gradle.internal.snapshot.CaseSensitivity;
+import org.gradle.internal.work.WorkerLeaseRegistry;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import javax.annotation.Nullable;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the overhead of scheduling the nodes of a synthetic execution plan, without executing any work.
+ *
+ * The plan consists of layers of nodes, where each node depends on two nodes of the previous layer, and the nodes of the last layer are requested.
+ * This way, most of the nodes at the head of the execution queue are waiting for their dependencies.
+ * The given number of workers is simulated by keeping up to that many nodes running, and finishing the most recently started node first.
+ * This way, some nodes keep running for a long time, while the nodes depending on them wait in the queue.
+ */
+@Fork(1)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@State(Scope.Benchmark)
+public class ExecutionPlanSchedulingBenchmark {
+    private static final WorkerLeaseRegistry.WorkerLease WORKER_LEASE = new UnboundedWorkerLease();
+    private static final ResourceLockState RESOURCE_LOCK_STATE = new NoOpResourceLockState();
+
+    @Param({"100000"})
+    int nodeCount;
+
+    @Param({"1000"})
+    int nodesPerLayer;
+
+    @Param({"1", "16"})
+    int workers;
+
+    DefaultExecutionPlan executionPlan;
+
+    @Setup(Level.Invocation)
+    public void setup() {
+        List<Node> nodes = new ArrayList<>(nodeCount);
+        for (int i = 0; i < nodeCount; i++) {
+            SyntheticNode node = new SyntheticNode(i);
+            if (i >= nodesPerLayer) {
+                int layerStart = i - i % nodesPerLayer - nodesPerLayer;
+                node.addDependencySuccessor(nodes.get(layerStart + i % nodesPerLayer));
+                node.addDependencySuccessor(nodes.get(layerStart + (i * 7 + 1) % nodesPerLayer));
+            }
+            node.require();
+            node.dependenciesProcessed();
+            nodes.add(node);
+        }
+        executionPlan = new DefaultExecutionPlan(
+            "synthetic",
+            null,
+            new TaskDependencyResolver(Collections.emptyList()),
+            node -> false,
+            new ExecutionNodeAccessHierarchy(CaseSensitivity.CASE_SENSITIVE, null),
+            new ExecutionNodeAccessHierarchy(CaseSensitivity.CASE_SENSITIVE, null)
+        );
+        executionPlan.addNodes(nodes.subList(nodeCount - nodesPerLayer, nodeCount));
+        executionPlan.determineExecutionPlan();
+    }
+
+    @Benchmark
+    public int scheduleAllNodes() {
+        Deque<Node> runningNodes = new ArrayDeque<>(workers);
+        int scheduled = 0;
+        while (true) {
+            Node node = runningNodes.size() < workers
+                ? executionPlan.selectNext(WORKER_LEASE, RESOURCE_LOCK_STATE)
+                : null;
+            if (node != null) {
+                runningNodes.add(node);
+                scheduled++;
+            } else if (!runningNodes.isEmpty()) {
+                executionPlan.finishedExecuting(runningNodes.removeLast());
+            } else {
+                break;
+            }
+        }
+        if (scheduled != nodeCount) {
+            throw new IllegalStateException("Scheduled " + scheduled + " out of " + nodeCount + " nodes");
+        }
+        return scheduled;
+    }
+
+    private static class SyntheticNode extends Node {
+        private final int id;
+
+        SyntheticNode(int id) {
+            this.id = id;
+        }
+
+        @Nullable
+        @Override
+        public Throwable getNodeFailure() {
+            return null;
+        }
+
+        @Override
+        public void rethrowNodeFailure() {
+        }
+
+        @Override
+        public void prepareForExecution() {
+        }
+
+        @Override
+        public void resolveDependencies(TaskDependencyResolver dependencyResolver, Action<Node> processHardSuccessor) {
+        }
+
+        @Override
+        public Set<Node> getFinalizers() {
+            return Collections.emptySet();
+        }
+
+        @Override
+        public void resolveMutations() {
+        }
+
+        @Override
+        public boolean isPublicNode() {
+            return false;
+        }
+
+        @Override
+        public boolean requiresMonitoring() {
+            return false;
+        }
+
+        @Nullable
+        @Override
+        public ResourceLock getProjectToLock() {
+            return null;
+        }
+
+        @Nullable
+        @Override
+        public ProjectInternal getOwningProject() {
+            return null;
+        }
+
+        @Override
+        public List<? extends ResourceLock> getResourcesToLock() {
+            return Collections.emptyList();
+        }
+
+        @Override
+        public int compareTo(Node other) {
+            return Integer.compare(id, ((SyntheticNode) other).id);
+        }
+
+        @Override
+        public String toString() {
+            return "synthetic node " + id;
+        }
+    }
+
+    private static class UnboundedWorkerLease implements WorkerLeaseRegistry.WorkerLease {
+        @Override
+        public WorkerLeaseRegistry.WorkerLease createChild() {
+            return this;
+        }
+
+        @Override
+        public WorkerLeaseRegistry.WorkerLeaseCompletion startChild() {
+            return () -> {};
+        }
+
+        @Override
+        public boolean isLocked() {
+            return false;
+        }
+
+        @Override
+        public boolean isLockedByCurrentThread() {
+            return false;
+        }
+
+        @Override
+        public boolean tryLock() {
+            return true;
+        }
+
+        @Override
+        public void unlock() {
+        }
+
+        @Override
+        public String getDisplayName() {
+            return "unbounded worker lease";
+        }
+    }
+
+    private static class NoOpResourceLockState implements ResourceLockState {
+        @Override
+        public void registerLocked(ResourceLock resourceLock) {
+        }
+
+        @Override
+        public void registerUnlocked(ResourceLock resourceLock) {
+        }
+
+        @Override
+        public void releaseLocks() {
+        }
+    }
+}
@@ -0,0 +1,179 @@
+/*
+ * Copyright 2021 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.internal.execution.history.impl;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSortedMap;
+import org.gradle.api.internal.cache.StringInterner;
+import org.gradle.cache.PersistentCache;
+import org.gradle.cache.PersistentIndexedCache;
+import org.gradle.cache.PersistentIndexedCacheParameters;
+import org.gradle.cache.internal.btree.BTreePersistentIndexedCache;
+import org.gradle.caching.internal.origin.OriginMetadata;
+import org.gradle.internal.execution.history.ExecutionHistoryStore;
+import org.gradle.internal.file.FileMetadata.AccessType;
+import org.gradle.internal.file.impl.DefaultFileMetadata;
+import org.gradle.internal.fingerprint.CurrentFileCollectionFingerprint;
+import org.gradle.internal.fingerprint.impl.AbsolutePathFingerprintingStrategy;
+import org.gradle.internal.fingerprint.impl.DefaultCurrentFileCollectionFingerprint;
+import org.gradle.internal.hash.HashCode;
+import org.gradle.internal.snapshot.CompositeFileSystemSnapshot;
+import org.gradle.internal.snapshot.FileSystemSnapshot;
+import org.gradle.internal.snapshot.RegularFileSnapshot;
+import org.gradle.internal.snapshot.impl.ImplementationSnapshot;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.reflect.Proxy;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.Function;
+
+/**
+ * Compares the size of the execution history and the latency of loading from it, with and without deduplicated input file fingerprints.
+ *
+ * Each unit of work has a classpath fingerprint shared by all of them, and a source fingerprint of its own.
+ * The execution history is kept in BTree caches without in-memory caching, so each load reads from the cache files.
+ * The size of the cache files is printed when the trial ends.
+ */
+@Fork(1)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@State(Scope.Benchmark)
+public class ExecutionHistoryStoreBenchmark {
+    @Param({"false", "true"})
+    boolean deduplicateFingerprints;
+
+    @Param({"1000"})
+    int workCount;
+
+    @Param({"400"})
+    int classpathSize;
+
+    @Param({"20"})
+    int sourceCount;
+
+    File tempDir;
+    List<BTreePersistentIndexedCache<?, ?>> caches;
+    ExecutionHistoryStore store;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        tempDir = Files.createTempDirectory("execution-history").toFile();
+        caches = new ArrayList<>();
+        store = new DefaultExecutionHistoryStore(this::createPersistentCache, (maxEntriesToKeepInMemory, cacheInMemoryForShortLivedProcesses) -> null, new StringInterner(), deduplicateFingerprints);
+
+        CurrentFileCollectionFingerprint classpath = fingerprint("lib", classpathSize);
+        for (int i = 0; i < workCount; i++) {
+            store.store(
+                key(i),
+                new OriginMetadata("build-id", 1234),
+                ImplementationSnapshot.of("CompileTask", HashCode.fromInt(5678)),
+                ImmutableList.of(),
+                ImmutableSortedMap.of(),
+                ImmutableSortedMap.of("classpath", classpath, "source", fingerprint("src" + i, sourceCount)),
+                ImmutableSortedMap.of(),
+                true
+            );
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        long historySize = 0;
+        for (BTreePersistentIndexedCache<?, ?> cache : caches) {
+            cache.close();
+        }
+        for (File file : tempDir.listFiles()) {
+            historySize += file.length();
+            file.delete();
+        }
+        tempDir.delete();
+        System.out.printf("%nExecution history size: %d bytes%n", historySize);
+    }
+
+    @Benchmark
+    public void load(Blackhole blackhole) {
+        blackhole.consume(store.load(key(ThreadLocalRandom.current().nextInt(workCount))));
+    }
+
+    private static String key(int i) {
+        return ":project" + i + ":compileJava";
+    }
+
+    private static CurrentFileCollectionFingerprint fingerprint(String directory, int fileCount) {
+        List<FileSystemSnapshot> files = new ArrayList<>(fileCount);
+        for (int i = 0; i < fileCount; i++) {
+            String name = "file" + i + ".jar";
+            files.add(new RegularFileSnapshot("/" + directory + "/" + name, name, HashCode.fromInt(directory.hashCode() * 31 + i), DefaultFileMetadata.file(i, i * 1024L, AccessType.DIRECT)));
+        }
+        return DefaultCurrentFileCollectionFingerprint.from(CompositeFileSystemSnapshot.of(files), AbsolutePathFingerprintingStrategy.DEFAULT);
+    }
+
+    private PersistentCache createPersistentCache() {
+        return (PersistentCache) Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[]{PersistentCache.class}, (proxy, method, args) -> {
+            if (method.getName().equals("createCache") && args.length == 1) {
+                return createIndexedCache((PersistentIndexedCacheParameters<?, ?>) args[0]);
+            }
+            throw new UnsupportedOperationException(method.getName());
+        });
+    }
+
+    private <K, V> PersistentIndexedCache<K, V> createIndexedCache(PersistentIndexedCacheParameters<K, V> parameters) {
+        BTreePersistentIndexedCache<K, V> cache = new BTreePersistentIndexedCache<>(new File(tempDir, parameters.getCacheName() + ".bin"), parameters.getKeySerializer(), parameters.getValueSerializer());
+        caches.add(cache);
+        return new PersistentIndexedCache<K, V>() {
+            @Override
+            public V getIfPresent(K key) {
+                return cache.get(key);
+            }
+
+            @Override
+            public V get(K key, Function<? super K, ? extends V> producer) {
+                V value = cache.get(key);
+                if (value == null) {
+                    value = producer.apply(key);
+                    cache.put(key, value);
+                }
+                return value;
+            }
+
+            @Override
+            public void put(K key, V value) {
+                cache.put(key, value);
+            }
+
+            @Override
+            public void remove(K key) {
+                cache.remove(key);
+            }
+        };
+    }
+}
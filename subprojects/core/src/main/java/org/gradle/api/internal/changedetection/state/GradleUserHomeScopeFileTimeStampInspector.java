@@ -24,19 +24,21 @@
 import org.gradle.internal.service.scopes.ServiceScope;
 
 import java.util.HashSet;
+import java.util.List;
 import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 /**
  * Used for the Gradle user home file hash cache.
  *
  * Uses the same strategy for detection of file changes as {@link FileTimeStampInspector}.
  *
- * Discards hashes for all files from the {@link CachingFileHasher} which have been queried on this daemon
+ * Discards hashes for all files from the attached {@link CachingFileHasher}s which have been queried on this daemon
  * during the last build and which have a timestamp equal to the end of build timestamp.
  */
 @ServiceScope(Scopes.UserHome.class)
 public class GradleUserHomeScopeFileTimeStampInspector extends FileTimeStampInspector implements RootBuildLifecycleListener {
-    private CachingFileHasher fileHasher;
+    private final List<CachingFileHasher> fileHashers = new CopyOnWriteArrayList<>();
     private final Object lock = new Object();
     private long currentTimestamp;
     private final Set<String> filesWithCurrentTimestamp = new HashSet<>();
@@ -46,7 +48,7 @@ public GradleUserHomeScopeFileTimeStampInspector(CacheScopeMapping cacheScopeMap
     }
 
     public void attach(CachingFileHasher fileHasher) {
-        this.fileHasher = fileHasher;
+        fileHashers.add(fileHasher);
     }
 
     @Override
@@ -78,7 +80,9 @@ public void beforeComplete(GradleInternal gradle) {
                 // These files have an unreliable timestamp - discard any cached state for them and rehash next time they are seen
                 if (currentTimestamp == getLastBuildTimestamp()) {
                     for (String path : filesWithCurrentTimestamp) {
-                        fileHasher.discard(path);
+                        for (CachingFileHasher fileHasher : fileHashers) {
+                            fileHasher.discard(path);
+                        }
                     }
                 }
             } finally {
@@ -19,6 +19,7 @@
 import org.gradle.api.internal.file.FileCollectionFactory;
 import org.gradle.internal.classloader.ClasspathHasher;
 import org.gradle.internal.classpath.ClassPath;
+import org.gradle.internal.execution.caching.CacheKeyFileHasher;
 import org.gradle.internal.fingerprint.CurrentFileCollectionFingerprint;
 import org.gradle.internal.fingerprint.classpath.ClasspathFingerprinter;
 import org.gradle.internal.hash.HashCode;
@@ -27,15 +28,18 @@ public class DefaultClasspathHasher implements ClasspathHasher {
 
     private final ClasspathFingerprinter fingerprinter;
     private final FileCollectionFactory fileCollectionFactory;
+    private final CacheKeyFileHasher cacheKeyFileHasher;
 
-    public DefaultClasspathHasher(ClasspathFingerprinter fingerprinter, FileCollectionFactory fileCollectionFactory) {
+    public DefaultClasspathHasher(ClasspathFingerprinter fingerprinter, FileCollectionFactory fileCollectionFactory, CacheKeyFileHasher cacheKeyFileHasher) {
         this.fingerprinter = fingerprinter;
         this.fileCollectionFactory = fileCollectionFactory;
+        this.cacheKeyFileHasher = cacheKeyFileHasher;
     }
 
     @Override
     public HashCode hash(ClassPath classpath) {
         CurrentFileCollectionFingerprint fingerprint = fingerprinter.fingerprint(fileCollectionFactory.fixed(classpath.getAsFiles()));
-        return fingerprint.getHash();
+        // Classpath hashes end up in the implementation hashes of build cache keys
+        return cacheKeyFileHasher.rehash(fingerprint).getHash();
     }
 }
@@ -0,0 +1,56 @@
+/*
+ * Copyright 2021 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.api.internal.tasks.execution;
+
+import org.gradle.api.internal.DocumentationRegistry;
+import org.gradle.api.internal.TaskInternal;
+import org.gradle.api.internal.changedetection.TaskExecutionModeResolver;
+import org.gradle.api.internal.tasks.TaskExecutionContext;
+import org.gradle.caching.BuildCacheKey;
+import org.gradle.execution.plan.LocalTaskNode;
+import org.gradle.internal.execution.impl.DefaultWorkValidationContext;
+
+import java.util.Optional;
+
+public class DefaultTaskCacheKeyCalculator implements TaskCacheKeyCalculator {
+    private final TaskExecutionModeResolver executionModeResolver;
+    private final DocumentationRegistry documentationRegistry;
+    private final ExecuteActionsTaskExecuter executer;
+
+    public DefaultTaskCacheKeyCalculator(TaskExecutionModeResolver executionModeResolver, DocumentationRegistry documentationRegistry, ExecuteActionsTaskExecuter executer) {
+        this.executionModeResolver = executionModeResolver;
+        this.documentationRegistry = documentationRegistry;
+        this.executer = executer;
+    }
+
+    @Override
+    public Optional<BuildCacheKey> calculateCacheKey(LocalTaskNode node) {
+        TaskInternal task = node.getTask();
+        if (!task.hasTaskActions()) {
+            return Optional.empty();
+        }
+        // Validation problems are reported when the task is executed, so they are collected separately here
+        TaskExecutionContext context = new DefaultTaskExecutionContext(
+            node,
+            node.getTaskProperties(),
+            new DefaultWorkValidationContext(documentationRegistry),
+            (historyMaintained, typeValidationContext) -> {}
+        );
+        context.setTaskExecutionMode(executionModeResolver.getExecutionMode(task, node.getTaskProperties()));
+        return executer.calculateCacheKey(task, context);
+    }
+}
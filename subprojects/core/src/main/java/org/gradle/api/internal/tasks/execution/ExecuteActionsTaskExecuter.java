@@ -48,6 +48,7 @@
 import org.gradle.api.tasks.StopActionException;
 import org.gradle.api.tasks.StopExecutionException;
 import org.gradle.api.tasks.TaskExecutionException;
+import org.gradle.caching.BuildCacheKey;
 import org.gradle.caching.internal.origin.OriginMetadata;
 import org.gradle.internal.UncheckedException;
 import org.gradle.internal.event.ListenerManager;
@@ -178,6 +179,26 @@ public TaskExecuterResult execute(TaskInternal task, TaskStateInternal state, Ta
         }
     }
 
+    /**
+     * Calculates the build cache key of the task without executing it.
+     *
+     * Tasks with execution history are not keyed, as they are likely to be up-to-date.
+     *
+     * @return the key, or empty if the task would not load its outputs from the build cache.
+     */
+    public Optional<BuildCacheKey> calculateCacheKey(TaskInternal task, TaskExecutionContext context) {
+        if (!context.getTaskExecutionMode().isAllowedToUseCachedResults() || executionHistoryStore.load(task.getPath()).isPresent()) {
+            return Optional.empty();
+        }
+        TaskExecution work = new TaskExecution(task, context, executionHistoryStore, classLoaderHierarchyHasher, inputFingerprinter);
+        ExecutionEngine.Request request = executionEngine.createRequest(work);
+        request.withValidationContext(context.getValidationContext());
+        CachingState cachingState = request.calculateCachingState();
+        return cachingState.getDisabledReasons().isEmpty()
+            ? cachingState.getKey()
+            : Optional.empty();
+    }
+
     private TaskExecuterResult executeIfValid(TaskInternal task, TaskStateInternal state, TaskExecutionContext context, TaskExecution work) {
         ExecutionEngine.Request request = executionEngine.createRequest(work);
         context.getTaskExecutionMode().getRebuildReason().ifPresent(request::forceRebuild);
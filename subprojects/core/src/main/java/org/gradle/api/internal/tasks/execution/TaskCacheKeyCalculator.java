@@ -0,0 +1,34 @@
+/*
+ * Copyright 2021 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.api.internal.tasks.execution;
+
+import org.gradle.caching.BuildCacheKey;
+import org.gradle.execution.plan.LocalTaskNode;
+
+import java.util.Optional;
+
+/**
+ * Calculates the build cache key of a task ahead of its execution.
+ */
+public interface TaskCacheKeyCalculator {
+    /**
+     * Calculates the build cache key of the task of the given node, without executing the task.
+     *
+     * @return the key, or empty if the task is not expected to load its outputs from the build cache.
+     */
+    Optional<BuildCacheKey> calculateCacheKey(LocalTaskNode node);
+}
@@ -51,6 +51,8 @@
 public final class BuildCacheControllerFactory {
 
     public static final String REMOTE_CONTINUE_ON_ERROR_PROPERTY = "org.gradle.unsafe.build-cache.remote-continue-on-error";
+    public static final String REMOTE_STORE_THREADS_PROPERTY = "org.gradle.unsafe.build-cache.remote-store-threads";
+    public static final String PREFETCH_THREADS_PROPERTY = "org.gradle.unsafe.build-cache.prefetch-threads";
 
     private static final Logger LOGGER = LoggerFactory.getLogger(BuildCacheControllerFactory.class);
 
@@ -123,7 +125,9 @@ public BuildCacheController call(BuildOperationContext context) {
                         temporaryFileProvider,
                         logStackTraces,
                         emitDebugLogging,
-                        !Boolean.getBoolean(REMOTE_CONTINUE_ON_ERROR_PROPERTY)
+                        !Boolean.getBoolean(REMOTE_CONTINUE_ON_ERROR_PROPERTY),
+                        Integer.getInteger(REMOTE_STORE_THREADS_PROPERTY, 0),
+                        Integer.getInteger(PREFETCH_THREADS_PROPERTY, 0)
                     );
                 }
             }
@@ -20,6 +20,7 @@
 import org.gradle.api.execution.TaskActionListener;
 import org.gradle.api.execution.TaskExecutionListener;
 import org.gradle.api.execution.internal.TaskInputsListeners;
+import org.gradle.api.internal.DocumentationRegistry;
 import org.gradle.api.internal.cache.StringInterner;
 import org.gradle.api.internal.changedetection.TaskExecutionModeResolver;
 import org.gradle.api.internal.changedetection.changes.DefaultTaskExecutionModeResolver;
@@ -30,6 +31,7 @@
 import org.gradle.api.internal.tasks.TaskExecuter;
 import org.gradle.api.internal.tasks.execution.CatchExceptionTaskExecuter;
 import org.gradle.api.internal.tasks.execution.CleanupStaleOutputsExecuter;
+import org.gradle.api.internal.tasks.execution.DefaultTaskCacheKeyCalculator;
 import org.gradle.api.internal.tasks.execution.DefaultEmptySourceTaskSkipper;
 import org.gradle.api.internal.tasks.execution.DefaultTaskCacheabilityResolver;
 import org.gradle.api.internal.tasks.execution.EmptySourceTaskSkipper;
@@ -39,6 +41,7 @@
 import org.gradle.api.internal.tasks.execution.ResolveTaskExecutionModeExecuter;
 import org.gradle.api.internal.tasks.execution.SkipOnlyIfTaskExecuter;
 import org.gradle.api.internal.tasks.execution.SkipTaskWithNoActionsExecuter;
+import org.gradle.api.internal.tasks.execution.TaskCacheKeyCalculator;
 import org.gradle.api.internal.tasks.execution.TaskCacheabilityResolver;
 import org.gradle.caching.internal.controller.BuildCacheController;
 import org.gradle.execution.plan.ExecutionNodeAccessHierarchies;
@@ -134,26 +137,22 @@ TaskExecuter createTaskExecuter(
         ExecutionEngine executionEngine,
         InputFingerprinter inputFingerprinter
     ) {
-        TaskExecuter executer = new ExecuteActionsTaskExecuter(
-            buildCacheController.isEnabled()
-                ? ExecuteActionsTaskExecuter.BuildCacheState.ENABLED
-                : ExecuteActionsTaskExecuter.BuildCacheState.DISABLED,
-            gradleEnterprisePluginManager.isPresent()
-                ? ExecuteActionsTaskExecuter.ScanPluginState.APPLIED
-                : ExecuteActionsTaskExecuter.ScanPluginState.NOT_APPLIED,
-            executionHistoryStore,
-            buildOperationExecutor,
+        TaskExecuter executer = newExecuteActionsTaskExecuter(
             asyncWorkTracker,
-            actionListener,
-            taskCacheabilityResolver,
+            buildCacheController,
+            buildOperationExecutor,
+            gradleEnterprisePluginManager,
             classLoaderHierarchyHasher,
-            executionEngine,
-            inputFingerprinter,
-            listenerManager,
-            reservedFileSystemLocationRegistry,
             emptySourceTaskSkipper,
+            executionHistoryStore,
             fileCollectionFactory,
-            fileOperations
+            fileOperations,
+            listenerManager,
+            reservedFileSystemLocationRegistry,
+            actionListener,
+            taskCacheabilityResolver,
+            executionEngine,
+            inputFingerprinter
         );
         executer = new CleanupStaleOutputsExecuter(
             buildOperationExecutor,
@@ -172,6 +171,85 @@ TaskExecuter createTaskExecuter(
         return executer;
     }
 
+    TaskCacheKeyCalculator createTaskCacheKeyCalculator(
+        AsyncWorkTracker asyncWorkTracker,
+        BuildCacheController buildCacheController,
+        BuildOperationExecutor buildOperationExecutor,
+        DocumentationRegistry documentationRegistry,
+        GradleEnterprisePluginManager gradleEnterprisePluginManager,
+        ClassLoaderHierarchyHasher classLoaderHierarchyHasher,
+        EmptySourceTaskSkipper emptySourceTaskSkipper,
+        ExecutionHistoryStore executionHistoryStore,
+        FileCollectionFactory fileCollectionFactory,
+        FileOperations fileOperations,
+        ListenerManager listenerManager,
+        ReservedFileSystemLocationRegistry reservedFileSystemLocationRegistry,
+        TaskActionListener actionListener,
+        TaskCacheabilityResolver taskCacheabilityResolver,
+        TaskExecutionModeResolver repository,
+        ExecutionEngine executionEngine,
+        InputFingerprinter inputFingerprinter
+    ) {
+        // Uses its own executer, as the one executing tasks is only available wrapped in the other task executers
+        return new DefaultTaskCacheKeyCalculator(repository, documentationRegistry, newExecuteActionsTaskExecuter(
+            asyncWorkTracker,
+            buildCacheController,
+            buildOperationExecutor,
+            gradleEnterprisePluginManager,
+            classLoaderHierarchyHasher,
+            emptySourceTaskSkipper,
+            executionHistoryStore,
+            fileCollectionFactory,
+            fileOperations,
+            listenerManager,
+            reservedFileSystemLocationRegistry,
+            actionListener,
+            taskCacheabilityResolver,
+            executionEngine,
+            inputFingerprinter
+        ));
+    }
+
+    private static ExecuteActionsTaskExecuter newExecuteActionsTaskExecuter(
+        AsyncWorkTracker asyncWorkTracker,
+        BuildCacheController buildCacheController,
+        BuildOperationExecutor buildOperationExecutor,
+        GradleEnterprisePluginManager gradleEnterprisePluginManager,
+        ClassLoaderHierarchyHasher classLoaderHierarchyHasher,
+        EmptySourceTaskSkipper emptySourceTaskSkipper,
+        ExecutionHistoryStore executionHistoryStore,
+        FileCollectionFactory fileCollectionFactory,
+        FileOperations fileOperations,
+        ListenerManager listenerManager,
+        ReservedFileSystemLocationRegistry reservedFileSystemLocationRegistry,
+        TaskActionListener actionListener,
+        TaskCacheabilityResolver taskCacheabilityResolver,
+        ExecutionEngine executionEngine,
+        InputFingerprinter inputFingerprinter
+    ) {
+        return new ExecuteActionsTaskExecuter(
+            buildCacheController.isEnabled()
+                ? ExecuteActionsTaskExecuter.BuildCacheState.ENABLED
+                : ExecuteActionsTaskExecuter.BuildCacheState.DISABLED,
+            gradleEnterprisePluginManager.isPresent()
+                ? ExecuteActionsTaskExecuter.ScanPluginState.APPLIED
+                : ExecuteActionsTaskExecuter.ScanPluginState.NOT_APPLIED,
+            executionHistoryStore,
+            buildOperationExecutor,
+            asyncWorkTracker,
+            actionListener,
+            taskCacheabilityResolver,
+            classLoaderHierarchyHasher,
+            executionEngine,
+            inputFingerprinter,
+            listenerManager,
+            reservedFileSystemLocationRegistry,
+            emptySourceTaskSkipper,
+            fileCollectionFactory,
+            fileOperations
+        );
+    }
+
     // Overrides the global ClasspathFingerPrinter, currently need to have the parent parameter
     ClasspathFingerprinter createClasspathFingerprinter(ClasspathFingerprinter parent, ResourceSnapshotterCacheService resourceSnapshotterCacheService, FileCollectionSnapshotter fileCollectionSnapshotter, StringInterner stringInterner, InputNormalizationHandlerInternal inputNormalizationHandler) {
         return new DefaultClasspathFingerprinter(
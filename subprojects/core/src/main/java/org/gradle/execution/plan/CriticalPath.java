@@ -0,0 +1,66 @@
+/*
+ * Copyright 2021 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.execution.plan;
+
+import com.google.common.collect.ImmutableList;
+
+/**
+ * The longest chain of dependent nodes of an execution plan, as predicted from previous executions before executing the plan,
+ * and as it actually turned out while executing the plan.
+ */
+public class CriticalPath {
+    private final ImmutableList<Node> predictedNodes;
+    private final long predictedDurationMillis;
+    private final ImmutableList<Node> actualNodes;
+    private final long actualDurationMillis;
+
+    public CriticalPath(ImmutableList<Node> predictedNodes, long predictedDurationMillis, ImmutableList<Node> actualNodes, long actualDurationMillis) {
+        this.predictedNodes = predictedNodes;
+        this.predictedDurationMillis = predictedDurationMillis;
+        this.actualNodes = actualNodes;
+        this.actualDurationMillis = actualDurationMillis;
+    }
+
+    /**
+     * The nodes on the predicted critical path, in execution order.
+     */
+    public ImmutableList<Node> getPredictedNodes() {
+        return predictedNodes;
+    }
+
+    /**
+     * The sum of the expected durations of the nodes on the predicted critical path.
+     */
+    public long getPredictedDurationMillis() {
+        return predictedDurationMillis;
+    }
+
+    /**
+     * The nodes on the actual critical path, in execution order.
+     * Each node is the dependency of the next node that finished executing last.
+     */
+    public ImmutableList<Node> getActualNodes() {
+        return actualNodes;
+    }
+
+    /**
+     * The time from the start of the first node to the end of the last node on the actual critical path.
+     */
+    public long getActualDurationMillis() {
+        return actualDurationMillis;
+    }
+}
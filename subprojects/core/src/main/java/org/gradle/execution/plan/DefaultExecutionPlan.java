@@ -31,6 +31,7 @@
 import org.gradle.api.specs.Spec;
 import org.gradle.api.specs.Specs;
 import org.gradle.internal.Pair;
+import org.gradle.internal.execution.history.ExecutionDurationStore;
 import org.gradle.internal.graph.CachingDirectedGraphWalker;
 import org.gradle.internal.graph.DirectedGraphRenderer;
 import org.gradle.internal.logging.text.StyledTextOutput;
@@ -50,12 +51,14 @@
 import java.util.Deque;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.IdentityHashMap;
 import java.util.Iterator;
 import java.util.LinkedHashSet;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.TimeUnit;
 import java.util.stream.Stream;
 
 import static com.google.common.collect.Lists.newLinkedList;
@@ -66,11 +69,16 @@
  */
 @NonNullApi
 public class DefaultExecutionPlan implements ExecutionPlan {
+    /**
+     * Enables executing the ready nodes on the longest remaining path first, based on the durations of previous executions.
+     */
+    public static final String CRITICAL_PATH_SCHEDULING_PROPERTY = "org.gradle.unsafe.critical-path-scheduling";
+
     private static final Logger LOGGER = LoggerFactory.getLogger(DefaultExecutionPlan.class);
 
     private final Set<Node> entryNodes = new LinkedHashSet<>();
     private final NodeMapping nodeMapping = new NodeMapping();
-    private final List<Node> executionQueue = new LinkedList<>();
+    private final ExecutionQueue executionQueue = new ExecutionQueue();
     private final Set<ResourceLock> projectLocks = new HashSet<>();
     private final FailureCollector failureCollector = new FailureCollector();
     private final String displayName;
@@ -85,11 +93,20 @@ public class DefaultExecutionPlan implements ExecutionPlan {
     private boolean continueOnFailure;
 
     private final Set<Node> runningNodes = newIdentityHashSet();
+    private final Set<Node> prefetchedNodes = newIdentityHashSet();
+    private final Set<Node> prefetchingNodes = newIdentityHashSet();
     private final Set<Node> filteredNodes = newIdentityHashSet();
     private final Set<Node> producedButNotYetConsumed = newIdentityHashSet();
     private final Map<Pair<Node, Node>, Boolean> reachableCache = new HashMap<>();
     private final List<Node> dependenciesWhichRequireMonitoring = new ArrayList<>();
-    private boolean maybeNodesReady;
+    @Nullable
+    private final ExecutionDurationStore executionDurations;
+    private final Map<Node, Long> startTimes = new IdentityHashMap<>();
+    private final Map<Node, Long> finishTimes = new IdentityHashMap<>();
+    // Measured while holding the state lock, and written to the store once the plan is cleared
+    private final Map<String, Long> measuredDurations = new HashMap<>();
+    private ImmutableList<Node> predictedCriticalPath = ImmutableList.of();
+    private long predictedCriticalPathDuration;
 
     private boolean buildCancelled;
 
@@ -100,6 +117,21 @@ public DefaultExecutionPlan(
         NodeValidator nodeValidator,
         ExecutionNodeAccessHierarchy outputHierarchy,
         ExecutionNodeAccessHierarchy destroyableHierarchy
+    ) {
+        this(displayName, taskNodeFactory, dependencyResolver, nodeValidator, outputHierarchy, destroyableHierarchy, null);
+    }
+
+    /**
+     * Creates an execution plan which prioritizes the nodes on the critical path, when the durations of previous executions are given.
+     */
+    public DefaultExecutionPlan(
+        String displayName,
+        TaskNodeFactory taskNodeFactory,
+        TaskDependencyResolver dependencyResolver,
+        NodeValidator nodeValidator,
+        ExecutionNodeAccessHierarchy outputHierarchy,
+        ExecutionNodeAccessHierarchy destroyableHierarchy,
+        @Nullable ExecutionDurationStore executionDurations
     ) {
         this.displayName = displayName;
         this.taskNodeFactory = taskNodeFactory;
@@ -107,6 +139,7 @@ public DefaultExecutionPlan(
         this.nodeValidator = nodeValidator;
         this.outputHierarchy = outputHierarchy;
         this.destroyableHierarchy = destroyableHierarchy;
+        this.executionDurations = executionDurations;
     }
 
     @Override
@@ -353,13 +386,64 @@ public NodeInVisitingSegment apply(Node node) {
         executionQueue.clear();
         dependencyResolver.clear();
         nodeMapping.removeIf(Node::requiresMonitoring);
-        executionQueue.addAll(nodeMapping);
-        for (Node node : executionQueue) {
-            maybeNodesReady |= node.updateAllDependenciesComplete() && node.isReady();
+        for (Node node : nodeMapping) {
+            node.updateAllDependenciesComplete();
+        }
+        if (executionDurations != null) {
+            Map<Node, Long> criticalPathDurations = determineCriticalPathDurations(executionDurations);
+            executionQueue.addAll(nodeMapping, node -> criticalPathDurations.getOrDefault(node, 0L));
+        } else {
+            executionQueue.addAll(nodeMapping);
         }
         this.dependenciesWhichRequireMonitoring.addAll(dependenciesWhichRequireMonitoring);
     }
 
+    /**
+     * Determines for each node the expected duration of the longest chain of nodes starting with it, and the chain of nodes which is expected to take longest overall.
+     */
+    private Map<Node, Long> determineCriticalPathDurations(ExecutionDurationStore executionDurations) {
+        List<Node> nodes = new ArrayList<>(nodeMapping);
+        Map<Node, Long> criticalPathDurations = new IdentityHashMap<>(nodes.size());
+        Map<Node, Node> nextNodesOnCriticalPath = new IdentityHashMap<>();
+        Node firstNodeOnCriticalPath = null;
+        // The plan is in execution order, so the nodes depending on a node have been visited before it when iterating backwards
+        for (int i = nodes.size() - 1; i >= 0; i--) {
+            Node node = nodes.get(i);
+            Node nextNode = null;
+            long remainingDuration = 0;
+            for (Node predecessor : node.getAllPredecessors()) {
+                Long predecessorDuration = criticalPathDurations.get(predecessor);
+                if (predecessorDuration != null && predecessorDuration > remainingDuration) {
+                    nextNode = predecessor;
+                    remainingDuration = predecessorDuration;
+                }
+            }
+            long duration = getExpectedDuration(executionDurations, node) + remainingDuration;
+            criticalPathDurations.put(node, duration);
+            if (nextNode != null) {
+                nextNodesOnCriticalPath.put(node, nextNode);
+            }
+            if (firstNodeOnCriticalPath == null || duration >= criticalPathDurations.get(firstNodeOnCriticalPath)) {
+                firstNodeOnCriticalPath = node;
+            }
+        }
+
+        ImmutableList.Builder<Node> criticalPath = ImmutableList.builder();
+        for (Node node = firstNodeOnCriticalPath; node != null; node = nextNodesOnCriticalPath.get(node)) {
+            criticalPath.add(node);
+        }
+        predictedCriticalPath = criticalPath.build();
+        predictedCriticalPathDuration = firstNodeOnCriticalPath == null ? 0 : criticalPathDurations.get(firstNodeOnCriticalPath);
+        return criticalPathDurations;
+    }
+
+    private static long getExpectedDuration(ExecutionDurationStore executionDurations, Node node) {
+        if (node instanceof LocalTaskNode) {
+            return executionDurations.load(((LocalTaskNode) node).getTask().getPath()).orElse(0);
+        }
+        return 0;
+    }
+
     private void maybeRemoveProcessedShouldRunAfterEdge(Deque<GraphEdge> walkedShouldRunAfterEdges, Node node) {
         GraphEdge edge = walkedShouldRunAfterEdges.peek();
         if (edge != null && edge.to.equals(node)) {
@@ -491,6 +575,7 @@ private void onOrderingCycle(Node successor, Node currentNode) {
 
     @Override
     public void clear() {
+        storeMeasuredDurations();
         taskNodeFactory.clear();
         dependencyResolver.clear();
         entryNodes.clear();
@@ -502,6 +587,12 @@ public void clear() {
         reachableCache.clear();
         dependenciesWhichRequireMonitoring.clear();
         runningNodes.clear();
+        prefetchedNodes.clear();
+        prefetchingNodes.clear();
+        startTimes.clear();
+        finishTimes.clear();
+        predictedCriticalPath = ImmutableList.of();
+        predictedCriticalPathDuration = 0;
         outputHierarchy.clear();
         destroyableHierarchy.clear();
     }
@@ -552,11 +643,6 @@ public void setContinueOnFailure(boolean continueOnFailure) {
     @Override
     @Nullable
     public Node selectNext(WorkerLeaseRegistry.WorkerLease workerLease, ResourceLockState resourceLockState) {
-        if (allProjectsLocked()) {
-            // TODO - this is incorrect. We can still run nodes that don't need a project lock
-            return null;
-        }
-
         for (Iterator<Node> iterator = dependenciesWhichRequireMonitoring.iterator(); iterator.hasNext();) {
             Node node = iterator.next();
             if (node.isComplete()) {
@@ -565,39 +651,75 @@ public Node selectNext(WorkerLeaseRegistry.WorkerLease workerLease, ResourceLock
                 iterator.remove();
             }
         }
-        if (!maybeNodesReady) {
+        if (!executionQueue.hasReadyCandidates()) {
             return null;
         }
-        Iterator<Node> iterator = executionQueue.iterator();
+        // When all projects are locked, only nodes that don't need a project lock can run
+        boolean allProjectsLocked = allProjectsLocked();
+        // Only visit the nodes that are ready to execute, rather than the whole queue
+        Iterator<Node> iterator = executionQueue.readyNodes();
         boolean foundReadyNode = false;
         while (iterator.hasNext()) {
             Node node = iterator.next();
-            if (node.isReady() && node.allDependenciesComplete()) {
-                foundReadyNode = true;
-                MutationInfo mutations = getResolvedMutationInfo(node);
+            foundReadyNode = true;
+            if (allProjectsLocked && node.getProjectToLock() != null) {
+                continue;
+            }
+            if (prefetchingNodes.contains(node)) {
+                continue;
+            }
+            MutationInfo mutations = getResolvedMutationInfo(node);
 
-                if (!tryAcquireLocksForNode(node, workerLease, mutations)) {
-                    resourceLockState.releaseLocks();
-                    continue;
-                }
+            if (!tryAcquireLocksForNode(node, workerLease, mutations)) {
+                resourceLockState.releaseLocks();
+                continue;
+            }
 
-                if (node.allDependenciesSuccessful()) {
-                    node.startExecution(this::recordNodeExecutionStarted);
-                    if (mutations.hasValidationProblem) {
-                        invalidNodeRunning = true;
-                    }
-                } else {
-                    node.skipExecution(this::recordNodeCompleted);
+            iterator.remove();
+            if (node.allDependenciesSuccessful()) {
+                node.startExecution(this::recordNodeExecutionStarted);
+                if (mutations.hasValidationProblem) {
+                    invalidNodeRunning = true;
                 }
-                iterator.remove();
-                return node;
+            } else {
+                node.skipExecution(this::recordNodeCompleted);
             }
+            return node;
         }
         LOGGER.debug("No node could be selected, nodes ready: {}", foundReadyNode);
-        maybeNodesReady = foundReadyNode;
         return null;
     }
 
+    @Override
+    @Nullable
+    public Node selectNextToPrefetch() {
+        if (invalidNodeRunning || !executionQueue.hasReadyCandidates()) {
+            return null;
+        }
+        Iterator<Node> iterator = executionQueue.readyNodes();
+        while (iterator.hasNext()) {
+            Node node = iterator.next();
+            // Only nodes that don't need a project lock can be prefetched, as the task is inspected while other nodes run
+            if (!(node instanceof LocalTaskNode) || node.getProjectToLock() != null || prefetchedNodes.contains(node) || !node.allDependenciesSuccessful()) {
+                continue;
+            }
+            MutationInfo mutations = getResolvedMutationInfo(node);
+            // The outputs of the node are snapshotted, so they must not be changed by running nodes
+            if (mutations.hasValidationProblem || hasRunningNodeWithOverlappingMutations(mutations)) {
+                continue;
+            }
+            prefetchedNodes.add(node);
+            prefetchingNodes.add(node);
+            return node;
+        }
+        return null;
+    }
+
+    @Override
+    public void finishedPrefetching(Node node) {
+        prefetchingNodes.remove(node);
+    }
+
     private boolean tryAcquireLocksForNode(Node node, WorkerLeaseRegistry.WorkerLease workerLease, MutationInfo mutations) {
         if (!tryLockProjectFor(node)) {
             LOGGER.debug("Cannot acquire project lock for node {}", node);
@@ -620,7 +742,9 @@ private boolean tryAcquireLocksForNode(Node node, WorkerLeaseRegistry.WorkerLeas
 
     private void updateAllDependenciesCompleteForPredecessors(Node node) {
         for (Node predecessor : node.getAllPredecessors()) {
-            maybeNodesReady |= predecessor.updateAllDependenciesComplete() && predecessor.isReady();
+            if (predecessor.updateAllDependenciesComplete()) {
+                executionQueue.maybeReady(predecessor);
+            }
         }
     }
 
@@ -682,7 +806,7 @@ private boolean canRunWithCurrentlyExecutedNodes(MutationInfo mutations) {
     }
 
     private boolean hasRunningNodeWithOverlappingMutations(MutationInfo mutations) {
-        if (runningNodes.isEmpty()) {
+        if (runningNodes.isEmpty() && prefetchingNodes.isEmpty()) {
             return false;
         }
         Set<String> candidateNodeOutputs = mutations.outputPaths;
@@ -695,7 +819,7 @@ private boolean hasRunningNodeWithOverlappingMutations(MutationInfo mutations) {
                     outputHierarchy.getNodesAccessing(candidateMutationPath).stream(),
                     destroyableHierarchy.getNodesAccessing(candidateMutationPath).stream()
                 );
-                if (nodesMutatingCandidatePath.anyMatch(runningNodes::contains)) {
+                if (nodesMutatingCandidatePath.anyMatch(node -> runningNodes.contains(node) || prefetchingNodes.contains(node))) {
                     return true;
                 }
             }
@@ -753,6 +877,28 @@ private boolean doesConsumerDependOnDestroyer(Node consumer, Node destroyer) {
 
     private void recordNodeExecutionStarted(Node node) {
         runningNodes.add(node);
+        if (executionDurations != null) {
+            startTimes.put(node, System.nanoTime());
+        }
+    }
+
+    private void recordNodeExecutionFinished(Node node) {
+        Long startTime = startTimes.get(node);
+        if (executionDurations == null || startTime == null) {
+            return;
+        }
+        long finishTime = System.nanoTime();
+        finishTimes.put(node, finishTime);
+        if (node instanceof LocalTaskNode && !node.isFailed()) {
+            measuredDurations.put(((LocalTaskNode) node).getTask().getPath(), TimeUnit.NANOSECONDS.toMillis(finishTime - startTime));
+        }
+    }
+
+    private void storeMeasuredDurations() {
+        if (executionDurations != null) {
+            measuredDurations.forEach(executionDurations::store);
+        }
+        measuredDurations.clear();
     }
 
     private void recordNodeCompleted(Node node) {
@@ -777,7 +923,6 @@ public void finishedExecuting(Node node) {
         try {
             if (!node.isComplete()) {
                 enforceFinalizers(node);
-                maybeNodesReady = true;
                 if (node.isFailed()) {
                     LOGGER.debug("Node {} failed", node);
                     handleFailure(node);
@@ -786,6 +931,7 @@ public void finishedExecuting(Node node) {
                 }
 
                 runningNodes.remove(node);
+                recordNodeExecutionFinished(node);
                 node.finishExecution(this::recordNodeCompleted);
             } else {
                 LOGGER.debug("Already completed node {} reported as finished executing", node);
@@ -797,7 +943,7 @@ public void finishedExecuting(Node node) {
         }
     }
 
-    private static void enforceFinalizers(Node node) {
+    private void enforceFinalizers(Node node) {
         for (Node finalizerNode : node.getFinalizers()) {
             if (finalizerNode.isRequired() || finalizerNode.isMustNotRun()) {
                 enforceWithDependencies(finalizerNode);
@@ -805,7 +951,7 @@ private static void enforceFinalizers(Node node) {
         }
     }
 
-    private static void enforceWithDependencies(Node node) {
+    private void enforceWithDependencies(Node node) {
         Set<Node> enforcedNodes = new HashSet<>();
 
         Deque<Node> candidates = new ArrayDeque<>();
@@ -820,9 +966,11 @@ private static void enforceWithDependencies(Node node) {
 
                 if (candidate.isMustNotRun() || candidate.isRequired()) {
                     candidate.enforceRun();
+                    executionQueue.maybeReady(candidate);
                     // Completed changed from true to false - inform all nodes depending on this one.
                     for (Node predecessor : candidate.getAllPredecessors()) {
                         predecessor.forceAllDependenciesCompleteUpdate();
+                        executionQueue.maybeReady(predecessor);
                     }
                 }
             }
@@ -906,12 +1054,7 @@ public boolean allNodesComplete() {
 
     @Override
     public boolean hasNodesRemaining() {
-        for (Node node : executionQueue) {
-            if (!node.isComplete()) {
-                return true;
-            }
-        }
-        return !runningNodes.isEmpty();
+        return executionQueue.hasIncompleteNodes() || !runningNodes.isEmpty();
     }
 
     @Override
@@ -919,6 +1062,37 @@ public int size() {
         return nodeMapping.getNumberOfPublicNodes();
     }
 
+    @Override
+    @Nullable
+    public CriticalPath getCriticalPath() {
+        if (executionDurations == null) {
+            return null;
+        }
+        Node lastNode = latestFinished(finishTimes.keySet());
+        Deque<Node> actualCriticalPath = new ArrayDeque<>();
+        for (Node node = lastNode; node != null; node = latestFinished(node.getAllSuccessors())) {
+            actualCriticalPath.addFirst(node);
+        }
+        long actualDuration = lastNode == null
+            ? 0
+            : TimeUnit.NANOSECONDS.toMillis(finishTimes.get(lastNode) - startTimes.get(actualCriticalPath.getFirst()));
+        return new CriticalPath(predictedCriticalPath, predictedCriticalPathDuration, ImmutableList.copyOf(actualCriticalPath), actualDuration);
+    }
+
+    @Nullable
+    private Node latestFinished(Iterable<Node> nodes) {
+        Node latestNode = null;
+        long latestFinishTime = Long.MIN_VALUE;
+        for (Node node : nodes) {
+            Long finishTime = finishTimes.get(node);
+            if (finishTime != null && finishTime > latestFinishTime) {
+                latestNode = node;
+                latestFinishTime = finishTime;
+            }
+        }
+        return latestNode;
+    }
+
     private static class GraphEdge {
         private final Node from;
         private final Node to;
@@ -33,8 +33,10 @@
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import javax.annotation.Nullable;
 import java.util.Collection;
 import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicLong;
 
 import static org.gradle.internal.resources.DefaultResourceLockCoordinationService.unlock;
@@ -43,6 +45,11 @@
 
 @NonNullApi
 public class DefaultPlanExecutor implements PlanExecutor {
+    /**
+     * Enables reporting the time the execution workers spent executing nodes and waiting for nodes to become ready.
+     */
+    public static final String WORKER_STATS_PROPERTY = "org.gradle.internal.execution.worker.stats";
+
     private static final Logger LOGGER = LoggerFactory.getLogger(DefaultPlanExecutor.class);
     private final int executorCount;
     private final ExecutorFactory executorFactory;
@@ -64,16 +71,26 @@ public DefaultPlanExecutor(ParallelismConfiguration parallelismConfiguration, Ex
     }
 
     @Override
-    public void process(ExecutionPlan executionPlan, Collection<? super Throwable> failures, Action<Node> nodeExecutor) {
+    public void process(ExecutionPlan executionPlan, Collection<? super Throwable> failures, Action<Node> nodeExecutor, @Nullable Action<Node> nodePrefetcher) {
         ManagedExecutor executor = executorFactory.create("Execution worker for '" + executionPlan.getDisplayName() + "'");
+        WorkerStatistics workerStatistics = new WorkerStatistics();
+        AtomicBoolean executionFinished = new AtomicBoolean();
         try {
             WorkerLease parentWorkerLease = workerLeaseService.getCurrentWorkerLease();
-            startAdditionalWorkers(executionPlan, nodeExecutor, executor, parentWorkerLease);
-            new ExecutorWorker(executionPlan, nodeExecutor, parentWorkerLease, cancellationToken, coordinationService).run();
+            if (nodePrefetcher != null) {
+                executor.execute(new PrefetchWorker(executionPlan, nodePrefetcher, cancellationToken, coordinationService, executionFinished));
+            }
+            startAdditionalWorkers(executionPlan, nodeExecutor, executor, parentWorkerLease, workerStatistics);
+            new ExecutorWorker(executionPlan, nodeExecutor, parentWorkerLease, cancellationToken, coordinationService, workerStatistics).run();
             awaitCompletion(executionPlan, failures);
         } finally {
+            executionFinished.set(true);
+            coordinationService.notifyStateChange();
             executor.stop();
         }
+        if (workerStatistics.isEnabled()) {
+            LOGGER.warn("Execution workers for '{}' were busy for {}ms and idle for {}ms.", executionPlan.getDisplayName(), workerStatistics.getBusyMillis(), workerStatistics.getIdleMillis());
+        }
     }
 
     /**
@@ -90,11 +107,97 @@ private void awaitCompletion(final ExecutionPlan executionPlan, final Collection
         });
     }
 
-    private void startAdditionalWorkers(ExecutionPlan executionPlan, Action<? super Node> nodeExecutor, Executor executor, WorkerLease parentWorkerLease) {
+    private void startAdditionalWorkers(ExecutionPlan executionPlan, Action<? super Node> nodeExecutor, Executor executor, WorkerLease parentWorkerLease, WorkerStatistics workerStatistics) {
         LOGGER.debug("Using {} parallel executor threads", executorCount);
 
         for (int i = 1; i < executorCount; i++) {
-            executor.execute(new ExecutorWorker(executionPlan, nodeExecutor, parentWorkerLease, cancellationToken, coordinationService));
+            executor.execute(new ExecutorWorker(executionPlan, nodeExecutor, parentWorkerLease, cancellationToken, coordinationService, workerStatistics));
+        }
+    }
+
+    private static class WorkerStatistics {
+        private final AtomicLong busy = new AtomicLong();
+        private final AtomicLong idle = new AtomicLong();
+
+        void record(long busyMillis, long totalMillis) {
+            busy.addAndGet(busyMillis);
+            idle.addAndGet(totalMillis - busyMillis);
+        }
+
+        long getBusyMillis() {
+            return busy.get();
+        }
+
+        long getIdleMillis() {
+            return idle.get();
+        }
+
+        boolean isEnabled() {
+            return System.getProperty(WORKER_STATS_PROPERTY) != null;
+        }
+    }
+
+    /**
+     * Starts prefetching the build cache entries of the nodes that are ready to execute, but are not executing yet.
+     *
+     * Does not hold a worker lease, as it only starts the downloads and does not execute any nodes.
+     */
+    private static class PrefetchWorker implements Runnable {
+        private final ExecutionPlan executionPlan;
+        private final Action<? super Node> nodePrefetcher;
+        private final BuildCancellationToken cancellationToken;
+        private final ResourceLockCoordinationService coordinationService;
+        private final AtomicBoolean executionFinished;
+
+        private PrefetchWorker(ExecutionPlan executionPlan, Action<? super Node> nodePrefetcher, BuildCancellationToken cancellationToken, ResourceLockCoordinationService coordinationService, AtomicBoolean executionFinished) {
+            this.executionPlan = executionPlan;
+            this.nodePrefetcher = nodePrefetcher;
+            this.cancellationToken = cancellationToken;
+            this.coordinationService = coordinationService;
+            this.executionFinished = executionFinished;
+        }
+
+        @Override
+        public void run() {
+            while (true) {
+                Node selected = selectNextToPrefetch();
+                if (selected == null) {
+                    break;
+                }
+                try {
+                    nodePrefetcher.execute(selected);
+                } catch (Throwable e) {
+                    // Prefetching is best effort, the node loads its entry itself when it executes
+                    LOGGER.debug("Could not prefetch {}", selected, e);
+                } finally {
+                    coordinationService.withStateLock(state -> {
+                        executionPlan.finishedPrefetching(selected);
+                        return FINISHED;
+                    });
+                    // Executor workers may be waiting for the node
+                    coordinationService.notifyStateChange();
+                }
+            }
+        }
+
+        /**
+         * Selects a node to prefetch. If no node can be prefetched, blocks until one can.
+         *
+         * @return the node, or {@code null} once execution has finished.
+         */
+        @Nullable
+        private Node selectNextToPrefetch() {
+            MutableReference<Node> selected = MutableReference.empty();
+            coordinationService.withStateLock(resourceLockState -> {
+                if (executionFinished.get() || cancellationToken.isCancellationRequested() || !executionPlan.hasNodesRemaining()) {
+                    return FINISHED;
+                }
+                selected.set(executionPlan.selectNextToPrefetch());
+                return selected.get() == null
+                    ? RETRY
+                    : FINISHED;
+            });
+            return selected.get();
         }
     }
 
@@ -104,13 +207,15 @@ private static class ExecutorWorker implements Runnable {
         private final WorkerLease parentWorkerLease;
         private final BuildCancellationToken cancellationToken;
         private final ResourceLockCoordinationService coordinationService;
+        private final WorkerStatistics workerStatistics;
 
-        private ExecutorWorker(ExecutionPlan executionPlan, Action<? super Node> nodeExecutor, WorkerLease parentWorkerLease, BuildCancellationToken cancellationToken, ResourceLockCoordinationService coordinationService) {
+        private ExecutorWorker(ExecutionPlan executionPlan, Action<? super Node> nodeExecutor, WorkerLease parentWorkerLease, BuildCancellationToken cancellationToken, ResourceLockCoordinationService coordinationService, WorkerStatistics workerStatistics) {
             this.executionPlan = executionPlan;
             this.nodeExecutor = nodeExecutor;
             this.parentWorkerLease = parentWorkerLease;
             this.cancellationToken = cancellationToken;
             this.coordinationService = coordinationService;
+            this.workerStatistics = workerStatistics;
         }
 
         @Override
@@ -137,6 +242,7 @@ public void run() {
             }
 
             long total = totalTimer.getElapsedMillis();
+            workerStatistics.record(busy.get(), total);
 
             if (LOGGER.isDebugEnabled()) {
                 LOGGER.debug("Execution worker [{}] finished, busy: {}, idle: {}", Thread.currentThread(), TimeFormatting.formatDurationVerbose(busy.get()), TimeFormatting.formatDurationVerbose(total - busy.get()));
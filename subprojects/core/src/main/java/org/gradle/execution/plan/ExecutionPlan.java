@@ -43,6 +43,17 @@ public interface ExecutionPlan extends Describable {
 
     void finishedExecuting(Node node);
 
+    /**
+     * Selects a work item that is waiting to run, so that the build cache entry it will load can be prefetched.
+     * Returns null if no queued work is ready to run, or all of it has already been selected for prefetching.
+     *
+     * The work item is not selected to run until {@link #finishedPrefetching(Node)} has been called for it.
+     */
+    @Nullable
+    Node selectNextToPrefetch();
+
+    void finishedPrefetching(Node node);
+
     void abortAllAndFail(Throwable t);
 
     void cancelExecution();
@@ -89,4 +100,10 @@ public interface ExecutionPlan extends Describable {
      * Returns the number of work items in the plan.
      */
     int size();
+
+    /**
+     * Returns the predicted and the actual critical path of the plan, or {@code null} when the plan does not prioritize nodes on the critical path.
+     */
+    @Nullable
+    CriticalPath getCriticalPath();
 }
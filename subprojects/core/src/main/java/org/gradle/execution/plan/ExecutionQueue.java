@@ -0,0 +1,161 @@
+/*
+ * Copyright 2021 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.execution.plan;
+
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.function.ToLongFunction;
+
+/**
+ * The nodes of an execution plan that have not been selected for execution yet, in the order in which they should be executed.
+ * Nodes with a higher priority are executed first when several nodes are ready, otherwise the nodes are executed in the order they were added.
+ *
+ * Keeps track of the nodes which may be ready to execute, so that selecting the next node does not need to check every node in the queue.
+ * A node becomes a candidate when it may have become ready, see {@link #maybeReady(Node)}, and is checked again when iterating the ready nodes.
+ * A candidate which turns out not to be ready is dropped, and needs to be reported via {@link #maybeReady(Node)} again once its state changes.
+ *
+ * This class is NOT thread-safe.
+ */
+class ExecutionQueue {
+    private final Map<Node, Position> positions = new IdentityHashMap<>();
+    private final Set<Node> nodes = new LinkedHashSet<>();
+    private final NavigableSet<Node> readyCandidates = new TreeSet<>((left, right) -> positions.get(left).compareTo(positions.get(right)));
+
+    /**
+     * Appends the given nodes to the queue, and collects the ones that are ready.
+     */
+    public void addAll(Iterable<? extends Node> nodesToAdd) {
+        addAll(nodesToAdd, node -> 0);
+    }
+
+    /**
+     * Appends the given nodes to the queue with the given priorities, and collects the ones that are ready.
+     */
+    public void addAll(Iterable<? extends Node> nodesToAdd, ToLongFunction<? super Node> priority) {
+        for (Node node : nodesToAdd) {
+            if (nodes.add(node)) {
+                positions.put(node, new Position(priority.applyAsLong(node), positions.size()));
+                maybeReady(node);
+            }
+        }
+    }
+
+    /**
+     * Records that the given node may have become ready to execute.
+     */
+    public void maybeReady(Node node) {
+        if (isReady(node)) {
+            readyCandidates.add(node);
+        }
+    }
+
+    /**
+     * Returns whether there may be nodes ready to execute.
+     */
+    public boolean hasReadyCandidates() {
+        return !readyCandidates.isEmpty();
+    }
+
+    /**
+     * Iterates the nodes that are ready to execute, in the order of the queue.
+     * {@link Iterator#remove()} removes the current node from the queue, and can only be called before checking for the next node.
+     */
+    public Iterator<Node> readyNodes() {
+        Iterator<Node> candidates = readyCandidates.iterator();
+        return new Iterator<Node>() {
+            private Node next;
+            private Node current;
+
+            @Override
+            public boolean hasNext() {
+                while (next == null && candidates.hasNext()) {
+                    Node candidate = candidates.next();
+                    if (isReady(candidate)) {
+                        next = candidate;
+                    } else {
+                        candidates.remove();
+                    }
+                }
+                return next != null;
+            }
+
+            @Override
+            public Node next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                current = next;
+                next = null;
+                return current;
+            }
+
+            @Override
+            public void remove() {
+                if (current == null || next != null) {
+                    throw new IllegalStateException();
+                }
+                candidates.remove();
+                nodes.remove(current);
+                current = null;
+            }
+        };
+    }
+
+    private boolean isReady(Node node) {
+        return node.isReady() && node.allDependenciesComplete() && nodes.contains(node);
+    }
+
+    /**
+     * Returns whether the queue contains a node which is not complete yet.
+     */
+    public boolean hasIncompleteNodes() {
+        for (Node node : nodes) {
+            if (!node.isComplete()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public void clear() {
+        readyCandidates.clear();
+        nodes.clear();
+        positions.clear();
+    }
+
+    private static class Position implements Comparable<Position> {
+        private final long priority;
+        private final int index;
+
+        Position(long priority, int index) {
+            this.priority = priority;
+            this.index = index;
+        }
+
+        @Override
+        public int compareTo(Position other) {
+            int result = Long.compare(other.priority, priority);
+            return result != 0 ? result : Integer.compare(index, other.index);
+        }
+    }
+}
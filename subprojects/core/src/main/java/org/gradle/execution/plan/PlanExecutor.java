@@ -18,6 +18,8 @@
 
 import org.gradle.api.Action;
 
+import javax.annotation.Nullable;
+
 import java.util.Collection;
 
 /**
@@ -32,5 +34,14 @@ public interface PlanExecutor {
      * @param failures collection to collect failures happening during execution into. Does not need to be thread-safe.
      * @param nodeExecutor the actual executor responsible to execute the nodes. Must be thread-safe.
      */
-    void process(ExecutionPlan executionPlan, Collection<? super Throwable> failures, Action<Node> nodeExecutor);
+    default void process(ExecutionPlan executionPlan, Collection<? super Throwable> failures, Action<Node> nodeExecutor) {
+        process(executionPlan, failures, nodeExecutor, null);
+    }
+
+    /**
+     * Executes an {@link ExecutionPlan}, prefetching the build cache entries of nodes while they wait to be executed.
+     *
+     * @param nodePrefetcher starts prefetching the build cache entry of a node that is waiting to be executed, or {@code null} to not prefetch. Must be thread-safe.
+     */
+    void process(ExecutionPlan executionPlan, Collection<? super Throwable> failures, Action<Node> nodeExecutor, @Nullable Action<Node> nodePrefetcher);
 }
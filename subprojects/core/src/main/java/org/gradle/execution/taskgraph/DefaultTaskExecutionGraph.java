@@ -31,14 +31,18 @@
 import org.gradle.api.internal.GradleInternal;
 import org.gradle.api.internal.project.ProjectStateRegistry;
 import org.gradle.api.internal.tasks.NodeExecutionContext;
+import org.gradle.api.internal.tasks.execution.TaskCacheKeyCalculator;
 import org.gradle.api.specs.Spec;
 import org.gradle.api.specs.Specs;
 import org.gradle.api.tasks.TaskState;
+import org.gradle.caching.internal.controller.BuildCacheController;
 import org.gradle.configuration.internal.ListenerBuildOperationDecorator;
 import org.gradle.execution.ProjectExecutionServiceRegistry;
 import org.gradle.execution.TaskSelection;
 import org.gradle.execution.TaskSelector;
+import org.gradle.execution.plan.CriticalPath;
 import org.gradle.execution.plan.ExecutionPlan;
+import org.gradle.execution.plan.LocalTaskNode;
 import org.gradle.execution.plan.Node;
 import org.gradle.execution.plan.NodeExecutor;
 import org.gradle.execution.plan.PlanExecutor;
@@ -64,6 +68,8 @@
 import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Set;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.stream.Collectors;
 
 import static org.gradle.internal.Cast.uncheckedNonnullCast;
 
@@ -189,22 +195,38 @@ public void execute(Collection<? super Throwable> failures) {
 
     private void executeWithServices(ProjectExecutionServiceRegistry projectExecutionServices, Collection<? super Throwable> failures) {
         Timer clock = Time.startTimer();
+        AtomicReference<CriticalPath> criticalPath = new AtomicReference<>();
         try {
-            planExecutor.process(
-                executionPlan,
-                failures,
-                new BuildOperationAwareExecutionAction(
-                    buildOperationExecutor.getCurrentOperation(),
-                    new InvokeNodeExecutorsAction(nodeExecutors, projectExecutionServices)
-                )
+            BuildOperationRef parentOperation = buildOperationExecutor.getCurrentOperation();
+            Action<Node> nodeExecutor = new BuildOperationAwareExecutionAction(
+                parentOperation,
+                new InvokeNodeExecutorsAction(nodeExecutors, projectExecutionServices)
             );
+            BuildCacheController buildCacheController = globalServices.get(BuildCacheController.class);
+            if (buildCacheController.isPrefetchEnabled()) {
+                planExecutor.process(
+                    executionPlan,
+                    failures,
+                    nodeExecutor,
+                    new BuildOperationAwareExecutionAction(
+                        parentOperation,
+                        new PrefetchFromBuildCacheAction(buildCacheController, projectExecutionServices)
+                    )
+                );
+            } else {
+                planExecutor.process(executionPlan, failures, nodeExecutor);
+            }
             LOGGER.debug("Timing: Executing the DAG took {}", clock.getElapsed());
         } finally {
             coordinationService.withStateLock(resourceLockState -> {
+                criticalPath.set(executionPlan.getCriticalPath());
                 executionPlan.clear();
                 return ResourceLockState.Disposition.FINISHED;
             });
         }
+        if (criticalPath.get() != null) {
+            buildOperationExecutor.run(new ReportCriticalPath(criticalPath.get(), gradleInternal));
+        }
     }
 
     @Override
@@ -413,6 +435,28 @@ public void execute(Node node) {
         }
     }
 
+    /**
+     * Starts loading the build cache entry of a task into the local build cache, before the task is executed.
+     */
+    private static class PrefetchFromBuildCacheAction implements Action<Node> {
+        private final BuildCacheController buildCacheController;
+        private final ProjectExecutionServiceRegistry projectExecutionServices;
+
+        public PrefetchFromBuildCacheAction(BuildCacheController buildCacheController, ProjectExecutionServiceRegistry projectExecutionServices) {
+            this.buildCacheController = buildCacheController;
+            this.projectExecutionServices = projectExecutionServices;
+        }
+
+        @Override
+        public void execute(Node node) {
+            if (node instanceof LocalTaskNode) {
+                TaskCacheKeyCalculator cacheKeyCalculator = projectExecutionServices.forProject(node.getOwningProject()).getService(TaskCacheKeyCalculator.class);
+                cacheKeyCalculator.calculateCacheKey((LocalTaskNode) node)
+                    .ifPresent(key -> buildCacheController.prefetch(ImmutableList.of(key)));
+            }
+        }
+    }
+
     @Override
     public Set<Task> getRequestedTasks() {
         return requestedTasks;
@@ -440,6 +484,42 @@ private void fireWhenReady() {
         );
     }
 
+    private static class ReportCriticalPath implements RunnableBuildOperation {
+
+        private final CriticalPath criticalPath;
+        private final GradleInternal gradleInternal;
+
+        private ReportCriticalPath(CriticalPath criticalPath, GradleInternal gradleInternal) {
+            this.criticalPath = criticalPath;
+            this.gradleInternal = gradleInternal;
+        }
+
+        @Override
+        public void run(BuildOperationContext context) {
+            context.setResult(new ReportCriticalPathBuildOperationType.ResultImpl(
+                toDisplayNames(criticalPath.getActualNodes()),
+                criticalPath.getActualDurationMillis()
+            ));
+        }
+
+        @Override
+        public BuildOperationDescriptor.Builder description() {
+            return BuildOperationDescriptor.displayName(
+                gradleInternal.contextualize("Report critical path"))
+                .details(
+                    new ReportCriticalPathBuildOperationType.DetailsImpl(
+                        gradleInternal.getIdentityPath().getPath(),
+                        toDisplayNames(criticalPath.getPredictedNodes()),
+                        criticalPath.getPredictedDurationMillis()
+                    )
+                );
+        }
+
+        private static List<String> toDisplayNames(List<Node> nodes) {
+            return nodes.stream().map(Node::toString).collect(Collectors.toList());
+        }
+    }
+
     private static class NotifyTaskGraphWhenReady implements RunnableBuildOperation {
 
         private final TaskExecutionGraph taskExecutionGraph;
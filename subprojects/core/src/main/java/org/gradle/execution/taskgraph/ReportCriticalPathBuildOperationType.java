@@ -0,0 +1,112 @@
+/*
+ * Copyright 2021 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.execution.taskgraph;
+
+import org.gradle.internal.operations.BuildOperationType;
+
+import java.util.List;
+
+/**
+ * Reports the critical path of a build's task graph, as predicted from previous executions and as actually executed.
+ * Only emitted when the task graph prioritizes the nodes on the critical path.
+ */
+public final class ReportCriticalPathBuildOperationType implements BuildOperationType<ReportCriticalPathBuildOperationType.Details, ReportCriticalPathBuildOperationType.Result> {
+
+    public interface Details {
+
+        String getBuildPath();
+
+        /**
+         * The nodes on the critical path predicted before executing the task graph, in execution order.
+         */
+        List<String> getPredictedPath();
+
+        /**
+         * The expected duration of the predicted critical path, based on previous executions.
+         */
+        long getPredictedDurationMillis();
+
+    }
+
+    public interface Result {
+
+        /**
+         * The nodes on the critical path while executing the task graph, in execution order.
+         */
+        List<String> getActualPath();
+
+        /**
+         * The time from the start of the first node to the end of the last node of the actual critical path.
+         */
+        long getActualDurationMillis();
+
+    }
+
+    static class DetailsImpl implements Details {
+
+        private final String buildPath;
+        private final List<String> predictedPath;
+        private final long predictedDurationMillis;
+
+        DetailsImpl(String buildPath, List<String> predictedPath, long predictedDurationMillis) {
+            this.buildPath = buildPath;
+            this.predictedPath = predictedPath;
+            this.predictedDurationMillis = predictedDurationMillis;
+        }
+
+        @Override
+        public String getBuildPath() {
+            return buildPath;
+        }
+
+        @Override
+        public List<String> getPredictedPath() {
+            return predictedPath;
+        }
+
+        @Override
+        public long getPredictedDurationMillis() {
+            return predictedDurationMillis;
+        }
+
+    }
+
+    static class ResultImpl implements Result {
+
+        private final List<String> actualPath;
+        private final long actualDurationMillis;
+
+        ResultImpl(List<String> actualPath, long actualDurationMillis) {
+            this.actualPath = actualPath;
+            this.actualDurationMillis = actualDurationMillis;
+        }
+
+        @Override
+        public List<String> getActualPath() {
+            return actualPath;
+        }
+
+        @Override
+        public long getActualDurationMillis() {
+            return actualDurationMillis;
+        }
+
+    }
+
+    private ReportCriticalPathBuildOperationType() {
+    }
+}
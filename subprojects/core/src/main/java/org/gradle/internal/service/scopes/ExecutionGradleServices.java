@@ -26,6 +26,7 @@
 import org.gradle.cache.internal.InMemoryCacheDecoratorFactory;
 import org.gradle.caching.internal.controller.BuildCacheCommandFactory;
 import org.gradle.caching.internal.controller.BuildCacheController;
+import org.gradle.caching.internal.packaging.impl.BuildCacheEntryCompression;
 import org.gradle.concurrent.ParallelismConfiguration;
 import org.gradle.execution.plan.DefaultPlanExecutor;
 import org.gradle.execution.plan.PlanExecutor;
@@ -36,22 +37,28 @@
 import org.gradle.internal.execution.ExecutionEngine;
 import org.gradle.internal.execution.OutputChangeListener;
 import org.gradle.internal.execution.OutputSnapshotter;
+import org.gradle.internal.execution.caching.CacheKeyFileHasher;
+import org.gradle.internal.execution.history.ExecutionDurationStore;
 import org.gradle.internal.execution.history.ExecutionHistoryCacheAccess;
 import org.gradle.internal.execution.history.ExecutionHistoryStore;
 import org.gradle.internal.execution.history.OutputFilesRepository;
 import org.gradle.internal.execution.history.OverlappingOutputDetector;
 import org.gradle.internal.execution.history.changes.ExecutionStateChangeDetector;
+import org.gradle.internal.execution.history.impl.DefaultExecutionDurationStore;
 import org.gradle.internal.execution.history.impl.DefaultExecutionHistoryStore;
+import org.gradle.internal.execution.history.impl.GroupCommitExecutionHistoryStore;
 import org.gradle.internal.execution.history.impl.DefaultOutputFilesRepository;
 import org.gradle.internal.execution.impl.DefaultExecutionEngine;
 import org.gradle.internal.execution.steps.AssignWorkspaceStep;
 import org.gradle.internal.execution.steps.BroadcastChangingOutputsStep;
 import org.gradle.internal.execution.steps.BuildCacheStep;
+import org.gradle.internal.execution.steps.CachingResult;
 import org.gradle.internal.execution.steps.CancelExecutionStep;
 import org.gradle.internal.execution.steps.CaptureStateAfterExecutionStep;
 import org.gradle.internal.execution.steps.CaptureStateBeforeExecutionStep;
 import org.gradle.internal.execution.steps.CreateOutputsStep;
 import org.gradle.internal.execution.steps.ExecuteStep;
+import org.gradle.internal.execution.steps.ExecutionRequestContext;
 import org.gradle.internal.execution.steps.IdentifyStep;
 import org.gradle.internal.execution.steps.IdentityCacheStep;
 import org.gradle.internal.execution.steps.LoadExecutionStateStep;
@@ -61,7 +68,9 @@
 import org.gradle.internal.execution.steps.ResolveChangesStep;
 import org.gradle.internal.execution.steps.ResolveInputChangesStep;
 import org.gradle.internal.execution.steps.SkipEmptyWorkStep;
+import org.gradle.internal.execution.steps.SkipExecutionStep;
 import org.gradle.internal.execution.steps.SkipUpToDateStep;
+import org.gradle.internal.execution.steps.Step;
 import org.gradle.internal.execution.steps.StoreExecutionStateStep;
 import org.gradle.internal.execution.steps.TimeoutStep;
 import org.gradle.internal.execution.steps.ValidateStep;
@@ -93,6 +102,13 @@ ExecutionHistoryStore createExecutionHistoryStore(
         InMemoryCacheDecoratorFactory inMemoryCacheDecoratorFactory,
         StringInterner stringInterner
     ) {
+        if (Boolean.getBoolean(GroupCommitExecutionHistoryStore.GROUP_COMMIT_PROPERTY)) {
+            return new GroupCommitExecutionHistoryStore(
+                executionHistoryCacheAccess,
+                inMemoryCacheDecoratorFactory,
+                stringInterner
+            );
+        }
         return new DefaultExecutionHistoryStore(
             executionHistoryCacheAccess,
             inMemoryCacheDecoratorFactory,
@@ -100,6 +116,16 @@ ExecutionHistoryStore createExecutionHistoryStore(
         );
     }
 
+    ExecutionDurationStore createExecutionDurationStore(
+        ExecutionHistoryCacheAccess executionHistoryCacheAccess,
+        InMemoryCacheDecoratorFactory inMemoryCacheDecoratorFactory
+    ) {
+        return new DefaultExecutionDurationStore(
+            executionHistoryCacheAccess,
+            inMemoryCacheDecoratorFactory
+        );
+    }
+
     OutputFilesRepository createOutputFilesRepository(CacheRepository cacheRepository, Gradle gradle, InMemoryCacheDecoratorFactory inMemoryCacheDecoratorFactory) {
         PersistentCache cacheAccess = cacheRepository
             .cache(gradle, "buildOutputCleanup")
@@ -138,6 +164,8 @@ OutputChangeListener createOutputChangeListener(ListenerManager listenerManager)
     public ExecutionEngine createExecutionEngine(
         BuildCacheCommandFactory buildCacheCommandFactory,
         BuildCacheController buildCacheController,
+        BuildCacheEntryCompression buildCacheEntryCompression,
+        CacheKeyFileHasher cacheKeyFileHasher,
         BuildCancellationToken cancellationToken,
         BuildInvocationScopeId buildInvocationScopeId,
         BuildOperationExecutor buildOperationExecutor,
@@ -155,6 +183,21 @@ public ExecutionEngine createExecutionEngine(
         VirtualFileSystem virtualFileSystem,
         DocumentationRegistry documentationRegistry
     ) {
+        // Resolves the caching state ahead of execution, so entries can be prefetched from the build cache.
+        // Validation warnings are reported when the work is executed.
+        // @formatter:off
+        Step<ExecutionRequestContext, CachingResult> cachingStateStep =
+            new IdentifyStep<>(
+            new IdentityCacheStep<>(
+            new AssignWorkspaceStep<>(
+            new LoadExecutionStateStep<>(
+            new ValidateStep<>(virtualFileSystem, (work, warnings) -> {},
+            new CaptureStateBeforeExecutionStep(buildOperationExecutor, classLoaderHierarchyHasher, outputSnapshotter, overlappingOutputDetector,
+            new ResolveCachingStateStep(buildCacheController, gradleEnterprisePluginManager.isPresent(), buildCacheEntryCompression.getCacheKeyFormat(), cacheKeyFileHasher, false,
+            new SkipExecutionStep<>()
+        )))))));
+        // @formatter:on
+
         // @formatter:off
         return new DefaultExecutionEngine(documentationRegistry,
             new IdentifyStep<>(
@@ -165,7 +208,7 @@ public ExecutionEngine createExecutionEngine(
             new SkipEmptyWorkStep<>(
             new ValidateStep<>(virtualFileSystem, validationWarningRecorder,
             new CaptureStateBeforeExecutionStep(buildOperationExecutor, classLoaderHierarchyHasher, outputSnapshotter, overlappingOutputDetector,
-            new ResolveCachingStateStep(buildCacheController, gradleEnterprisePluginManager.isPresent(),
+            new ResolveCachingStateStep(buildCacheController, gradleEnterprisePluginManager.isPresent(), buildCacheEntryCompression.getCacheKeyFormat(), cacheKeyFileHasher,
             new MarkSnapshottingInputsFinishedStep<>(
             new ResolveChangesStep<>(changeDetector,
             new SkipUpToDateStep<>(
@@ -180,7 +223,7 @@ public ExecutionEngine createExecutionEngine(
             new ResolveInputChangesStep<>(
             new RemovePreviousOutputsStep<>(deleter, outputChangeListener,
             new ExecuteStep<>(buildOperationExecutor
-        ))))))))))))))))))))))));
+        ))))))))))))))))))))))), cachingStateStep);
         // @formatter:on
     }
 
@@ -83,6 +83,7 @@
 import org.gradle.internal.operations.DefaultBuildOperationListenerManager;
 import org.gradle.internal.reflect.DirectInstantiator;
 import org.gradle.internal.resources.DefaultResourceLockCoordinationService;
+import org.gradle.internal.resources.FineGrainedResourceLockCoordinationService;
 import org.gradle.internal.resources.ResourceLockCoordinationService;
 import org.gradle.internal.service.CachingServiceLocator;
 import org.gradle.internal.service.DefaultServiceLocator;
@@ -140,6 +141,9 @@ void configure(ServiceRegistration registration, ClassLoaderRegistry classLoader
     }
 
     ResourceLockCoordinationService createWorkerLeaseCoordinationService() {
+        if (Boolean.getBoolean(FineGrainedResourceLockCoordinationService.FINE_GRAINED_COORDINATION_PROPERTY)) {
+            return new FineGrainedResourceLockCoordinationService();
+        }
         return new DefaultResourceLockCoordinationService();
     }
 
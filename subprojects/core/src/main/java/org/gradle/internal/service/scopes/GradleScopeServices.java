@@ -91,6 +91,7 @@
 import org.gradle.internal.event.ListenerBroadcast;
 import org.gradle.internal.event.ListenerManager;
 import org.gradle.internal.execution.BuildOutputCleanupRegistry;
+import org.gradle.internal.execution.history.ExecutionDurationStore;
 import org.gradle.internal.file.Stat;
 import org.gradle.internal.id.UniqueId;
 import org.gradle.internal.instantiation.InstantiatorFactory;
@@ -220,7 +221,8 @@ ExecutionPlan createExecutionPlan(
         GradleInternal gradleInternal,
         TaskNodeFactory taskNodeFactory,
         TaskDependencyResolver dependencyResolver,
-        ExecutionNodeAccessHierarchies executionNodeAccessHierarchies
+        ExecutionNodeAccessHierarchies executionNodeAccessHierarchies,
+        ServiceRegistry gradleScopedServices
     ) {
         return new DefaultExecutionPlan(
             gradleInternal.getIdentityPath().toString(),
@@ -228,7 +230,9 @@ ExecutionPlan createExecutionPlan(
             dependencyResolver,
             new DefaultNodeValidator(),
             executionNodeAccessHierarchies.getOutputHierarchy(),
-            executionNodeAccessHierarchies.getDestroyableHierarchy()
+            executionNodeAccessHierarchies.getDestroyableHierarchy(),
+            // Only open the store of the execution durations when they are used
+            Boolean.getBoolean(DefaultExecutionPlan.CRITICAL_PATH_SCHEDULING_PROPERTY) ? gradleScopedServices.get(ExecutionDurationStore.class) : null
         );
     }
 
@@ -56,6 +56,7 @@
 import org.gradle.internal.execution.DefaultOutputSnapshotter;
 import org.gradle.internal.execution.OutputChangeListener;
 import org.gradle.internal.execution.OutputSnapshotter;
+import org.gradle.internal.execution.caching.CacheKeyFileHasher;
 import org.gradle.internal.execution.fingerprint.FileCollectionFingerprinter;
 import org.gradle.internal.execution.fingerprint.FileCollectionFingerprinterRegistry;
 import org.gradle.internal.execution.fingerprint.FileCollectionSnapshotter;
@@ -76,8 +77,11 @@
 import org.gradle.internal.fingerprint.impl.NameOnlyFileCollectionFingerprinter;
 import org.gradle.internal.fingerprint.impl.RelativePathFileCollectionFingerprinter;
 import org.gradle.internal.hash.DefaultFileHasher;
+import org.gradle.internal.hash.DefaultStreamHasher;
+import org.gradle.internal.hash.FileContentHashFunction;
 import org.gradle.internal.hash.FileHasher;
 import org.gradle.internal.hash.HashCode;
+import org.gradle.internal.hash.Hashing;
 import org.gradle.internal.hash.StreamHasher;
 import org.gradle.internal.nativeintegration.NativeCapabilities;
 import org.gradle.internal.nativeintegration.filesystem.FileSystem;
@@ -87,6 +91,7 @@
 import org.gradle.internal.snapshot.CaseSensitivity;
 import org.gradle.internal.snapshot.ValueSnapshotter;
 import org.gradle.internal.snapshot.impl.DirectorySnapshotterStatistics;
+import org.gradle.internal.snapshot.impl.FileHashingPool;
 import org.gradle.internal.vfs.FileSystemAccess;
 import org.gradle.internal.vfs.VirtualFileSystem;
 import org.gradle.internal.vfs.impl.DefaultFileSystemAccess;
@@ -100,6 +105,7 @@
 import org.gradle.internal.watch.vfs.WatchableFileSystemDetector;
 import org.gradle.internal.watch.vfs.impl.DefaultWatchableFileSystemDetector;
 import org.gradle.internal.watch.vfs.impl.LocationsWrittenByCurrentBuild;
+import org.gradle.internal.watch.vfs.impl.PersistentVirtualFileSystemState;
 import org.gradle.internal.watch.vfs.impl.WatchingNotSupportedVirtualFileSystem;
 import org.gradle.internal.watch.vfs.impl.WatchingVirtualFileSystem;
 import org.slf4j.Logger;
@@ -128,6 +134,18 @@ public class VirtualFileSystemServices extends AbstractPluginServiceRegistry {
 
     public static final String MAX_HIERARCHIES_TO_WATCH_PROPERTY = "org.gradle.vfs.watch.hierarchies.max";
 
+    /**
+     * Number of threads used to hash files while snapshotting directory trees.
+     * Set to {@code true} to use one thread per available processor. Files are hashed on the snapshotting thread by default.
+     */
+    public static final String PARALLEL_FILE_HASHING_PROPERTY = "org.gradle.vfs.hashing.threads";
+
+    /**
+     * When file system watching is enabled, this system property can be used to persist the virtual file system when the daemon stops,
+     * and to restore it in the next daemon.
+     */
+    public static final String PERSIST_VFS_PROPERTY = "org.gradle.vfs.persist";
+
     private static final int DEFAULT_MAX_HIERARCHIES_TO_WATCH = 50;
     private static final int FILE_HASHER_MEMORY_CACHE_SIZE = 400000;
 
@@ -171,6 +189,16 @@ FileHasherStatistics.Collector createCachingFileHasherStatisticsCollector() {
         DirectorySnapshotterStatistics.Collector createDirectorySnapshotterStatisticsCollector() {
             return new DirectorySnapshotterStatistics.Collector();
         }
+
+        FileHashingPool createFileHashingPool() {
+            String threads = System.getProperty(PARALLEL_FILE_HASHING_PROPERTY);
+            if (threads == null || threads.isEmpty() || "false".equalsIgnoreCase(threads)) {
+                return FileHashingPool.SEQUENTIAL;
+            }
+            return FileHashingPool.withParallelism("true".equalsIgnoreCase(threads)
+                ? Runtime.getRuntime().availableProcessors()
+                : Integer.parseInt(threads, 10));
+        }
     }
 
     @VisibleForTesting
@@ -186,13 +214,31 @@ FileHasher createCachingFileHasher(
             FileSystem fileSystem,
             GradleUserHomeScopeFileTimeStampInspector fileTimeStampInspector,
             StreamHasher streamHasher,
+            FileContentHashFunction fileContentHashFunction,
             StringInterner stringInterner
         ) {
-            CachingFileHasher fileHasher = new CachingFileHasher(new DefaultFileHasher(streamHasher), fileStore, stringInterner, fileTimeStampInspector, "fileHashes", fileSystem, FILE_HASHER_MEMORY_CACHE_SIZE, statisticsCollector);
+            CachingFileHasher fileHasher = new CachingFileHasher(new DefaultFileHasher(streamHasher), fileStore, stringInterner, fileTimeStampInspector, fileContentHashFunction.cacheName("fileHashes"), fileSystem, FILE_HASHER_MEMORY_CACHE_SIZE, statisticsCollector);
             fileTimeStampInspector.attach(fileHasher);
             return fileHasher;
         }
 
+        CacheKeyFileHasher createCacheKeyFileHasher(
+            FileHasherStatistics.Collector statisticsCollector,
+            CrossBuildFileHashCache fileStore,
+            FileSystem fileSystem,
+            GradleUserHomeScopeFileTimeStampInspector fileTimeStampInspector,
+            FileContentHashFunction fileContentHashFunction,
+            StringInterner stringInterner
+        ) {
+            if (fileContentHashFunction == FileContentHashFunction.MD5) {
+                return CacheKeyFileHasher.UNCHANGED;
+            }
+            // Build cache keys are always based on MD5 file hashes, which are kept in the same cache as when MD5 is used for the snapshots
+            CachingFileHasher md5Hasher = new CachingFileHasher(new DefaultFileHasher(new DefaultStreamHasher(Hashing.md5())), fileStore, stringInterner, fileTimeStampInspector, FileContentHashFunction.MD5.cacheName("fileHashes"), fileSystem, FILE_HASHER_MEMORY_CACHE_SIZE, statisticsCollector);
+            fileTimeStampInspector.attach(md5Hasher);
+            return new CacheKeyFileHasher(md5Hasher);
+        }
+
         LocationsWrittenByCurrentBuild createLocationsUpdatedByCurrentBuild(ListenerManager listenerManager) {
             LocationsWrittenByCurrentBuild locationsWrittenByCurrentBuild = new LocationsWrittenByCurrentBuild();
             listenerManager.addListener(new RootBuildLifecycleListener() {
@@ -220,13 +266,24 @@ BuildLifecycleAwareVirtualFileSystem createVirtualFileSystem(
             ListenerManager listenerManager,
             FileSystem fileSystem,
             GlobalCacheLocations globalCacheLocations,
-            WatchableFileSystemDetector watchableFileSystemDetector
+            WatchableFileSystemDetector watchableFileSystemDetector,
+            CacheScopeMapping cacheScopeMapping,
+            FileContentHashFunction fileContentHashFunction,
+            StringInterner stringInterner
         ) {
             CaseSensitivity caseSensitivity = fileSystem.isCaseSensitive() ? CASE_SENSITIVE : CASE_INSENSITIVE;
             VfsRootReference rootReference = new VfsRootReference(DefaultSnapshotHierarchy.empty(caseSensitivity));
             // All the changes in global caches should be done by Gradle itself, so in order
             // to minimize the number of watches we don't watch anything within the global caches.
             Predicate<String> watchFilter = path -> !globalCacheLocations.isInsideGlobalCache(path);
+            String persistVfs = System.getProperty(PERSIST_VFS_PROPERTY);
+            PersistentVirtualFileSystemState persistentState = persistVfs != null && !"false".equalsIgnoreCase(persistVfs)
+                ? new PersistentVirtualFileSystemState(
+                    new File(cacheScopeMapping.getBaseDirectory(null, "vfs", VersionStrategy.CachePerVersion), "vfs.bin"),
+                    fileContentHashFunction.name(),
+                    stringInterner
+                )
+                : null;
 
             BuildLifecycleAwareVirtualFileSystem virtualFileSystem = determineWatcherRegistryFactory(OperatingSystem.current(), nativeCapabilities, watchableFileSystemDetector, watchFilter)
                 .<BuildLifecycleAwareVirtualFileSystem>map(watcherRegistryFactory -> new WatchingVirtualFileSystem(
@@ -234,7 +291,8 @@ BuildLifecycleAwareVirtualFileSystem createVirtualFileSystem(
                     rootReference,
                     sectionId -> documentationRegistry.getDocumentationFor("gradle_daemon", sectionId),
                     locationsWrittenByCurrentBuild,
-                    watchableFileSystemDetector
+                    watchableFileSystemDetector,
+                    persistentState
                 ))
                 .orElse(new WatchingNotSupportedVirtualFileSystem(rootReference));
             listenerManager.addListener((BuildAddedListener) buildState ->
@@ -251,7 +309,8 @@ FileSystemAccess createFileSystemAccess(
             ListenerManager listenerManager,
             PatternSpecFactory patternSpecFactory,
             FileSystemAccess.WriteListener writeListener,
-            DirectorySnapshotterStatistics.Collector statisticsCollector
+            DirectorySnapshotterStatistics.Collector statisticsCollector,
+            FileHashingPool hashingPool
         ) {
             DefaultFileSystemAccess fileSystemAccess = new DefaultFileSystemAccess(
                 hasher,
@@ -260,6 +319,7 @@ FileSystemAccess createFileSystemAccess(
                 virtualFileSystem,
                 writeListener,
                 statisticsCollector,
+                hashingPool,
                 DirectoryScanner.getDefaultExcludes()
             );
             listenerManager.addListener(new DefaultExcludesBuildListener(fileSystemAccess) {
@@ -325,8 +385,8 @@ ClasspathFingerprinter createClasspathFingerprinter(ResourceSnapshotterCacheServ
             return new DefaultClasspathFingerprinter(resourceSnapshotterCacheService, fileCollectionSnapshotter, ResourceFilter.FILTER_NOTHING, ResourceEntryFilter.FILTER_NOTHING, PropertiesFileFilter.FILTER_NOTHING, stringInterner);
         }
 
-        ClasspathHasher createClasspathHasher(ClasspathFingerprinter fingerprinter, FileCollectionFactory fileCollectionFactory) {
-            return new DefaultClasspathHasher(fingerprinter, fileCollectionFactory);
+        ClasspathHasher createClasspathHasher(ClasspathFingerprinter fingerprinter, FileCollectionFactory fileCollectionFactory, CacheKeyFileHasher cacheKeyFileHasher) {
+            return new DefaultClasspathHasher(fingerprinter, fileCollectionFactory, cacheKeyFileHasher);
         }
     }
 
@@ -344,10 +404,11 @@ FileHasher createFileHasher(
             FileHasher globalHasher,
             FileSystem fileSystem,
             StreamHasher streamHasher,
+            FileContentHashFunction fileContentHashFunction,
             StringInterner stringInterner,
             FileHasherStatistics.Collector statisticsCollector
         ) {
-            CachingFileHasher localHasher = new CachingFileHasher(new DefaultFileHasher(streamHasher), cacheAccess, stringInterner, fileTimeStampInspector, "fileHashes", fileSystem, FILE_HASHER_MEMORY_CACHE_SIZE, statisticsCollector);
+            CachingFileHasher localHasher = new CachingFileHasher(new DefaultFileHasher(streamHasher), cacheAccess, stringInterner, fileTimeStampInspector, fileContentHashFunction.cacheName("fileHashes"), fileSystem, FILE_HASHER_MEMORY_CACHE_SIZE, statisticsCollector);
             return new SplitFileHasher(globalHasher, localHasher, globalCacheLocations);
         }
 
@@ -358,7 +419,8 @@ FileSystemAccess createFileSystemAccess(
             StringInterner stringInterner,
             VirtualFileSystem root,
             FileSystemAccess.WriteListener writeListener,
-            DirectorySnapshotterStatistics.Collector statisticsCollector
+            DirectorySnapshotterStatistics.Collector statisticsCollector,
+            FileHashingPool hashingPool
         ) {
             DefaultFileSystemAccess buildSessionsScopedVirtualFileSystem = new DefaultFileSystemAccess(
                 hasher,
@@ -367,6 +429,7 @@ FileSystemAccess createFileSystemAccess(
                 root,
                 writeListener,
                 statisticsCollector,
+                hashingPool,
                 DirectoryScanner.getDefaultExcludes()
             );
 
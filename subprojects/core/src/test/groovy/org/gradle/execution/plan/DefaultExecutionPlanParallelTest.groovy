@@ -22,6 +22,7 @@ import org.gradle.api.file.FileCollection
 import org.gradle.api.internal.TaskInternal
 import org.gradle.api.internal.project.ProjectInternal
 import org.gradle.api.internal.tasks.TaskStateInternal
+import org.gradle.api.internal.tasks.WorkNodeAction
 import org.gradle.api.tasks.Destroys
 import org.gradle.api.tasks.InputDirectory
 import org.gradle.api.tasks.InputFile
@@ -31,6 +32,7 @@ import org.gradle.api.tasks.OutputFile
 import org.gradle.api.tasks.OutputFiles
 import org.gradle.api.tasks.TaskAction
 import org.gradle.composite.internal.IncludedBuildTaskGraph
+import org.gradle.internal.execution.history.ExecutionDurationStore
 import org.gradle.internal.nativeintegration.filesystem.FileSystem
 import org.gradle.internal.work.WorkerLeaseRegistry
 import org.gradle.test.fixtures.file.TestFile
@@ -49,12 +51,14 @@ class DefaultExecutionPlanParallelTest extends AbstractExecutionPlanSpec {
     FileSystem fs = NativeServicesTestFixture.instance.get(FileSystem)
 
     DefaultExecutionPlan executionPlan
+    TaskNodeFactory taskNodeFactory
+    TaskDependencyResolver dependencyResolver
     def lease = Stub(WorkerLeaseRegistry.WorkerLease)
 
     def setup() {
         _ * lease.tryLock() >> true
-        def taskNodeFactory = new TaskNodeFactory(project.gradle, Stub(IncludedBuildTaskGraph))
-        def dependencyResolver = new TaskDependencyResolver([new TaskNodeDependencyResolver(taskNodeFactory)])
+        taskNodeFactory = new TaskNodeFactory(project.gradle, Stub(IncludedBuildTaskGraph))
+        dependencyResolver = new TaskDependencyResolver([new TaskNodeDependencyResolver(taskNodeFactory)])
         executionPlan = new DefaultExecutionPlan(Path.ROOT.toString(), taskNodeFactory, dependencyResolver, nodeValidator, new ExecutionNodeAccessHierarchy(CASE_SENSITIVE, fs), new ExecutionNodeAccessHierarchy(CASE_SENSITIVE, fs))
     }
 
@@ -843,6 +847,148 @@ class DefaultExecutionPlanParallelTest extends AbstractExecutionPlanSpec {
         0 * nodeValidator.hasValidationProblems(_ as Node)
     }
 
+    def "a node that does not need a project lock can start while all projects are locked"() {
+        given:
+        def foo = task("foo")
+        def bar = task("bar")
+        def action = Stub(WorkNodeAction)
+        _ * action.owningProject >> null
+        def actionNode = new ActionNode(action)
+        actionNode.require()
+        actionNode.dependenciesProcessed()
+
+        when:
+        executionPlan.addEntryTasks([foo, bar])
+        executionPlan.addNodes([actionNode])
+        executionPlan.determineExecutionPlan()
+        def taskNode = selectNextTaskNode()
+
+        then:
+        taskNode.task == foo
+        lockedProjects == [project] as Set
+
+        when:
+        def lockFreeNode = selectNextNode()
+
+        then:
+        lockFreeNode == actionNode
+        selectNextNode() == null
+
+        when:
+        executionPlan.finishedExecuting(taskNode)
+
+        then:
+        selectNextTask() == bar
+    }
+
+    def "ready tasks on the longest remaining path are executed first when durations are known"() {
+        given:
+        def expectedDurations = [":a": 10L, ":b": 100L, ":c": 100L]
+        def executionDurations = Stub(ExecutionDurationStore) {
+            load(_ as String) >> { String key -> expectedDurations.containsKey(key) ? OptionalLong.of(expectedDurations[key]) : OptionalLong.empty() }
+        }
+        executionPlan = new DefaultExecutionPlan(Path.ROOT.toString(), taskNodeFactory, dependencyResolver, nodeValidator, new ExecutionNodeAccessHierarchy(CASE_SENSITIVE, fs), new ExecutionNodeAccessHierarchy(CASE_SENSITIVE, fs), executionDurations)
+        def a = task("a", type: Async)
+        def b = task("b", type: Async)
+        def c = task("c", type: Async, dependsOn: [b])
+
+        when:
+        addToGraphAndPopulate(a, b, c)
+        def firstTaskNode = selectNextTaskNode()
+        def secondTaskNode = selectNextTaskNode()
+
+        then:
+        firstTaskNode.task == b
+        secondTaskNode.task == a
+        executionPlan.criticalPath.predictedNodes*.task == [b, c]
+        executionPlan.criticalPath.predictedDurationMillis == 200
+
+        when:
+        executionPlan.finishedExecuting(firstTaskNode)
+        def thirdTaskNode = selectNextTaskNode()
+        executionPlan.finishedExecuting(secondTaskNode)
+        executionPlan.finishedExecuting(thirdTaskNode)
+
+        then:
+        thirdTaskNode.task == c
+        executionPlan.criticalPath.actualNodes*.task == [b, c]
+    }
+
+    def "stores measured durations once the plan is cleared"() {
+        given:
+        def executionDurations = Mock(ExecutionDurationStore) {
+            load(_ as String) >> OptionalLong.empty()
+        }
+        executionPlan = new DefaultExecutionPlan(Path.ROOT.toString(), taskNodeFactory, dependencyResolver, nodeValidator, new ExecutionNodeAccessHierarchy(CASE_SENSITIVE, fs), new ExecutionNodeAccessHierarchy(CASE_SENSITIVE, fs), executionDurations)
+        def a = task("a", type: Async)
+
+        when:
+        addToGraphAndPopulate(a)
+        executionPlan.finishedExecuting(selectNextTaskNode())
+
+        then:
+        0 * executionDurations.store(_, _)
+
+        when:
+        executionPlan.clear()
+
+        then:
+        1 * executionDurations.store(":a", _)
+    }
+
+    def "does not report critical path when durations are not known"() {
+        given:
+        def a = task("a", type: Async)
+
+        when:
+        addToGraphAndPopulate(a)
+
+        then:
+        executionPlan.criticalPath == null
+    }
+
+    def "isolated task is prefetched once it is ready and is not selected while prefetching"() {
+        given:
+        Task a = task("a")
+        Task b = task("b", dependsOn: [a])
+
+        when:
+        addToGraphAndPopulate(a, b)
+        [a, b].each { (taskNodeFactory.getOrCreateNode(it) as LocalTaskNode).isolated() }
+        def prefetched = executionPlan.selectNextToPrefetch()
+
+        then:
+        prefetched.task == a
+        executionPlan.selectNextToPrefetch() == null
+        selectNextTask() == null
+
+        when:
+        executionPlan.finishedPrefetching(prefetched)
+        def taskNode = selectNextTaskNode()
+
+        then:
+        taskNode.task == a
+        executionPlan.selectNextToPrefetch() == null
+
+        when:
+        executionPlan.finishedExecuting(taskNode)
+
+        then:
+        executionPlan.selectNextToPrefetch().task == b
+    }
+
+    def "task that needs a project lock is not prefetched"() {
+        given:
+        Task a = task("a")
+
+        when:
+        addToGraphAndPopulate(a)
+
+        then:
+        executionPlan.selectNextToPrefetch() == null
+        selectNextTask() == a
+    }
+
     private void tasksAreNotExecutedInParallel(Task first, Task second) {
         addToGraphAndPopulate(first, second)
 
@@ -925,14 +1071,19 @@ class DefaultExecutionPlanParallelTest extends AbstractExecutionPlanSpec {
     }
 
     private TaskNode selectNextTaskNode() {
-        def nextTaskNode
-        recordLocks {
-            nextTaskNode = executionPlan.selectNext(lease, resourceLockState)
-        }
+        def nextTaskNode = selectNextNode()
         if (nextTaskNode?.task instanceof Async) {
             def project = (ProjectInternal) nextTaskNode.task.project
             project.mutationState.accessLock.unlock()
         }
         return nextTaskNode
     }
+
+    private Node selectNextNode() {
+        def nextNode
+        recordLocks {
+            nextNode = executionPlan.selectNext(lease, resourceLockState)
+        }
+        return nextNode
+    }
 }
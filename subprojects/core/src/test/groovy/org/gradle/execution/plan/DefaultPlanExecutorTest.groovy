@@ -99,4 +99,36 @@ class DefaultPlanExecutorTest extends Specification {
         1 * executionPlan.collectFailures([])
         0 * executionPlan._
     }
+
+    def "prefetches nodes that are ready before they are executed"() {
+        def node = Mock(LocalTaskNode)
+        def prefetcher = Mock(Action)
+
+        when:
+        executor.process(executionPlan, [], worker, prefetcher)
+
+        then:
+        1 * executorFactory.create(_) >> Stub(ManagedExecutor) {
+            execute(_) >> { Runnable runnable -> runnable.run() }
+        }
+        1 * executionPlan.hasNodesRemaining() >> true
+        1 * executionPlan.selectNextToPrefetch() >> node
+        1 * prefetcher.execute(node)
+        1 * executionPlan.finishedPrefetching(node)
+
+        then:
+        1 * executionPlan.hasNodesRemaining() >> true
+        1 * executionPlan.selectNextToPrefetch() >> null
+
+        then:
+        1 * executionPlan.hasNodesRemaining() >> true
+        1 * executionPlan.selectNext(_, _) >> node
+        1 * worker.execute(node)
+        1 * executionPlan.finishedExecuting(node)
+
+        then:
+        1 * executionPlan.hasNodesRemaining() >> false
+        1 * executionPlan.allNodesComplete() >> true
+        1 * executionPlan.collectFailures([])
+    }
 }
@@ -0,0 +1,220 @@
+/*
+ * Copyright 2021 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.execution.plan
+
+import spock.lang.Specification
+
+class ExecutionQueueTest extends Specification {
+    def queue = new ExecutionQueue()
+    Set<Node> notReady = []
+    Set<Node> waitingForDependencies = []
+
+    def "collects nodes that are ready when added in queue order"() {
+        def a = node()
+        def b = node()
+        def c = node()
+        waitingForDependencies << b
+
+        when:
+        queue.addAll([a, b, c])
+
+        then:
+        queue.hasReadyCandidates()
+        queue.readyNodes().collect() == [a, c]
+    }
+
+    def "visits ready nodes with higher priority first"() {
+        def a = node()
+        def b = node()
+        def c = node()
+
+        when:
+        queue.addAll([a, b, c], { it == b ? 2 : it == c ? 1 : 0 })
+
+        then:
+        queue.readyNodes().collect() == [b, c, a]
+    }
+
+    def "node becomes ready once reported via maybeReady"() {
+        def a = node()
+        def b = node()
+        waitingForDependencies << b
+        queue.addAll([a, b])
+
+        when:
+        waitingForDependencies.remove(b)
+
+        then:
+        queue.readyNodes().collect() == [a]
+
+        when:
+        queue.maybeReady(b)
+
+        then:
+        queue.readyNodes().collect() == [a, b]
+    }
+
+    def "maybeReady ignores nodes that are not ready"() {
+        def a = node()
+        notReady << a
+        queue.addAll([a])
+
+        when:
+        queue.maybeReady(a)
+
+        then:
+        !queue.hasReadyCandidates()
+        queue.readyNodes().collect() == []
+    }
+
+    def "drops candidates that are no longer ready while iterating ready nodes"() {
+        def a = node()
+        def b = node()
+        queue.addAll([a, b])
+
+        when:
+        notReady << a
+
+        then:
+        queue.readyNodes().collect() == [b]
+
+        when:
+        notReady.remove(a)
+
+        then:
+        // Dropped candidates need to be reported again
+        queue.readyNodes().collect() == [b]
+
+        when:
+        queue.maybeReady(a)
+
+        then:
+        queue.readyNodes().collect() == [a, b]
+    }
+
+    def "drops all candidates once none is ready"() {
+        def a = node()
+        queue.addAll([a])
+
+        when:
+        notReady << a
+
+        then:
+        queue.hasReadyCandidates()
+        !queue.readyNodes().hasNext()
+        !queue.hasReadyCandidates()
+    }
+
+    def "removes selected node from the queue"() {
+        def a = node()
+        def b = node()
+        queue.addAll([a, b])
+
+        when:
+        def readyNodes = queue.readyNodes()
+        def selected = readyNodes.next()
+        readyNodes.remove()
+
+        then:
+        selected == a
+        queue.readyNodes().collect() == [b]
+
+        when:
+        queue.maybeReady(a)
+
+        then:
+        queue.readyNodes().collect() == [b]
+    }
+
+    def "cannot remove node after checking for the next node"() {
+        def a = node()
+        def b = node()
+        queue.addAll([a, b])
+        def readyNodes = queue.readyNodes()
+
+        when:
+        readyNodes.remove()
+
+        then:
+        thrown(IllegalStateException)
+
+        when:
+        readyNodes.next()
+        readyNodes.hasNext()
+        readyNodes.remove()
+
+        then:
+        thrown(IllegalStateException)
+    }
+
+    def "does not add the same node twice"() {
+        def a = node()
+
+        when:
+        queue.addAll([a])
+        queue.addAll([a])
+
+        then:
+        queue.readyNodes().collect() == [a]
+    }
+
+    def "has incomplete nodes until all nodes in the queue are complete"() {
+        def a = node()
+        def b = node()
+        def completed = [] as Set
+        a.isComplete() >> { completed.contains(a) }
+        b.isComplete() >> { completed.contains(b) }
+        queue.addAll([a, b])
+
+        expect:
+        queue.hasIncompleteNodes()
+
+        when:
+        completed << a
+
+        then:
+        queue.hasIncompleteNodes()
+
+        when:
+        completed << b
+
+        then:
+        !queue.hasIncompleteNodes()
+    }
+
+    def "clear removes all nodes"() {
+        def a = node()
+        queue.addAll([a])
+
+        when:
+        queue.clear()
+
+        then:
+        !queue.hasReadyCandidates()
+        !queue.hasIncompleteNodes()
+        queue.readyNodes().collect() == []
+    }
+
+    private Node node() {
+        Node node
+        node = Stub(Node) {
+            isReady() >> { !notReady.contains(node) }
+            allDependenciesComplete() >> { !waitingForDependencies.contains(node) }
+        }
+        return node
+    }
+}
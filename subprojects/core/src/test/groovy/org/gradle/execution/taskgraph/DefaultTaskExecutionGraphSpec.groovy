@@ -36,6 +36,8 @@ import org.gradle.api.internal.tasks.TaskLocalStateInternal
 import org.gradle.api.internal.tasks.TaskStateInternal
 import org.gradle.api.specs.Spec
 import org.gradle.api.tasks.TaskDependency
+import org.gradle.caching.internal.controller.BuildCacheController
+import org.gradle.caching.internal.controller.NoOpBuildCacheController
 import org.gradle.composite.internal.IncludedBuildTaskGraph
 import org.gradle.configuration.internal.TestListenerBuildOperationDecorator
 import org.gradle.execution.TaskSelector
@@ -82,6 +84,9 @@ class DefaultTaskExecutionGraphSpec extends AbstractExecutionPlanSpec {
     def taskNodeFactory = new TaskNodeFactory(thisBuild, Stub(IncludedBuildTaskGraph))
     def dependencyResolver = new TaskDependencyResolver([new TaskNodeDependencyResolver(taskNodeFactory)])
     def projectStateRegistry = Stub(ProjectStateRegistry)
+    def gradleScopedServices = Stub(ServiceRegistry) {
+        get(BuildCacheController) >> NoOpBuildCacheController.INSTANCE
+    }
     def executionPlan = new DefaultExecutionPlan(Path.ROOT.toString(), taskNodeFactory, dependencyResolver, nodeValidator, new ExecutionNodeAccessHierarchy(CASE_SENSITIVE, Stub(Stat)), new ExecutionNodeAccessHierarchy(CASE_SENSITIVE, Stub(Stat)))
     def taskGraph = new DefaultTaskExecutionGraph(
         new DefaultPlanExecutor(parallelismConfiguration, executorFactory, workerLeases, cancellationToken, coordinationService),
@@ -95,7 +100,7 @@ class DefaultTaskExecutionGraphSpec extends AbstractExecutionPlanSpec {
         taskExecutionListeners,
         listenerRegistrationListener,
         projectStateRegistry,
-        Stub(ServiceRegistry),
+        gradleScopedServices,
         Stub(TaskSelector)
     )
     WorkerLeaseRegistry.WorkerLeaseCompletion parentWorkerLease
@@ -397,7 +402,7 @@ class DefaultTaskExecutionGraphSpec extends AbstractExecutionPlanSpec {
             taskExecutionListeners,
             listenerRegistrationListener,
             projectStateRegistry,
-            Stub(ServiceRegistry),
+            gradleScopedServices,
             Stub(TaskSelector)
         )
         TaskExecutionGraphListener listener = Mock(TaskExecutionGraphListener)
@@ -436,7 +441,7 @@ class DefaultTaskExecutionGraphSpec extends AbstractExecutionPlanSpec {
             taskExecutionListeners,
             listenerRegistrationListener,
             projectStateRegistry,
-            Stub(ServiceRegistry),
+            gradleScopedServices,
             Stub(TaskSelector)
         )
         def closure = Mock(Closure)
@@ -0,0 +1,83 @@
+/*
+ * Copyright 2021 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.gradle.internal.execution.caching
+
+import org.gradle.api.internal.cache.StringInterner
+import org.gradle.api.internal.file.TestFiles
+import org.gradle.internal.fingerprint.DirectorySensitivity
+import org.gradle.internal.fingerprint.impl.AbsolutePathFileCollectionFingerprinter
+import org.gradle.internal.fingerprint.impl.DefaultFileCollectionSnapshotter
+import org.gradle.internal.fingerprint.impl.IgnoredPathFileCollectionFingerprinter
+import org.gradle.internal.fingerprint.impl.RelativePathFileCollectionFingerprinter
+import org.gradle.internal.hash.DefaultFileHasher
+import org.gradle.internal.hash.DefaultStreamHasher
+import org.gradle.internal.hash.Hashing
+import org.gradle.internal.snapshot.impl.DirectorySnapshotterStatistics
+import org.gradle.internal.vfs.FileSystemAccess
+import org.gradle.internal.vfs.impl.DefaultFileSystemAccess
+import org.gradle.test.fixtures.file.TestNameTestDirectoryProvider
+import org.junit.Rule
+import spock.lang.Specification
+
+class CacheKeyFileHasherTest extends Specification {
+    @Rule
+    public final TestNameTestDirectoryProvider tmpDir = new TestNameTestDirectoryProvider(getClass())
+
+    def md5Snapshotter = TestFiles.fileCollectionSnapshotter()
+    def murmur3Snapshotter = new DefaultFileCollectionSnapshotter(
+        new DefaultFileSystemAccess(
+            new DefaultFileHasher(new DefaultStreamHasher(Hashing.murmur3())),
+            new StringInterner(),
+            TestFiles.fileSystem(),
+            TestFiles.virtualFileSystem(),
+            { locations -> } as FileSystemAccess.WriteListener,
+            new DirectorySnapshotterStatistics.Collector()
+        ),
+        TestFiles.genericFileTreeSnapshotter(),
+        TestFiles.fileSystem()
+    )
+    def cacheKeyFileHasher = new CacheKeyFileHasher(TestFiles.fileHasher())
+
+    def "fingerprints hashed with a different function get the MD5 hash of #type"() {
+        def file = tmpDir.file("file.txt") << "content"
+        def dir = tmpDir.createDir("dir")
+        dir.file("nested.txt") << "nested content"
+        def missing = tmpDir.file("missing")
+        def files = TestFiles.fixed(file, dir, missing)
+
+        def md5Fingerprint = fingerprinter(md5Snapshotter).fingerprint(files)
+        def murmur3Fingerprint = fingerprinter(murmur3Snapshotter).fingerprint(files)
+
+        expect:
+        murmur3Fingerprint.hash != md5Fingerprint.hash
+        cacheKeyFileHasher.rehash(murmur3Fingerprint).hash == md5Fingerprint.hash
+        cacheKeyFileHasher.rehash(murmur3Fingerprint).fingerprints == md5Fingerprint.fingerprints
+
+        where:
+        type            | fingerprinter
+        "absolute path" | { snapshotter -> new AbsolutePathFileCollectionFingerprinter(DirectorySensitivity.DEFAULT, snapshotter) }
+        "relative path" | { snapshotter -> new RelativePathFileCollectionFingerprinter(new StringInterner(), DirectorySensitivity.DEFAULT, snapshotter) }
+        "ignored path"  | { snapshotter -> new IgnoredPathFileCollectionFingerprinter(snapshotter) }
+    }
+
+    def "leaves fingerprints unchanged when snapshots already use MD5"() {
+        def file = tmpDir.file("file.txt") << "content"
+        def fingerprint = new AbsolutePathFileCollectionFingerprinter(DirectorySensitivity.DEFAULT, md5Snapshotter).fingerprint(TestFiles.fixed(file))
+
+        expect:
+        CacheKeyFileHasher.UNCHANGED.rehash(fingerprint).is(fingerprint)
+    }
+}
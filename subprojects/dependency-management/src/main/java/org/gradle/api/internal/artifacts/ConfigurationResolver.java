@@ -32,6 +32,21 @@ public interface ConfigurationResolver {
      */
     void resolveGraph(ConfigurationInternal configuration, ResolverResults results) throws ResolveException;
 
+    /**
+     * Traverses the full dependency graph of the given configuration, for a consumer that only requires the {@link org.gradle.api.artifacts.result.ResolutionResult}.
+     * All failures are packaged in the result.
+     *
+     * @return true when the graph was restored from a cache. The result then only holds the resolution result, and the graph must be traversed again using
+     * {@link #resolveRestoredGraph(ConfigurationInternal, ResolverResults, ResolverResults)} before its artifacts can be resolved.
+     */
+    boolean resolveGraphForResolutionResult(ConfigurationInternal configuration, ResolverResults results) throws ResolveException;
+
+    /**
+     * Traverses the full dependency graph of a configuration whose graph was restored from a cache by {@link #resolveGraphForResolutionResult(ConfigurationInternal, ResolverResults)}.
+     * Fails when the graph does not match the restored graph. All failures are packaged in the result.
+     */
+    void resolveRestoredGraph(ConfigurationInternal configuration, ResolverResults restoredResults, ResolverResults results) throws ResolveException;
+
     /**
      * Calculates the artifacts to include in the result for the given configuration. All failures are packaged in the result.
      * Must be called using the same result instance as was passed to {@link #resolveGraph(ConfigurationInternal, ResolverResults)}.
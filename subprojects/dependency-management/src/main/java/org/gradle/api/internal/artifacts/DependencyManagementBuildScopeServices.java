@@ -35,6 +35,7 @@
 import org.gradle.api.internal.artifacts.ivyservice.ArtifactCacheLockingManager;
 import org.gradle.api.internal.artifacts.ivyservice.ArtifactCacheMetadata;
 import org.gradle.api.internal.artifacts.ivyservice.ArtifactCachesProvider;
+import org.gradle.api.internal.artifacts.ivyservice.ResolvedGraphCache;
 import org.gradle.api.internal.artifacts.ivyservice.ivyresolve.ChangingValueDependencyResolutionListener;
 import org.gradle.api.internal.artifacts.ivyservice.ivyresolve.ConnectionFailureRepositoryDisabler;
 import org.gradle.api.internal.artifacts.ivyservice.ivyresolve.ModuleDescriptorHashCodec;
@@ -58,6 +59,7 @@
 import org.gradle.api.internal.artifacts.ivyservice.modulecache.ModuleRepositoryCacheProvider;
 import org.gradle.api.internal.artifacts.ivyservice.modulecache.ModuleRepositoryCaches;
 import org.gradle.api.internal.artifacts.ivyservice.modulecache.ModuleSourcesSerializer;
+import org.gradle.api.internal.artifacts.ivyservice.modulecache.ParsedMetadataCache;
 import org.gradle.api.internal.artifacts.ivyservice.modulecache.PersistentModuleMetadataCache;
 import org.gradle.api.internal.artifacts.ivyservice.modulecache.ReadOnlyModuleMetadataCache;
 import org.gradle.api.internal.artifacts.ivyservice.modulecache.SuppliedComponentMetadataSerializer;
@@ -90,6 +92,7 @@
 import org.gradle.api.internal.artifacts.ivyservice.projectmodule.ProjectPublicationRegistry;
 import org.gradle.api.internal.artifacts.ivyservice.resolveengine.DefaultArtifactDependencyResolver;
 import org.gradle.api.internal.artifacts.ivyservice.resolveengine.excludes.ModuleExclusions;
+import org.gradle.api.internal.artifacts.ivyservice.resolveengine.graph.builder.MetadataPrefetchService;
 import org.gradle.api.internal.artifacts.ivyservice.resolveengine.result.AttributeContainerSerializer;
 import org.gradle.api.internal.artifacts.ivyservice.resolveengine.result.CachingComponentSelectionDescriptorFactory;
 import org.gradle.api.internal.artifacts.ivyservice.resolveengine.result.ComponentSelectionDescriptorFactory;
@@ -109,6 +112,7 @@
 import org.gradle.api.internal.artifacts.repositories.transport.RepositoryTransportFactory;
 import org.gradle.api.internal.artifacts.verification.signatures.DefaultSignatureVerificationServiceFactory;
 import org.gradle.api.internal.artifacts.verification.signatures.SignatureVerificationServiceFactory;
+import org.gradle.api.internal.attributes.AttributeDesugaring;
 import org.gradle.api.internal.attributes.ImmutableAttributesFactory;
 import org.gradle.api.internal.catalog.DefaultDependenciesAccessors;
 import org.gradle.api.internal.catalog.DependenciesAccessorsWorkspaceProvider;
@@ -134,6 +138,7 @@
 import org.gradle.cache.CacheRepository;
 import org.gradle.cache.internal.CacheScopeMapping;
 import org.gradle.cache.internal.CleaningInMemoryCacheDecoratorFactory;
+import org.gradle.cache.internal.CleanupActionFactory;
 import org.gradle.cache.internal.GeneratedGradleJarCache;
 import org.gradle.cache.internal.InMemoryCacheDecoratorFactory;
 import org.gradle.cache.internal.ProducerGuard;
@@ -152,6 +157,7 @@
 import org.gradle.internal.component.external.model.ModuleComponentArtifactMetadata;
 import org.gradle.internal.component.external.model.PreferJavaRuntimeVariant;
 import org.gradle.internal.component.model.PersistentModuleSource;
+import org.gradle.internal.concurrent.ExecutorFactory;
 import org.gradle.internal.event.ListenerManager;
 import org.gradle.internal.execution.ExecutionEngine;
 import org.gradle.internal.execution.ExecutionResult;
@@ -223,6 +229,7 @@
 import org.gradle.internal.resource.local.ivy.LocallyAvailableResourceFinderFactory;
 import org.gradle.internal.resource.transfer.CachingTextUriResourceLoader;
 import org.gradle.internal.resource.transport.http.HttpConnectorFactory;
+import org.gradle.internal.resources.ResourceLockCoordinationService;
 import org.gradle.internal.service.ServiceRegistration;
 import org.gradle.internal.service.ServiceRegistry;
 import org.gradle.internal.snapshot.FileSystemSnapshot;
@@ -230,6 +237,7 @@
 import org.gradle.internal.snapshot.ValueSnapshotter;
 import org.gradle.internal.typeconversion.NotationParser;
 import org.gradle.internal.vfs.VirtualFileSystem;
+import org.gradle.internal.work.WorkerLeaseService;
 import org.gradle.util.BuildCommencedTimeProvider;
 import org.gradle.util.internal.SimpleMapInterner;
 
@@ -518,6 +526,11 @@ LocallyAvailableResourceFinder<ModuleComponentArtifactMetadata> createArtifactRe
         return finderFactory.create();
     }
 
+    ResolvedGraphCache createResolvedGraphCache(ArtifactCachesProvider artifactCaches, VersionSelectorScheme versionSelectorScheme, ImmutableAttributesFactory attributesFactory, StartParameter startParameter) {
+        boolean enabled = Boolean.getBoolean(ResolvedGraphCache.RESOLVED_GRAPH_CACHE_PROPERTY) && !startParameter.isRefreshDependencies();
+        return new ResolvedGraphCache(artifactCaches.getWritableCacheLockingManager(), versionSelectorScheme, new AttributeDesugaring(attributesFactory), enabled);
+    }
+
     RepositoryTransportFactory createRepositoryTransportFactory(ProgressLoggerFactory progressLoggerFactory,
                                                                 TemporaryFileProvider temporaryFileProvider,
                                                                 FileStoreAndIndexProvider fileStoreAndIndexProvider,
@@ -610,7 +623,8 @@ ArtifactDependencyResolver createArtifactDependencyResolver(ResolveIvyFactory re
                                                                 InstantiatorFactory instantiatorFactory,
                                                                 ComponentSelectionDescriptorFactory componentSelectionDescriptorFactory,
                                                                 FeaturePreviews featurePreviews,
-                                                                CalculatedValueContainerFactory calculatedValueContainerFactory) {
+                                                                CalculatedValueContainerFactory calculatedValueContainerFactory,
+                                                                MetadataPrefetchService metadataPrefetchService) {
         return new DefaultArtifactDependencyResolver(
             buildOperationExecutor,
             resolverFactories,
@@ -627,7 +641,12 @@ ArtifactDependencyResolver createArtifactDependencyResolver(ResolveIvyFactory re
             instantiatorFactory,
             componentSelectionDescriptorFactory,
             featurePreviews,
-            calculatedValueContainerFactory);
+            calculatedValueContainerFactory,
+            metadataPrefetchService);
+    }
+
+    MetadataPrefetchService createMetadataPrefetchService(ExecutorFactory executorFactory, WorkerLeaseService workerLeaseService, ResourceLockCoordinationService coordinationService) {
+        return new MetadataPrefetchService(executorFactory, workerLeaseService, coordinationService, Boolean.getBoolean(MetadataPrefetchService.METADATA_PREFETCH_PROPERTY));
     }
 
     ProjectPublicationRegistry createProjectPublicationRegistry() {
@@ -660,6 +679,14 @@ SimpleMapInterner createStringInterner() {
         return SimpleMapInterner.threadSafe();
     }
 
+    ParsedMetadataCache createParsedMetadataCache(CacheRepository cacheRepository, ImmutableAttributesFactory attributesFactory, NamedObjectInstantiator instantiator, MavenMutableModuleMetadataFactory mavenMetadataFactory, IvyMutableModuleMetadataFactory ivyMetadataFactory, ModuleSourcesSerializer moduleSourcesSerializer, ImmutableModuleIdentifierFactory moduleIdentifierFactory, ChecksumService checksumService, CleanupActionFactory cleanupActionFactory, StartParameter startParameter) {
+        boolean enabled = Boolean.getBoolean(ParsedMetadataCache.PARSED_METADATA_CACHE_PROPERTY) && !startParameter.isRefreshDependencies();
+        String cacheDir = System.getProperty(ParsedMetadataCache.PARSED_METADATA_CACHE_DIR_PROPERTY);
+        DesugaringAttributeContainerSerializer attributeContainerSerializer = new DesugaringAttributeContainerSerializer(attributesFactory, instantiator);
+        ModuleMetadataSerializer metadataSerializer = new ModuleMetadataSerializer(attributeContainerSerializer, mavenMetadataFactory, ivyMetadataFactory, moduleSourcesSerializer);
+        return new ParsedMetadataCache(cacheRepository, metadataSerializer, moduleIdentifierFactory, checksumService, cleanupActionFactory, enabled, cacheDir != null ? new File(cacheDir) : null);
+    }
+
     ModuleComponentResolveMetadataSerializer createModuleComponentResolveMetadataSerializer(ImmutableAttributesFactory attributesFactory, MavenMutableModuleMetadataFactory mavenMetadataFactory, IvyMutableModuleMetadataFactory ivyMetadataFactory, ImmutableModuleIdentifierFactory moduleIdentifierFactory, NamedObjectInstantiator instantiator, ModuleSourcesSerializer moduleSourcesSerializer) {
         DesugaringAttributeContainerSerializer attributeContainerSerializer = new DesugaringAttributeContainerSerializer(attributesFactory, instantiator);
         return new ModuleComponentResolveMetadataSerializer(new ModuleMetadataSerializer(attributeContainerSerializer, mavenMetadataFactory, ivyMetadataFactory, moduleSourcesSerializer), attributeContainerSerializer, moduleIdentifierFactory);
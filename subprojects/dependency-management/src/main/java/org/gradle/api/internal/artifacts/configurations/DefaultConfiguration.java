@@ -576,11 +576,18 @@ public ResolvedConfiguration getResolvedConfiguration() {
     }
 
     private ResolveState resolveToStateOrLater(final InternalState requestedState) {
+        return resolveToStateOrLater(requestedState, false);
+    }
+
+    /**
+     * @param resolutionResultOnly whether the caller only uses the resolution result, see {@link ConfigurationResolver#resolveGraphForResolutionResult(ConfigurationInternal, ResolverResults)}
+     */
+    private ResolveState resolveToStateOrLater(final InternalState requestedState, boolean resolutionResultOnly) {
         assertIsResolvable();
         warnIfConfigurationIsDeprecatedForResolving();
 
         ResolveState currentState = currentResolveState.get();
-        if (currentState.state.compareTo(requestedState) >= 0) {
+        if (currentState.state.compareTo(requestedState) >= 0 && (resolutionResultOnly || !currentState.isRestoredGraph())) {
             return currentState;
         }
 
@@ -594,10 +601,10 @@ private ResolveState resolveToStateOrLater(final InternalState requestedState) {
                     .willBeRemovedInGradle8()
                     .withUserManual("viewing_debugging_dependencies", "sub:resolving-unsafe-configuration-resolution-errors")
                     .nagUser();
-                return owner.getModel().fromMutableState(p -> resolveExclusively(requestedState));
+                return owner.getModel().fromMutableState(p -> resolveExclusively(requestedState, resolutionResultOnly));
             }
         }
-        return resolveExclusively(requestedState);
+        return resolveExclusively(requestedState, resolutionResultOnly);
     }
 
     private void warnIfConfigurationIsDeprecatedForResolving() {
@@ -610,10 +617,14 @@ private void warnIfConfigurationIsDeprecatedForResolving() {
     }
 
     private ResolveState resolveExclusively(InternalState requestedState) {
+        return resolveExclusively(requestedState, false);
+    }
+
+    private ResolveState resolveExclusively(InternalState requestedState, boolean resolutionResultOnly) {
         return currentResolveState.update(initial -> {
             ResolveState current = initial;
             if (requestedState == GRAPH_RESOLVED || requestedState == ARTIFACTS_RESOLVED) {
-                current = resolveGraphIfRequired(requestedState, current);
+                current = resolveGraphIfRequired(requestedState, current, resolutionResultOnly);
             }
             if (requestedState == ARTIFACTS_RESOLVED) {
                 current = resolveArtifactsIfRequired(current);
@@ -623,29 +634,41 @@ private ResolveState resolveExclusively(InternalState requestedState) {
     }
 
     /**
-     * Must be called from {@link #resolveExclusively(InternalState)} only.
+     * Must be called from {@link #resolveExclusively(InternalState, boolean)} only.
      */
-    private ResolveState resolveGraphIfRequired(final InternalState requestedState, ResolveState currentState) {
+    private ResolveState resolveGraphIfRequired(final InternalState requestedState, ResolveState currentState, boolean resolutionResultOnly) {
         if (currentState.state == ARTIFACTS_RESOLVED || currentState.state == GRAPH_RESOLVED) {
             if (dependenciesModified) {
                 throw new InvalidUserDataException(String.format("Attempted to resolve %s that has been resolved previously.", getDisplayName()));
             }
-            return currentState;
+            if (resolutionResultOnly || !currentState.isRestoredGraph()) {
+                return currentState;
+            }
         }
+        // A graph restored from the cache has no artifacts, so traverse the graph in full when they are required
+        ResolverResults restoredResults = currentState.isRestoredGraph() ? currentState.getCachedResolverResults() : null;
 
         return buildOperationExecutor.call(new CallableBuildOperation<ResolveState>() {
             @Override
             public ResolveState call(BuildOperationContext context) {
-                runDependencyActions();
-                preventFromFurtherMutation();
-
                 ResolvableDependenciesInternal incoming = (ResolvableDependenciesInternal) getIncoming();
-                performPreResolveActions(incoming);
+                if (restoredResults == null) {
+                    runDependencyActions();
+                    preventFromFurtherMutation();
+                    performPreResolveActions(incoming);
+                }
                 DefaultResolverResults results = new DefaultResolverResults();
-                resolver.resolveGraph(DefaultConfiguration.this, results);
+                boolean restored = false;
+                if (restoredResults != null) {
+                    resolver.resolveRestoredGraph(DefaultConfiguration.this, restoredResults, results);
+                } else if (resolutionResultOnly) {
+                    restored = resolver.resolveGraphForResolutionResult(DefaultConfiguration.this, results);
+                } else {
+                    resolver.resolveGraph(DefaultConfiguration.this, results);
+                }
                 dependenciesModified = false;
 
-                ResolveState newState = new GraphResolved(results);
+                ResolveState newState = new GraphResolved(results, restored);
 
                 // Make the new state visible in case a dependency resolution listener queries the result, which requires the new state
                 currentResolveState.set(newState);
@@ -803,7 +826,7 @@ private void markReferencedProjectConfigurationsObserved(InternalState requested
     }
 
     /**
-     * Must be called from {@link #resolveExclusively(InternalState)} only.
+     * Must be called from {@link #resolveExclusively(InternalState, boolean)} only.
      */
     private ResolveState resolveArtifactsIfRequired(ResolveState currentState) {
         if (currentState.state == ARTIFACTS_RESOLVED) {
@@ -813,8 +836,12 @@ private ResolveState resolveArtifactsIfRequired(ResolveState currentState) {
             throw new IllegalStateException("Cannot resolve artifacts before graph has been resolved.");
         }
         ResolverResults results = currentState.getCachedResolverResults();
+        if (currentState.isRestoredGraph()) {
+            // The artifacts are resolved along with the full graph, when they are first required
+            return new ArtifactsResolved(results, true);
+        }
         resolver.resolveArtifacts(DefaultConfiguration.this, results);
-        return new ArtifactsResolved(results);
+        return new ArtifactsResolved(results, false);
     }
 
     @Override
@@ -835,7 +862,7 @@ private ResolverResults getResultsForBuildDependencies() {
     }
 
     private ResolverResults resolveGraphForBuildDependenciesIfRequired() {
-        if (getResolutionStrategy().resolveGraphToDetermineTaskDependencies()) {
+        if (getResolutionStrategy().resolveGraphToDetermineTaskDependencies() || currentResolveState.get().isRestoredGraph()) {
             // Force graph resolution as this is required to calculate build dependencies
             return resolveToStateOrLater(GRAPH_RESOLVED).getCachedResolverResults();
         }
@@ -1604,6 +1631,13 @@ public boolean hasError() {
 
         abstract boolean hasError();
 
+        /**
+         * Whether the graph was restored from the cache, in which case the results only contain the resolution result.
+         */
+        boolean isRestoredGraph() {
+            return false;
+        }
+
         public abstract ResolvedConfiguration getResolvedConfiguration();
 
         public abstract ResolverResults getCachedResolverResults();
@@ -1611,10 +1645,16 @@ public boolean hasError() {
 
     private static class WithResults extends ResolveState {
         final ResolverResults cachedResolverResults;
+        final boolean restoredGraph;
 
         WithResults(InternalState state, ResolverResults cachedResolverResults) {
+            this(state, cachedResolverResults, false);
+        }
+
+        WithResults(InternalState state, ResolverResults cachedResolverResults, boolean restoredGraph) {
             super(state);
             this.cachedResolverResults = cachedResolverResults;
+            this.restoredGraph = restoredGraph;
         }
 
         @Override
@@ -1622,6 +1662,11 @@ boolean hasError() {
             return cachedResolverResults.hasError();
         }
 
+        @Override
+        boolean isRestoredGraph() {
+            return restoredGraph;
+        }
+
         @Override
         public ResolverResults getCachedResolverResults() {
             return cachedResolverResults;
@@ -1640,14 +1685,14 @@ public BuildDependenciesResolved(ResolverResults results) {
     }
 
     private static class GraphResolved extends WithResults {
-        public GraphResolved(ResolverResults cachedResolverResults) {
-            super(GRAPH_RESOLVED, cachedResolverResults);
+        public GraphResolved(ResolverResults cachedResolverResults, boolean restoredGraph) {
+            super(GRAPH_RESOLVED, cachedResolverResults, restoredGraph);
         }
     }
 
     private static class ArtifactsResolved extends WithResults {
-        public ArtifactsResolved(ResolverResults results) {
-            super(ARTIFACTS_RESOLVED, results);
+        public ArtifactsResolved(ResolverResults results, boolean restoredGraph) {
+            super(ARTIFACTS_RESOLVED, results, restoredGraph);
         }
     }
 
@@ -1793,7 +1838,7 @@ private void resolve() {
                 if (delegate == null) {
                     synchronized (this) {
                         if (delegate == null) {
-                            ResolveState currentState = resolveToStateOrLater(ARTIFACTS_RESOLVED);
+                            ResolveState currentState = resolveToStateOrLater(ARTIFACTS_RESOLVED, true);
                             delegate = currentState.getCachedResolverResults().getResolutionResult();
                             Throwable failure = currentState.getCachedResolverResults().consumeNonFatalFailure();
                             if (failure != null) {
@@ -17,9 +17,12 @@
 package org.gradle.api.internal.artifacts.ivyservice;
 
 import com.google.common.collect.ImmutableList;
+import org.gradle.api.artifacts.Dependency;
 import org.gradle.api.artifacts.ProjectDependency;
 import org.gradle.api.artifacts.UnresolvedDependency;
 import org.gradle.api.artifacts.component.BuildIdentifier;
+import org.gradle.api.artifacts.component.ComponentIdentifier;
+import org.gradle.api.artifacts.result.ResolutionResult;
 import org.gradle.api.artifacts.result.ResolvedComponentResult;
 import org.gradle.api.internal.artifacts.ArtifactDependencyResolver;
 import org.gradle.api.internal.artifacts.ComponentSelectorConverter;
@@ -35,6 +38,8 @@
 import org.gradle.api.internal.artifacts.ivyservice.resolveengine.artifact.BuildDependenciesOnlyVisitedArtifactSet;
 import org.gradle.api.internal.artifacts.ivyservice.resolveengine.artifact.DefaultResolvedArtifactsBuilder;
 import org.gradle.api.internal.artifacts.ivyservice.resolveengine.artifact.DependencyArtifactsVisitor;
+import org.gradle.api.internal.artifacts.ivyservice.resolveengine.artifact.SelectedArtifactSet;
+import org.gradle.api.internal.artifacts.ivyservice.resolveengine.artifact.VisitedArtifactSet;
 import org.gradle.api.internal.artifacts.ivyservice.resolveengine.artifact.VisitedArtifactsResults;
 import org.gradle.api.internal.artifacts.ivyservice.resolveengine.artifact.VisitedFileDependencyResults;
 import org.gradle.api.internal.artifacts.ivyservice.resolveengine.graph.CompositeDependencyArtifactsVisitor;
@@ -53,11 +58,13 @@
 import org.gradle.api.internal.artifacts.ivyservice.resolveengine.result.ComponentSelectionDescriptorFactory;
 import org.gradle.api.internal.artifacts.ivyservice.resolveengine.result.FileDependencyCollectingGraphVisitor;
 import org.gradle.api.internal.artifacts.ivyservice.resolveengine.result.StreamingResolutionResultBuilder;
+import org.gradle.api.internal.artifacts.ivyservice.resolveengine.store.InMemoryBinaryStore;
 import org.gradle.api.internal.artifacts.ivyservice.resolveengine.store.ResolutionResultsStoreFactory;
 import org.gradle.api.internal.artifacts.ivyservice.resolveengine.store.StoreSet;
 import org.gradle.api.internal.artifacts.repositories.ResolutionAwareRepository;
 import org.gradle.api.internal.artifacts.transform.ArtifactTransforms;
 import org.gradle.api.internal.artifacts.type.ArtifactTypeRegistry;
+import org.gradle.api.internal.attributes.AttributeContainerInternal;
 import org.gradle.api.internal.attributes.AttributeDesugaring;
 import org.gradle.api.internal.attributes.AttributesSchemaInternal;
 import org.gradle.api.specs.Spec;
@@ -67,9 +74,12 @@
 import org.gradle.internal.Cast;
 import org.gradle.internal.component.local.model.DslOriginDependencyMetadata;
 import org.gradle.internal.component.model.DependencyMetadata;
+import org.gradle.internal.hash.HashCode;
 import org.gradle.internal.locking.DependencyLockingArtifactVisitor;
 import org.gradle.internal.operations.BuildOperationExecutor;
 
+import javax.annotation.Nullable;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
 import java.util.Set;
@@ -92,6 +102,7 @@ public class DefaultConfigurationResolver implements ConfigurationResolver {
     private final AttributeDesugaring attributeDesugaring;
     private final DependencyVerificationOverride dependencyVerificationOverride;
     private final ComponentSelectionDescriptorFactory componentSelectionDescriptorFactory;
+    private final ResolvedGraphCache resolvedGraphCache;
 
     public DefaultConfigurationResolver(ArtifactDependencyResolver resolver,
                                         RepositoriesSupplier repositoriesSupplier,
@@ -107,7 +118,8 @@ public DefaultConfigurationResolver(ArtifactDependencyResolver resolver,
                                         AttributeContainerSerializer attributeContainerSerializer,
                                         BuildIdentifier currentBuild, AttributeDesugaring attributeDesugaring,
                                         DependencyVerificationOverride dependencyVerificationOverride,
-                                        ComponentSelectionDescriptorFactory componentSelectionDescriptorFactory) {
+                                        ComponentSelectionDescriptorFactory componentSelectionDescriptorFactory,
+                                        ResolvedGraphCache resolvedGraphCache) {
         this.resolver = resolver;
         this.repositoriesSupplier = repositoriesSupplier;
         this.metadataHandler = metadataHandler;
@@ -124,6 +136,7 @@ public DefaultConfigurationResolver(ArtifactDependencyResolver resolver,
         this.attributeDesugaring = attributeDesugaring;
         this.dependencyVerificationOverride = dependencyVerificationOverride;
         this.componentSelectionDescriptorFactory = componentSelectionDescriptorFactory;
+        this.resolvedGraphCache = resolvedGraphCache;
     }
 
     @Override
@@ -139,7 +152,39 @@ public void resolveBuildDependencies(ConfigurationInternal configuration, Resolv
 
     @Override
     public void resolveGraph(ConfigurationInternal configuration, ResolverResults results) {
+        resolveGraph(configuration, results, getRepositories(), null, null);
+    }
+
+    @Override
+    public boolean resolveGraphForResolutionResult(ConfigurationInternal configuration, ResolverResults results) {
         List<ResolutionAwareRepository> resolutionAwareRepositories = getRepositories();
+        HashCode graphKey = null;
+        if (dependencyVerificationOverride == DependencyVerificationOverride.NO_VERIFICATION) {
+            // Metadata is verified while building the graph, so a cached graph cannot be used when verification is enabled
+            graphKey = resolvedGraphCache.keyFor(configuration, resolutionAwareRepositories, metadataHandler, attributesSchema);
+        }
+        if (graphKey != null) {
+            byte[] cachedGraph = resolvedGraphCache.load(graphKey);
+            if (cachedGraph != null) {
+                restoreGraph(configuration, results, graphKey, cachedGraph);
+                return true;
+            }
+        }
+        resolveGraph(configuration, results, resolutionAwareRepositories, graphKey, null);
+        return false;
+    }
+
+    @Override
+    public void resolveRestoredGraph(ConfigurationInternal configuration, ResolverResults restoredResults, ResolverResults results) {
+        RestoredGraph restoredGraph = (RestoredGraph) restoredResults.getArtifactResolveState();
+        resolveGraph(configuration, results, getRepositories(), restoredGraph.key, restoredGraph.graph);
+    }
+
+    /**
+     * @param graphKey the key to cache the graph with, or null when the graph should not be cached
+     * @param restoredGraph the graph previously restored from the cache, which must match the resolved graph
+     */
+    private void resolveGraph(ConfigurationInternal configuration, ResolverResults results, List<ResolutionAwareRepository> resolutionAwareRepositories, @Nullable HashCode graphKey, @Nullable byte[] restoredGraph) {
         StoreSet stores = storeFactory.createStoreSet();
 
         BinaryStore oldModelStore = stores.nextBinaryStore();
@@ -148,7 +193,8 @@ public void resolveGraph(ConfigurationInternal configuration, ResolverResults re
         DefaultResolvedConfigurationBuilder oldModelBuilder = new DefaultResolvedConfigurationBuilder(oldTransientModelBuilder);
         ResolvedConfigurationDependencyGraphVisitor oldModelVisitor = new ResolvedConfigurationDependencyGraphVisitor(oldModelBuilder);
 
-        BinaryStore newModelStore = stores.nextBinaryStore();
+        // Keep the graph in memory when it may be cached, so that it can be persisted once resolved
+        BinaryStore newModelStore = graphKey != null ? new InMemoryBinaryStore() : stores.nextBinaryStore();
         Store<ResolvedComponentResult> newModelCache = stores.newModelCache();
         StreamingResolutionResultBuilder newModelBuilder = new StreamingResolutionResultBuilder(newModelStore, newModelCache, moduleIdentifierFactory, attributeContainerSerializer, attributeDesugaring, componentSelectionDescriptorFactory);
 
@@ -158,7 +204,10 @@ public void resolveGraph(ConfigurationInternal configuration, ResolverResults re
         DefaultResolvedArtifactsBuilder artifactsBuilder = new DefaultResolvedArtifactsBuilder(buildProjectDependencies, resolutionStrategy.getSortOrder());
         FileDependencyCollectingGraphVisitor fileDependencyVisitor = new FileDependencyCollectingGraphVisitor();
         ResolutionFailureCollector failureCollector = new ResolutionFailureCollector(componentSelectorConverter);
-        DependencyGraphVisitor graphVisitor = new CompositeDependencyGraphVisitor(newModelBuilder, localComponentsVisitor, failureCollector);
+        ResolvedGraphCache.CacheabilityCheck cacheabilityCheck = resolvedGraphCache.newCacheabilityCheck();
+        DependencyGraphVisitor graphVisitor = graphKey != null
+            ? new CompositeDependencyGraphVisitor(newModelBuilder, localComponentsVisitor, failureCollector, cacheabilityCheck)
+            : new CompositeDependencyGraphVisitor(newModelBuilder, localComponentsVisitor, failureCollector);
 
         ImmutableList.Builder<DependencyArtifactsVisitor> visitors = new ImmutableList.Builder<>();
         visitors.add(oldModelVisitor);
@@ -189,6 +238,22 @@ public void resolveGraph(ConfigurationInternal configuration, ResolverResults re
             : lockingVisitor.collectLockingFailures();
         Set<UnresolvedDependency> failures = failureCollector.complete(extraFailures);
         results.graphResolved(newModelBuilder.complete(extraFailures), localComponentsVisitor, new BuildDependenciesOnlyVisitedArtifactSet(failures, artifactsResults, artifactTransforms, configuration.getDependenciesResolver()));
+        if (graphKey != null) {
+            byte[] graph = ((InMemoryBinaryStore) newModelStore).toByteArray();
+            boolean cacheable = failures.isEmpty() && cacheabilityCheck.isCacheable();
+            if (restoredGraph != null && !Arrays.equals(restoredGraph, graph)) {
+                // The consumers of the restored graph have seen a different result, so this resolution cannot be used
+                if (cacheable) {
+                    resolvedGraphCache.store(graphKey, graph);
+                } else {
+                    resolvedGraphCache.remove(graphKey);
+                }
+                throw new IllegalStateException(String.format("The dependency graph of %s restored from the resolved graph cache does not match the resolved graph. The cache entry has been replaced.", configuration.getDisplayName()));
+            }
+            if (restoredGraph == null && cacheable) {
+                resolvedGraphCache.store(graphKey, graph);
+            }
+        }
 
         results.retainState(new ArtifactResolveState(graphResults, artifactsResults, fileDependencyResults, failures, oldTransientModelBuilder));
         if (!results.hasError() && failures.isEmpty()) {
@@ -196,6 +261,22 @@ public void resolveGraph(ConfigurationInternal configuration, ResolverResults re
         }
     }
 
+    /**
+     * Uses a graph restored from the cache as the result. Artifacts and build dependencies are not cached, so the owning configuration uses
+     * {@link #resolveRestoredGraph(ConfigurationInternal, ResolverResults, ResolverResults)} if they are ever required.
+     */
+    private void restoreGraph(ConfigurationInternal configuration, ResolverResults results, HashCode graphKey, byte[] graph) {
+        StoreSet stores = storeFactory.createStoreSet();
+        StreamingResolutionResultBuilder newModelBuilder = new StreamingResolutionResultBuilder(new InMemoryBinaryStore(), stores.newModelCache(), moduleIdentifierFactory, attributeContainerSerializer, attributeDesugaring, componentSelectionDescriptorFactory);
+        AttributeContainerInternal rootAttributes = attributeDesugaring.desugar(configuration.getAttributes().asImmutable());
+        ResolutionResult resolutionResult = newModelBuilder.restore(new InMemoryBinaryStore.InMemoryBinaryData(graph), rootAttributes);
+        configuration.getResolutionStrategy().confirmUnlockedConfigurationResolved(configuration.getName());
+
+        RestoredGraph restoredGraph = new RestoredGraph(graphKey, graph);
+        results.graphResolved(resolutionResult, new ResolvedLocalComponentsResultGraphVisitor(currentBuild), restoredGraph);
+        results.retainState(restoredGraph);
+    }
+
     @Override
     public List<ResolutionAwareRepository> getRepositories() {
         return Cast.uncheckedCast(repositoriesSupplier.get());
@@ -203,7 +284,11 @@ public List<ResolutionAwareRepository> getRepositories() {
 
     @Override
     public void resolveArtifacts(ConfigurationInternal configuration, ResolverResults results) {
-        ArtifactResolveState resolveState = (ArtifactResolveState) results.getArtifactResolveState();
+        Object artifactResolveState = results.getArtifactResolveState();
+        if (artifactResolveState instanceof RestoredGraph) {
+            throw new IllegalStateException("Cannot resolve the artifacts of a dependency graph restored from the cache.");
+        }
+        ArtifactResolveState resolveState = (ArtifactResolveState) artifactResolveState;
         ResolvedGraphResults graphResults = resolveState.graphResults;
         VisitedArtifactsResults artifactResults = resolveState.artifactsResults;
         TransientConfigurationResultsBuilder transientConfigurationResultsBuilder = resolveState.transientConfigurationResultsBuilder;
@@ -230,4 +315,21 @@ private static class ArtifactResolveState {
         }
     }
 
+    /**
+     * A graph restored from the cache, which has no artifacts.
+     */
+    private static class RestoredGraph implements VisitedArtifactSet {
+        private final HashCode key;
+        private final byte[] graph;
+
+        RestoredGraph(HashCode key, byte[] graph) {
+            this.key = key;
+            this.graph = graph;
+        }
+
+        @Override
+        public SelectedArtifactSet select(Spec<? super Dependency> dependencySpec, AttributeContainerInternal requestedAttributes, Spec<? super ComponentIdentifier> componentSpec, boolean allowNoMatchingVariant) {
+            throw new IllegalStateException("Cannot select the artifacts of a dependency graph restored from the cache.");
+        }
+    }
 }
@@ -40,6 +40,7 @@
 import org.gradle.api.internal.attributes.AttributeContainerInternal;
 import org.gradle.api.internal.tasks.TaskDependencyResolveContext;
 import org.gradle.api.specs.Spec;
+import org.gradle.internal.Factory;
 
 import java.io.File;
 import java.util.List;
@@ -70,17 +71,39 @@ public void resolveBuildDependencies(ConfigurationInternal configuration, Resolv
 
     @Override
     public void resolveGraph(ConfigurationInternal configuration, ResolverResults results) throws ResolveException {
-        try {
+        resolveGraph(configuration, results, () -> {
             delegate.resolveGraph(configuration, results);
+            return false;
+        });
+    }
+
+    @Override
+    public boolean resolveGraphForResolutionResult(ConfigurationInternal configuration, ResolverResults results) throws ResolveException {
+        return resolveGraph(configuration, results, () -> delegate.resolveGraphForResolutionResult(configuration, results));
+    }
+
+    @Override
+    public void resolveRestoredGraph(ConfigurationInternal configuration, ResolverResults restoredResults, ResolverResults results) throws ResolveException {
+        resolveGraph(configuration, results, () -> {
+            delegate.resolveRestoredGraph(configuration, restoredResults, results);
+            return false;
+        });
+    }
+
+    private boolean resolveGraph(ConfigurationInternal configuration, ResolverResults results, Factory<Boolean> resolution) {
+        boolean restored;
+        try {
+            restored = resolution.create();
         } catch (Exception e) {
             results.failed(wrapException(e, configuration));
             BrokenResolvedConfiguration broken = new BrokenResolvedConfiguration(e, configuration);
             results.artifactsResolved(broken, broken);
-            return;
+            return false;
         }
 
         ResolutionResult wrappedResult = new ErrorHandlingResolutionResult(results.getResolutionResult(), configuration);
         results.graphResolved(wrappedResult, results.getResolvedLocalComponents(), results.getVisitedArtifacts());
+        return restored;
     }
 
     @Override
@@ -0,0 +1,308 @@
+/*
+ * Copyright 2021 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.api.internal.artifacts.ivyservice;
+
+import org.gradle.api.artifacts.ClientModule;
+import org.gradle.api.artifacts.Dependency;
+import org.gradle.api.artifacts.DependencyArtifact;
+import org.gradle.api.artifacts.DependencyConstraint;
+import org.gradle.api.artifacts.DependencySubstitution;
+import org.gradle.api.artifacts.ExcludeRule;
+import org.gradle.api.artifacts.ExternalModuleDependency;
+import org.gradle.api.artifacts.ModuleVersionSelector;
+import org.gradle.api.artifacts.VersionConstraint;
+import org.gradle.api.artifacts.component.ComponentSelector;
+import org.gradle.api.artifacts.component.ModuleComponentIdentifier;
+import org.gradle.api.artifacts.component.ModuleComponentSelector;
+import org.gradle.api.attributes.Attribute;
+import org.gradle.api.attributes.AttributeContainer;
+import org.gradle.api.capabilities.Capability;
+import org.gradle.api.internal.artifacts.GlobalDependencyResolutionRules;
+import org.gradle.api.internal.artifacts.Module;
+import org.gradle.api.internal.artifacts.configurations.ConfigurationInternal;
+import org.gradle.api.internal.artifacts.configurations.ConflictResolution;
+import org.gradle.api.internal.artifacts.configurations.ResolutionStrategyInternal;
+import org.gradle.api.internal.artifacts.dependencies.DefaultDependencyConstraint;
+import org.gradle.api.internal.artifacts.ivyservice.ivyresolve.ConfiguredModuleComponentRepository;
+import org.gradle.api.internal.artifacts.ivyservice.ivyresolve.strategy.VersionSelectorScheme;
+import org.gradle.api.internal.artifacts.ivyservice.resolveengine.graph.DependencyGraphNode;
+import org.gradle.api.internal.artifacts.ivyservice.resolveengine.graph.DependencyGraphSelector;
+import org.gradle.api.internal.artifacts.ivyservice.resolveengine.graph.DependencyGraphVisitor;
+import org.gradle.api.internal.artifacts.ivyservice.resolveengine.graph.RootGraphNode;
+import org.gradle.api.internal.artifacts.repositories.ContentFilteringRepository;
+import org.gradle.api.internal.artifacts.repositories.ResolutionAwareRepository;
+import org.gradle.api.internal.attributes.AttributeContainerInternal;
+import org.gradle.api.internal.attributes.AttributeDesugaring;
+import org.gradle.api.internal.attributes.AttributesSchemaInternal;
+import org.gradle.api.internal.attributes.ImmutableAttributes;
+import org.gradle.cache.PersistentIndexedCache;
+import org.gradle.internal.Actions;
+import org.gradle.internal.hash.HashCode;
+import org.gradle.internal.hash.Hashable;
+import org.gradle.internal.hash.Hasher;
+import org.gradle.internal.hash.Hashing;
+import org.gradle.internal.serialize.BaseSerializerFactory;
+import org.gradle.internal.serialize.HashCodeSerializer;
+import org.gradle.util.GradleVersion;
+
+import javax.annotation.Nullable;
+import java.util.List;
+
+/**
+ * A cache of resolved dependency graphs that is shared between builds. The graphs are kept in the artifact cache, next to the module metadata they were resolved from.
+ *
+ * <p>A graph is keyed by a fingerprint of everything that is used to resolve it, apart from the module metadata: the declared dependencies, constraints and excludes,
+ * the resolution strategy, the requested attributes and the attributes schema, the component metadata rules and the repositories.
+ * Only graphs that are fully determined by this fingerprint and the cached metadata are cached. These are graphs of external modules with fixed versions,
+ * resolved without failures and without rules for which no fingerprint can be calculated.</p>
+ *
+ * <p>Enabled via {@link #RESOLVED_GRAPH_CACHE_PROPERTY}.</p>
+ */
+public class ResolvedGraphCache {
+    /**
+     * Enables the cache. Attribute matching rules and component metadata rules implemented by a class are identified by the name of the class, so changes to their implementation are not detected.
+     */
+    public static final String RESOLVED_GRAPH_CACHE_PROPERTY = "org.gradle.unsafe.resolved-graph-cache";
+
+    private final ArtifactCacheLockingManager cacheLockingManager;
+    private final VersionSelectorScheme versionSelectorScheme;
+    private final AttributeDesugaring attributeDesugaring;
+    private final boolean enabled;
+    private PersistentIndexedCache<HashCode, byte[]> cache;
+
+    public ResolvedGraphCache(ArtifactCacheLockingManager cacheLockingManager, VersionSelectorScheme versionSelectorScheme, AttributeDesugaring attributeDesugaring, boolean enabled) {
+        this.cacheLockingManager = cacheLockingManager;
+        this.versionSelectorScheme = versionSelectorScheme;
+        this.attributeDesugaring = attributeDesugaring;
+        this.enabled = enabled;
+    }
+
+    /**
+     * Calculates the key of the graph of the given configuration, or returns null when the graph cannot be cached.
+     */
+    @Nullable
+    public HashCode keyFor(ConfigurationInternal configuration, List<ResolutionAwareRepository> repositories, GlobalDependencyResolutionRules metadataHandler, AttributesSchemaInternal attributesSchema) {
+        if (!enabled || !(attributesSchema instanceof Hashable)) {
+            return null;
+        }
+        ResolutionStrategyInternal resolutionStrategy = configuration.getResolutionStrategy();
+        if (resolutionStrategy.isDependencyLockingEnabled()
+            || resolutionStrategy.getConflictResolution() == ConflictResolution.strict
+            || !resolutionStrategy.getComponentSelection().getRules().isEmpty()
+            || resolutionStrategy.getDependencySubstitution().getRuleAction() != Actions.<DependencySubstitution>doNothing()
+            || metadataHandler.getDependencySubstitutionRules().getRuleAction() != Actions.<DependencySubstitution>doNothing()
+            || !resolutionStrategy.getCapabilitiesResolutionRules().isEmpty()
+            || !metadataHandler.getModuleMetadataProcessor().getModuleReplacements().isEmpty()) {
+            return null;
+        }
+
+        Hasher hasher = Hashing.newHasher();
+        hasher.putString(GradleVersion.current().getVersion());
+        hasher.putString(configuration.getIdentityPath().getPath());
+        Module module = configuration.getModule();
+        hasher.putString(module.getGroup());
+        hasher.putString(module.getName());
+        hasher.putString(module.getVersion());
+        hasher.putString(module.getStatus());
+        hasher.putBoolean(configuration.isTransitive());
+        appendAttributes(configuration.getAttributes(), hasher);
+        ((Hashable) attributesSchema).appendToHasher(hasher);
+
+        for (Dependency dependency : configuration.getAllDependencies()) {
+            if (!(dependency instanceof ExternalModuleDependency) || dependency instanceof ClientModule) {
+                return null;
+            }
+            ExternalModuleDependency moduleDependency = (ExternalModuleDependency) dependency;
+            if (moduleDependency.isChanging()) {
+                return null;
+            }
+            hasher.putString(nullToEmpty(moduleDependency.getGroup()));
+            hasher.putString(moduleDependency.getName());
+            appendVersionConstraint(moduleDependency.getVersionConstraint(), hasher);
+            hasher.putString(nullToEmpty(moduleDependency.getTargetConfiguration()));
+            hasher.putBoolean(moduleDependency.isTransitive());
+            hasher.putBoolean(moduleDependency.isForce());
+            hasher.putBoolean(moduleDependency.isEndorsingStrictVersions());
+            hasher.putString(nullToEmpty(moduleDependency.getReason()));
+            appendAttributes(moduleDependency.getAttributes(), hasher);
+            appendExcludeRules(moduleDependency.getExcludeRules(), hasher);
+            hasher.putInt(moduleDependency.getArtifacts().size());
+            for (DependencyArtifact artifact : moduleDependency.getArtifacts()) {
+                hasher.putString(artifact.getName());
+                hasher.putString(nullToEmpty(artifact.getType()));
+                hasher.putString(nullToEmpty(artifact.getExtension()));
+                hasher.putString(nullToEmpty(artifact.getClassifier()));
+                hasher.putString(nullToEmpty(artifact.getUrl()));
+            }
+            hasher.putInt(moduleDependency.getRequestedCapabilities().size());
+            for (Capability capability : moduleDependency.getRequestedCapabilities()) {
+                hasher.putString(capability.getGroup());
+                hasher.putString(capability.getName());
+                hasher.putString(nullToEmpty(capability.getVersion()));
+            }
+        }
+        for (DependencyConstraint constraint : configuration.getAllDependencyConstraints()) {
+            if (!(constraint instanceof DefaultDependencyConstraint)) {
+                return null;
+            }
+            hasher.putString(nullToEmpty(constraint.getGroup()));
+            hasher.putString(constraint.getName());
+            appendVersionConstraint(constraint.getVersionConstraint(), hasher);
+            hasher.putBoolean(((DefaultDependencyConstraint) constraint).isForce());
+            hasher.putString(nullToEmpty(constraint.getReason()));
+            appendAttributes(constraint.getAttributes(), hasher);
+        }
+        appendExcludeRules(configuration.getAllExcludeRules(), hasher);
+
+        hasher.putString(resolutionStrategy.getConflictResolution().name());
+        for (ModuleVersionSelector forcedModule : resolutionStrategy.getForcedModules()) {
+            hasher.putString(forcedModule.getGroup());
+            hasher.putString(forcedModule.getName());
+            hasher.putString(nullToEmpty(forcedModule.getVersion()));
+        }
+        hasher.putInt(metadataHandler.getComponentMetadataProcessorFactory().createComponentMetadataProcessor(null).getRulesHash());
+
+        for (ResolutionAwareRepository repository : repositories) {
+            if (repository instanceof ContentFilteringRepository && ((ContentFilteringRepository) repository).getContentFilter() != Actions.doNothing()) {
+                return null;
+            }
+            ConfiguredModuleComponentRepository resolver = repository.createResolver();
+            if (resolver.isLocal() || resolver.isDynamicResolveMode()) {
+                return null;
+            }
+            hasher.putString(resolver.getId());
+        }
+        return hasher.hash();
+    }
+
+    @Nullable
+    public byte[] load(HashCode key) {
+        return cacheLockingManager.useCache(() -> getCache().getIfPresent(key));
+    }
+
+    public void store(HashCode key, byte[] graph) {
+        cacheLockingManager.useCache(() -> getCache().put(key, graph));
+    }
+
+    public void remove(HashCode key) {
+        cacheLockingManager.useCache(() -> getCache().remove(key));
+    }
+
+    /**
+     * Creates a visitor that checks whether the visited graph is fully determined by its key and the cached module metadata.
+     */
+    public CacheabilityCheck newCacheabilityCheck() {
+        return new CacheabilityCheck(versionSelectorScheme);
+    }
+
+    private synchronized PersistentIndexedCache<HashCode, byte[]> getCache() {
+        if (cache == null) {
+            cache = cacheLockingManager.createCache("resolved-graphs", new HashCodeSerializer(), BaseSerializerFactory.BYTE_ARRAY_SERIALIZER);
+        }
+        return cache;
+    }
+
+    private void appendAttributes(AttributeContainer attributes, Hasher hasher) {
+        ImmutableAttributes desugared = attributeDesugaring.desugar(((AttributeContainerInternal) attributes).asImmutable());
+        hasher.putInt(desugared.keySet().size());
+        for (Attribute<?> attribute : desugared.keySet()) {
+            hasher.putString(attribute.getName());
+            hasher.putString(String.valueOf(desugared.getAttribute(attribute)));
+        }
+    }
+
+    private static void appendVersionConstraint(VersionConstraint versionConstraint, Hasher hasher) {
+        hasher.putString(versionConstraint.getRequiredVersion());
+        hasher.putString(versionConstraint.getPreferredVersion());
+        hasher.putString(versionConstraint.getStrictVersion());
+        hasher.putString(nullToEmpty(versionConstraint.getBranch()));
+        hasher.putInt(versionConstraint.getRejectedVersions().size());
+        for (String rejectedVersion : versionConstraint.getRejectedVersions()) {
+            hasher.putString(rejectedVersion);
+        }
+    }
+
+    private static void appendExcludeRules(Iterable<ExcludeRule> excludeRules, Hasher hasher) {
+        for (ExcludeRule excludeRule : excludeRules) {
+            hasher.putString(nullToEmpty(excludeRule.getGroup()));
+            hasher.putString(nullToEmpty(excludeRule.getModule()));
+        }
+        hasher.putNull();
+    }
+
+    private static String nullToEmpty(@Nullable String value) {
+        return value == null ? "" : value;
+    }
+
+    /**
+     * Checks that a graph only contains external components with fixed versions, which are not changing.
+     */
+    public static class CacheabilityCheck implements DependencyGraphVisitor {
+        private final VersionSelectorScheme versionSelectorScheme;
+        private boolean cacheable = true;
+
+        private CacheabilityCheck(VersionSelectorScheme versionSelectorScheme) {
+            this.versionSelectorScheme = versionSelectorScheme;
+        }
+
+        public boolean isCacheable() {
+            return cacheable;
+        }
+
+        @Override
+        public void start(RootGraphNode root) {
+        }
+
+        @Override
+        public void visitNode(DependencyGraphNode node) {
+            if (node.isRoot()) {
+                return;
+            }
+            if (!(node.getOwner().getComponentId() instanceof ModuleComponentIdentifier) || node.getOwner().getMetadata().isChanging()) {
+                cacheable = false;
+            }
+        }
+
+        @Override
+        public void visitSelector(DependencyGraphSelector selector) {
+            ComponentSelector requested = selector.getRequested();
+            if (!(requested instanceof ModuleComponentSelector)) {
+                cacheable = false;
+                return;
+            }
+            VersionConstraint versionConstraint = ((ModuleComponentSelector) requested).getVersionConstraint();
+            if (versionConstraint.getBranch() != null
+                || isDynamic(versionConstraint.getRequiredVersion())
+                || isDynamic(versionConstraint.getPreferredVersion())
+                || isDynamic(versionConstraint.getStrictVersion())) {
+                cacheable = false;
+            }
+        }
+
+        private boolean isDynamic(String version) {
+            return !version.isEmpty() && versionSelectorScheme.parseSelector(version).isDynamic();
+        }
+
+        @Override
+        public void visitEdges(DependencyGraphNode node) {
+        }
+
+        @Override
+        public void finish(DependencyGraphNode root) {
+        }
+    }
+}
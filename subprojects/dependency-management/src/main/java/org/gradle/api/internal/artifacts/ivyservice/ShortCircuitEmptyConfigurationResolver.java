@@ -86,6 +86,20 @@ public void resolveGraph(ConfigurationInternal configuration, ResolverResults re
         }
     }
 
+    @Override
+    public boolean resolveGraphForResolutionResult(ConfigurationInternal configuration, ResolverResults results) throws ResolveException {
+        if (configuration.getAllDependencies().isEmpty()) {
+            emptyGraph(configuration, results, true);
+            return false;
+        }
+        return delegate.resolveGraphForResolutionResult(configuration, results);
+    }
+
+    @Override
+    public void resolveRestoredGraph(ConfigurationInternal configuration, ResolverResults restoredResults, ResolverResults results) throws ResolveException {
+        delegate.resolveRestoredGraph(configuration, restoredResults, results);
+    }
+
     private void emptyGraph(ConfigurationInternal configuration, ResolverResults results, boolean verifyLocking) {
         if (verifyLocking && configuration.getResolutionStrategy().isDependencyLockingEnabled()) {
             DependencyLockingProvider dependencyLockingProvider = configuration.getResolutionStrategy().getDependencyLockingProvider();
@@ -16,17 +16,222 @@
 
 package org.gradle.api.internal.artifacts.ivyservice.ivyresolve.parser;
 
+import org.apache.commons.io.IOUtils;
+import org.gradle.internal.UncheckedException;
+import org.gradle.internal.classloader.ClassLoaderUtils;
+import org.w3c.dom.Comment;
+import org.w3c.dom.Document;
 import org.w3c.dom.Element;
 import org.w3c.dom.Node;
 import org.w3c.dom.NodeList;
+import org.xml.sax.EntityResolver;
+import org.xml.sax.InputSource;
+import org.xml.sax.SAXException;
 
+import javax.xml.parsers.DocumentBuilder;
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.parsers.ParserConfigurationException;
 import java.io.*;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
+
+import static org.gradle.api.internal.artifacts.ivyservice.ivyresolve.parser.PomModel.ARTIFACT_ID;
+import static org.gradle.api.internal.artifacts.ivyservice.ivyresolve.parser.PomModel.CLASSIFIER;
+import static org.gradle.api.internal.artifacts.ivyservice.ivyresolve.parser.PomModel.DEPENDENCIES;
+import static org.gradle.api.internal.artifacts.ivyservice.ivyresolve.parser.PomModel.DEPENDENCY;
+import static org.gradle.api.internal.artifacts.ivyservice.ivyresolve.parser.PomModel.DEPENDENCY_MGT;
+import static org.gradle.api.internal.artifacts.ivyservice.ivyresolve.parser.PomModel.DISTRIBUTION_MGT;
+import static org.gradle.api.internal.artifacts.ivyservice.ivyresolve.parser.PomModel.EXCLUSION;
+import static org.gradle.api.internal.artifacts.ivyservice.ivyresolve.parser.PomModel.EXCLUSIONS;
+import static org.gradle.api.internal.artifacts.ivyservice.ivyresolve.parser.PomModel.GROUP_ID;
+import static org.gradle.api.internal.artifacts.ivyservice.ivyresolve.parser.PomModel.OPTIONAL;
+import static org.gradle.api.internal.artifacts.ivyservice.ivyresolve.parser.PomModel.PACKAGING;
+import static org.gradle.api.internal.artifacts.ivyservice.ivyresolve.parser.PomModel.PARENT;
+import static org.gradle.api.internal.artifacts.ivyservice.ivyresolve.parser.PomModel.PROFILE;
+import static org.gradle.api.internal.artifacts.ivyservice.ivyresolve.parser.PomModel.PROFILES;
+import static org.gradle.api.internal.artifacts.ivyservice.ivyresolve.parser.PomModel.PROFILE_ACTIVATION;
+import static org.gradle.api.internal.artifacts.ivyservice.ivyresolve.parser.PomModel.PROFILE_ACTIVATION_ACTIVE_BY_DEFAULT;
+import static org.gradle.api.internal.artifacts.ivyservice.ivyresolve.parser.PomModel.PROFILE_ACTIVATION_PROPERTY;
+import static org.gradle.api.internal.artifacts.ivyservice.ivyresolve.parser.PomModel.PROFILE_ACTIVATION_PROPERTY_NAME;
+import static org.gradle.api.internal.artifacts.ivyservice.ivyresolve.parser.PomModel.PROFILE_ID;
+import static org.gradle.api.internal.artifacts.ivyservice.ivyresolve.parser.PomModel.PROPERTIES;
+import static org.gradle.api.internal.artifacts.ivyservice.ivyresolve.parser.PomModel.RELOCATION;
+import static org.gradle.api.internal.artifacts.ivyservice.ivyresolve.parser.PomModel.SCOPE;
+import static org.gradle.api.internal.artifacts.ivyservice.ivyresolve.parser.PomModel.TYPE;
+import static org.gradle.api.internal.artifacts.ivyservice.ivyresolve.parser.PomModel.VERSION;
 
 public final class PomDomParser {
+    static final String M2_ENTITIES = "m2-entities.ent";
+    static final byte[] M2_ENTITIES_RESOURCE;
+    private static final DocumentBuilderFactory DOCUMENT_BUILDER_FACTORY;
+
+    static {
+        byte[] bytes;
+        try {
+            bytes = IOUtils.toByteArray(org.apache.ivy.plugins.parser.m2.PomReader.class.getResourceAsStream(M2_ENTITIES));
+        } catch (IOException e) {
+            throw UncheckedException.throwAsUncheckedException(e);
+        }
+        M2_ENTITIES_RESOURCE = bytes;
+
+        // Set the context classloader the bootstrap classloader, to work around the way that JAXP locates implementation classes
+        // This should ensure that the JAXP classes provided by the JVM are used, rather than some other implementation
+        ClassLoader original = Thread.currentThread().getContextClassLoader();
+        Thread.currentThread().setContextClassLoader(ClassLoaderUtils.getPlatformClassLoader());
+        try {
+            DOCUMENT_BUILDER_FACTORY = DocumentBuilderFactory.newInstance();
+            DOCUMENT_BUILDER_FACTORY.setValidating(false);
+        } finally {
+            Thread.currentThread().setContextClassLoader(original);
+        }
+    }
+
+    private static final EntityResolver M2_ENTITY_RESOLVER = new EntityResolver() {
+        @Override
+        public InputSource resolveEntity(String publicId, String systemId) {
+            if ((systemId != null) && systemId.endsWith(M2_ENTITIES)) {
+                return new InputSource(new ByteArrayInputStream(M2_ENTITIES_RESOURCE));
+            }
+            return null;
+        }
+    };
+
     private PomDomParser() {}
 
+    /**
+     * Parses a POM file to a DOM and reads the {@link PomModel} from it.
+     */
+    static PomModel parse(InputStream stream, String systemId) throws IOException, SAXException {
+        Element projectElement = parseToDom(stream, systemId).getDocumentElement();
+        PomModel pom = new PomModel(systemId);
+        pom.rootElementName = projectElement.getNodeName();
+        pom.gradleMetadataMarker = hasGradleMetadataMarker(projectElement);
+        pom.groupId = getFirstChildText(projectElement, GROUP_ID);
+        pom.artifactId = getFirstChildText(projectElement, ARTIFACT_ID);
+        pom.version = getFirstChildText(projectElement, VERSION);
+        pom.packaging = getFirstChildText(projectElement, PACKAGING);
+
+        Element parentElement = getFirstChildElement(projectElement, PARENT);
+        if (parentElement != null) {
+            pom.hasParent = true;
+            pom.parentGroupId = getFirstChildText(parentElement, GROUP_ID);
+            pom.parentArtifactId = getFirstChildText(parentElement, ARTIFACT_ID);
+            pom.parentVersion = getFirstChildText(parentElement, VERSION);
+        }
+
+        Element relocation = getFirstChildElement(getFirstChildElement(projectElement, DISTRIBUTION_MGT), RELOCATION);
+        if (relocation != null) {
+            pom.hasRelocation = true;
+            pom.relocationGroupId = getFirstChildText(relocation, GROUP_ID);
+            pom.relocationArtifactId = getFirstChildText(relocation, ARTIFACT_ID);
+            pom.relocationVersion = getFirstChildText(relocation, VERSION);
+        }
+
+        readProperties(projectElement, pom.properties);
+        readDependencies(getFirstChildElement(projectElement, DEPENDENCIES), pom.dependencies);
+        readDependencies(getFirstChildElement(getFirstChildElement(projectElement, DEPENDENCY_MGT), DEPENDENCIES), pom.dependencyMgts);
+
+        for (Element profileElement : getAllChilds(getFirstChildElement(projectElement, PROFILES))) {
+            if (PROFILE.equals(profileElement.getNodeName())) {
+                pom.profiles.add(readProfile(profileElement));
+            }
+        }
+        return pom;
+    }
+
+    private static Document parseToDom(InputStream stream, String systemId) throws IOException, SAXException {
+        // Set the context classloader the bootstrap classloader, to work around the way that JAXP locates implementation classes
+        // This should ensure that the JAXP classes provided by the JVM are used, rather than some other implementation
+        ClassLoader original = Thread.currentThread().getContextClassLoader();
+        Thread.currentThread().setContextClassLoader(ClassLoaderUtils.getPlatformClassLoader());
+        try {
+            InputStream dtdStream = new AddDTDFilterInputStream(stream);
+            return getDocBuilder(M2_ENTITY_RESOLVER).parse(dtdStream, systemId);
+        } finally {
+            Thread.currentThread().setContextClassLoader(original);
+        }
+    }
+
+    private static DocumentBuilder getDocBuilder(EntityResolver entityResolver) {
+        try {
+            DocumentBuilder docBuilder = DOCUMENT_BUILDER_FACTORY.newDocumentBuilder();
+            if (entityResolver != null) {
+                docBuilder.setEntityResolver(entityResolver);
+            }
+            return docBuilder;
+        } catch (ParserConfigurationException e) {
+            throw UncheckedException.throwAsUncheckedException(e);
+        }
+    }
+
+    private static boolean hasGradleMetadataMarker(Element projectElement) {
+        NodeList childNodes = projectElement.getChildNodes();
+        for (int i = 0; i < childNodes.getLength(); i++) {
+            Node node = childNodes.item(i);
+            if (node instanceof Comment) {
+                String comment = node.getNodeValue();
+                if (comment.contains(MetaDataParser.GRADLE_6_METADATA_MARKER) || comment.contains(MetaDataParser.GRADLE_METADATA_MARKER)) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    private static void readProperties(Element parentElement, Map<String, String> properties) {
+        Element propsEl = getFirstChildElement(parentElement, PROPERTIES);
+        if (propsEl != null) {
+            propsEl.normalize();
+        }
+        for (Element prop : getAllChilds(propsEl)) {
+            properties.put(prop.getNodeName(), getTextContent(prop));
+        }
+    }
+
+    private static void readDependencies(Element dependenciesElement, List<PomModel.Dependency> dependencies) {
+        for (Element dependencyElement : getAllChilds(dependenciesElement)) {
+            if (DEPENDENCY.equals(dependencyElement.getNodeName())) {
+                PomModel.Dependency dependency = new PomModel.Dependency();
+                dependency.groupId = getFirstChildText(dependencyElement, GROUP_ID);
+                dependency.artifactId = getFirstChildText(dependencyElement, ARTIFACT_ID);
+                dependency.version = getFirstChildText(dependencyElement, VERSION);
+                dependency.scope = getFirstChildText(dependencyElement, SCOPE);
+                dependency.type = getFirstChildText(dependencyElement, TYPE);
+                dependency.classifier = getFirstChildText(dependencyElement, CLASSIFIER);
+                dependency.optional = getFirstChildText(dependencyElement, OPTIONAL);
+                for (Element exclusionElement : getAllChilds(getFirstChildElement(dependencyElement, EXCLUSIONS))) {
+                    if (EXCLUSION.equals(exclusionElement.getNodeName())) {
+                        PomModel.Exclusion exclusion = new PomModel.Exclusion();
+                        exclusion.groupId = getFirstChildText(exclusionElement, GROUP_ID);
+                        exclusion.artifactId = getFirstChildText(exclusionElement, ARTIFACT_ID);
+                        dependency.exclusions.add(exclusion);
+                    }
+                }
+                dependencies.add(dependency);
+            }
+        }
+    }
+
+    private static PomModel.Profile readProfile(Element profileElement) {
+        PomModel.Profile profile = new PomModel.Profile();
+        profile.id = getFirstChildText(profileElement, PROFILE_ID);
+        Element activationElement = getFirstChildElement(profileElement, PROFILE_ACTIVATION);
+        if (activationElement != null) {
+            profile.hasActivation = true;
+            profile.activeByDefault = getFirstChildText(activationElement, PROFILE_ACTIVATION_ACTIVE_BY_DEFAULT);
+            Element propertyElement = getFirstChildElement(activationElement, PROFILE_ACTIVATION_PROPERTY);
+            if (propertyElement != null) {
+                profile.hasActivationProperty = true;
+                profile.activationPropertyName = getFirstChildText(propertyElement, PROFILE_ACTIVATION_PROPERTY_NAME);
+            }
+        }
+        readProperties(profileElement, profile.properties);
+        readDependencies(getFirstChildElement(profileElement, DEPENDENCIES), profile.dependencies);
+        readDependencies(getFirstChildElement(getFirstChildElement(profileElement, DEPENDENCY_MGT), DEPENDENCIES), profile.dependencyMgts);
+        return profile;
+    }
+
     public static String getTextContent(Element element) {
         StringBuilder result = new StringBuilder();
 
@@ -0,0 +1,111 @@
+/*
+ * Copyright 2021 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.api.internal.artifacts.ivyservice.ivyresolve.parser;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The content of a POM file that is used to resolve the module, as declared in the file.
+ *
+ * Values are the text content of the elements, without any property substitution.
+ * Where the POM declares an element more than once, only the first element is used.
+ * A value is {@code null} when the element is missing.
+ */
+final class PomModel {
+    static final String PACKAGING = "packaging";
+    static final String DEPENDENCY = "dependency";
+    static final String DEPENDENCIES = "dependencies";
+    static final String DEPENDENCY_MGT = "dependencyManagement";
+    static final String GROUP_ID = "groupId";
+    static final String ARTIFACT_ID = "artifactId";
+    static final String VERSION = "version";
+    static final String PARENT = "parent";
+    static final String SCOPE = "scope";
+    static final String CLASSIFIER = "classifier";
+    static final String OPTIONAL = "optional";
+    static final String EXCLUSIONS = "exclusions";
+    static final String EXCLUSION = "exclusion";
+    static final String DISTRIBUTION_MGT = "distributionManagement";
+    static final String RELOCATION = "relocation";
+    static final String PROPERTIES = "properties";
+    static final String TYPE = "type";
+    static final String PROFILES = "profiles";
+    static final String PROFILE = "profile";
+    static final String PROFILE_ID = "id";
+    static final String PROFILE_ACTIVATION = "activation";
+    static final String PROFILE_ACTIVATION_ACTIVE_BY_DEFAULT = "activeByDefault";
+    static final String PROFILE_ACTIVATION_PROPERTY = "property";
+    static final String PROFILE_ACTIVATION_PROPERTY_NAME = "name";
+
+    final String systemId;
+    String rootElementName;
+    boolean gradleMetadataMarker;
+
+    String groupId;
+    String artifactId;
+    String version;
+    String packaging;
+
+    boolean hasParent;
+    String parentGroupId;
+    String parentArtifactId;
+    String parentVersion;
+
+    boolean hasRelocation;
+    String relocationGroupId;
+    String relocationArtifactId;
+    String relocationVersion;
+
+    final Map<String, String> properties = new HashMap<>();
+    final List<Dependency> dependencies = new ArrayList<>();
+    final List<Dependency> dependencyMgts = new ArrayList<>();
+    final List<Profile> profiles = new ArrayList<>();
+
+    PomModel(String systemId) {
+        this.systemId = systemId;
+    }
+
+    static class Dependency {
+        String groupId;
+        String artifactId;
+        String version;
+        String scope;
+        String type;
+        String classifier;
+        String optional;
+        final List<Exclusion> exclusions = new ArrayList<>();
+    }
+
+    static class Exclusion {
+        String groupId;
+        String artifactId;
+    }
+
+    static class Profile {
+        String id;
+        boolean hasActivation;
+        String activeByDefault;
+        boolean hasActivationProperty;
+        String activationPropertyName;
+        final Map<String, String> properties = new HashMap<>();
+        final List<Dependency> dependencies = new ArrayList<>();
+        final List<Dependency> dependencyMgts = new ArrayList<>();
+    }
+}
@@ -16,7 +16,6 @@
 package org.gradle.api.internal.artifacts.ivyservice.ivyresolve.parser;
 
 import com.google.common.collect.Lists;
-import org.apache.commons.io.IOUtils;
 import org.apache.ivy.core.IvyPatternHelper;
 import org.gradle.api.artifacts.ModuleIdentifier;
 import org.gradle.api.artifacts.ModuleVersionIdentifier;
@@ -25,25 +24,10 @@
 import org.gradle.api.internal.artifacts.ivyservice.ivyresolve.parser.data.MavenDependencyKey;
 import org.gradle.api.internal.artifacts.ivyservice.ivyresolve.parser.data.PomDependencyMgt;
 import org.gradle.api.internal.artifacts.ivyservice.ivyresolve.parser.data.PomProfile;
-import org.gradle.internal.UncheckedException;
-import org.gradle.internal.classloader.ClassLoaderUtils;
 import org.gradle.internal.resource.local.LocallyAvailableExternalResource;
-import org.w3c.dom.Comment;
-import org.w3c.dom.Document;
-import org.w3c.dom.Element;
-import org.w3c.dom.Node;
-import org.w3c.dom.NodeList;
-import org.xml.sax.EntityResolver;
-import org.xml.sax.InputSource;
 import org.xml.sax.SAXException;
 import org.xml.sax.SAXParseException;
 
-import javax.xml.parsers.DocumentBuilder;
-import javax.xml.parsers.DocumentBuilderFactory;
-import javax.xml.parsers.ParserConfigurationException;
-import java.io.ByteArrayInputStream;
-import java.io.IOException;
-import java.io.InputStream;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
@@ -51,76 +35,22 @@
 import java.util.List;
 import java.util.Map;
 
-import static org.gradle.api.internal.artifacts.ivyservice.ivyresolve.parser.PomDomParser.AddDTDFilterInputStream;
-import static org.gradle.api.internal.artifacts.ivyservice.ivyresolve.parser.PomDomParser.getAllChilds;
-import static org.gradle.api.internal.artifacts.ivyservice.ivyresolve.parser.PomDomParser.getFirstChildElement;
-import static org.gradle.api.internal.artifacts.ivyservice.ivyresolve.parser.PomDomParser.getFirstChildText;
-import static org.gradle.api.internal.artifacts.ivyservice.ivyresolve.parser.PomDomParser.getTextContent;
+import static org.gradle.api.internal.artifacts.ivyservice.ivyresolve.parser.PomModel.ARTIFACT_ID;
+import static org.gradle.api.internal.artifacts.ivyservice.ivyresolve.parser.PomModel.DEPENDENCY;
+import static org.gradle.api.internal.artifacts.ivyservice.ivyresolve.parser.PomModel.GROUP_ID;
 
 /**
  * Copied from org.apache.ivy.plugins.parser.m2.PomReader.
  */
 public class PomReader implements PomParent {
 
-    private static final String PACKAGING = "packaging";
-    private static final String DEPENDENCY = "dependency";
-    private static final String DEPENDENCIES = "dependencies";
-    private static final String DEPENDENCY_MGT = "dependencyManagement";
+    /**
+     * Reads POM files with a streaming parser instead of building a DOM.
+     */
+    public static final String STREAMING_PARSER_PROPERTY = "org.gradle.unsafe.streaming-pom-parser";
+
     private static final String PROJECT = "project";
     private static final String MODEL = "model";
-    private static final String GROUP_ID = "groupId";
-    private static final String ARTIFACT_ID = "artifactId";
-    private static final String VERSION = "version";
-    private static final String DESCRIPTION = "description";
-    private static final String PARENT = "parent";
-    private static final String SCOPE = "scope";
-    private static final String CLASSIFIER = "classifier";
-    private static final String OPTIONAL = "optional";
-    private static final String EXCLUSIONS = "exclusions";
-    private static final String EXCLUSION = "exclusion";
-    private static final String DISTRIBUTION_MGT = "distributionManagement";
-    private static final String RELOCATION = "relocation";
-    private static final String PROPERTIES = "properties";
-    private static final String TYPE = "type";
-    private static final String PROFILES = "profiles";
-    private static final String PROFILE = "profile";
-    private static final String PROFILE_ID = "id";
-    private static final String PROFILE_ACTIVATION = "activation";
-    private static final String PROFILE_ACTIVATION_ACTIVE_BY_DEFAULT = "activeByDefault";
-    private static final String PROFILE_ACTIVATION_PROPERTY = "property";
-    private static final byte[] M2_ENTITIES_RESOURCE;
-    private static final DocumentBuilderFactory DOCUMENT_BUILDER_FACTORY;
-
-    static {
-        byte[] bytes;
-        try {
-            bytes = IOUtils.toByteArray(org.apache.ivy.plugins.parser.m2.PomReader.class.getResourceAsStream("m2-entities.ent"));
-        } catch (IOException e) {
-            throw UncheckedException.throwAsUncheckedException(e);
-        }
-        M2_ENTITIES_RESOURCE = bytes;
-
-        // Set the context classloader the bootstrap classloader, to work around the way that JAXP locates implementation classes
-        // This should ensure that the JAXP classes provided by the JVM are used, rather than some other implementation
-        ClassLoader original = Thread.currentThread().getContextClassLoader();
-        Thread.currentThread().setContextClassLoader(ClassLoaderUtils.getPlatformClassLoader());
-        try {
-            DOCUMENT_BUILDER_FACTORY = DocumentBuilderFactory.newInstance();
-            DOCUMENT_BUILDER_FACTORY.setValidating(false);
-        } finally {
-            Thread.currentThread().setContextClassLoader(original);
-        }
-    }
-
-    private static final EntityResolver M2_ENTITY_RESOLVER = new EntityResolver() {
-        @Override
-        public InputSource resolveEntity(String publicId, String systemId) {
-            if ((systemId != null) && systemId.endsWith("m2-entities.ent")) {
-                return new InputSource(new ByteArrayInputStream(M2_ENTITIES_RESOURCE));
-            }
-            return null;
-        }
-    };
 
     private PomParent pomParent = new RootPomParent();
     private final Map<String, String> pomProperties = new HashMap<>();
@@ -132,28 +62,26 @@ public InputSource resolveEntity(String publicId, String systemId) {
     private Map<MavenDependencyKey, PomDependencyData> resolvedDependencies;
     private final ImmutableModuleIdentifierFactory moduleIdentifierFactory;
 
-    private final Element projectElement;
-    private final Element parentElement;
+    private final PomModel pom;
 
     public PomReader(final LocallyAvailableExternalResource resource, ImmutableModuleIdentifierFactory moduleIdentifierFactory, Map<String, String> childPomProperties) throws SAXException {
         this.moduleIdentifierFactory = moduleIdentifierFactory;
         setPomProperties(childPomProperties);
         final String systemId = resource.getFile().toURI().toASCIIString();
-        Document pomDomDoc = resource.withContent(inputStream -> {
+        boolean streaming = Boolean.getBoolean(STREAMING_PARSER_PROPERTY);
+        pom = resource.withContent(inputStream -> {
             try {
-                return parseToDom(inputStream, systemId);
+                return streaming ? PomStaxParser.parse(inputStream, systemId) : PomDomParser.parse(inputStream, systemId);
             } catch (Exception e) {
                 throw new MetaDataParseException("POM", resource, e);
             }
         }).getResult();
-        projectElement = pomDomDoc.getDocumentElement();
-        if (!PROJECT.equals(projectElement.getNodeName()) && !MODEL.equals(projectElement.getNodeName())) {
+        if (!PROJECT.equals(pom.rootElementName) && !MODEL.equals(pom.rootElementName)) {
             throw new SAXParseException("project must be the root tag", systemId, systemId, 0, 0);
         }
-        parentElement = getFirstChildElement(projectElement, PARENT);
 
         setDefaultParentGavProperties();
-        setPomProperties(parseProperties(projectElement));
+        setPomProperties(pom.properties);
         setActiveProfileProperties();
     }
 
@@ -232,36 +160,11 @@ public String[] getNames() {
 
     @Override
     public String toString() {
-        return projectElement.getOwnerDocument().getDocumentURI();
-    }
-
-    private static DocumentBuilder getDocBuilder(EntityResolver entityResolver) {
-        try {
-            DocumentBuilder docBuilder = DOCUMENT_BUILDER_FACTORY.newDocumentBuilder();
-            if (entityResolver != null) {
-                docBuilder.setEntityResolver(entityResolver);
-            }
-            return docBuilder;
-        } catch (ParserConfigurationException e) {
-            throw UncheckedException.throwAsUncheckedException(e);
-        }
-    }
-
-    private static Document parseToDom(InputStream stream, String systemId) throws IOException, SAXException {
-        // Set the context classloader the bootstrap classloader, to work around the way that JAXP locates implementation classes
-        // This should ensure that the JAXP classes provided by the JVM are used, rather than some other implementation
-        ClassLoader original = Thread.currentThread().getContextClassLoader();
-        Thread.currentThread().setContextClassLoader(ClassLoaderUtils.getPlatformClassLoader());
-        try {
-            InputStream dtdStream = new AddDTDFilterInputStream(stream);
-            return getDocBuilder(M2_ENTITY_RESOLVER).parse(dtdStream, systemId);
-        } finally {
-            Thread.currentThread().setContextClassLoader(original);
-        }
+        return pom.systemId;
     }
 
     public boolean hasParent() {
-        return parentElement != null;
+        return pom.hasParent;
     }
 
     @Override
@@ -288,59 +191,59 @@ private void checkNotNull(String value, String name, String element) {
     }
 
     public String getGroupId() {
-        String groupId = getFirstChildText(projectElement, GROUP_ID);
+        String groupId = pom.groupId;
         if (groupId == null) {
-            groupId = getFirstChildText(parentElement, GROUP_ID);
+            groupId = pom.parentGroupId;
         }
         checkNotNull(groupId, GROUP_ID);
         return replaceProps(groupId);
     }
 
     public String getParentGroupId() {
-        String groupId = getFirstChildText(parentElement, GROUP_ID);
+        String groupId = pom.parentGroupId;
         if (groupId == null) {
-            groupId = getFirstChildText(projectElement, GROUP_ID);
+            groupId = pom.groupId;
         }
         checkNotNull(groupId, GROUP_ID);
         return replaceProps(groupId);
     }
 
     public String getArtifactId() {
-        String val = getFirstChildText(projectElement, ARTIFACT_ID);
+        String val = pom.artifactId;
         if (val == null) {
-            val = getFirstChildText(parentElement, ARTIFACT_ID);
+            val = pom.parentArtifactId;
         }
         checkNotNull(val, ARTIFACT_ID);
         return replaceProps(val);
     }
 
     public String getParentArtifactId() {
-        String val = getFirstChildText(parentElement, ARTIFACT_ID);
+        String val = pom.parentArtifactId;
         if (val == null) {
-            val = getFirstChildText(projectElement, ARTIFACT_ID);
+            val = pom.artifactId;
         }
         checkNotNull(val, ARTIFACT_ID);
         return replaceProps(val);
     }
 
     public String getVersion() {
-        String val = getFirstChildText(projectElement, VERSION);
+        String val = pom.version;
         if (val == null) {
-            val = getFirstChildText(parentElement, VERSION);
+            val = pom.parentVersion;
         }
         return replaceProps(val);
     }
 
     public String getParentVersion() {
-        String val = getFirstChildText(parentElement, VERSION);
+        String val = pom.parentVersion;
         if (val == null) {
-            val = getFirstChildText(projectElement, VERSION);
+            val = pom.version;
         }
         return replaceProps(val);
     }
 
     public String getPackaging() {
-        String val = getFirstChildText(projectElement, PACKAGING);
+        String val = pom.packaging;
         if (val == null) {
             val = "jar";
         }
@@ -348,28 +251,16 @@ public String getPackaging() {
     }
 
     public boolean hasGradleMetadataMarker() {
-        NodeList childNodes = projectElement.getChildNodes();
-        for (int i = 0; i < childNodes.getLength(); i++) {
-            Node node = childNodes.item(i);
-            if (node instanceof Comment) {
-                String comment = node.getNodeValue();
-                if (comment.contains(MetaDataParser.GRADLE_6_METADATA_MARKER) || comment.contains(MetaDataParser.GRADLE_METADATA_MARKER)) {
-                    return true;
-                }
-            }
-        }
-        return false;
+        return pom.gradleMetadataMarker;
     }
 
     public ModuleVersionIdentifier getRelocation() {
-        Element distrMgt = getFirstChildElement(projectElement, DISTRIBUTION_MGT);
-        Element relocation = getFirstChildElement(distrMgt, RELOCATION);
-        if (relocation == null) {
+        if (!pom.hasRelocation) {
             return null;
         } else {
-            String relocGroupId = getFirstChildText(relocation, GROUP_ID);
-            String relocArtId = getFirstChildText(relocation, ARTIFACT_ID);
-            String relocVersion = getFirstChildText(relocation, VERSION);
+            String relocGroupId = pom.relocationGroupId;
+            String relocArtId = pom.relocationArtifactId;
+            String relocVersion = pom.relocationVersion;
             relocGroupId = relocGroupId == null ? getGroupId() : relocGroupId;
             relocArtId = relocArtId == null ? getArtifactId() : relocArtId;
             relocVersion = relocVersion == null ? getVersion() : relocVersion;
@@ -391,7 +282,7 @@ public Map<MavenDependencyKey, PomDependencyData> getDependencies() {
     private Map<MavenDependencyKey, PomDependencyData> resolveDependencies() {
         Map<MavenDependencyKey, PomDependencyData> dependencies = new LinkedHashMap<>();
 
-        for (PomDependencyData dependency : getDependencyData(projectElement)) {
+        for (PomDependencyData dependency : getDependencyData(pom.dependencies)) {
             dependencies.put(dependency.getId(), dependency);
         }
 
@@ -411,19 +302,11 @@ private Map<MavenDependencyKey, PomDependencyData> resolveDependencies() {
         return dependencies;
     }
 
-    private List<PomDependencyData> getDependencyData(Element parentElement) {
-        List<PomDependencyData> depElements = new ArrayList<>();
-        Element dependenciesElement = getFirstChildElement(parentElement, DEPENDENCIES);
-        if (dependenciesElement != null) {
-            NodeList childs = dependenciesElement.getChildNodes();
-            for (int i = 0; i < childs.getLength(); i++) {
-                Node node = childs.item(i);
-                if (node instanceof Element && DEPENDENCY.equals(node.getNodeName())) {
-                    depElements.add(new PomDependencyData((Element) node));
-                }
-            }
+    private List<PomDependencyData> getDependencyData(List<PomModel.Dependency> dependencies) {
+        List<PomDependencyData> depElements = new ArrayList<>(dependencies.size());
+        for (PomModel.Dependency dependency : dependencies) {
+            depElements.add(new PomDependencyData(dependency));
         }
-
         return depElements;
     }
 
@@ -455,7 +338,7 @@ private Map<MavenDependencyKey, PomDependencyMgt> resolveDependencyMgt() {
      */
     public List<PomDependencyMgt> parseDependencyMgt() {
         if (declaredDependencyMgts == null) {
-            List<PomDependencyMgt> dependencyMgts = getDependencyMgt(projectElement);
+            List<PomDependencyMgt> dependencyMgts = getDependencyMgt(pom.dependencyMgts);
 
             for (PomProfile pomProfile : parseActivePomProfiles()) {
                 dependencyMgts.addAll(pomProfile.getDependencyMgts());
@@ -467,21 +350,11 @@ public List<PomDependencyMgt> parseDependencyMgt() {
         return declaredDependencyMgts;
     }
 
-    private List<PomDependencyMgt> getDependencyMgt(Element parentElement) {
-        List<PomDependencyMgt> depMgmtElements = new ArrayList<>();
-        Element dependenciesElement = getFirstChildElement(parentElement, DEPENDENCY_MGT);
-        dependenciesElement = getFirstChildElement(dependenciesElement, DEPENDENCIES);
-
-        if (dependenciesElement != null) {
-            NodeList childs = dependenciesElement.getChildNodes();
-            for (int i = 0; i < childs.getLength(); i++) {
-                Node node = childs.item(i);
-                if (node instanceof Element && DEPENDENCY.equals(node.getNodeName())) {
-                    depMgmtElements.add(new PomDependencyMgtElement((Element) node));
-                }
-            }
+    private List<PomDependencyMgt> getDependencyMgt(List<PomModel.Dependency> dependencyMgts) {
+        List<PomDependencyMgt> depMgmtElements = new ArrayList<>(dependencyMgts.size());
+        for (PomModel.Dependency dependencyMgt : dependencyMgts) {
+            depMgmtElements.add(new PomDependencyMgtElement(dependencyMgt));
         }
-
         return depMgmtElements;
     }
 
@@ -503,10 +376,10 @@ private void setGavPropertyValue(GavProperty gavProperty, String propertyValue)
     }
 
     public class PomDependencyMgtElement implements PomDependencyMgt {
-        private final Element depElement;
+        private final PomModel.Dependency dependency;
 
-        PomDependencyMgtElement(Element depElement) {
-            this.depElement = depElement;
+        PomDependencyMgtElement(PomModel.Dependency dependency) {
+            this.dependency = dependency;
         }
 
         @Override
@@ -519,7 +392,7 @@ public MavenDependencyKey getId() {
          */
         @Override
         public String getGroupId() {
-            String val = getFirstChildText(depElement, GROUP_ID);
+            String val = dependency.groupId;
             checkNotNull(val, GROUP_ID, DEPENDENCY);
             return replaceProps(val);
         }
@@ -529,7 +402,7 @@ public String getGroupId() {
          */
         @Override
         public String getArtifactId() {
-            String val = getFirstChildText(depElement, ARTIFACT_ID);
+            String val = dependency.artifactId;
             checkNotNull(val, ARTIFACT_ID, DEPENDENCY);
             return replaceProps(val);
         }
@@ -539,19 +412,19 @@ public String getArtifactId() {
          */
         @Override
         public String getVersion() {
-            String val = getFirstChildText(depElement, VERSION);
+            String val = dependency.version;
             return replaceProps(val);
         }
 
         @Override
         public String getScope() {
-            String val = getFirstChildText(depElement, SCOPE);
+            String val = dependency.scope;
             return replaceProps(val);
         }
 
         @Override
         public String getType() {
-            String val = getFirstChildText(depElement, TYPE);
+            String val = dependency.type;
             val = replaceProps(val);
 
             if (val == null) {
@@ -563,24 +436,19 @@ public String getType() {
 
         @Override
         public String getClassifier() {
-            String val = getFirstChildText(depElement, CLASSIFIER);
+            String val = dependency.classifier;
             return replaceProps(val);
         }
 
         @Override
         public List<ModuleIdentifier> getExcludedModules() {
-            Element exclusionsElement = getFirstChildElement(depElement, EXCLUSIONS);
-            if (exclusionsElement != null) {
-                NodeList childs = exclusionsElement.getChildNodes();
+            if (!dependency.exclusions.isEmpty()) {
                 List<ModuleIdentifier> exclusions = Lists.newArrayList();
-                for (int i = 0; i < childs.getLength(); i++) {
-                    Node node = childs.item(i);
-                    if (node instanceof Element && EXCLUSION.equals(node.getNodeName())) {
-                        String groupId = getFirstChildText((Element) node, GROUP_ID);
-                        String artifactId = getFirstChildText((Element) node, ARTIFACT_ID);
-                        if ((groupId != null) || (artifactId != null)) {
-                            exclusions.add(moduleIdentifierFactory.module(groupId != null ? groupId : "*", artifactId != null ? artifactId : "*"));
-                        }
+                for (PomModel.Exclusion exclusion : dependency.exclusions) {
+                    String groupId = exclusion.groupId;
+                    String artifactId = exclusion.artifactId;
+                    if ((groupId != null) || (artifactId != null)) {
+                        exclusions.add(moduleIdentifierFactory.module(groupId != null ? groupId : "*", artifactId != null ? artifactId : "*"));
                     }
                 }
                 return exclusions;
@@ -590,42 +458,41 @@ public List<ModuleIdentifier> getExcludedModules() {
     }
 
     public class PomDependencyData extends PomDependencyMgtElement {
-        private final Element depElement;
+        private final PomModel.Dependency dependency;
 
-        PomDependencyData(Element depElement) {
-            super(depElement);
-            this.depElement = depElement;
+        PomDependencyData(PomModel.Dependency dependency) {
+            super(dependency);
+            this.dependency = dependency;
         }
 
         public boolean isOptional() {
-            Element e = getFirstChildElement(depElement, OPTIONAL);
-            return (e != null) && "true".equalsIgnoreCase(getTextContent(e));
+            return "true".equalsIgnoreCase(dependency.optional);
         }
     }
 
     public class PomProfileElement implements PomProfile {
-        private final Element element;
+        private final PomModel.Profile profile;
         private List<PomDependencyMgt> declaredDependencyMgts;
         private List<PomDependencyData> declaredDependencies;
 
-        PomProfileElement(Element element) {
-            this.element = element;
+        PomProfileElement(PomModel.Profile profile) {
+            this.profile = profile;
         }
 
         @Override
         public String getId() {
-            return getFirstChildText(element, PROFILE_ID);
+            return profile.id;
         }
 
         @Override
         public Map<String, String> getProperties() {
-            return parseProperties(element);
+            return profile.properties;
         }
 
         @Override
         public List<PomDependencyMgt> getDependencyMgts() {
             if (declaredDependencyMgts == null) {
-                declaredDependencyMgts = getDependencyMgt(element);
+                declaredDependencyMgts = getDependencyMgt(profile.dependencyMgts);
             }
 
             return declaredDependencyMgts;
@@ -634,7 +501,7 @@ public List<PomDependencyMgt> getDependencyMgts() {
         @Override
         public List<PomDependencyData> getDependencies() {
             if (declaredDependencies == null) {
-                declaredDependencies = getDependencyData(element);
+                declaredDependencies = getDependencyData(profile.dependencies);
             }
 
             return declaredDependencies;
@@ -650,27 +517,13 @@ private List<PomProfile> parseActivePomProfiles() {
         if (declaredActivePomProfiles == null) {
             List<PomProfile> activeByDefaultPomProfiles = new ArrayList<>();
             List<PomProfile> activeByAbsenceOfPropertyPomProfiles = new ArrayList<>();
-            Element profilesElement = getFirstChildElement(projectElement, PROFILES);
-
-            if (profilesElement != null) {
-                for (Element profileElement : getAllChilds(profilesElement)) {
-                    if (PROFILE.equals(profileElement.getNodeName())) {
-                        Element activationElement = getFirstChildElement(profileElement, PROFILE_ACTIVATION);
-
-                        if (activationElement != null) {
-                            String activeByDefault = getFirstChildText(activationElement, PROFILE_ACTIVATION_ACTIVE_BY_DEFAULT);
-
-                            if ("true".equals(activeByDefault)) {
-                                activeByDefaultPomProfiles.add(new PomProfileElement(profileElement));
-                            } else {
-                                Element propertyElement = getFirstChildElement(activationElement, PROFILE_ACTIVATION_PROPERTY);
-
-                                if (propertyElement != null) {
-                                    if (isActivationPropertyActivated(propertyElement)) {
-                                        activeByAbsenceOfPropertyPomProfiles.add(new PomProfileElement(profileElement));
-                                    }
-                                }
-                            }
+            for (PomModel.Profile profile : pom.profiles) {
+                if (profile.hasActivation) {
+                    if ("true".equals(profile.activeByDefault)) {
+                        activeByDefaultPomProfiles.add(new PomProfileElement(profile));
+                    } else if (profile.hasActivationProperty) {
+                        if (isActivationPropertyActivated(profile)) {
+                            activeByAbsenceOfPropertyPomProfiles.add(new PomProfileElement(profile));
                         }
                     }
                 }
@@ -697,12 +550,12 @@ private List<PomProfile> determineActiveProfiles(List<PomProfile> activeByDefaul
     /**
      * Checks if activation property is active through absence of system property.
      *
-     * @param propertyElement Property element
+     * @param profile Profile with an activation property
      * @return Activation indicator
      * @see <a href="http://books.sonatype.com/mvnref-book/reference/profiles-sect-activation.html#profiles-sect-activation-config">Maven documentation</a>
      */
-    private boolean isActivationPropertyActivated(Element propertyElement) {
-        String propertyName = getFirstChildText(propertyElement, "name");
+    private boolean isActivationPropertyActivated(PomModel.Profile profile) {
+        String propertyName = profile.activationPropertyName;
         return propertyName.startsWith("!");
     }
 
@@ -713,18 +566,6 @@ Map<String, String> getAllPomProperties() {
         return pomProperties;
     }
 
-    private Map<String, String> parseProperties(Element parentElement) {
-        Map<String, String> pomProperties = new HashMap<>();
-        Element propsEl = getFirstChildElement(parentElement, PROPERTIES);
-        if (propsEl != null) {
-            propsEl.normalize();
-        }
-        for (Element prop : getAllChilds(propsEl)) {
-            pomProperties.put(prop.getNodeName(), getTextContent(prop));
-        }
-        return pomProperties;
-    }
-
     private String replaceProps(String val) {
         if (val == null) {
             return null;
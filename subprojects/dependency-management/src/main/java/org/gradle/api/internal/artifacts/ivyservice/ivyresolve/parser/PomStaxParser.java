@@ -0,0 +1,498 @@
+/*
+ * Copyright 2021 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.api.internal.artifacts.ivyservice.ivyresolve.parser;
+
+import org.gradle.internal.classloader.ClassLoaderUtils;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.List;
+import java.util.Map;
+
+import static org.gradle.api.internal.artifacts.ivyservice.ivyresolve.parser.PomModel.ARTIFACT_ID;
+import static org.gradle.api.internal.artifacts.ivyservice.ivyresolve.parser.PomModel.CLASSIFIER;
+import static org.gradle.api.internal.artifacts.ivyservice.ivyresolve.parser.PomModel.DEPENDENCIES;
+import static org.gradle.api.internal.artifacts.ivyservice.ivyresolve.parser.PomModel.DEPENDENCY;
+import static org.gradle.api.internal.artifacts.ivyservice.ivyresolve.parser.PomModel.DEPENDENCY_MGT;
+import static org.gradle.api.internal.artifacts.ivyservice.ivyresolve.parser.PomModel.DISTRIBUTION_MGT;
+import static org.gradle.api.internal.artifacts.ivyservice.ivyresolve.parser.PomModel.EXCLUSION;
+import static org.gradle.api.internal.artifacts.ivyservice.ivyresolve.parser.PomModel.EXCLUSIONS;
+import static org.gradle.api.internal.artifacts.ivyservice.ivyresolve.parser.PomModel.GROUP_ID;
+import static org.gradle.api.internal.artifacts.ivyservice.ivyresolve.parser.PomModel.OPTIONAL;
+import static org.gradle.api.internal.artifacts.ivyservice.ivyresolve.parser.PomModel.PACKAGING;
+import static org.gradle.api.internal.artifacts.ivyservice.ivyresolve.parser.PomModel.PARENT;
+import static org.gradle.api.internal.artifacts.ivyservice.ivyresolve.parser.PomModel.PROFILE;
+import static org.gradle.api.internal.artifacts.ivyservice.ivyresolve.parser.PomModel.PROFILES;
+import static org.gradle.api.internal.artifacts.ivyservice.ivyresolve.parser.PomModel.PROFILE_ACTIVATION;
+import static org.gradle.api.internal.artifacts.ivyservice.ivyresolve.parser.PomModel.PROFILE_ACTIVATION_ACTIVE_BY_DEFAULT;
+import static org.gradle.api.internal.artifacts.ivyservice.ivyresolve.parser.PomModel.PROFILE_ACTIVATION_PROPERTY;
+import static org.gradle.api.internal.artifacts.ivyservice.ivyresolve.parser.PomModel.PROFILE_ACTIVATION_PROPERTY_NAME;
+import static org.gradle.api.internal.artifacts.ivyservice.ivyresolve.parser.PomModel.PROFILE_ID;
+import static org.gradle.api.internal.artifacts.ivyservice.ivyresolve.parser.PomModel.PROPERTIES;
+import static org.gradle.api.internal.artifacts.ivyservice.ivyresolve.parser.PomModel.RELOCATION;
+import static org.gradle.api.internal.artifacts.ivyservice.ivyresolve.parser.PomModel.SCOPE;
+import static org.gradle.api.internal.artifacts.ivyservice.ivyresolve.parser.PomModel.TYPE;
+import static org.gradle.api.internal.artifacts.ivyservice.ivyresolve.parser.PomModel.VERSION;
+
+/**
+ * Reads a {@link PomModel} from a POM file in a single pass with a StAX parser, without building a DOM.
+ *
+ * Elements which are not used to resolve the module are skipped. The text content of an element is read
+ * the same way as {@link PomDomParser#getTextContent(org.w3c.dom.Element)} does, so both parsers produce the same model.
+ */
+final class PomStaxParser {
+    private static final XMLInputFactory XML_INPUT_FACTORY;
+
+    static {
+        // Set the context classloader the bootstrap classloader, to work around the way that JAXP locates implementation classes
+        // This should ensure that the JAXP classes provided by the JVM are used, rather than some other implementation
+        ClassLoader original = Thread.currentThread().getContextClassLoader();
+        Thread.currentThread().setContextClassLoader(ClassLoaderUtils.getPlatformClassLoader());
+        try {
+            XML_INPUT_FACTORY = XMLInputFactory.newInstance();
+        } finally {
+            Thread.currentThread().setContextClassLoader(original);
+        }
+        // Same behavior as the non-namespace aware document builder used for the DOM
+        XML_INPUT_FACTORY.setProperty(XMLInputFactory.IS_NAMESPACE_AWARE, false);
+        XML_INPUT_FACTORY.setProperty(XMLInputFactory.IS_COALESCING, false);
+        XML_INPUT_FACTORY.setProperty(XMLInputFactory.SUPPORT_DTD, true);
+        XML_INPUT_FACTORY.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, true);
+        XML_INPUT_FACTORY.setXMLResolver((publicId, systemId, baseUri, namespace) -> {
+            if (systemId != null && systemId.endsWith(PomDomParser.M2_ENTITIES)) {
+                return new ByteArrayInputStream(PomDomParser.M2_ENTITIES_RESOURCE);
+            }
+            return null;
+        });
+    }
+
+    private PomStaxParser() {
+    }
+
+    public static PomModel parse(InputStream stream, String systemId) throws IOException, XMLStreamException {
+        XMLStreamReader reader = XML_INPUT_FACTORY.createXMLStreamReader(systemId, new PomDomParser.AddDTDFilterInputStream(stream));
+        try {
+            PomModel pom = new PomModel(systemId);
+            while (reader.next() != XMLStreamConstants.START_ELEMENT) {
+                // Skip the prolog
+            }
+            pom.rootElementName = reader.getLocalName();
+            readProject(reader, pom);
+            // Read the rest of the document, so that it is checked to be well-formed
+            while (reader.hasNext()) {
+                reader.next();
+            }
+            return pom;
+        } finally {
+            reader.close();
+        }
+    }
+
+    private static void readProject(XMLStreamReader reader, PomModel pom) throws XMLStreamException {
+        boolean seenParent = false;
+        boolean seenDistributionMgt = false;
+        boolean seenProperties = false;
+        boolean seenDependencies = false;
+        boolean seenDependencyMgt = false;
+        boolean seenProfiles = false;
+        while (true) {
+            int event = reader.next();
+            if (event == XMLStreamConstants.END_ELEMENT) {
+                return;
+            }
+            if (event == XMLStreamConstants.COMMENT) {
+                String comment = reader.getText();
+                if (comment.contains(MetaDataParser.GRADLE_6_METADATA_MARKER) || comment.contains(MetaDataParser.GRADLE_METADATA_MARKER)) {
+                    pom.gradleMetadataMarker = true;
+                }
+                continue;
+            }
+            if (event != XMLStreamConstants.START_ELEMENT) {
+                continue;
+            }
+            switch (reader.getLocalName()) {
+                case GROUP_ID:
+                    pom.groupId = firstText(reader, pom.groupId);
+                    break;
+                case ARTIFACT_ID:
+                    pom.artifactId = firstText(reader, pom.artifactId);
+                    break;
+                case VERSION:
+                    pom.version = firstText(reader, pom.version);
+                    break;
+                case PACKAGING:
+                    pom.packaging = firstText(reader, pom.packaging);
+                    break;
+                case PARENT:
+                    if (seenParent) {
+                        skipElement(reader);
+                    } else {
+                        seenParent = true;
+                        readParent(reader, pom);
+                    }
+                    break;
+                case DISTRIBUTION_MGT:
+                    if (seenDistributionMgt) {
+                        skipElement(reader);
+                    } else {
+                        seenDistributionMgt = true;
+                        readDistributionMgt(reader, pom);
+                    }
+                    break;
+                case PROPERTIES:
+                    if (seenProperties) {
+                        skipElement(reader);
+                    } else {
+                        seenProperties = true;
+                        readProperties(reader, pom.properties);
+                    }
+                    break;
+                case DEPENDENCIES:
+                    if (seenDependencies) {
+                        skipElement(reader);
+                    } else {
+                        seenDependencies = true;
+                        readDependencies(reader, pom.dependencies);
+                    }
+                    break;
+                case DEPENDENCY_MGT:
+                    if (seenDependencyMgt) {
+                        skipElement(reader);
+                    } else {
+                        seenDependencyMgt = true;
+                        readDependencyMgt(reader, pom.dependencyMgts);
+                    }
+                    break;
+                case PROFILES:
+                    if (seenProfiles) {
+                        skipElement(reader);
+                    } else {
+                        seenProfiles = true;
+                        readProfiles(reader, pom);
+                    }
+                    break;
+                default:
+                    skipElement(reader);
+            }
+        }
+    }
+
+    private static void readParent(XMLStreamReader reader, PomModel pom) throws XMLStreamException {
+        pom.hasParent = true;
+        while (nextChildElement(reader)) {
+            switch (reader.getLocalName()) {
+                case GROUP_ID:
+                    pom.parentGroupId = firstText(reader, pom.parentGroupId);
+                    break;
+                case ARTIFACT_ID:
+                    pom.parentArtifactId = firstText(reader, pom.parentArtifactId);
+                    break;
+                case VERSION:
+                    pom.parentVersion = firstText(reader, pom.parentVersion);
+                    break;
+                default:
+                    skipElement(reader);
+            }
+        }
+    }
+
+    private static void readDistributionMgt(XMLStreamReader reader, PomModel pom) throws XMLStreamException {
+        while (nextChildElement(reader)) {
+            if (RELOCATION.equals(reader.getLocalName()) && !pom.hasRelocation) {
+                pom.hasRelocation = true;
+                while (nextChildElement(reader)) {
+                    switch (reader.getLocalName()) {
+                        case GROUP_ID:
+                            pom.relocationGroupId = firstText(reader, pom.relocationGroupId);
+                            break;
+                        case ARTIFACT_ID:
+                            pom.relocationArtifactId = firstText(reader, pom.relocationArtifactId);
+                            break;
+                        case VERSION:
+                            pom.relocationVersion = firstText(reader, pom.relocationVersion);
+                            break;
+                        default:
+                            skipElement(reader);
+                    }
+                }
+            } else {
+                skipElement(reader);
+            }
+        }
+    }
+
+    private static void readProperties(XMLStreamReader reader, Map<String, String> properties) throws XMLStreamException {
+        while (nextChildElement(reader)) {
+            String name = reader.getLocalName();
+            properties.put(name, readText(reader));
+        }
+    }
+
+    private static void readDependencyMgt(XMLStreamReader reader, List<PomModel.Dependency> dependencyMgts) throws XMLStreamException {
+        boolean seenDependencies = false;
+        while (nextChildElement(reader)) {
+            if (DEPENDENCIES.equals(reader.getLocalName()) && !seenDependencies) {
+                seenDependencies = true;
+                readDependencies(reader, dependencyMgts);
+            } else {
+                skipElement(reader);
+            }
+        }
+    }
+
+    private static void readDependencies(XMLStreamReader reader, List<PomModel.Dependency> dependencies) throws XMLStreamException {
+        while (nextChildElement(reader)) {
+            if (DEPENDENCY.equals(reader.getLocalName())) {
+                dependencies.add(readDependency(reader));
+            } else {
+                skipElement(reader);
+            }
+        }
+    }
+
+    private static PomModel.Dependency readDependency(XMLStreamReader reader) throws XMLStreamException {
+        PomModel.Dependency dependency = new PomModel.Dependency();
+        boolean seenExclusions = false;
+        while (nextChildElement(reader)) {
+            switch (reader.getLocalName()) {
+                case GROUP_ID:
+                    dependency.groupId = firstText(reader, dependency.groupId);
+                    break;
+                case ARTIFACT_ID:
+                    dependency.artifactId = firstText(reader, dependency.artifactId);
+                    break;
+                case VERSION:
+                    dependency.version = firstText(reader, dependency.version);
+                    break;
+                case SCOPE:
+                    dependency.scope = firstText(reader, dependency.scope);
+                    break;
+                case TYPE:
+                    dependency.type = firstText(reader, dependency.type);
+                    break;
+                case CLASSIFIER:
+                    dependency.classifier = firstText(reader, dependency.classifier);
+                    break;
+                case OPTIONAL:
+                    dependency.optional = firstText(reader, dependency.optional);
+                    break;
+                case EXCLUSIONS:
+                    if (seenExclusions) {
+                        skipElement(reader);
+                    } else {
+                        seenExclusions = true;
+                        readExclusions(reader, dependency.exclusions);
+                    }
+                    break;
+                default:
+                    skipElement(reader);
+            }
+        }
+        return dependency;
+    }
+
+    private static void readExclusions(XMLStreamReader reader, List<PomModel.Exclusion> exclusions) throws XMLStreamException {
+        while (nextChildElement(reader)) {
+            if (EXCLUSION.equals(reader.getLocalName())) {
+                PomModel.Exclusion exclusion = new PomModel.Exclusion();
+                while (nextChildElement(reader)) {
+                    switch (reader.getLocalName()) {
+                        case GROUP_ID:
+                            exclusion.groupId = firstText(reader, exclusion.groupId);
+                            break;
+                        case ARTIFACT_ID:
+                            exclusion.artifactId = firstText(reader, exclusion.artifactId);
+                            break;
+                        default:
+                            skipElement(reader);
+                    }
+                }
+                exclusions.add(exclusion);
+            } else {
+                skipElement(reader);
+            }
+        }
+    }
+
+    private static void readProfiles(XMLStreamReader reader, PomModel pom) throws XMLStreamException {
+        while (nextChildElement(reader)) {
+            if (PROFILE.equals(reader.getLocalName())) {
+                pom.profiles.add(readProfile(reader));
+            } else {
+                skipElement(reader);
+            }
+        }
+    }
+
+    private static PomModel.Profile readProfile(XMLStreamReader reader) throws XMLStreamException {
+        PomModel.Profile profile = new PomModel.Profile();
+        boolean seenProperties = false;
+        boolean seenDependencies = false;
+        boolean seenDependencyMgt = false;
+        while (nextChildElement(reader)) {
+            switch (reader.getLocalName()) {
+                case PROFILE_ID:
+                    profile.id = firstText(reader, profile.id);
+                    break;
+                case PROFILE_ACTIVATION:
+                    if (profile.hasActivation) {
+                        skipElement(reader);
+                    } else {
+                        profile.hasActivation = true;
+                        readActivation(reader, profile);
+                    }
+                    break;
+                case PROPERTIES:
+                    if (seenProperties) {
+                        skipElement(reader);
+                    } else {
+                        seenProperties = true;
+                        readProperties(reader, profile.properties);
+                    }
+                    break;
+                case DEPENDENCIES:
+                    if (seenDependencies) {
+                        skipElement(reader);
+                    } else {
+                        seenDependencies = true;
+                        readDependencies(reader, profile.dependencies);
+                    }
+                    break;
+                case DEPENDENCY_MGT:
+                    if (seenDependencyMgt) {
+                        skipElement(reader);
+                    } else {
+                        seenDependencyMgt = true;
+                        readDependencyMgt(reader, profile.dependencyMgts);
+                    }
+                    break;
+                default:
+                    skipElement(reader);
+            }
+        }
+        return profile;
+    }
+
+    private static void readActivation(XMLStreamReader reader, PomModel.Profile profile) throws XMLStreamException {
+        while (nextChildElement(reader)) {
+            String name = reader.getLocalName();
+            if (PROFILE_ACTIVATION_ACTIVE_BY_DEFAULT.equals(name)) {
+                profile.activeByDefault = firstText(reader, profile.activeByDefault);
+            } else if (PROFILE_ACTIVATION_PROPERTY.equals(name) && !profile.hasActivationProperty) {
+                profile.hasActivationProperty = true;
+                while (nextChildElement(reader)) {
+                    if (PROFILE_ACTIVATION_PROPERTY_NAME.equals(reader.getLocalName())) {
+                        profile.activationPropertyName = firstText(reader, profile.activationPropertyName);
+                    } else {
+                        skipElement(reader);
+                    }
+                }
+            } else {
+                skipElement(reader);
+            }
+        }
+    }
+
+    /**
+     * Moves to the start of the next child element of the current element.
+     *
+     * @return false when the end of the current element has been reached.
+     */
+    private static boolean nextChildElement(XMLStreamReader reader) throws XMLStreamException {
+        while (true) {
+            int event = reader.next();
+            if (event == XMLStreamConstants.START_ELEMENT) {
+                return true;
+            }
+            if (event == XMLStreamConstants.END_ELEMENT) {
+                return false;
+            }
+        }
+    }
+
+    /**
+     * Reads the text of the current element, unless the element has been seen before.
+     */
+    private static String firstText(XMLStreamReader reader, String previousText) throws XMLStreamException {
+        if (previousText != null) {
+            skipElement(reader);
+            return previousText;
+        }
+        return readText(reader);
+    }
+
+    /**
+     * Reads the text and CDATA directly contained in the current element, ignoring the text of nested elements, and moves to its end.
+     */
+    private static String readText(XMLStreamReader reader) throws XMLStreamException {
+        String text = null;
+        StringBuilder builder = null;
+        int depth = 0;
+        while (true) {
+            switch (reader.next()) {
+                case XMLStreamConstants.START_ELEMENT:
+                    depth++;
+                    break;
+                case XMLStreamConstants.END_ELEMENT:
+                    if (depth == 0) {
+                        return builder != null ? builder.toString() : text != null ? text : "";
+                    }
+                    depth--;
+                    break;
+                case XMLStreamConstants.CHARACTERS:
+                case XMLStreamConstants.CDATA:
+                case XMLStreamConstants.SPACE:
+                    if (depth == 0) {
+                        if (text == null) {
+                            text = reader.getText();
+                        } else {
+                            if (builder == null) {
+                                builder = new StringBuilder(text);
+                            }
+                            builder.append(reader.getTextCharacters(), reader.getTextStart(), reader.getTextLength());
+                        }
+                    }
+                    break;
+                default:
+                    break;
+            }
+        }
+    }
+
+    /**
+     * Skips the current element and its content.
+     */
+    private static void skipElement(XMLStreamReader reader) throws XMLStreamException {
+        int depth = 0;
+        while (true) {
+            int event = reader.next();
+            if (event == XMLStreamConstants.START_ELEMENT) {
+                depth++;
+            } else if (event == XMLStreamConstants.END_ELEMENT) {
+                if (depth == 0) {
+                    return;
+                }
+                depth--;
+            }
+        }
+    }
+}
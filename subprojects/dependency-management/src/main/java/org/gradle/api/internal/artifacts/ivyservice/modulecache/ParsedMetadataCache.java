@@ -0,0 +1,363 @@
+/*
+ * Copyright 2021 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.api.internal.artifacts.ivyservice.modulecache;
+
+import org.gradle.api.artifacts.component.ModuleComponentIdentifier;
+import org.gradle.api.internal.artifacts.DefaultModuleIdentifier;
+import org.gradle.api.internal.artifacts.ImmutableModuleIdentifierFactory;
+import org.gradle.api.internal.artifacts.ivyservice.ivyresolve.parser.DescriptorParseContext;
+import org.gradle.api.internal.artifacts.ivyservice.ivyresolve.parser.MetaDataParseException;
+import org.gradle.api.internal.artifacts.ivyservice.ivyresolve.parser.MetaDataParser;
+import org.gradle.api.internal.artifacts.ivyservice.ivyresolve.strategy.VersionSelector;
+import org.gradle.api.internal.component.ArtifactType;
+import org.gradle.cache.CacheBuilder;
+import org.gradle.cache.CacheRepository;
+import org.gradle.cache.FileLockManager;
+import org.gradle.cache.PersistentCache;
+import org.gradle.cache.internal.CleanupActionFactory;
+import org.gradle.cache.internal.LeastRecentlyUsedCacheCleanup;
+import org.gradle.cache.internal.SingleDepthFilesFinder;
+import org.gradle.cache.internal.filelock.LockOptionsBuilder;
+import org.gradle.internal.component.external.model.DefaultModuleComponentIdentifier;
+import org.gradle.internal.component.external.model.ModuleDependencyMetadata;
+import org.gradle.internal.component.external.model.MutableModuleComponentResolveMetadata;
+import org.gradle.internal.file.FileAccessTimeJournal;
+import org.gradle.internal.hash.ChecksumService;
+import org.gradle.internal.hash.HashCode;
+import org.gradle.internal.hash.Hasher;
+import org.gradle.internal.hash.Hashing;
+import org.gradle.internal.resource.local.LocallyAvailableExternalResource;
+import org.gradle.internal.resource.local.ModificationTimeFileAccessTimeJournal;
+import org.gradle.internal.serialize.kryo.KryoBackedDecoder;
+import org.gradle.internal.serialize.kryo.KryoBackedEncoder;
+import org.gradle.util.GradleVersion;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.annotation.Nullable;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+
+/**
+ * A cache of parsed module descriptors, keyed by the content hash of the descriptor.
+ *
+ * The cache does not depend on the repository a descriptor was downloaded from, so identical descriptors are only parsed once.
+ * The parent descriptors looked up while parsing are recorded in the entry with their content hash,
+ * and an entry is only used when the same lookups still find the same parent descriptors.
+ *
+ * Each entry is kept in a file of its own, and entries which have not been used for a while are removed by the cleanup of the cache.
+ */
+public class ParsedMetadataCache implements Closeable {
+    /**
+     * Enables the cache of parsed module descriptors.
+     */
+    public static final String PARSED_METADATA_CACHE_PROPERTY = "org.gradle.unsafe.parsed-metadata-cache";
+
+    /**
+     * A directory to keep the cache of parsed module descriptors in, e.g. to share it between Gradle user homes.
+     * By default, the cache is kept in the Gradle user home.
+     */
+    public static final String PARSED_METADATA_CACHE_DIR_PROPERTY = "org.gradle.unsafe.parsed-metadata-cache.dir";
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(ParsedMetadataCache.class);
+    private static final int FILE_TREE_DEPTH_TO_TRACK_AND_CLEANUP = 1;
+
+    private final CacheRepository cacheRepository;
+    private final ModuleMetadataSerializer metadataSerializer;
+    private final ImmutableModuleIdentifierFactory moduleIdentifierFactory;
+    private final ChecksumService checksumService;
+    private final CleanupActionFactory cleanupActionFactory;
+    private final boolean enabled;
+    private final File cacheDir;
+    // The cache may be shared between Gradle user homes, so track the use of the entries in the entries themselves
+    private final FileAccessTimeJournal fileAccessTimeJournal = new ModificationTimeFileAccessTimeJournal();
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong outdated = new AtomicLong();
+    private final AtomicLong stored = new AtomicLong();
+
+    private PersistentCache persistentCache;
+
+    public ParsedMetadataCache(
+        CacheRepository cacheRepository,
+        ModuleMetadataSerializer metadataSerializer,
+        ImmutableModuleIdentifierFactory moduleIdentifierFactory,
+        ChecksumService checksumService,
+        CleanupActionFactory cleanupActionFactory,
+        boolean enabled,
+        @Nullable File cacheDir
+    ) {
+        this.cacheRepository = cacheRepository;
+        this.metadataSerializer = metadataSerializer;
+        this.moduleIdentifierFactory = moduleIdentifierFactory;
+        this.checksumService = checksumService;
+        this.cleanupActionFactory = cleanupActionFactory;
+        this.enabled = enabled;
+        this.cacheDir = cacheDir;
+    }
+
+    /**
+     * Returns a parser which uses this cache, or the given parser if the cache is disabled.
+     */
+    public <T extends MutableModuleComponentResolveMetadata> MetaDataParser<T> decorate(MetaDataParser<T> parser) {
+        return enabled ? new CachingMetaDataParser<>(parser) : parser;
+    }
+
+    private synchronized PersistentCache getCache() {
+        if (persistentCache == null) {
+            CacheBuilder cacheBuilder = cacheDir != null
+                ? cacheRepository.cache(new File(cacheDir, GradleVersion.current().getVersion()))
+                : cacheRepository.cache("parsed-metadata");
+            persistentCache = cacheBuilder
+                .withDisplayName("parsed module metadata cache")
+                .withLockOptions(LockOptionsBuilder.mode(FileLockManager.LockMode.OnDemand))
+                .withCleanup(cleanupActionFactory.create(new LeastRecentlyUsedCacheCleanup(new SingleDepthFilesFinder(FILE_TREE_DEPTH_TO_TRACK_AND_CLEANUP), fileAccessTimeJournal, LeastRecentlyUsedCacheCleanup.DEFAULT_MAX_AGE_IN_DAYS_FOR_RECREATABLE_CACHE_ENTRIES)))
+                .open();
+        }
+        return persistentCache;
+    }
+
+    @Nullable
+    private byte[] loadEntry(HashCode key) {
+        PersistentCache cache = getCache();
+        return cache.useCache(() -> {
+            File entryFile = new File(cache.getBaseDir(), key.toString());
+            if (!entryFile.isFile()) {
+                return null;
+            }
+            try {
+                byte[] entry = Files.readAllBytes(entryFile.toPath());
+                fileAccessTimeJournal.setLastAccessTime(entryFile, System.currentTimeMillis());
+                return entry;
+            } catch (IOException e) {
+                LOGGER.debug("Could not read parsed module metadata from {}", entryFile, e);
+                return null;
+            }
+        });
+    }
+
+    private void storeEntry(HashCode key, byte[] entry) {
+        PersistentCache cache = getCache();
+        cache.useCache(() -> {
+            File entryFile = new File(cache.getBaseDir(), key.toString());
+            try {
+                // Write to a temporary file first, so that a failed write does not leave a partial entry behind
+                File tempFile = File.createTempFile(key.toString(), ".tmp", cache.getBaseDir());
+                Files.write(tempFile.toPath(), entry);
+                Files.move(tempFile.toPath(), entryFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        });
+    }
+
+    public long getHits() {
+        return hits.get();
+    }
+
+    public long getMisses() {
+        return misses.get() + outdated.get();
+    }
+
+    /**
+     * The ratio of the lookups which did not need to parse the descriptor.
+     */
+    public double getHitRate() {
+        long lookups = hits.get() + getMisses();
+        return lookups == 0 ? 0 : (double) hits.get() / lookups;
+    }
+
+    /**
+     * The size of the cache on disk, in bytes.
+     */
+    public long getSizeOnDisk() {
+        synchronized (this) {
+            if (persistentCache == null) {
+                return 0;
+            }
+        }
+        try (Stream<Path> files = Files.walk(persistentCache.getBaseDir().toPath())) {
+            return files.filter(Files::isRegularFile).mapToLong(file -> file.toFile().length()).sum();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Override
+    public synchronized void close() {
+        if (persistentCache != null) {
+            // Walking the cache directory can be expensive, so only do so when the statistics are reported
+            if (LOGGER.isInfoEnabled()) {
+                LOGGER.info("Parsed module metadata cache: {} hits, {} misses ({} outdated), {} stored, hit rate {}%, {} bytes on disk",
+                    hits.get(), getMisses(), outdated.get(), stored.get(), Math.round(getHitRate() * 100), getSizeOnDisk());
+            }
+            persistentCache.close();
+            persistentCache = null;
+        }
+    }
+
+    private class CachingMetaDataParser<T extends MutableModuleComponentResolveMetadata> implements MetaDataParser<T> {
+        private final MetaDataParser<T> delegate;
+        private final String parserType;
+
+        CachingMetaDataParser(MetaDataParser<T> delegate) {
+            this.delegate = delegate;
+            this.parserType = delegate.getClass().getName();
+        }
+
+        @Override
+        public ParseResult<T> parseMetaData(DescriptorParseContext context, LocallyAvailableExternalResource resource) throws MetaDataParseException {
+            Hasher hasher = Hashing.newHasher();
+            hasher.putString(parserType);
+            hasher.putHash(checksumService.sha1(resource.getFile()));
+            HashCode key = hasher.hash();
+
+            byte[] entry = loadEntry(key);
+            if (entry != null) {
+                ParseResult<T> result = readEntry(context, entry);
+                if (result != null) {
+                    hits.incrementAndGet();
+                    return result;
+                }
+                outdated.incrementAndGet();
+            } else {
+                misses.incrementAndGet();
+            }
+
+            RecordingParseContext recordingContext = new RecordingParseContext(context);
+            ParseResult<T> result = delegate.parseMetaData(recordingContext, resource);
+            if (result.getResult() != null && recordingContext.lookups != null) {
+                storeEntry(key, writeEntry(result, recordingContext.lookups));
+                stored.incrementAndGet();
+            }
+            return result;
+        }
+
+        @Override
+        public ParseResult<T> parseMetaData(DescriptorParseContext context, File descriptorFile) throws MetaDataParseException {
+            return delegate.parseMetaData(context, descriptorFile);
+        }
+
+        @Override
+        public ParseResult<T> parseMetaData(DescriptorParseContext context, File descriptorFile, boolean validate) throws MetaDataParseException {
+            return delegate.parseMetaData(context, descriptorFile, validate);
+        }
+
+        /**
+         * Reads a cache entry, replaying the lookups of parent descriptors on the given context.
+         *
+         * @return the parsed descriptor, or {@code null} if the parent descriptors have changed or the entry cannot be read.
+         */
+        @Nullable
+        @SuppressWarnings("unchecked")
+        private ParseResult<T> readEntry(DescriptorParseContext context, byte[] entry) {
+            try (KryoBackedDecoder decoder = new KryoBackedDecoder(new ByteArrayInputStream(entry))) {
+                boolean redirect = decoder.readBoolean();
+                int lookupCount = decoder.readSmallInt();
+                for (int i = 0; i < lookupCount; i++) {
+                    ModuleComponentIdentifier componentId = DefaultModuleComponentIdentifier.newId(
+                        DefaultModuleIdentifier.newId(decoder.readString(), decoder.readString()), decoder.readString());
+                    ArtifactType artifactType = ArtifactType.valueOf(decoder.readString());
+                    HashCode expectedHash = HashCode.fromBytes(decoder.readBinary());
+                    LocallyAvailableExternalResource parent = context.getMetaDataArtifact(componentId, artifactType);
+                    if (!checksumService.sha1(parent.getFile()).equals(expectedHash)) {
+                        return null;
+                    }
+                }
+                T metadata = (T) metadataSerializer.read(decoder, moduleIdentifierFactory, new HashMap<>());
+                return ParseResult.of(metadata, redirect);
+            } catch (IOException | RuntimeException e) {
+                // The entry may be corrupt, so parse the descriptor again. Failures to look up a parent descriptor are reported by the parser
+                LOGGER.debug("Could not read parsed module metadata from cache", e);
+                return null;
+            }
+        }
+
+        private byte[] writeEntry(ParseResult<T> result, List<Lookup> lookups) {
+            ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+            try (KryoBackedEncoder encoder = new KryoBackedEncoder(outputStream)) {
+                encoder.writeBoolean(result.hasGradleMetadataRedirectionMarker());
+                encoder.writeSmallInt(lookups.size());
+                for (Lookup lookup : lookups) {
+                    encoder.writeString(lookup.componentId.getGroup());
+                    encoder.writeString(lookup.componentId.getModule());
+                    encoder.writeString(lookup.componentId.getVersion());
+                    encoder.writeString(lookup.artifactType.name());
+                    encoder.writeBinary(lookup.hash.toByteArray());
+                }
+                metadataSerializer.write(encoder, result.getResult().asImmutable(), new HashMap<>());
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            return outputStream.toByteArray();
+        }
+    }
+
+    /**
+     * Records the parent descriptors looked up while parsing.
+     */
+    private class RecordingParseContext implements DescriptorParseContext {
+        private final DescriptorParseContext delegate;
+        // Set to null when the lookups cannot be replayed
+        private List<Lookup> lookups = new ArrayList<>();
+
+        RecordingParseContext(DescriptorParseContext delegate) {
+            this.delegate = delegate;
+        }
+
+        @Override
+        public LocallyAvailableExternalResource getMetaDataArtifact(ModuleComponentIdentifier componentIdentifier, ArtifactType artifactType) {
+            LocallyAvailableExternalResource resource = delegate.getMetaDataArtifact(componentIdentifier, artifactType);
+            if (lookups != null) {
+                lookups.add(new Lookup(componentIdentifier, artifactType, checksumService.sha1(resource.getFile())));
+            }
+            return resource;
+        }
+
+        @Override
+        public LocallyAvailableExternalResource getMetaDataArtifact(ModuleDependencyMetadata dependencyMetadata, VersionSelector acceptor, ArtifactType artifactType) {
+            // The selected version may change over time
+            lookups = null;
+            return delegate.getMetaDataArtifact(dependencyMetadata, acceptor, artifactType);
+        }
+    }
+
+    private static class Lookup {
+        private final ModuleComponentIdentifier componentId;
+        private final ArtifactType artifactType;
+        private final HashCode hash;
+
+        Lookup(ModuleComponentIdentifier componentId, ArtifactType artifactType, HashCode hash) {
+            this.componentId = componentId;
+            this.artifactType = artifactType;
+            this.hash = hash;
+        }
+    }
+}
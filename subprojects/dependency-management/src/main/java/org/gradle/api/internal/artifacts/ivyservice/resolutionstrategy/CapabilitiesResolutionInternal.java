@@ -20,4 +20,9 @@
 
 public interface CapabilitiesResolutionInternal extends CapabilitiesResolution {
     void apply(CapabilitiesConflictHandler.ResolutionDetails details);
+
+    /**
+     * Returns true when no capability resolution rule has been declared.
+     */
+    boolean isEmpty();
 }
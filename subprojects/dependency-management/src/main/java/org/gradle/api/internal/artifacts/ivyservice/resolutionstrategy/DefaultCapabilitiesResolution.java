@@ -49,6 +49,11 @@ public DefaultCapabilitiesResolution(NotationParser<Object, Capability> capabili
         this.componentNotationParser = componentNotationParser;
     }
 
+    @Override
+    public boolean isEmpty() {
+        return actions.isEmpty();
+    }
+
     @Override
     public void all(Action<? super CapabilityResolutionDetails> action) {
         actions.add(new CapabilityAction(Specs.SATISFIES_ALL, action));
@@ -0,0 +1,87 @@
+/*
+ * Copyright 2021 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.gradle.api.internal.artifacts.ivyservice.resolveengine.graph.builder;
+
+import org.gradle.api.internal.artifacts.ivyservice.ivyresolve.strategy.VersionSelectorScheme;
+import org.gradle.internal.concurrent.ExecutorFactory;
+import org.gradle.internal.concurrent.ManagedExecutor;
+import org.gradle.internal.concurrent.Stoppable;
+import org.gradle.internal.resolve.resolver.ComponentMetaDataResolver;
+import org.gradle.internal.resources.ResourceLockCoordinationService;
+import org.gradle.internal.work.NoAvailableWorkerLeaseException;
+import org.gradle.internal.work.WorkerLeaseRegistry;
+import org.gradle.internal.work.WorkerLeaseService;
+
+import javax.annotation.Nullable;
+
+/**
+ * Creates the {@link MetadataPrefetcher} used while traversing a dependency graph.
+ *
+ * <p>The prefetchers of a build share a single executor, which is limited to the maximum number of workers.
+ * Each fetch also runs with a worker lease of the thread that resolves the graph.</p>
+ */
+public class MetadataPrefetchService implements Stoppable {
+    /**
+     * Enables the background fetching of metadata while traversing the dependency graph.
+     */
+    public static final String METADATA_PREFETCH_PROPERTY = "org.gradle.unsafe.metadata-prefetch";
+
+    private final ExecutorFactory executorFactory;
+    private final WorkerLeaseService workerLeaseService;
+    private final ResourceLockCoordinationService coordinationService;
+    private final boolean enabled;
+    private ManagedExecutor executor;
+
+    public MetadataPrefetchService(ExecutorFactory executorFactory, WorkerLeaseService workerLeaseService, ResourceLockCoordinationService coordinationService, boolean enabled) {
+        this.executorFactory = executorFactory;
+        this.workerLeaseService = workerLeaseService;
+        this.coordinationService = coordinationService;
+        this.enabled = enabled;
+    }
+
+    /**
+     * Creates a prefetcher for a graph resolved by the current thread, or returns null when metadata should not be prefetched.
+     */
+    @Nullable
+    MetadataPrefetcher createPrefetcher(ComponentMetaDataResolver delegate, VersionSelectorScheme versionSelectorScheme) {
+        if (!enabled) {
+            return null;
+        }
+        WorkerLeaseRegistry.WorkerLease workerLease;
+        try {
+            workerLease = workerLeaseService.getCurrentWorkerLease();
+        } catch (NoAvailableWorkerLeaseException e) {
+            // The fetches could not be accounted for, so resolve without prefetching
+            return null;
+        }
+        return new MetadataPrefetcher(delegate, versionSelectorScheme, getExecutor(), workerLease, coordinationService);
+    }
+
+    private synchronized ManagedExecutor getExecutor() {
+        if (executor == null) {
+            executor = executorFactory.create("Dependency metadata prefetch", workerLeaseService.getMaxWorkerCount());
+        }
+        return executor;
+    }
+
+    @Override
+    public synchronized void stop() {
+        if (executor != null) {
+            executor.stop();
+            executor = null;
+        }
+    }
+}
@@ -0,0 +1,278 @@
+/*
+ * Copyright 2021 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.api.internal.artifacts.ivyservice.resolveengine.graph.builder;
+
+import org.gradle.api.artifacts.VersionConstraint;
+import org.gradle.api.artifacts.component.ComponentIdentifier;
+import org.gradle.api.internal.artifacts.DefaultModuleIdentifier;
+import org.gradle.api.internal.artifacts.ivyservice.ivyresolve.strategy.VersionSelector;
+import org.gradle.api.internal.artifacts.ivyservice.ivyresolve.strategy.VersionSelectorScheme;
+import org.gradle.internal.UncheckedException;
+import org.gradle.internal.component.external.descriptor.MavenScope;
+import org.gradle.internal.component.external.model.ComponentVariant;
+import org.gradle.internal.component.external.model.DefaultModuleComponentIdentifier;
+import org.gradle.internal.component.external.model.ModuleComponentResolveMetadata;
+import org.gradle.internal.component.external.model.maven.MavenDependencyDescriptor;
+import org.gradle.internal.component.external.model.maven.MavenModuleResolveMetadata;
+import org.gradle.internal.component.model.ComponentOverrideMetadata;
+import org.gradle.internal.component.model.ComponentResolveMetadata;
+import org.gradle.internal.component.model.DefaultComponentOverrideMetadata;
+import org.gradle.internal.operations.BuildOperationRef;
+import org.gradle.internal.operations.CurrentBuildOperationRef;
+import org.gradle.internal.resolve.resolver.ComponentMetaDataResolver;
+import org.gradle.internal.resolve.result.BuildableComponentResolveResult;
+import org.gradle.internal.resolve.result.DefaultBuildableComponentResolveResult;
+import org.gradle.internal.resources.DefaultResourceLockCoordinationService;
+import org.gradle.internal.resources.ResourceLockCoordinationService;
+import org.gradle.internal.work.WorkerLeaseRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.annotation.Nullable;
+import java.io.Closeable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Fetches component metadata in the background, so that downloading metadata overlaps with the traversal of the graph.
+ *
+ * Metadata is fetched for the components selected while visiting a node, and speculatively for the fixed versions
+ * declared by the transitive dependencies of each component whose metadata has been fetched.
+ * Requests without overrides for a component that is being fetched wait for the fetch and use its result.
+ * Requests for a component whose fetch has not started yet are resolved by the requesting thread instead.
+ * Fetches that cannot get a worker lease are skipped, and left to the requesting thread as well.
+ */
+class MetadataPrefetcher implements ComponentMetaDataResolver, Closeable {
+    private static final Logger LOGGER = LoggerFactory.getLogger(MetadataPrefetcher.class);
+
+    private final ComponentMetaDataResolver delegate;
+    private final VersionSelectorScheme versionSelectorScheme;
+    private final Executor executor;
+    private final WorkerLeaseRegistry.WorkerLease parentWorkerLease;
+    private final ResourceLockCoordinationService coordinationService;
+    private final BuildOperationRef parent;
+    private final ConcurrentMap<ComponentIdentifier, PrefetchedMetadata> prefetches = new ConcurrentHashMap<>();
+    private final AtomicLong used = new AtomicLong();
+    private volatile boolean closed;
+    private int runningFetches;
+
+    MetadataPrefetcher(ComponentMetaDataResolver delegate, VersionSelectorScheme versionSelectorScheme, Executor executor, WorkerLeaseRegistry.WorkerLease parentWorkerLease, ResourceLockCoordinationService coordinationService) {
+        this.delegate = delegate;
+        this.versionSelectorScheme = versionSelectorScheme;
+        this.executor = executor;
+        this.parentWorkerLease = parentWorkerLease;
+        this.coordinationService = coordinationService;
+        // Attach the downloads to the operation resolving the graph
+        this.parent = CurrentBuildOperationRef.instance().get();
+    }
+
+    /**
+     * Starts fetching the metadata of the given component in the background, unless it has already been requested.
+     */
+    public void prefetch(ComponentIdentifier componentId) {
+        if (closed) {
+            return;
+        }
+        prefetches.computeIfAbsent(componentId, id -> {
+            PrefetchedMetadata prefetch = new PrefetchedMetadata();
+            executor.execute(() -> fetch(id, prefetch));
+            return prefetch;
+        });
+    }
+
+    private void fetch(ComponentIdentifier componentId, PrefetchedMetadata prefetch) {
+        if (!startFetch()) {
+            return;
+        }
+        try {
+            WorkerLeaseRegistry.WorkerLease workerLease = parentWorkerLease.createChild();
+            if (!coordinationService.withStateLock(DefaultResourceLockCoordinationService.tryLock(workerLease))) {
+                // No worker is available, so leave the component to the requesting thread instead of waiting for one
+                return;
+            }
+            try {
+                if (prefetch.start()) {
+                    fetchWithWorkerLease(componentId, prefetch);
+                }
+            } finally {
+                coordinationService.withStateLock(DefaultResourceLockCoordinationService.unlock(workerLease));
+            }
+        } finally {
+            finishFetch();
+        }
+    }
+
+    private synchronized boolean startFetch() {
+        if (closed) {
+            return false;
+        }
+        runningFetches++;
+        return true;
+    }
+
+    private synchronized void finishFetch() {
+        runningFetches--;
+        notifyAll();
+    }
+
+    private void fetchWithWorkerLease(ComponentIdentifier componentId, PrefetchedMetadata prefetch) {
+        CurrentBuildOperationRef.instance().set(parent);
+        DefaultBuildableComponentResolveResult result = new DefaultBuildableComponentResolveResult();
+        try {
+            delegate.resolve(componentId, DefaultComponentOverrideMetadata.EMPTY, result);
+        } catch (RuntimeException e) {
+            // Let the requesting thread resolve the component, and report the failure
+            LOGGER.debug("Could not prefetch metadata for {}", componentId, e);
+            result = null;
+        } finally {
+            CurrentBuildOperationRef.instance().clear();
+        }
+        if (result != null && !result.hasResult()) {
+            result = null;
+        }
+        prefetch.complete(result);
+        if (result != null && result.getFailure() == null) {
+            prefetchDependenciesOf(result.getMetadata());
+        }
+    }
+
+    @Override
+    public void resolve(ComponentIdentifier identifier, ComponentOverrideMetadata componentOverrideMetadata, BuildableComponentResolveResult result) {
+        if (componentOverrideMetadata == DefaultComponentOverrideMetadata.EMPTY) {
+            PrefetchedMetadata prefetch = prefetches.get(identifier);
+            DefaultBuildableComponentResolveResult prefetched = prefetch == null ? null : prefetch.await();
+            if (prefetched != null) {
+                used.incrementAndGet();
+                prefetched.applyTo(result);
+                if (prefetched.getFailure() != null) {
+                    result.failed(prefetched.getFailure());
+                } else {
+                    result.resolved(prefetched.getMetadata());
+                }
+                return;
+            }
+        }
+        delegate.resolve(identifier, componentOverrideMetadata, result);
+        if (result.hasResult() && result.getFailure() == null) {
+            prefetchDependenciesOf(result.getMetadata());
+        }
+    }
+
+    @Override
+    public boolean isFetchingMetadataCheap(ComponentIdentifier identifier) {
+        return delegate.isFetchingMetadataCheap(identifier);
+    }
+
+    /**
+     * Prefetches the fixed versions declared by the transitive dependencies of a component.
+     * These are only candidates, as the graph may select different versions, substitute them or exclude them.
+     */
+    private void prefetchDependenciesOf(ComponentResolveMetadata metadata) {
+        if (closed) {
+            return;
+        }
+        if (metadata instanceof MavenModuleResolveMetadata) {
+            for (MavenDependencyDescriptor dependency : ((MavenModuleResolveMetadata) metadata).getDependencies()) {
+                if (dependency.isTransitive() && (dependency.getScope() == MavenScope.Compile || dependency.getScope() == MavenScope.Runtime)) {
+                    prefetch(dependency.getSelector().getGroup(), dependency.getSelector().getModule(), dependency.getSelector().getVersionConstraint());
+                }
+            }
+        }
+        if (metadata instanceof ModuleComponentResolveMetadata) {
+            for (ComponentVariant variant : ((ModuleComponentResolveMetadata) metadata).getVariants()) {
+                for (ComponentVariant.Dependency dependency : variant.getDependencies()) {
+                    prefetch(dependency.getGroup(), dependency.getModule(), dependency.getVersionConstraint());
+                }
+            }
+        }
+    }
+
+    private void prefetch(String group, String module, VersionConstraint versionConstraint) {
+        String version = versionConstraint.getStrictVersion().isEmpty() ? versionConstraint.getRequiredVersion() : versionConstraint.getStrictVersion();
+        if (version.isEmpty() || versionConstraint.getBranch() != null) {
+            return;
+        }
+        VersionSelector selector = versionSelectorScheme.parseSelector(version);
+        if (selector.isDynamic()) {
+            return;
+        }
+        prefetch(DefaultModuleComponentIdentifier.newId(DefaultModuleIdentifier.newId(group, module), selector.getSelector()));
+    }
+
+    /**
+     * Discards the pending prefetches and waits for the running ones, as they use the repositories and the worker lease of this resolution.
+     */
+    @Override
+    public void close() {
+        synchronized (this) {
+            closed = true;
+            try {
+                while (runningFetches > 0) {
+                    wait();
+                }
+            } catch (InterruptedException e) {
+                throw UncheckedException.throwAsUncheckedException(e);
+            }
+        }
+        LOGGER.debug("Prefetched metadata of {} components, used {}", prefetches.size(), used.get());
+    }
+
+    private static class PrefetchedMetadata {
+        private boolean started;
+        private boolean completed;
+        private DefaultBuildableComponentResolveResult result;
+
+        synchronized boolean start() {
+            if (started) {
+                return false;
+            }
+            started = true;
+            return true;
+        }
+
+        synchronized void complete(@Nullable DefaultBuildableComponentResolveResult result) {
+            this.result = result;
+            completed = true;
+            notifyAll();
+        }
+
+        /**
+         * Waits for the result of a running fetch.
+         *
+         * @return the result, or {@code null} if the fetch has not started or failed unexpectedly.
+         */
+        @Nullable
+        synchronized DefaultBuildableComponentResolveResult await() {
+            if (!started) {
+                // Resolve the component in the requesting thread, instead of waiting for a free prefetch thread
+                started = true;
+                completed = true;
+                return null;
+            }
+            try {
+                while (!completed) {
+                    wait();
+                }
+            } catch (InterruptedException e) {
+                throw UncheckedException.throwAsUncheckedException(e);
+            }
+            return result;
+        }
+    }
+}
@@ -0,0 +1,104 @@
+/*
+ * Copyright 2021 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.api.internal.artifacts.ivyservice.resolveengine.store;
+
+import org.gradle.cache.internal.BinaryStore;
+import org.gradle.internal.serialize.kryo.StringDeduplicatingKryoBackedDecoder;
+import org.gradle.internal.serialize.kryo.StringDeduplicatingKryoBackedEncoder;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+
+/**
+ * A {@link BinaryStore} that keeps its data in memory, so that the data can be persisted elsewhere once done.
+ * Uses the same encoding as the file based stores created by {@link ResolutionResultsStoreFactory}.
+ */
+public class InMemoryBinaryStore implements BinaryStore {
+    private final ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+    private final StringDeduplicatingKryoBackedEncoder encoder = new StringDeduplicatingKryoBackedEncoder(outputStream);
+
+    @Override
+    public void write(WriteAction write) {
+        try {
+            write.write(encoder);
+        } catch (Exception e) {
+            throw new RuntimeException("Problems writing to " + this, e);
+        }
+    }
+
+    @Override
+    public InMemoryBinaryData done() {
+        encoder.done();
+        encoder.flush();
+        return new InMemoryBinaryData(outputStream.toByteArray());
+    }
+
+    /**
+     * Returns the data written to this store. Should only be called once writing is done.
+     */
+    public byte[] toByteArray() {
+        return outputStream.toByteArray();
+    }
+
+    public String toString() {
+        return "In-memory binary store";
+    }
+
+    /**
+     * Data written by an {@link InMemoryBinaryStore}.
+     */
+    public static class InMemoryBinaryData implements BinaryStore.BinaryData {
+        private final byte[] bytes;
+        private StringDeduplicatingKryoBackedDecoder decoder;
+
+        public InMemoryBinaryData(byte[] bytes) {
+            this.bytes = bytes;
+        }
+
+        public byte[] getBytes() {
+            return bytes;
+        }
+
+        @Override
+        public <T> T read(BinaryStore.ReadAction<T> readAction) {
+            try {
+                if (decoder == null) {
+                    decoder = new StringDeduplicatingKryoBackedDecoder(new ByteArrayInputStream(bytes));
+                }
+                return readAction.read(decoder);
+            } catch (Exception e) {
+                throw new RuntimeException("Problems reading data from " + this, e);
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            try {
+                if (decoder != null) {
+                    decoder.close();
+                }
+            } finally {
+                decoder = null;
+            }
+        }
+
+        public String toString() {
+            return "In-memory binary data (" + bytes.length + " bytes)";
+        }
+    }
+}
@@ -19,8 +19,13 @@
 import org.gradle.api.Action;
 import org.gradle.api.attributes.CompatibilityCheckDetails;
 import org.gradle.api.attributes.MultipleCandidatesDetails;
+import org.gradle.internal.action.ConfigurableRule;
+import org.gradle.internal.action.InstantiatingAction;
+import org.gradle.internal.hash.Hashable;
+import org.gradle.internal.hash.Hasher;
 
 import java.util.Comparator;
+import java.util.List;
 
 public abstract class AttributeMatchingRules {
     public static <T> Action<? super CompatibilityCheckDetails<T>> orderedCompatibility(Comparator<? super T> comparator, boolean reverse) {
@@ -30,4 +35,24 @@ public static <T> Action<? super CompatibilityCheckDetails<T>> orderedCompatibil
     public static <T> Action<? super MultipleCandidatesDetails<T>> orderedDisambiguation(Comparator<? super T> comparator, boolean pickFirst) {
         return new DefaultOrderedDisambiguationRule<>(comparator, pickFirst);
     }
+
+    /**
+     * Appends the given rules to the hasher. Rules implemented by a class are identified by the name of the class and their parameters.
+     */
+    static void appendToHasher(List<? extends Action<?>> rules, Hasher hasher) {
+        hasher.putInt(rules.size());
+        for (Action<?> rule : rules) {
+            if (rule instanceof InstantiatingAction) {
+                for (ConfigurableRule<?> configurableRule : ((InstantiatingAction<?>) rule).getRules().getConfigurableRules()) {
+                    hasher.putString(configurableRule.getRuleClass().getName());
+                    configurableRule.getRuleParams().appendToHasher(hasher);
+                }
+            } else {
+                hasher.putString(rule.getClass().getName());
+                if (rule instanceof Hashable) {
+                    ((Hashable) rule).appendToHasher(hasher);
+                }
+            }
+        }
+    }
 }
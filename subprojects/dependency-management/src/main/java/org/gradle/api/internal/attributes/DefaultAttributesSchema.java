@@ -32,6 +32,8 @@
 import org.gradle.internal.component.model.ComponentAttributeMatcher;
 import org.gradle.internal.component.model.DefaultCompatibilityCheckResult;
 import org.gradle.internal.component.model.DefaultMultipleCandidateResult;
+import org.gradle.internal.hash.Hashable;
+import org.gradle.internal.hash.Hasher;
 import org.gradle.internal.instantiation.InstantiatorFactory;
 import org.gradle.internal.isolation.IsolatableFactory;
 
@@ -39,11 +41,12 @@
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.Comparator;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
 
-public class DefaultAttributesSchema implements AttributesSchemaInternal, AttributesSchema {
+public class DefaultAttributesSchema implements AttributesSchemaInternal, AttributesSchema, Hashable {
     private final ComponentAttributeMatcher componentAttributeMatcher;
     private final InstantiatorFactory instantiatorFactory;
     private final Map<Attribute<?>, AttributeMatchingStrategy<?>> strategies = Maps.newHashMap();
@@ -131,6 +134,22 @@ public DisambiguationRule<Object> disambiguationRules(Attribute<?> attribute) {
         return EmptySchema.INSTANCE.disambiguationRules(attribute);
     }
 
+    /**
+     * Appends the attributes of this schema and their matching rules to the given hasher.
+     */
+    @Override
+    public void appendToHasher(Hasher hasher) {
+        List<Attribute<?>> attributes = Lists.newArrayList(strategies.keySet());
+        attributes.sort(Comparator.comparing(Attribute::getName));
+        for (Attribute<?> attribute : attributes) {
+            hasher.putString(attribute.getName());
+            hasher.putString(attribute.getType().getName());
+            AttributeMatchingStrategy<?> matchingStrategy = strategies.get(attribute);
+            ((Hashable) matchingStrategy.getCompatibilityRules()).appendToHasher(hasher);
+            ((Hashable) matchingStrategy.getDisambiguationRules()).appendToHasher(hasher);
+        }
+    }
+
     @Override
     public List<AttributeDescriber> getConsumerDescribers() {
         return consumerAttributeDescribers;
@@ -24,6 +24,8 @@
 import org.gradle.internal.action.DefaultConfigurableRule;
 import org.gradle.internal.action.DefaultConfigurableRules;
 import org.gradle.internal.action.InstantiatingAction;
+import org.gradle.internal.hash.Hashable;
+import org.gradle.internal.hash.Hasher;
 import org.gradle.internal.isolation.IsolatableFactory;
 import org.gradle.internal.reflect.Instantiator;
 import org.gradle.model.internal.type.ModelType;
@@ -31,7 +33,7 @@
 import java.util.Comparator;
 import java.util.List;
 
-public class DefaultCompatibilityRuleChain<T> implements CompatibilityRuleChain<T>, CompatibilityRule<T> {
+public class DefaultCompatibilityRuleChain<T> implements CompatibilityRuleChain<T>, CompatibilityRule<T>, Hashable {
     private final List<Action<? super CompatibilityCheckDetails<T>>> rules = Lists.newArrayList();
     private final Instantiator instantiator;
     private final IsolatableFactory isolatableFactory;
@@ -80,6 +82,11 @@ public boolean doesSomething() {
         return !rules.isEmpty();
     }
 
+    @Override
+    public void appendToHasher(Hasher hasher) {
+        AttributeMatchingRules.appendToHasher(rules, hasher);
+    }
+
     private static class ExceptionHandler<T> implements InstantiatingAction.ExceptionHandler<CompatibilityCheckDetails<T>> {
 
         private final Class<? extends AttributeCompatibilityRule<T>> rule;
@@ -27,6 +27,8 @@
 import org.gradle.internal.action.DefaultConfigurableRule;
 import org.gradle.internal.action.DefaultConfigurableRules;
 import org.gradle.internal.action.InstantiatingAction;
+import org.gradle.internal.hash.Hashable;
+import org.gradle.internal.hash.Hasher;
 import org.gradle.internal.isolation.IsolatableFactory;
 import org.gradle.internal.reflect.Instantiator;
 import org.gradle.model.internal.type.ModelType;
@@ -35,7 +37,7 @@
 import java.util.List;
 import java.util.Set;
 
-public class DefaultDisambiguationRuleChain<T> implements DisambiguationRuleChain<T>, DisambiguationRule<T> {
+public class DefaultDisambiguationRuleChain<T> implements DisambiguationRuleChain<T>, DisambiguationRule<T>, Hashable {
     private final List<Action<? super MultipleCandidatesDetails<T>>> rules = Lists.newArrayList();
     private final Instantiator instantiator;
     private final IsolatableFactory isolatableFactory;
@@ -84,6 +86,11 @@ public boolean doesSomething() {
         return !rules.isEmpty();
     }
 
+    @Override
+    public void appendToHasher(Hasher hasher) {
+        AttributeMatchingRules.appendToHasher(rules, hasher);
+    }
+
     private static class ExceptionHandler<T> implements InstantiatingAction.ExceptionHandler<MultipleCandidatesDetails<T>> {
 
         private final Class<? extends AttributeDisambiguationRule<T>> rule;
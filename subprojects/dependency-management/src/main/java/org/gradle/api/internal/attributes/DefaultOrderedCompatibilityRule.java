@@ -17,10 +17,12 @@
 
 import org.gradle.api.Action;
 import org.gradle.api.attributes.CompatibilityCheckDetails;
+import org.gradle.internal.hash.Hashable;
+import org.gradle.internal.hash.Hasher;
 
 import java.util.Comparator;
 
-public class DefaultOrderedCompatibilityRule<T> implements Action<CompatibilityCheckDetails<T>> {
+public class DefaultOrderedCompatibilityRule<T> implements Action<CompatibilityCheckDetails<T>>, Hashable {
     private final Comparator<? super T> comparator;
     private final boolean reverse;
 
@@ -44,4 +46,9 @@ public void execute(CompatibilityCheckDetails<T> details) {
         }
     }
 
+    @Override
+    public void appendToHasher(Hasher hasher) {
+        hasher.putString(comparator.getClass().getName());
+        hasher.putBoolean(reverse);
+    }
 }
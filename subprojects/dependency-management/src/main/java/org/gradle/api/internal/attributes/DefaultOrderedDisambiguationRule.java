@@ -17,11 +17,13 @@
 
 import org.gradle.api.Action;
 import org.gradle.api.attributes.MultipleCandidatesDetails;
+import org.gradle.internal.hash.Hashable;
+import org.gradle.internal.hash.Hasher;
 
 import java.util.Comparator;
 import java.util.Set;
 
-public class DefaultOrderedDisambiguationRule<T> implements Action<MultipleCandidatesDetails<T>> {
+public class DefaultOrderedDisambiguationRule<T> implements Action<MultipleCandidatesDetails<T>>, Hashable {
     private final Comparator<? super T> comparator;
     private final boolean pickFirst;
 
@@ -52,4 +54,10 @@ public void execute(MultipleCandidatesDetails<T> details) {
             }
         }
     }
+
+    @Override
+    public void appendToHasher(Hasher hasher) {
+        hasher.putString(comparator.getClass().getName());
+        hasher.putBoolean(pickFirst);
+    }
 }
@@ -1076,6 +1076,10 @@ class DefaultConfigurationSpec extends Specification {
         resolver.resolveGraph(config, _) >> { ConfigurationInternal conf, DefaultResolverResults res ->
             res.graphResolved(resolutionResult, localComponentsResult, visitedArtifactSet)
         }
+        resolver.resolveGraphForResolutionResult(config, _) >> { ConfigurationInternal conf, DefaultResolverResults res ->
+            res.graphResolved(resolutionResult, localComponentsResult, visitedArtifactSet)
+            false
+        }
         resolver.resolveArtifacts(config, _) >> { ConfigurationInternal conf, DefaultResolverResults res ->
             res.artifactsResolved(resolvedConfiguration, visitedArtifactSet)
         }
@@ -1217,8 +1221,9 @@ class DefaultConfigurationSpec extends Specification {
         config.state == RESOLVED
 
         and:
-        1 * resolver.resolveGraph(config, _) >> { ConfigurationInternal c, ResolverResults r ->
+        1 * resolver.resolveGraphForResolutionResult(config, _) >> { ConfigurationInternal c, ResolverResults r ->
             r.graphResolved(Stub(ResolutionResult), Stub(ResolvedLocalComponentsResult), visitedArtifacts())
+            false
         }
         1 * resolver.resolveArtifacts(config, _) >> { ConfigurationInternal c, ResolverResults r ->
             r.artifactsResolved(Stub(ResolvedConfiguration), visitedArtifacts())
@@ -1241,8 +1246,9 @@ class DefaultConfigurationSpec extends Specification {
         config.state == RESOLVED
 
         and:
-        1 * resolver.resolveGraph(config, _) >> { ConfigurationInternal c, ResolverResults r ->
+        1 * resolver.resolveGraphForResolutionResult(config, _) >> { ConfigurationInternal c, ResolverResults r ->
             r.graphResolved(Stub(ResolutionResult), Stub(ResolvedLocalComponentsResult), visitedArtifacts())
+            false
         }
         1 * resolver.resolveArtifacts(config, _) >> { ConfigurationInternal c, ResolverResults r ->
             r.artifactsResolved(Stub(ResolvedConfiguration), visitedArtifacts())
@@ -1264,6 +1270,50 @@ class DefaultConfigurationSpec extends Specification {
         graphResolveRequired << [true, false]
     }
 
+    def "resolves graph again when artifacts of a graph restored from the cache are required"() {
+        def config = conf("conf")
+        def restoredResult = Stub(ResolutionResult)
+        def resolvedConfiguration = Stub(ResolvedConfiguration)
+
+        when:
+        def result = config.incoming.getResolutionResult()
+        result.root
+
+        then:
+        config.resolvedState == ConfigurationInternal.InternalState.ARTIFACTS_RESOLVED
+
+        and:
+        1 * resolver.resolveGraphForResolutionResult(config, _) >> { ConfigurationInternal c, ResolverResults r ->
+            r.graphResolved(restoredResult, Stub(ResolvedLocalComponentsResult), visitedArtifacts())
+            true
+        }
+        1 * resolver.getRepositories() >> []
+        0 * resolver._
+
+        when:
+        def resolved = config.resolvedConfiguration
+
+        then:
+        resolved == resolvedConfiguration
+        config.resolvedState == ConfigurationInternal.InternalState.ARTIFACTS_RESOLVED
+
+        and:
+        1 * resolver.resolveRestoredGraph(config, { it.resolutionResult == restoredResult }, _) >> { ConfigurationInternal c, ResolverResults restored, ResolverResults r ->
+            r.graphResolved(Stub(ResolutionResult), Stub(ResolvedLocalComponentsResult), visitedArtifacts())
+        }
+        1 * resolver.resolveArtifacts(config, _) >> { ConfigurationInternal c, ResolverResults r ->
+            r.artifactsResolved(resolvedConfiguration, visitedArtifacts())
+        }
+        1 * resolver.getRepositories() >> []
+        0 * resolver._
+
+        when:
+        config.resolvedConfiguration
+
+        then:
+        0 * resolver._
+    }
+
     def "resolving configuration twice returns the same result objects"() {
         def config = conf("conf")
         when:
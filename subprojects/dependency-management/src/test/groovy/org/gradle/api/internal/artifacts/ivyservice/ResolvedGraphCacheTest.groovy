@@ -0,0 +1,406 @@
+/*
+ * Copyright 2021 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.gradle.api.internal.artifacts.ivyservice
+
+import org.gradle.api.artifacts.Dependency
+import org.gradle.api.artifacts.DependencyConstraintSet
+import org.gradle.api.artifacts.DependencySet
+import org.gradle.api.artifacts.ExcludeRule
+import org.gradle.api.artifacts.ProjectDependency
+import org.gradle.api.artifacts.component.ProjectComponentIdentifier
+import org.gradle.api.artifacts.result.ResolvedVariantResult
+import org.gradle.api.internal.artifacts.ComponentSelectionRulesInternal
+import org.gradle.api.internal.artifacts.DefaultExcludeRule
+import org.gradle.api.internal.artifacts.DefaultImmutableModuleIdentifierFactory
+import org.gradle.api.internal.artifacts.DefaultModuleIdentifier
+import org.gradle.api.internal.artifacts.DefaultModuleVersionIdentifier
+import org.gradle.api.internal.artifacts.DependencyManagementTestUtil
+import org.gradle.api.internal.artifacts.GlobalDependencyResolutionRules
+import org.gradle.api.internal.artifacts.Module
+import org.gradle.api.internal.artifacts.configurations.ConfigurationInternal
+import org.gradle.api.internal.artifacts.configurations.ConflictResolution
+import org.gradle.api.internal.artifacts.configurations.ResolutionStrategyInternal
+import org.gradle.api.internal.artifacts.dependencies.DefaultExternalModuleDependency
+import org.gradle.api.internal.artifacts.dependencies.DefaultMutableVersionConstraint
+import org.gradle.api.internal.artifacts.ivyservice.dependencysubstitution.DependencySubstitutionsInternal
+import org.gradle.api.internal.artifacts.ivyservice.ivyresolve.ConfiguredModuleComponentRepository
+import org.gradle.api.internal.artifacts.ivyservice.ivyresolve.strategy.DefaultVersionComparator
+import org.gradle.api.internal.artifacts.ivyservice.ivyresolve.strategy.DefaultVersionSelectorScheme
+import org.gradle.api.internal.artifacts.ivyservice.ivyresolve.strategy.VersionParser
+import org.gradle.api.internal.artifacts.ivyservice.resolutionstrategy.CapabilitiesResolutionInternal
+import org.gradle.api.internal.artifacts.ivyservice.resolveengine.graph.DependencyGraphComponent
+import org.gradle.api.internal.artifacts.ivyservice.resolveengine.graph.DependencyGraphEdge
+import org.gradle.api.internal.artifacts.ivyservice.resolveengine.graph.DependencyGraphNode
+import org.gradle.api.internal.artifacts.ivyservice.resolveengine.graph.DependencyGraphSelector
+import org.gradle.api.internal.artifacts.ivyservice.resolveengine.graph.RootGraphNode
+import org.gradle.api.internal.artifacts.ivyservice.resolveengine.result.CompositeDependencyGraphVisitor
+import org.gradle.api.internal.artifacts.ivyservice.resolveengine.result.DesugaredAttributeContainerSerializer
+import org.gradle.api.internal.artifacts.ivyservice.resolveengine.result.DummyStore
+import org.gradle.api.internal.artifacts.ivyservice.resolveengine.result.StreamingResolutionResultBuilder
+import org.gradle.api.internal.artifacts.ivyservice.resolveengine.store.InMemoryBinaryStore
+import org.gradle.api.internal.artifacts.repositories.ResolutionAwareRepository
+import org.gradle.api.internal.attributes.AttributeDesugaring
+import org.gradle.api.internal.attributes.AttributesSchemaInternal
+import org.gradle.api.internal.attributes.DefaultAttributesSchema
+import org.gradle.api.internal.attributes.ImmutableAttributes
+import org.gradle.cache.PersistentIndexedCache
+import org.gradle.internal.Actions
+import org.gradle.internal.Factory
+import org.gradle.internal.component.external.model.DefaultModuleComponentIdentifier
+import org.gradle.internal.component.external.model.DefaultModuleComponentSelector
+import org.gradle.internal.component.local.model.RootConfigurationMetadata
+import org.gradle.internal.component.model.ComponentAttributeMatcher
+import org.gradle.internal.component.model.ComponentResolveMetadata
+import org.gradle.internal.hash.HashCode
+import org.gradle.util.AttributeTestUtil
+import org.gradle.util.Path
+import org.gradle.util.SnapshotTestUtil
+import org.gradle.util.TestUtil
+import spock.lang.Specification
+import spock.lang.Unroll
+
+import static java.util.Collections.emptySet
+import static org.gradle.api.internal.artifacts.ivyservice.resolveengine.result.ComponentSelectionReasons.requested
+import static org.gradle.api.internal.artifacts.ivyservice.resolveengine.result.ComponentSelectionReasons.root
+import static org.gradle.api.internal.artifacts.ivyservice.resolveengine.result.ResolutionResultPrinter.printGraph
+
+class ResolvedGraphCacheTest extends Specification {
+    def entries = [:]
+    def lockingManager = Stub(ArtifactCacheLockingManager) {
+        useCache(_ as Factory) >> { Factory action -> action.create() }
+        useCache(_ as Runnable) >> { Runnable action -> action.run() }
+        createCache("resolved-graphs", _, _) >> Stub(PersistentIndexedCache) {
+            getIfPresent(_) >> { HashCode key -> entries[key] }
+            put(_, _) >> { HashCode key, byte[] value -> entries[key] = value }
+        }
+    }
+    def versionSelectorScheme = new DefaultVersionSelectorScheme(new DefaultVersionComparator(), new VersionParser())
+    def attributeDesugaring = new AttributeDesugaring(AttributeTestUtil.attributesFactory())
+    def attributesSchema = new DefaultAttributesSchema(new ComponentAttributeMatcher(), TestUtil.instantiatorFactory(), SnapshotTestUtil.valueSnapshotter())
+    def metadataHandler = GlobalDependencyResolutionRules.NO_OP
+    def cache = new ResolvedGraphCache(lockingManager, versionSelectorScheme, attributeDesugaring, true)
+
+    List<Dependency> dependencies = [new DefaultExternalModuleDependency("org", "foo", "1.0"), new DefaultExternalModuleDependency("org", "bar", "2.0")]
+    Set<ExcludeRule> excludeRules = [] as Set
+    boolean lockingEnabled = false
+    List<ResolutionAwareRepository> repositories = [repository("repo1")]
+
+    def "calculates same key for the same configuration"() {
+        expect:
+        def key = keyFor(configuration())
+        key != null
+        keyFor(configuration()) == key
+    }
+
+    def "calculates different key when dependencies change"() {
+        def key = keyFor(configuration())
+
+        when:
+        dependencies = [new DefaultExternalModuleDependency("org", "foo", "1.0"), new DefaultExternalModuleDependency("org", "bar", "2.1")]
+
+        then:
+        keyFor(configuration()) != key
+
+        when:
+        dependencies = [new DefaultExternalModuleDependency("org", "foo", "1.0")]
+
+        then:
+        keyFor(configuration()) != key
+    }
+
+    def "calculates different key when rejected versions change"() {
+        def rejecting = new DefaultExternalModuleDependency("org", "foo", "1.0")
+        rejecting.version { it.reject("1.1") }
+        def targeting = new DefaultExternalModuleDependency("org", "foo", "1.0")
+        targeting.targetConfiguration = "1.1"
+
+        when:
+        dependencies = [rejecting]
+        def withRejectedVersion = keyFor(configuration())
+        dependencies = [targeting]
+        def withTargetConfiguration = keyFor(configuration())
+        dependencies = [new DefaultExternalModuleDependency("org", "foo", "1.0")]
+
+        then:
+        withRejectedVersion != withTargetConfiguration
+        withRejectedVersion != keyFor(configuration())
+    }
+
+    def "calculates different key when excludes change"() {
+        def key = keyFor(configuration())
+
+        when:
+        excludeRules = [new DefaultExcludeRule("org", "baz")] as Set
+
+        then:
+        def withExclude = keyFor(configuration())
+        withExclude != key
+
+        when:
+        excludeRules = [new DefaultExcludeRule("org", "other")] as Set
+
+        then:
+        keyFor(configuration()) != withExclude
+    }
+
+    def "calculates different key when repositories change"() {
+        def key = keyFor(configuration())
+
+        when:
+        repositories = [repository("repo2")]
+
+        then:
+        keyFor(configuration()) != key
+
+        when:
+        repositories = [repository("repo1"), repository("repo2")]
+
+        then:
+        keyFor(configuration()) != key
+    }
+
+    def "calculates different key for a different configuration"() {
+        expect:
+        keyFor(configuration(":a:compileClasspath")) != keyFor(configuration(":b:compileClasspath"))
+    }
+
+    def "does not calculate key when cache is disabled"() {
+        def disabled = new ResolvedGraphCache(lockingManager, versionSelectorScheme, attributeDesugaring, false)
+
+        expect:
+        disabled.keyFor(configuration(), repositories, metadataHandler, attributesSchema) == null
+    }
+
+    def "does not calculate key when graph depends on state that cannot be fingerprinted"() {
+        when:
+        def schema = Stub(AttributesSchemaInternal)
+
+        then:
+        cache.keyFor(configuration(), repositories, metadataHandler, schema) == null
+
+        when:
+        dependencies = [new DefaultExternalModuleDependency("org", "foo", "1.0"), Stub(ProjectDependency)]
+
+        then:
+        keyFor(configuration()) == null
+
+        when:
+        def changing = new DefaultExternalModuleDependency("org", "foo", "1.0")
+        changing.setChanging(true)
+        dependencies = [changing]
+
+        then:
+        keyFor(configuration()) == null
+
+        when:
+        dependencies = [new DefaultExternalModuleDependency("org", "foo", "1.0")]
+        lockingEnabled = true
+
+        then:
+        keyFor(configuration()) == null
+
+        when:
+        lockingEnabled = false
+        repositories = [repository("local", true)]
+
+        then:
+        keyFor(configuration()) == null
+    }
+
+    def "graph with fixed versions of external modules is cacheable"() {
+        def check = cache.newCacheabilityCheck()
+
+        when:
+        check.visitNode(node("org", "foo", "1.0"))
+        check.visitSelector(selector("org", "foo", "1.0"))
+
+        then:
+        check.cacheable
+    }
+
+    @Unroll
+    def "graph with dynamic version is not cacheable"() {
+        def check = cache.newCacheabilityCheck()
+
+        when:
+        check.visitSelector(selector("org", "foo", version))
+
+        then:
+        !check.cacheable
+
+        where:
+        version << ["1.+", "[1.0,2.0)", "latest.release"]
+    }
+
+    def "graph with project or changing component is not cacheable"() {
+        def projectCheck = cache.newCacheabilityCheck()
+        def changingCheck = cache.newCacheabilityCheck()
+        def project = Stub(DependencyGraphNode) {
+            getOwner() >> Stub(DependencyGraphComponent) {
+                getComponentId() >> Stub(ProjectComponentIdentifier)
+            }
+        }
+
+        when:
+        projectCheck.visitNode(project)
+        changingCheck.visitNode(node("org", "foo", "1.0", true))
+
+        then:
+        !projectCheck.cacheable
+        !changingCheck.cacheable
+    }
+
+    def "restores stored graph"() {
+        def key = keyFor(configuration())
+
+        when:
+        def graphStore = new InMemoryBinaryStore()
+        def writer = newResultBuilder(graphStore)
+        def check = cache.newCacheabilityCheck()
+        def visitor = new CompositeDependencyGraphVisitor(writer, check)
+        def dep = node("org", "foo", "1.0")
+        def depSelector = selector("org", "foo", "1.0")
+        def rootNode = rootNode([edge(depSelector, 2)])
+        visitor.start(rootNode)
+        visitor.visitNode(rootNode)
+        visitor.visitNode(dep)
+        visitor.visitSelector(depSelector)
+        visitor.visitEdges(rootNode)
+        visitor.finish(rootNode)
+        writer.complete(emptySet())
+        def missing = cache.load(key)
+        cache.store(key, graphStore.toByteArray())
+
+        then:
+        missing == null
+        check.cacheable
+
+        when:
+        def reopened = new ResolvedGraphCache(lockingManager, versionSelectorScheme, attributeDesugaring, true)
+        def graph = reopened.load(keyFor(configuration()))
+        def result = newResultBuilder(new InMemoryBinaryStore()).restore(new InMemoryBinaryStore.InMemoryBinaryData(graph), ImmutableAttributes.EMPTY)
+
+        then:
+        printGraph(result.root) == """org:root:1.0
+  org:foo:1.0 [root]
+"""
+    }
+
+    private HashCode keyFor(ConfigurationInternal configuration) {
+        return cache.keyFor(configuration, repositories, metadataHandler, attributesSchema)
+    }
+
+    private ConfigurationInternal configuration(String path = ":compileClasspath") {
+        def resolutionStrategy = Stub(ResolutionStrategyInternal) {
+            getConflictResolution() >> ConflictResolution.latest
+            isDependencyLockingEnabled() >> lockingEnabled
+            getComponentSelection() >> Stub(ComponentSelectionRulesInternal)
+            getDependencySubstitution() >> Stub(DependencySubstitutionsInternal) {
+                getRuleAction() >> Actions.doNothing()
+            }
+            getCapabilitiesResolutionRules() >> Stub(CapabilitiesResolutionInternal) {
+                isEmpty() >> true
+            }
+        }
+        def allDependencies = Stub(DependencySet) {
+            iterator() >> { dependencies.iterator() }
+        }
+        return Stub(ConfigurationInternal) {
+            getResolutionStrategy() >> resolutionStrategy
+            getIdentityPath() >> Path.path(path)
+            getModule() >> Stub(Module) {
+                getGroup() >> "org"
+                getName() >> "root"
+                getVersion() >> "1.0"
+                getStatus() >> "integration"
+            }
+            isTransitive() >> true
+            getAttributes() >> ImmutableAttributes.EMPTY
+            getAllDependencies() >> allDependencies
+            getAllDependencyConstraints() >> Stub(DependencyConstraintSet) {
+                iterator() >> { [].iterator() }
+            }
+            getAllExcludeRules() >> excludeRules
+        }
+    }
+
+    private ResolutionAwareRepository repository(String id, boolean local = false) {
+        def resolver = Stub(ConfiguredModuleComponentRepository) {
+            getId() >> id
+            isLocal() >> local
+        }
+        return Stub(ResolutionAwareRepository) {
+            createResolver() >> resolver
+        }
+    }
+
+    private StreamingResolutionResultBuilder newResultBuilder(InMemoryBinaryStore graphStore) {
+        def attributeContainerSerializer = new DesugaredAttributeContainerSerializer(AttributeTestUtil.attributesFactory(), TestUtil.objectInstantiator())
+        return new StreamingResolutionResultBuilder(graphStore, new DummyStore(), new DefaultImmutableModuleIdentifierFactory(), attributeContainerSerializer, attributeDesugaring, DependencyManagementTestUtil.componentSelectionDescriptorFactory())
+    }
+
+    private RootGraphNode rootNode(List<DependencyGraphEdge> outgoingEdges) {
+        def component = Stub(DependencyGraphComponent) {
+            getResultId() >> 1L
+            getModuleVersion() >> DefaultModuleVersionIdentifier.newId(DefaultModuleIdentifier.newId("org", "root"), "1.0")
+            getComponentId() >> DefaultModuleComponentIdentifier.newId(DefaultModuleIdentifier.newId("org", "root"), "1.0")
+            getSelectionReason() >> root()
+        }
+        def node = Stub(RootGraphNode)
+        _ * node.root >> true
+        _ * node.owner >> component
+        _ * node.outgoingEdges >> outgoingEdges
+        _ * node.getMetadata() >> Stub(RootConfigurationMetadata) {
+            getAttributes() >> ImmutableAttributes.EMPTY
+        }
+        return node
+    }
+
+    private DependencyGraphNode node(String org, String name, String version, boolean changing = false) {
+        def component = Stub(DependencyGraphComponent) {
+            getResultId() >> 2L
+            getModuleVersion() >> DefaultModuleVersionIdentifier.newId(DefaultModuleIdentifier.newId(org, name), version)
+            getComponentId() >> DefaultModuleComponentIdentifier.newId(DefaultModuleIdentifier.newId(org, name), version)
+            getSelectionReason() >> requested()
+            getMetadata() >> Stub(ComponentResolveMetadata) {
+                isChanging() >> changing
+            }
+        }
+        return Stub(DependencyGraphNode) {
+            getOwner() >> component
+        }
+    }
+
+    private DependencyGraphSelector selector(String org, String name, String version) {
+        return Stub(DependencyGraphSelector) {
+            getResultId() >> 1L
+            getRequested() >> DefaultModuleComponentSelector.newSelector(DefaultModuleIdentifier.newId(org, name), new DefaultMutableVersionConstraint(version))
+        }
+    }
+
+    private DependencyGraphEdge edge(DependencyGraphSelector selector, Long selectedId) {
+        def variant = Stub(ResolvedVariantResult) {
+            getOwner() >> DefaultModuleComponentIdentifier.newId(DefaultModuleIdentifier.newId("org", "root"), "1.0")
+        }
+        return Stub(DependencyGraphEdge) {
+            getSelector() >> selector
+            getSelected() >> selectedId
+            getFailure() >> null
+            getFromVariant() >> variant
+            getSelectedVariant() >> variant
+        }
+    }
+}
@@ -0,0 +1,149 @@
+/*
+ * Copyright 2021 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.api.internal.artifacts.ivyservice.ivyresolve.parser
+
+import spock.lang.Specification
+
+import javax.xml.stream.XMLStreamException
+import java.lang.reflect.Modifier
+
+class PomStaxParserTest extends Specification {
+
+    def "reads the same model as the DOM parser"() {
+        def pom = """<?xml version="1.0" encoding="UTF-8"?>
+<project xmlns="http://maven.apache.org/POM/4.0.0" xmlns:x="urn:x">
+    <!-- do_not_remove: published-with-gradle-metadata -->
+    <groupId>group&amp;<![CDATA[-one]]>&nbsp;<x:nested>ignored</x:nested>tail</groupId>
+    <groupId>second</groupId>
+    <artifactId/>
+    <parent>
+        <version>1</version>
+        <version>2</version>
+    </parent>
+    <parent>
+        <groupId>ignored</groupId>
+    </parent>
+    <properties>
+        <x:prefixed>1</x:prefixed>
+        <duplicate>  first  </duplicate>
+        <duplicate>second</duplicate>
+    </properties>
+    <properties>
+        <ignored>2</ignored>
+    </properties>
+    <distributionManagement>
+        <relocation>
+            <groupId>relocated</groupId>
+        </relocation>
+    </distributionManagement>
+    <dependencies>
+        <dependency>
+            <groupId>dep</groupId>
+            <optional>true</optional>
+            <exclusions>
+                <exclusion/>
+                <exclusion>
+                    <artifactId>excluded</artifactId>
+                </exclusion>
+            </exclusions>
+            <exclusions>
+                <exclusion>
+                    <groupId>ignored</groupId>
+                </exclusion>
+            </exclusions>
+        </dependency>
+        <other/>
+    </dependencies>
+    <dependencies>
+        <dependency>
+            <groupId>ignored</groupId>
+        </dependency>
+    </dependencies>
+    <dependencyManagement>
+        <dependencies>
+            <dependency>
+                <type>test-jar</type>
+            </dependency>
+        </dependencies>
+    </dependencyManagement>
+    <profiles>
+        <profile>
+            <id>one</id>
+            <activation>
+                <activeByDefault>true</activeByDefault>
+            </activation>
+            <properties>
+                <profile-property>value</profile-property>
+            </properties>
+        </profile>
+        <profile>
+            <activation>
+                <property>
+                    <name>!some.property</name>
+                </property>
+            </activation>
+            <dependencyManagement>
+                <dependencies>
+                    <dependency>
+                        <version>1.0</version>
+                    </dependency>
+                </dependencies>
+            </dependencyManagement>
+        </profile>
+    </profiles>
+</project>
+"""
+
+        when:
+        def domModel = PomDomParser.parse(new ByteArrayInputStream(pom.bytes), "pom.xml")
+        def staxModel = PomStaxParser.parse(new ByteArrayInputStream(pom.bytes), "pom.xml")
+
+        then:
+        staxModel.groupId == "group&-one\u00A0tail"
+        staxModel.artifactId == ""
+        staxModel.parentVersion == "1"
+        staxModel.properties == ["x:prefixed": "1", "duplicate": "second"]
+        staxModel.dependencies.size() == 1
+        staxModel.dependencies[0].exclusions*.artifactId == [null, "excluded"]
+        staxModel.profiles*.id == ["one", null]
+        describe(staxModel) == describe(domModel)
+    }
+
+    def "fails on POM which is not well formed"() {
+        when:
+        PomStaxParser.parse(new ByteArrayInputStream("<project><groupId>group</groupId></project><trailing/>".bytes), "pom.xml")
+
+        then:
+        thrown(XMLStreamException)
+    }
+
+    private static String describe(Object value) {
+        if (value == null || value instanceof String || value instanceof Boolean) {
+            return String.valueOf(value)
+        }
+        if (value instanceof Map) {
+            return new TreeMap(value).toString()
+        }
+        if (value instanceof List) {
+            return value.collect { describe(it) }.toString()
+        }
+        return value.class.declaredFields
+            .findAll { !Modifier.isStatic(it.modifiers) && !it.synthetic }
+            .collect { it.accessible = true; "${it.name}=${describe(it.get(value))}" }
+            .toString()
+    }
+}
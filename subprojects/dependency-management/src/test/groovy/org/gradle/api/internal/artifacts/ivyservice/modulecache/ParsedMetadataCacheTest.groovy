@@ -0,0 +1,262 @@
+/*
+ * Copyright 2021 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.api.internal.artifacts.ivyservice.modulecache
+
+import org.gradle.api.artifacts.component.ModuleComponentIdentifier
+import org.gradle.api.internal.artifacts.DefaultImmutableModuleIdentifierFactory
+import org.gradle.api.internal.artifacts.DependencyManagementTestUtil
+import org.gradle.api.internal.artifacts.ImmutableModuleIdentifierFactory
+import org.gradle.api.internal.artifacts.ivyservice.ivyresolve.parser.DescriptorParseContext
+import org.gradle.api.internal.artifacts.ivyservice.ivyresolve.parser.GradlePomModuleDescriptorParser
+import org.gradle.api.internal.artifacts.ivyservice.ivyresolve.strategy.DefaultVersionComparator
+import org.gradle.api.internal.artifacts.ivyservice.ivyresolve.strategy.DefaultVersionSelectorScheme
+import org.gradle.api.internal.artifacts.ivyservice.ivyresolve.strategy.VersionParser
+import org.gradle.api.internal.artifacts.ivyservice.resolveengine.result.DesugaredAttributeContainerSerializer
+import org.gradle.api.internal.artifacts.repositories.metadata.MavenMutableModuleMetadataFactory
+import org.gradle.api.internal.component.ArtifactType
+import org.gradle.api.internal.file.TestFiles
+import org.gradle.cache.CacheBuilder
+import org.gradle.cache.CacheRepository
+import org.gradle.cache.CleanableStore
+import org.gradle.cache.CleanupAction
+import org.gradle.cache.CleanupProgressMonitor
+import org.gradle.cache.PersistentCache
+import org.gradle.cache.internal.CleanupActionFactory
+import org.gradle.internal.Factory
+import org.gradle.internal.operations.TestBuildOperationExecutor
+import org.gradle.internal.serialize.kryo.KryoBackedEncoder
+import org.gradle.internal.resource.local.FileResourceRepository
+import org.gradle.test.fixtures.file.TestFile
+import org.gradle.test.fixtures.file.TestNameTestDirectoryProvider
+import org.gradle.util.AttributeTestUtil
+import org.gradle.util.TestUtil
+import org.junit.Rule
+import spock.lang.Specification
+
+import java.util.concurrent.TimeUnit
+
+class ParsedMetadataCacheTest extends Specification {
+    @Rule
+    TestNameTestDirectoryProvider tmpDir = new TestNameTestDirectoryProvider(getClass())
+
+    final ImmutableModuleIdentifierFactory moduleIdentifierFactory = new DefaultImmutableModuleIdentifierFactory()
+    final MavenMutableModuleMetadataFactory mavenMetadataFactory = DependencyManagementTestUtil.mavenMetadataFactory()
+    final FileResourceRepository fileRepository = TestFiles.fileRepository()
+    final GradlePomModuleDescriptorParser parser = new GradlePomModuleDescriptorParser(new DefaultVersionSelectorScheme(new DefaultVersionComparator(), new VersionParser()), moduleIdentifierFactory, fileRepository, mavenMetadataFactory)
+    final ModuleMetadataSerializer metadataSerializer = new ModuleMetadataSerializer(
+        new DesugaredAttributeContainerSerializer(AttributeTestUtil.attributesFactory(), TestUtil.objectInstantiator()),
+        mavenMetadataFactory,
+        DependencyManagementTestUtil.ivyMetadataFactory(),
+        new ModuleSourcesSerializer([:])
+    )
+    final parseContext = Stub(DescriptorParseContext)
+    final cacheRepository = Stub(CacheRepository)
+    final cleanupActionFactory = new CleanupActionFactory(new TestBuildOperationExecutor())
+    TestFile cacheDir
+    CleanupAction cleanupAction
+
+    def setup() {
+        def cacheBuilder = Stub(CacheBuilder)
+        def persistentCache = Stub(PersistentCache)
+        cacheDir = tmpDir.createDir("cache")
+        cacheRepository.cache(_ as String) >> cacheBuilder
+        cacheBuilder.withDisplayName(_) >> cacheBuilder
+        cacheBuilder.withLockOptions(_) >> cacheBuilder
+        cacheBuilder.withCleanup(_) >> { CleanupAction action ->
+            cleanupAction = action
+            cacheBuilder
+        }
+        cacheBuilder.open() >> persistentCache
+        persistentCache.baseDir >> cacheDir
+        persistentCache.useCache(_ as Factory) >> { Factory factory -> factory.create() }
+        persistentCache.useCache(_ as Runnable) >> { Runnable action -> action.run() }
+    }
+
+    def "parses identical descriptors from different repositories only once"() {
+        def cache = createCache(true)
+        def cachingParser = cache.decorate(parser)
+        def first = pom("repo1/test-1.0.pom", "test", "1.0", "lib", "2.0")
+        def second = pom("repo2/test-1.0.pom", "test", "1.0", "lib", "2.0")
+
+        when:
+        def parsed = cachingParser.parseMetaData(parseContext, fileRepository.resource(first)).result
+        def cached = cachingParser.parseMetaData(parseContext, fileRepository.resource(second)).result
+
+        then:
+        cache.hits == 1
+        cache.misses == 1
+        cache.hitRate == 0.5d
+        cached.id == parsed.id
+        cached.dependencies*.selector*.displayName == ["group:lib:2.0"]
+        cached.asImmutable() == parsed.asImmutable()
+    }
+
+    def "parses descriptors with different content"() {
+        def cache = createCache(true)
+        def cachingParser = cache.decorate(parser)
+
+        when:
+        cachingParser.parseMetaData(parseContext, fileRepository.resource(pom("repo1/test-1.0.pom", "test", "1.0", "lib", "2.0")))
+        def result = cachingParser.parseMetaData(parseContext, fileRepository.resource(pom("repo2/test-1.0.pom", "test", "1.0", "lib", "3.0"))).result
+
+        then:
+        cache.hits == 0
+        cache.misses == 2
+        result.dependencies*.selector*.displayName == ["group:lib:3.0"]
+    }
+
+    def "parses descriptor again when its parent has changed"() {
+        def cache = createCache(true)
+        def cachingParser = cache.decorate(parser)
+        def parent = pom("repo/parent-1.0.pom", "parent", "1.0", "lib", "2.0")
+        parseContext.getMetaDataArtifact(_ as ModuleComponentIdentifier, ArtifactType.MAVEN_POM) >> { fileRepository.resource(parent) }
+        def child = tmpDir.file("repo/child-1.0.pom")
+        child.text = """<project>
+    <modelVersion>4.0.0</modelVersion>
+    <parent>
+        <groupId>group</groupId>
+        <artifactId>parent</artifactId>
+        <version>1.0</version>
+    </parent>
+    <artifactId>child</artifactId>
+</project>
+"""
+
+        when:
+        cachingParser.parseMetaData(parseContext, fileRepository.resource(child))
+        def cached = cachingParser.parseMetaData(parseContext, fileRepository.resource(child)).result
+
+        then:
+        cache.hits == 1
+        cached.dependencies*.selector*.displayName == ["group:lib:2.0"]
+
+        when:
+        pom("repo/parent-1.0.pom", "parent", "1.0", "lib", "3.0")
+        def reparsed = cachingParser.parseMetaData(parseContext, fileRepository.resource(child)).result
+
+        then:
+        cache.hits == 1
+        cache.misses == 2
+        reparsed.dependencies*.selector*.displayName == ["group:lib:3.0"]
+    }
+
+    def "parses descriptor again when its entry is corrupt"() {
+        def cache = createCache(true)
+        def cachingParser = cache.decorate(parser)
+        def descriptor = pom("repo/test-1.0.pom", "test", "1.0", "lib", "2.0")
+        cachingParser.parseMetaData(parseContext, fileRepository.resource(descriptor))
+        def entry = entryFile()
+
+        when:
+        entry.bytes = [1, 2, 3] as byte[]
+        def reparsed = cachingParser.parseMetaData(parseContext, fileRepository.resource(descriptor)).result
+
+        then:
+        cache.hits == 0
+        cache.misses == 2
+        reparsed.dependencies*.selector*.displayName == ["group:lib:2.0"]
+
+        when:
+        def cached = cachingParser.parseMetaData(parseContext, fileRepository.resource(descriptor)).result
+
+        then:
+        cache.hits == 1
+        cached.dependencies*.selector*.displayName == ["group:lib:2.0"]
+    }
+
+    def "parses descriptor again when its entry refers to an unknown kind of parent descriptor"() {
+        def cache = createCache(true)
+        def cachingParser = cache.decorate(parser)
+        def descriptor = pom("repo/test-1.0.pom", "test", "1.0", "lib", "2.0")
+        cachingParser.parseMetaData(parseContext, fileRepository.resource(descriptor))
+        def entry = entryFile()
+
+        when:
+        def outputStream = new ByteArrayOutputStream()
+        new KryoBackedEncoder(outputStream).withCloseable { encoder ->
+            encoder.writeBoolean(false)
+            encoder.writeSmallInt(1)
+            encoder.writeString("group")
+            encoder.writeString("parent")
+            encoder.writeString("1.0")
+            encoder.writeString("UNKNOWN")
+        }
+        entry.bytes = outputStream.toByteArray()
+        def reparsed = cachingParser.parseMetaData(parseContext, fileRepository.resource(descriptor)).result
+
+        then:
+        cache.hits == 0
+        cache.misses == 2
+        reparsed.dependencies*.selector*.displayName == ["group:lib:2.0"]
+    }
+
+    def "removes entries which have not been used recently"() {
+        def cache = createCache(true)
+        def cachingParser = cache.decorate(parser)
+        cachingParser.parseMetaData(parseContext, fileRepository.resource(pom("repo/unused-1.0.pom", "unused", "1.0", "lib", "2.0")))
+        def unused = entryFile()
+        unused.lastModified = System.currentTimeMillis() - TimeUnit.DAYS.toMillis(8)
+        cachingParser.parseMetaData(parseContext, fileRepository.resource(pom("repo/used-1.0.pom", "used", "1.0", "lib", "2.0")))
+        def used = new TestFile(cacheDir.listFiles().find { it != unused })
+        def store = Stub(CleanableStore) {
+            getBaseDir() >> cacheDir
+            getReservedCacheFiles() >> []
+            getDisplayName() >> "cache"
+        }
+
+        when:
+        cleanupAction.clean(store, Stub(CleanupProgressMonitor))
+
+        then:
+        !unused.exists()
+        used.exists()
+    }
+
+    def "does not decorate parser when disabled"() {
+        expect:
+        createCache(false).decorate(parser).is(parser)
+    }
+
+    private ParsedMetadataCache createCache(boolean enabled) {
+        new ParsedMetadataCache(cacheRepository, metadataSerializer, moduleIdentifierFactory, TestUtil.checksumService, cleanupActionFactory, enabled, null)
+    }
+
+    private TestFile entryFile() {
+        def files = cacheDir.listFiles()
+        assert files.length == 1
+        new TestFile(files[0])
+    }
+
+    private TestFile pom(String path, String artifactId, String version, String dependency, String dependencyVersion) {
+        def file = tmpDir.file(path)
+        file.text = """<project>
+    <modelVersion>4.0.0</modelVersion>
+    <groupId>group</groupId>
+    <artifactId>${artifactId}</artifactId>
+    <version>${version}</version>
+    <dependencies>
+        <dependency>
+            <groupId>group</groupId>
+            <artifactId>${dependency}</artifactId>
+            <version>${dependencyVersion}</version>
+        </dependency>
+    </dependencies>
+</project>
+"""
+        file
+    }
+}
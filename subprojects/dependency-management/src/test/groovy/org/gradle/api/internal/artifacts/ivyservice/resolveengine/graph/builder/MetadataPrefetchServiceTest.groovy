@@ -0,0 +1,73 @@
+/*
+ * Copyright 2021 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.gradle.api.internal.artifacts.ivyservice.resolveengine.graph.builder
+
+import org.gradle.api.internal.artifacts.ivyservice.ivyresolve.strategy.VersionSelectorScheme
+import org.gradle.internal.concurrent.ExecutorFactory
+import org.gradle.internal.concurrent.ManagedExecutor
+import org.gradle.internal.resolve.resolver.ComponentMetaDataResolver
+import org.gradle.internal.resources.ResourceLockCoordinationService
+import org.gradle.internal.work.NoAvailableWorkerLeaseException
+import org.gradle.internal.work.WorkerLeaseRegistry
+import org.gradle.internal.work.WorkerLeaseService
+import spock.lang.Specification
+
+class MetadataPrefetchServiceTest extends Specification {
+    def executorFactory = Mock(ExecutorFactory)
+    def workerLeaseService = Stub(WorkerLeaseService) {
+        getMaxWorkerCount() >> 3
+    }
+
+    def "does not create prefetcher when disabled"() {
+        def service = new MetadataPrefetchService(executorFactory, workerLeaseService, Stub(ResourceLockCoordinationService), false)
+
+        when:
+        def prefetcher = service.createPrefetcher(Stub(ComponentMetaDataResolver), Stub(VersionSelectorScheme))
+
+        then:
+        prefetcher == null
+        0 * executorFactory._
+    }
+
+    def "prefetchers share an executor sized from the maximum number of workers"() {
+        def executor = Mock(ManagedExecutor)
+        def service = new MetadataPrefetchService(executorFactory, workerLeaseService, Stub(ResourceLockCoordinationService), true)
+        workerLeaseService.getCurrentWorkerLease() >> Stub(WorkerLeaseRegistry.WorkerLease)
+
+        when:
+        def first = service.createPrefetcher(Stub(ComponentMetaDataResolver), Stub(VersionSelectorScheme))
+        def second = service.createPrefetcher(Stub(ComponentMetaDataResolver), Stub(VersionSelectorScheme))
+
+        then:
+        first != null
+        second != null
+        1 * executorFactory.create(_, 3) >> executor
+
+        when:
+        service.stop()
+
+        then:
+        1 * executor.stop()
+    }
+
+    def "does not create prefetcher when the current thread has no worker lease"() {
+        def service = new MetadataPrefetchService(executorFactory, workerLeaseService, Stub(ResourceLockCoordinationService), true)
+        workerLeaseService.getCurrentWorkerLease() >> { throw new NoAvailableWorkerLeaseException("No worker lease associated with the current thread") }
+
+        expect:
+        service.createPrefetcher(Stub(ComponentMetaDataResolver), Stub(VersionSelectorScheme)) == null
+    }
+}
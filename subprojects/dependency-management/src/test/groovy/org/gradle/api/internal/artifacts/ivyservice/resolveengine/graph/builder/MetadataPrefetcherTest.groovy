@@ -0,0 +1,142 @@
+/*
+ * Copyright 2021 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.api.internal.artifacts.ivyservice.resolveengine.graph.builder
+
+import com.google.common.collect.ImmutableList
+import org.gradle.api.artifacts.component.ComponentIdentifier
+import org.gradle.api.internal.artifacts.DefaultModuleIdentifier
+import org.gradle.api.internal.artifacts.ivyservice.ivyresolve.strategy.DefaultVersionComparator
+import org.gradle.api.internal.artifacts.ivyservice.ivyresolve.strategy.DefaultVersionSelectorScheme
+import org.gradle.api.internal.artifacts.ivyservice.ivyresolve.strategy.VersionParser
+import org.gradle.internal.component.external.descriptor.MavenScope
+import org.gradle.internal.component.external.model.DefaultModuleComponentIdentifier
+import org.gradle.internal.component.external.model.DefaultModuleComponentSelector
+import org.gradle.internal.component.external.model.maven.MavenDependencyDescriptor
+import org.gradle.internal.component.external.model.maven.MavenDependencyType
+import org.gradle.internal.component.external.model.maven.MavenModuleResolveMetadata
+import org.gradle.internal.component.model.DefaultComponentOverrideMetadata
+import org.gradle.internal.concurrent.DefaultExecutorFactory
+import org.gradle.internal.resolve.resolver.ComponentMetaDataResolver
+import org.gradle.internal.resolve.result.DefaultBuildableComponentResolveResult
+import org.gradle.internal.resources.ResourceLockCoordinationService
+import org.gradle.internal.work.WorkerLeaseRegistry
+import spock.lang.Specification
+import spock.util.concurrent.PollingConditions
+
+import java.util.concurrent.ConcurrentLinkedQueue
+
+class MetadataPrefetcherTest extends Specification {
+    def requested = new ConcurrentLinkedQueue<ComponentIdentifier>()
+    def metadata = [:]
+    def emptyPom = pom()
+    def delegate = Stub(ComponentMetaDataResolver) {
+        resolve(_, _, _) >> { ComponentIdentifier id, overrides, DefaultBuildableComponentResolveResult result ->
+            requested.add(id)
+            result.resolved(metadata[id] ?: emptyPom)
+        }
+    }
+    def executor = new DefaultExecutorFactory().create("test", 2)
+    def workerLeaseAvailable = true
+    def coordinationService = Stub(ResourceLockCoordinationService) {
+        withStateLock(_) >> { workerLeaseAvailable }
+    }
+    def workerLease = Stub(WorkerLeaseRegistry.WorkerLease) {
+        createChild() >> Stub(WorkerLeaseRegistry.WorkerLease)
+    }
+    def prefetcher = new MetadataPrefetcher(delegate, new DefaultVersionSelectorScheme(new DefaultVersionComparator(), new VersionParser()), executor, workerLease, coordinationService)
+
+    def cleanup() {
+        prefetcher.close()
+        executor.stop()
+    }
+
+    def "prefetches fixed versions of transitive dependencies"() {
+        metadata[id("a", "1.0")] = pom(
+            dependency("b", "1.0", MavenScope.Compile),
+            dependency("c", "[2.0]", MavenScope.Runtime),
+            dependency("d", "1.0", MavenScope.Test),
+            dependency("e", "1.+", MavenScope.Compile)
+        )
+        metadata[id("b", "1.0")] = pom()
+
+        when:
+        resolve(id("a", "1.0"))
+
+        then:
+        new PollingConditions().eventually {
+            assert requested.toList() as Set == [id("a", "1.0"), id("b", "1.0"), id("c", "2.0")] as Set
+        }
+
+        when:
+        def result = resolve(id("b", "1.0"))
+
+        then:
+        result.metadata.is(metadata[id("b", "1.0")])
+        requested.count { it == id("b", "1.0") } == 1
+    }
+
+    def "resolves requests with overrides without using prefetched metadata"() {
+        prefetcher.prefetch(id("a", "1.0"))
+
+        expect:
+        new PollingConditions().eventually {
+            assert requested.toList() == [id("a", "1.0")]
+        }
+
+        when:
+        def result = new DefaultBuildableComponentResolveResult()
+        prefetcher.resolve(id("a", "1.0"), DefaultComponentOverrideMetadata.forDependency(true, null, null), result)
+
+        then:
+        result.hasResult()
+        requested.toList() == [id("a", "1.0"), id("a", "1.0")]
+    }
+
+    def "leaves components to the requesting thread when no worker lease is available"() {
+        workerLeaseAvailable = false
+
+        when:
+        prefetcher.prefetch(id("a", "1.0"))
+        executor.stop()
+        def result = resolve(id("a", "1.0"))
+
+        then:
+        result.hasResult()
+        requested.toList() == [id("a", "1.0")]
+    }
+
+    private DefaultBuildableComponentResolveResult resolve(ComponentIdentifier id) {
+        def result = new DefaultBuildableComponentResolveResult()
+        prefetcher.resolve(id, DefaultComponentOverrideMetadata.EMPTY, result)
+        return result
+    }
+
+    private static ComponentIdentifier id(String name, String version) {
+        DefaultModuleComponentIdentifier.newId(DefaultModuleIdentifier.newId("org", name), version)
+    }
+
+    private static MavenDependencyDescriptor dependency(String name, String version, MavenScope scope) {
+        new MavenDependencyDescriptor(scope, MavenDependencyType.DEPENDENCY, DefaultModuleComponentSelector.newSelector(DefaultModuleIdentifier.newId("org", name), version), null, [])
+    }
+
+    private MavenModuleResolveMetadata pom(MavenDependencyDescriptor... dependencies) {
+        Stub(MavenModuleResolveMetadata) {
+            getDependencies() >> ImmutableList.copyOf(dependencies)
+            getVariants() >> ImmutableList.of()
+        }
+    }
+}
@@ -29,7 +29,9 @@ import org.gradle.api.internal.artifacts.ivyservice.resolveengine.graph.Dependen
 import org.gradle.api.internal.artifacts.ivyservice.resolveengine.graph.DependencyGraphNode
 import org.gradle.api.internal.artifacts.ivyservice.resolveengine.graph.DependencyGraphSelector
 import org.gradle.api.internal.artifacts.ivyservice.resolveengine.graph.RootGraphNode
+import org.gradle.api.internal.artifacts.ivyservice.resolveengine.store.InMemoryBinaryStore
 import org.gradle.api.internal.attributes.AttributeDesugaring
+import org.gradle.api.internal.attributes.ImmutableAttributes
 import org.gradle.internal.component.external.model.DefaultModuleComponentIdentifier
 import org.gradle.internal.component.external.model.DefaultModuleComponentSelector
 import org.gradle.internal.component.local.model.RootConfigurationMetadata
@@ -48,12 +50,14 @@ import static org.gradle.api.internal.artifacts.ivyservice.resolveengine.result.
 class StreamingResolutionResultBuilderTest extends Specification {
 
     final ImmutableModuleIdentifierFactory moduleIdentifierFactory = new DefaultImmutableModuleIdentifierFactory()
+    final AttributeContainerSerializer attributeContainerSerializer = new DesugaredAttributeContainerSerializer(AttributeTestUtil.attributesFactory(), TestUtil.objectInstantiator())
+    final AttributeDesugaring desugaring = new AttributeDesugaring(AttributeTestUtil.attributesFactory())
     StreamingResolutionResultBuilder builder = new StreamingResolutionResultBuilder(
         new DummyBinaryStore(),
         new DummyStore(),
         moduleIdentifierFactory,
-        new DesugaredAttributeContainerSerializer(AttributeTestUtil.attributesFactory(), TestUtil.objectInstantiator()),
-        new AttributeDesugaring(AttributeTestUtil.attributesFactory()),
+        attributeContainerSerializer,
+        desugaring,
         DependencyManagementTestUtil.componentSelectionDescriptorFactory()
     )
 
@@ -105,6 +109,30 @@ class StreamingResolutionResultBuilderTest extends Specification {
 """
     }
 
+    def "restores graph written to an in-memory store"() {
+        def store = new InMemoryBinaryStore()
+        def writer = new StreamingResolutionResultBuilder(store, new DummyStore(), moduleIdentifierFactory, attributeContainerSerializer, desugaring, DependencyManagementTestUtil.componentSelectionDescriptorFactory())
+        def root = rootNode(1, "org", "root", "1.0")
+        def selector = selector(1, "org", "dep1", "2.0")
+        root.outgoingEdges >> [dep(selector, 2)]
+
+        writer.start(root)
+        writer.visitNode(root)
+        writer.visitNode(node(2, "org", "dep1", "2.0"))
+        writer.visitSelector(selector)
+        writer.visitEdges(root)
+        writer.finish(root)
+        writer.complete(emptySet())
+
+        when:
+        def result = builder.restore(new InMemoryBinaryStore.InMemoryBinaryData(store.toByteArray()), ImmutableAttributes.EMPTY)
+
+        then:
+        printGraph(result.root) == """org:root:1.0
+  org:dep1:2.0 [root]
+"""
+    }
+
     def "visiting resolved module version again has no effect"() {
         def root = rootNode(1, "org", "root", "1.0")
         def selector = selector(7, "org", "dep1", "2.0")
@@ -35,6 +35,7 @@ import org.gradle.api.provider.Provider
 import org.gradle.api.tasks.FileNormalizer
 import org.gradle.caching.internal.controller.BuildCacheCommandFactory
 import org.gradle.caching.internal.controller.BuildCacheController
+import org.gradle.caching.internal.packaging.impl.BuildCacheEntryCompression
 import org.gradle.initialization.DefaultBuildCancellationToken
 import org.gradle.internal.Try
 import org.gradle.internal.component.local.model.ComponentFileArtifactIdentifier
@@ -128,6 +129,7 @@ class DefaultTransformerInvocationFactoryTest extends AbstractProjectBuilderSpec
     def executionEngine = new ExecutionGradleServices().createExecutionEngine(
         buildCacheCommandFactory,
         buildCacheController,
+        BuildCacheEntryCompression.GZIP,
         cancellationToken,
         buildInvocationScopeId,
         buildOperationExecutor,
@@ -76,7 +76,10 @@ dependencies {
         api(libs.guava)                 { version { strictly("27.1-android"); because("JRE variant introduces regression - https://github.com/google/guava/issues/3223") }}
         api(libs.hamcrest)              { version { strictly("1.3"); because("2.x changes the API") }}
         api(libs.hikariCP)              { version { strictly("4.0.2") }}
+        api(libs.httpclient5)           { version { strictly("5.1") }}
         api(libs.httpcore)              { version { strictly("4.4.14") }}
+        api(libs.httpcore5)             { version { strictly("5.1.1") }}
+        api(libs.httpcore5H2)           { version { strictly("5.1.1") }}
         api(libs.inject)                { version { strictly("1") }}
         api(libs.ivy)                   { version { strictly("2.3.0"); because("2.4.0 contains a breaking change in DefaultModuleDescriptor.getExtraInfo(), cf. https://issues.apache.org/jira/browse/IVY-1457") }}
         api(libs.jacksonAnnotations)    { version { strictly(jacksonVersion) }}
@@ -148,6 +151,7 @@ dependencies {
         api(libs.jacksonKotlin)         { version { strictly("2.9.2") }}
         api(libs.javaParser)            { version { strictly("3.17.0") }}
         api(libs.jetty)                 { version { strictly(jettyVersion) }}
+        api(libs.jettyHttp2Server)      { version { strictly(jettyVersion) }}
         api(libs.jettySecurity)         { version { strictly(jettyVersion) }}
         api(libs.jettyWebApp)           { version { strictly(jettyVersion) }}
         api(libs.jsoup)                 { version { strictly("1.11.3") }}
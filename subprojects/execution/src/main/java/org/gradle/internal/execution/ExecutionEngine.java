@@ -50,6 +50,14 @@ interface Request {
          */
         Result execute();
 
+        /**
+         * Calculate the caching state of the unit of work without executing it.
+         *
+         * Captures the state of the inputs and outputs like an execution would, but skips everything after resolving the caching state,
+         * including up-to-date checks and loading from the build cache.
+         */
+        CachingState calculateCachingState();
+
         /**
          * Use an identity cache to store execution results.
          */
@@ -0,0 +1,68 @@
+/*
+ * Copyright 2021 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.gradle.internal.execution.caching;
+
+import com.google.common.collect.ImmutableSortedMap;
+import org.gradle.internal.file.FileMetadata;
+import org.gradle.internal.fingerprint.CurrentFileCollectionFingerprint;
+import org.gradle.internal.hash.FileContentHashFunction;
+import org.gradle.internal.hash.FileHasher;
+
+import javax.annotation.Nullable;
+import java.io.File;
+
+/**
+ * Keeps the file content hashes that go into build cache keys independent of the {@link FileContentHashFunction} used for file system snapshots.
+ *
+ * When the snapshots use a different function than MD5, the contents of the regular files in a fingerprint are hashed again with MD5,
+ * so that build cache keys stay the same regardless of the chosen function.
+ */
+public class CacheKeyFileHasher {
+    /**
+     * Used when file system snapshots already hash file contents with MD5.
+     */
+    public static final CacheKeyFileHasher UNCHANGED = new CacheKeyFileHasher(null);
+
+    @Nullable
+    private final FileHasher md5Hasher;
+
+    /**
+     * @param md5Hasher hashes file contents with MD5, or {@code null} when the fingerprints already use MD5 hashes.
+     */
+    public CacheKeyFileHasher(@Nullable FileHasher md5Hasher) {
+        this.md5Hasher = md5Hasher;
+    }
+
+    public CurrentFileCollectionFingerprint rehash(CurrentFileCollectionFingerprint fingerprint) {
+        FileHasher md5Hasher = this.md5Hasher;
+        if (md5Hasher == null) {
+            return fingerprint;
+        }
+        return fingerprint.withRegularFileContentHashes(snapshot -> {
+            FileMetadata metadata = snapshot.getMetadata();
+            return md5Hasher.hash(new File(snapshot.getAbsolutePath()), metadata.getLength(), metadata.getLastModified());
+        });
+    }
+
+    public ImmutableSortedMap<String, CurrentFileCollectionFingerprint> rehash(ImmutableSortedMap<String, CurrentFileCollectionFingerprint> fingerprints) {
+        if (md5Hasher == null) {
+            return fingerprints;
+        }
+        ImmutableSortedMap.Builder<String, CurrentFileCollectionFingerprint> builder = ImmutableSortedMap.naturalOrder();
+        fingerprints.forEach((propertyName, fingerprint) -> builder.put(propertyName, rehash(fingerprint)));
+        return builder.build();
+    }
+}
@@ -41,6 +41,8 @@
 import static org.gradle.internal.execution.caching.CachingDisabledReasonCategory.NON_CACHEABLE_IMPLEMENTATION;
 
 public class DefaultCachingStateBuilder implements CachingStateBuilder {
+    @Nullable
+    private final String entryFormat;
     private ImplementationSnapshot implementation;
     private ImmutableList<ImplementationSnapshot> additionalImplementations = ImmutableList.of();
     private final ImmutableSortedMap.Builder<String, HashCode> inputValueFingerprintsBuilder = ImmutableSortedMap.naturalOrder();
@@ -49,6 +51,17 @@ public class DefaultCachingStateBuilder implements CachingStateBuilder {
     private ImmutableSortedSet<String> outputProperties = ImmutableSortedSet.of();
     private final ImmutableList.Builder<CachingDisabledReason> noCachingReasonsBuilder = ImmutableList.builder();
 
+    public DefaultCachingStateBuilder() {
+        this(null);
+    }
+
+    /**
+     * @param entryFormat the format of the build cache entries, added to the cache key unless {@code null}.
+     */
+    public DefaultCachingStateBuilder(@Nullable String entryFormat) {
+        this.entryFormat = entryFormat;
+    }
+
     @Override
     public final void withImplementation(ImplementationSnapshot implementation) {
         this.implementation = implementation;
@@ -147,6 +160,10 @@ public final CachingState build() {
 
         outputProperties.forEach(propertyName -> hasher.putString(propertyName));
 
+        if (entryFormat != null) {
+            hasher.putString(entryFormat);
+        }
+
         ImmutableSortedMap<String, String> nonCacheableInputPropertiesMap = nonCacheableInputPropertiesBuilder.build();
         if (!nonCacheableInputPropertiesMap.isEmpty()) {
             StringBuilder builder = new StringBuilder("Non-cacheable inputs: ");
@@ -23,11 +23,23 @@
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import javax.annotation.Nullable;
 import java.util.Map;
 
 public class LoggingCachingStateBuilder extends DefaultCachingStateBuilder {
     private static final Logger LOGGER = LoggerFactory.getLogger(LoggingCachingStateBuilder.class);
 
+    public LoggingCachingStateBuilder() {
+        this(null);
+    }
+
+    public LoggingCachingStateBuilder(@Nullable String entryFormat) {
+        super(entryFormat);
+        if (entryFormat != null) {
+            LOGGER.warn("Appending entry format to build cache key: {}", entryFormat);
+        }
+    }
+
     @Override
     protected void processImplementation(ImplementationSnapshot implementation) {
         LOGGER.warn("Appending implementation to build cache key: {}", implementation);
@@ -0,0 +1,34 @@
+/*
+ * Copyright 2021 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.internal.execution.history;
+
+import java.util.OptionalLong;
+
+/**
+ * Keeps track of how long units of work took to execute in previous builds.
+ */
+public interface ExecutionDurationStore {
+    /**
+     * Returns the expected execution duration in milliseconds of the work with the given key, if it has been executed before.
+     */
+    OptionalLong load(String key);
+
+    /**
+     * Records that the work with the given key took the given number of milliseconds to execute.
+     */
+    void store(String key, long durationMillis);
+}
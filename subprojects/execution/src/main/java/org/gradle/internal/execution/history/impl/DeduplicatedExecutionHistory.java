@@ -0,0 +1,332 @@
+/*
+ * Copyright 2021 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.internal.execution.history.impl;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSortedMap;
+import com.google.common.collect.Interner;
+import org.gradle.cache.PersistentCache;
+import org.gradle.cache.PersistentIndexedCache;
+import org.gradle.cache.PersistentIndexedCacheParameters;
+import org.gradle.cache.internal.InMemoryCacheDecoratorFactory;
+import org.gradle.caching.internal.origin.OriginMetadata;
+import org.gradle.internal.UncheckedException;
+import org.gradle.internal.execution.history.AfterPreviousExecutionState;
+import org.gradle.internal.fingerprint.CurrentFileCollectionFingerprint;
+import org.gradle.internal.fingerprint.FileCollectionFingerprint;
+import org.gradle.internal.hash.HashCode;
+import org.gradle.internal.hash.Hashing;
+import org.gradle.internal.serialize.AbstractSerializer;
+import org.gradle.internal.serialize.Decoder;
+import org.gradle.internal.serialize.Encoder;
+import org.gradle.internal.serialize.kryo.KryoBackedDecoder;
+import org.gradle.internal.serialize.kryo.KryoBackedEncoder;
+import org.gradle.internal.snapshot.FileSystemSnapshot;
+import org.gradle.internal.snapshot.ValueSnapshot;
+import org.gradle.internal.snapshot.impl.ImplementationSnapshot;
+
+import javax.annotation.Nullable;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Optional;
+
+import static org.gradle.internal.serialize.BaseSerializerFactory.HASHCODE_SERIALIZER;
+
+/**
+ * Execution history that stores each distinct input file fingerprint only once.
+ *
+ * The input file fingerprints are kept in a separate cache, keyed by the hash of their serialized form, and the execution states refer to them by that hash.
+ * Each fingerprint keeps a count of the states referring to it, and is removed when no state refers to it anymore.
+ * If a fingerprint is missing, the state referring to it is treated as absent.
+ */
+class DeduplicatedExecutionHistory {
+    private final PersistentIndexedCache<String, DeduplicatedExecutionState> states;
+    private final PersistentIndexedCache<HashCode, FingerprintBlob> fingerprints;
+    private final FileCollectionFingerprintSerializer fingerprintSerializer;
+
+    DeduplicatedExecutionHistory(
+        PersistentCache cache,
+        InMemoryCacheDecoratorFactory inMemoryCacheDecoratorFactory,
+        Interner<String> stringInterner
+    ) {
+        this.fingerprintSerializer = new FileCollectionFingerprintSerializer(stringInterner);
+        DefaultPreviousExecutionStateSerializer stateSerializer = new DefaultPreviousExecutionStateSerializer(
+            fingerprintSerializer,
+            new FileSystemSnapshotSerializer(stringInterner)
+        );
+
+        this.states = cache.createCache(
+            PersistentIndexedCacheParameters.of("executionHistoryStates", String.class, new DeduplicatedExecutionStateSerializer(stateSerializer))
+            .withCacheDecorator(inMemoryCacheDecoratorFactory.decorator(10000, false))
+            .withMemoryMapping(true)
+        );
+        this.fingerprints = cache.createCache(
+            PersistentIndexedCacheParameters.of("executionHistoryFingerprints", HASHCODE_SERIALIZER, new FingerprintBlobSerializer())
+            .withCacheDecorator(inMemoryCacheDecoratorFactory.decorator(10000, false))
+            .withMemoryMapping(true)
+        );
+    }
+
+    public Optional<AfterPreviousExecutionState> load(String key) {
+        DeduplicatedExecutionState deduplicated = states.getIfPresent(key);
+        if (deduplicated == null) {
+            return Optional.empty();
+        }
+        ImmutableSortedMap.Builder<String, FileCollectionFingerprint> inputFileProperties = ImmutableSortedMap.naturalOrder();
+        for (Map.Entry<String, HashCode> entry : deduplicated.inputFileFingerprints.entrySet()) {
+            FingerprintBlob blob = fingerprints.getIfPresent(entry.getValue());
+            if (blob == null) {
+                return Optional.empty();
+            }
+            inputFileProperties.put(entry.getKey(), deserialize(blob.serializedFingerprint));
+        }
+        AfterPreviousExecutionState state = deduplicated.state;
+        return Optional.of(new DefaultAfterPreviousExecutionState(
+            state.getOriginMetadata(),
+            state.getImplementation(),
+            state.getAdditionalImplementations(),
+            state.getInputProperties(),
+            inputFileProperties.build(),
+            state.getOutputFilesProducedByWork(),
+            state.isSuccessful()
+        ));
+    }
+
+    /**
+     * Prepares storing an execution state, serializing its input file fingerprints on the calling thread.
+     */
+    public Update store(
+        OriginMetadata originMetadata,
+        ImplementationSnapshot implementation,
+        ImmutableList<ImplementationSnapshot> additionalImplementations,
+        ImmutableSortedMap<String, ValueSnapshot> inputProperties,
+        ImmutableSortedMap<String, CurrentFileCollectionFingerprint> inputFileProperties,
+        ImmutableSortedMap<String, FileSystemSnapshot> outputFileProperties,
+        boolean successful
+    ) {
+        ImmutableSortedMap.Builder<String, FileCollectionFingerprint> serializableInputFileProperties = ImmutableSortedMap.naturalOrder();
+        ImmutableSortedMap.Builder<String, HashCode> inputFileFingerprints = ImmutableSortedMap.naturalOrder();
+        Map<HashCode, byte[]> serializedFingerprints = new HashMap<>();
+        for (Map.Entry<String, CurrentFileCollectionFingerprint> entry : inputFileProperties.entrySet()) {
+            CurrentFileCollectionFingerprint fingerprint = entry.getValue();
+            SerializableFileCollectionFingerprint serializableFingerprint = new SerializableFileCollectionFingerprint(fingerprint.getFingerprints(), fingerprint.getRootHashes());
+            byte[] serializedFingerprint = serialize(serializableFingerprint);
+            HashCode fingerprintHash = Hashing.hashBytes(serializedFingerprint);
+            serializableInputFileProperties.put(entry.getKey(), serializableFingerprint);
+            inputFileFingerprints.put(entry.getKey(), fingerprintHash);
+            serializedFingerprints.put(fingerprintHash, serializedFingerprint);
+        }
+
+        AfterPreviousExecutionState state = new DefaultAfterPreviousExecutionState(
+            originMetadata,
+            implementation,
+            additionalImplementations,
+            inputProperties,
+            serializableInputFileProperties.build(),
+            outputFileProperties,
+            successful
+        );
+        DeduplicatedExecutionState deduplicated = new DeduplicatedExecutionState(
+            new DefaultAfterPreviousExecutionState(
+                originMetadata,
+                implementation,
+                additionalImplementations,
+                inputProperties,
+                ImmutableSortedMap.of(),
+                outputFileProperties,
+                successful
+            ),
+            inputFileFingerprints.build()
+        );
+        return new Update(state, deduplicated, serializedFingerprints);
+    }
+
+    /**
+     * Prepares removing an execution state.
+     */
+    public Update remove() {
+        return Update.REMOVAL;
+    }
+
+    /**
+     * Writes the given updates, adding the fingerprints referred to by the new states
+     * and updating the reference counts of the fingerprints referred to by the replaced states.
+     */
+    public synchronized void write(Map<String, Update> updates) {
+        Map<HashCode, Integer> referenceCountChanges = new HashMap<>();
+        Map<HashCode, byte[]> addedFingerprints = new HashMap<>();
+        for (Map.Entry<String, Update> entry : updates.entrySet()) {
+            DeduplicatedExecutionState previous = states.getIfPresent(entry.getKey());
+            if (previous != null) {
+                for (HashCode fingerprintHash : previous.inputFileFingerprints.values()) {
+                    referenceCountChanges.merge(fingerprintHash, -1, Integer::sum);
+                }
+            }
+            Update update = entry.getValue();
+            if (update.deduplicated != null) {
+                for (HashCode fingerprintHash : update.deduplicated.inputFileFingerprints.values()) {
+                    referenceCountChanges.merge(fingerprintHash, 1, Integer::sum);
+                }
+                addedFingerprints.putAll(update.serializedFingerprints);
+            }
+        }
+
+        for (Map.Entry<HashCode, Integer> entry : referenceCountChanges.entrySet()) {
+            HashCode fingerprintHash = entry.getKey();
+            int referenceCountChange = entry.getValue();
+            byte[] addedFingerprint = addedFingerprints.get(fingerprintHash);
+            if (referenceCountChange == 0 && addedFingerprint == null) {
+                continue;
+            }
+            FingerprintBlob blob = fingerprints.getIfPresent(fingerprintHash);
+            if (blob == null) {
+                if (addedFingerprint != null) {
+                    // Also restores fingerprints that went missing while still referred to
+                    fingerprints.put(fingerprintHash, new FingerprintBlob(Math.max(referenceCountChange, 1), addedFingerprint));
+                }
+            } else if (referenceCountChange != 0) {
+                int referenceCount = blob.referenceCount + referenceCountChange;
+                if (referenceCount > 0) {
+                    fingerprints.put(fingerprintHash, new FingerprintBlob(referenceCount, blob.serializedFingerprint));
+                } else {
+                    fingerprints.remove(fingerprintHash);
+                }
+            }
+        }
+
+        for (Map.Entry<String, Update> entry : updates.entrySet()) {
+            DeduplicatedExecutionState deduplicated = entry.getValue().deduplicated;
+            if (deduplicated == null) {
+                states.remove(entry.getKey());
+            } else {
+                states.put(entry.getKey(), deduplicated);
+            }
+        }
+    }
+
+    private byte[] serialize(FileCollectionFingerprint fingerprint) {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        KryoBackedEncoder encoder = new KryoBackedEncoder(output);
+        try {
+            fingerprintSerializer.write(encoder, fingerprint);
+            encoder.flush();
+        } catch (Exception e) {
+            throw UncheckedException.throwAsUncheckedException(e);
+        }
+        return output.toByteArray();
+    }
+
+    private FileCollectionFingerprint deserialize(byte[] serializedFingerprint) {
+        try {
+            return fingerprintSerializer.read(new KryoBackedDecoder(new ByteArrayInputStream(serializedFingerprint)));
+        } catch (Exception e) {
+            throw UncheckedException.throwAsUncheckedException(e);
+        }
+    }
+
+    /**
+     * A prepared update of the execution state of a unit of work.
+     */
+    static class Update {
+        private static final Update REMOVAL = new Update(null, null, Collections.emptyMap());
+
+        private final AfterPreviousExecutionState state;
+        private final DeduplicatedExecutionState deduplicated;
+        private final Map<HashCode, byte[]> serializedFingerprints;
+
+        private Update(@Nullable AfterPreviousExecutionState state, @Nullable DeduplicatedExecutionState deduplicated, Map<HashCode, byte[]> serializedFingerprints) {
+            this.state = state;
+            this.deduplicated = deduplicated;
+            this.serializedFingerprints = serializedFingerprints;
+        }
+
+        /**
+         * The stored state, or empty when the state is removed.
+         */
+        public Optional<AfterPreviousExecutionState> getState() {
+            return Optional.ofNullable(state);
+        }
+    }
+
+    /**
+     * An execution state without its input file fingerprints, referring to them by hash instead.
+     */
+    private static class DeduplicatedExecutionState {
+        final AfterPreviousExecutionState state;
+        final ImmutableSortedMap<String, HashCode> inputFileFingerprints;
+
+        DeduplicatedExecutionState(AfterPreviousExecutionState state, ImmutableSortedMap<String, HashCode> inputFileFingerprints) {
+            this.state = state;
+            this.inputFileFingerprints = inputFileFingerprints;
+        }
+    }
+
+    private static class DeduplicatedExecutionStateSerializer extends AbstractSerializer<DeduplicatedExecutionState> {
+        private final DefaultPreviousExecutionStateSerializer stateSerializer;
+
+        DeduplicatedExecutionStateSerializer(DefaultPreviousExecutionStateSerializer stateSerializer) {
+            this.stateSerializer = stateSerializer;
+        }
+
+        @Override
+        public DeduplicatedExecutionState read(Decoder decoder) throws Exception {
+            AfterPreviousExecutionState state = stateSerializer.read(decoder);
+            int count = decoder.readSmallInt();
+            ImmutableSortedMap.Builder<String, HashCode> inputFileFingerprints = ImmutableSortedMap.naturalOrder();
+            for (int i = 0; i < count; i++) {
+                inputFileFingerprints.put(decoder.readString(), HASHCODE_SERIALIZER.read(decoder));
+            }
+            return new DeduplicatedExecutionState(state, inputFileFingerprints.build());
+        }
+
+        @Override
+        public void write(Encoder encoder, DeduplicatedExecutionState value) throws Exception {
+            stateSerializer.write(encoder, value.state);
+            encoder.writeSmallInt(value.inputFileFingerprints.size());
+            for (Map.Entry<String, HashCode> entry : value.inputFileFingerprints.entrySet()) {
+                encoder.writeString(entry.getKey());
+                HASHCODE_SERIALIZER.write(encoder, entry.getValue());
+            }
+        }
+    }
+
+    private static class FingerprintBlob {
+        final int referenceCount;
+        final byte[] serializedFingerprint;
+
+        FingerprintBlob(int referenceCount, byte[] serializedFingerprint) {
+            this.referenceCount = referenceCount;
+            this.serializedFingerprint = serializedFingerprint;
+        }
+    }
+
+    private static class FingerprintBlobSerializer extends AbstractSerializer<FingerprintBlob> {
+        @Override
+        public FingerprintBlob read(Decoder decoder) throws Exception {
+            return new FingerprintBlob(decoder.readSmallInt(), decoder.readBinary());
+        }
+
+        @Override
+        public void write(Encoder encoder, FingerprintBlob value) throws Exception {
+            encoder.writeSmallInt(value.referenceCount);
+            encoder.writeBinary(value.serializedFingerprint);
+        }
+    }
+}
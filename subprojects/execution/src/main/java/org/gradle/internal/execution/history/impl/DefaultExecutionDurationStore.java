@@ -0,0 +1,62 @@
+/*
+ * Copyright 2021 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.internal.execution.history.impl;
+
+import org.gradle.cache.PersistentCache;
+import org.gradle.cache.PersistentIndexedCache;
+import org.gradle.cache.PersistentIndexedCacheParameters;
+import org.gradle.cache.internal.InMemoryCacheDecoratorFactory;
+import org.gradle.internal.execution.history.ExecutionDurationStore;
+
+import java.util.OptionalLong;
+import java.util.function.Supplier;
+
+import static org.gradle.internal.serialize.BaseSerializerFactory.LONG_SERIALIZER;
+import static org.gradle.internal.serialize.BaseSerializerFactory.STRING_SERIALIZER;
+
+/**
+ * Stores the execution durations next to the execution history.
+ *
+ * The expected duration is the average of the previously expected duration and the last measured one,
+ * so that a single unusually fast or slow execution does not replace the history completely.
+ */
+public class DefaultExecutionDurationStore implements ExecutionDurationStore {
+
+    private final PersistentIndexedCache<String, Long> store;
+
+    public DefaultExecutionDurationStore(
+        Supplier<PersistentCache> cache,
+        InMemoryCacheDecoratorFactory inMemoryCacheDecoratorFactory
+    ) {
+        this.store = cache.get().createCache(
+            PersistentIndexedCacheParameters.of("executionDurations", STRING_SERIALIZER, LONG_SERIALIZER)
+            .withCacheDecorator(inMemoryCacheDecoratorFactory.decorator(10000, false))
+        );
+    }
+
+    @Override
+    public OptionalLong load(String key) {
+        Long duration = store.getIfPresent(key);
+        return duration == null ? OptionalLong.empty() : OptionalLong.of(duration);
+    }
+
+    @Override
+    public void store(String key, long durationMillis) {
+        Long previousDuration = store.getIfPresent(key);
+        store.put(key, previousDuration == null ? durationMillis : (previousDuration + durationMillis) / 2);
+    }
+}
@@ -33,6 +33,8 @@
 import org.gradle.internal.snapshot.ValueSnapshot;
 import org.gradle.internal.snapshot.impl.ImplementationSnapshot;
 
+import javax.annotation.Nullable;
+import java.util.Collections;
 import java.util.Optional;
 import java.util.function.Supplier;
 
@@ -40,14 +42,37 @@
 import static com.google.common.collect.Maps.transformValues;
 
 public class DefaultExecutionHistoryStore implements ExecutionHistoryStore {
+    /**
+     * Enables storing each distinct input file fingerprint only once, see {@link DeduplicatedExecutionHistory}.
+     */
+    public static final String DEDUPLICATE_FINGERPRINTS_PROPERTY = "org.gradle.unsafe.execution-history.deduplicate-fingerprints";
 
+    @Nullable
     private final PersistentIndexedCache<String, AfterPreviousExecutionState> store;
+    @Nullable
+    private final DeduplicatedExecutionHistory deduplicatedHistory;
 
     public DefaultExecutionHistoryStore(
         Supplier<PersistentCache> cache,
         InMemoryCacheDecoratorFactory inMemoryCacheDecoratorFactory,
         Interner<String> stringInterner
     ) {
+        this(cache, inMemoryCacheDecoratorFactory, stringInterner, Boolean.getBoolean(DEDUPLICATE_FINGERPRINTS_PROPERTY));
+    }
+
+    public DefaultExecutionHistoryStore(
+        Supplier<PersistentCache> cache,
+        InMemoryCacheDecoratorFactory inMemoryCacheDecoratorFactory,
+        Interner<String> stringInterner,
+        boolean deduplicateFingerprints
+    ) {
+        if (deduplicateFingerprints) {
+            this.store = null;
+            this.deduplicatedHistory = new DeduplicatedExecutionHistory(cache.get(), inMemoryCacheDecoratorFactory, stringInterner);
+            return;
+        }
+        this.deduplicatedHistory = null;
+
         DefaultPreviousExecutionStateSerializer serializer = new DefaultPreviousExecutionStateSerializer(
             new FileCollectionFingerprintSerializer(stringInterner),
             new FileSystemSnapshotSerializer(stringInterner)
@@ -57,11 +82,15 @@ public DefaultExecutionHistoryStore(
         this.store = cache.get().createCache(
             PersistentIndexedCacheParameters.of("executionHistory", String.class, serializer)
             .withCacheDecorator(inMemoryCacheDecorator)
+            .withMemoryMapping(true)
         );
     }
 
     @Override
     public Optional<AfterPreviousExecutionState> load(String key) {
+        if (deduplicatedHistory != null) {
+            return deduplicatedHistory.load(key);
+        }
         return Optional.ofNullable(store.getIfPresent(key));
     }
 
@@ -76,6 +105,18 @@ public void store(
         ImmutableSortedMap<String, FileSystemSnapshot> outputFileProperties,
         boolean successful
     ) {
+        if (deduplicatedHistory != null) {
+            deduplicatedHistory.write(Collections.singletonMap(key, deduplicatedHistory.store(
+                originMetadata,
+                implementation,
+                additionalImplementations,
+                inputProperties,
+                inputFileProperties,
+                outputFileProperties,
+                successful
+            )));
+            return;
+        }
         store.put(key, new DefaultAfterPreviousExecutionState(
             originMetadata,
             implementation,
@@ -89,6 +130,10 @@ public void store(
 
     @Override
     public void remove(String key) {
+        if (deduplicatedHistory != null) {
+            deduplicatedHistory.write(Collections.singletonMap(key, deduplicatedHistory.remove()));
+            return;
+        }
         store.remove(key);
     }
 
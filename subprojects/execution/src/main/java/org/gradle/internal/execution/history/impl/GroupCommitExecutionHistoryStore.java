@@ -0,0 +1,146 @@
+/*
+ * Copyright 2021 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.internal.execution.history.impl;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSortedMap;
+import com.google.common.collect.Interner;
+import org.gradle.cache.PersistentCache;
+import org.gradle.cache.internal.InMemoryCacheDecoratorFactory;
+import org.gradle.caching.internal.origin.OriginMetadata;
+import org.gradle.internal.execution.history.AfterPreviousExecutionState;
+import org.gradle.internal.execution.history.ExecutionHistoryStore;
+import org.gradle.internal.fingerprint.CurrentFileCollectionFingerprint;
+import org.gradle.internal.snapshot.FileSystemSnapshot;
+import org.gradle.internal.snapshot.ValueSnapshot;
+import org.gradle.internal.snapshot.impl.ImplementationSnapshot;
+
+import java.io.Closeable;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.function.Supplier;
+
+/**
+ * An {@link ExecutionHistoryStore} that commits the stored execution states in groups, and stores each distinct input file fingerprint only once.
+ *
+ * Stored states are kept in memory until enough of them have accumulated, or until the store is closed at the end of the build.
+ * They are then written to the cache together, while holding the lock of the cache only once.
+ * A state stored for the same work before the group is committed replaces the earlier one without being written.
+ * The input file fingerprints are serialized when the state is stored, and are written as described in {@link DeduplicatedExecutionHistory}.
+ */
+public class GroupCommitExecutionHistoryStore implements ExecutionHistoryStore, Closeable {
+    /**
+     * Enables the group commit execution history store for the execution history of the build.
+     */
+    public static final String GROUP_COMMIT_PROPERTY = "org.gradle.unsafe.execution-history.group-commit";
+
+    private static final int GROUP_SIZE = 1000;
+
+    private final PersistentCache cache;
+    private final DeduplicatedExecutionHistory history;
+    private final Map<String, DeduplicatedExecutionHistory.Update> pending = new LinkedHashMap<>();
+    private final Object commitLock = new Object();
+    private volatile Map<String, DeduplicatedExecutionHistory.Update> committing = Collections.emptyMap();
+
+    public GroupCommitExecutionHistoryStore(
+        Supplier<PersistentCache> cache,
+        InMemoryCacheDecoratorFactory inMemoryCacheDecoratorFactory,
+        Interner<String> stringInterner
+    ) {
+        this.cache = cache.get();
+        this.history = new DeduplicatedExecutionHistory(this.cache, inMemoryCacheDecoratorFactory, stringInterner);
+    }
+
+    @Override
+    public Optional<AfterPreviousExecutionState> load(String key) {
+        DeduplicatedExecutionHistory.Update update;
+        synchronized (pending) {
+            update = pending.get(key);
+        }
+        if (update == null) {
+            update = committing.get(key);
+        }
+        if (update != null) {
+            return update.getState();
+        }
+        return history.load(key);
+    }
+
+    @Override
+    public void store(
+        String key,
+        OriginMetadata originMetadata,
+        ImplementationSnapshot implementation,
+        ImmutableList<ImplementationSnapshot> additionalImplementations,
+        ImmutableSortedMap<String, ValueSnapshot> inputProperties,
+        ImmutableSortedMap<String, CurrentFileCollectionFingerprint> inputFileProperties,
+        ImmutableSortedMap<String, FileSystemSnapshot> outputFileProperties,
+        boolean successful
+    ) {
+        addPending(key, history.store(
+            originMetadata,
+            implementation,
+            additionalImplementations,
+            inputProperties,
+            inputFileProperties,
+            outputFileProperties,
+            successful
+        ));
+    }
+
+    @Override
+    public void remove(String key) {
+        addPending(key, history.remove());
+    }
+
+    @Override
+    public void close() {
+        commit();
+    }
+
+    private void addPending(String key, DeduplicatedExecutionHistory.Update update) {
+        boolean groupComplete;
+        synchronized (pending) {
+            pending.put(key, update);
+            groupComplete = pending.size() >= GROUP_SIZE;
+        }
+        if (groupComplete) {
+            commit();
+        }
+    }
+
+    private void commit() {
+        synchronized (commitLock) {
+            Map<String, DeduplicatedExecutionHistory.Update> group;
+            synchronized (pending) {
+                if (pending.isEmpty()) {
+                    return;
+                }
+                group = new LinkedHashMap<>(pending);
+                committing = group;
+                pending.clear();
+            }
+            try {
+                cache.useCache(() -> history.write(group));
+            } finally {
+                committing = Collections.emptyMap();
+            }
+        }
+    }
+}
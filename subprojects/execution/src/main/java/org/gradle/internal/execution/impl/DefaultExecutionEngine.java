@@ -24,18 +24,37 @@
 import org.gradle.internal.execution.UnitOfWork;
 import org.gradle.internal.execution.UnitOfWork.Identity;
 import org.gradle.internal.execution.WorkValidationContext;
+import org.gradle.internal.execution.caching.CachingState;
+import org.gradle.internal.execution.steps.CachingResult;
 import org.gradle.internal.execution.steps.DeferredExecutionAwareStep;
 import org.gradle.internal.execution.steps.ExecutionRequestContext;
+import org.gradle.internal.execution.steps.Step;
+
+import javax.annotation.Nullable;
 
 import java.util.Optional;
 
 public class DefaultExecutionEngine implements ExecutionEngine {
     private final DocumentationRegistry documentationRegistry;
     private final DeferredExecutionAwareStep<? super ExecutionRequestContext, ? extends Result> executeStep;
+    @Nullable
+    private final Step<? super ExecutionRequestContext, ? extends CachingResult> cachingStateStep;
 
     public DefaultExecutionEngine(DocumentationRegistry documentationRegistry, DeferredExecutionAwareStep<? super ExecutionRequestContext, ? extends Result> executeStep) {
+        this(documentationRegistry, executeStep, null);
+    }
+
+    /**
+     * @param cachingStateStep calculates the caching state without executing the work. When {@code null}, the caching state is never determined ahead of execution.
+     */
+    public DefaultExecutionEngine(
+        DocumentationRegistry documentationRegistry,
+        DeferredExecutionAwareStep<? super ExecutionRequestContext, ? extends Result> executeStep,
+        @Nullable Step<? super ExecutionRequestContext, ? extends CachingResult> cachingStateStep
+    ) {
         this.documentationRegistry = documentationRegistry;
         this.executeStep = executeStep;
+        this.cachingStateStep = cachingStateStep;
     }
 
     @Override
@@ -76,6 +95,13 @@ public Result execute() {
                 return executeStep.execute(work, createExecutionRequestContext());
             }
 
+            @Override
+            public CachingState calculateCachingState() {
+                return cachingStateStep == null
+                    ? CachingState.NOT_DETERMINED
+                    : cachingStateStep.execute(work, createExecutionRequestContext()).getCachingState();
+            }
+
             @Override
             public <O> CachedRequest<O> withIdentityCache(Cache<Identity, Try<O>> cache) {
                 return new CachedRequest<O>() {
@@ -25,6 +25,7 @@
 import org.gradle.internal.execution.ExecutionResult;
 import org.gradle.internal.execution.UnitOfWork;
 import org.gradle.internal.execution.WorkValidationContext;
+import org.gradle.internal.execution.caching.CacheKeyFileHasher;
 import org.gradle.internal.execution.caching.CachingDisabledReason;
 import org.gradle.internal.execution.caching.CachingDisabledReasonCategory;
 import org.gradle.internal.execution.caching.CachingState;
@@ -41,6 +42,7 @@
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import javax.annotation.Nullable;
 import java.io.File;
 import java.util.Formatter;
 import java.util.List;
@@ -55,15 +57,50 @@ public class ResolveCachingStateStep implements Step<BeforeExecutionContext, Cac
 
     private final BuildCacheController buildCache;
     private final boolean buildScansEnabled;
+    @Nullable
+    private final String entryFormat;
+    private final CacheKeyFileHasher cacheKeyFileHasher;
+    private final boolean logCachingState;
     private final Step<? super CachingContext, ? extends UpToDateResult> delegate;
 
     public ResolveCachingStateStep(
         BuildCacheController buildCache,
         boolean buildScansEnabled,
         Step<? super CachingContext, ? extends UpToDateResult> delegate
+    ) {
+        this(buildCache, buildScansEnabled, null, CacheKeyFileHasher.UNCHANGED, delegate);
+    }
+
+    /**
+     * @param entryFormat the format of the build cache entries, added to the cache key unless {@code null}.
+     * @param cacheKeyFileHasher re-hashes the input file fingerprints used for the cache key.
+     */
+    public ResolveCachingStateStep(
+        BuildCacheController buildCache,
+        boolean buildScansEnabled,
+        @Nullable String entryFormat,
+        CacheKeyFileHasher cacheKeyFileHasher,
+        Step<? super CachingContext, ? extends UpToDateResult> delegate
+    ) {
+        this(buildCache, buildScansEnabled, entryFormat, cacheKeyFileHasher, true, delegate);
+    }
+
+    /**
+     * @param logCachingState whether to log the cache key or why caching is disabled, which is only done once when the caching state is also resolved ahead of execution.
+     */
+    public ResolveCachingStateStep(
+        BuildCacheController buildCache,
+        boolean buildScansEnabled,
+        @Nullable String entryFormat,
+        CacheKeyFileHasher cacheKeyFileHasher,
+        boolean logCachingState,
+        Step<? super CachingContext, ? extends UpToDateResult> delegate
     ) {
         this.buildCache = buildCache;
         this.buildScansEnabled = buildScansEnabled;
+        this.entryFormat = entryFormat;
+        this.cacheKeyFileHasher = cacheKeyFileHasher;
+        this.logCachingState = logCachingState;
         this.delegate = delegate;
     }
 
@@ -80,12 +117,14 @@ public CachingResult execute(UnitOfWork work, BeforeExecutionContext context) {
                 .orElseGet(() -> calculateCachingStateWithNoCapturedInputs(work));
         }
 
-        ImmutableList<CachingDisabledReason> disabledReasons = cachingState.getDisabledReasons();
-        if (disabledReasons.isEmpty()) {
-            //noinspection OptionalGetWithoutIsPresent
-            logCacheKey(cachingState.getKey().get(), work);
-        } else {
-            logDisabledReasons(disabledReasons, work);
+        if (logCachingState) {
+            ImmutableList<CachingDisabledReason> disabledReasons = cachingState.getDisabledReasons();
+            if (disabledReasons.isEmpty()) {
+                //noinspection OptionalGetWithoutIsPresent
+                logCacheKey(cachingState.getKey().get(), work);
+            } else {
+                logDisabledReasons(disabledReasons, work);
+            }
         }
 
         UpToDateResult result = delegate.execute(work, new CachingContext() {
@@ -173,9 +212,9 @@ public Try<ExecutionResult> getExecutionResult() {
     }
 
     private CachingState calculateCachingState(BeforeExecutionState executionState, UnitOfWork work) {
-        CachingStateBuilder builder = buildCache.isEmitDebugLogging()
-            ? new LoggingCachingStateBuilder()
-            : new DefaultCachingStateBuilder();
+        CachingStateBuilder builder = logCachingState && buildCache.isEmitDebugLogging()
+            ? new LoggingCachingStateBuilder(entryFormat)
+            : new DefaultCachingStateBuilder(entryFormat);
 
         if (!buildCache.isEnabled()) {
             builder.markNotCacheable(BUILD_CACHE_DISABLED_REASON);
@@ -188,7 +227,7 @@ private CachingState calculateCachingState(BeforeExecutionState executionState,
         builder.withImplementation(executionState.getImplementation());
         builder.withAdditionalImplementations(executionState.getAdditionalImplementations());
         builder.withInputValueFingerprints(executionState.getInputProperties());
-        builder.withInputFilePropertyFingerprints(executionState.getInputFileProperties());
+        builder.withInputFilePropertyFingerprints(cacheKeyFileHasher.rehash(executionState.getInputFileProperties()));
         builder.withOutputPropertyNames(executionState.getOutputFileLocationSnapshots().keySet());
 
         return builder.build();
@@ -0,0 +1,58 @@
+/*
+ * Copyright 2021 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.internal.execution.steps;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSortedMap;
+import org.gradle.caching.internal.origin.OriginMetadata;
+import org.gradle.internal.Try;
+import org.gradle.internal.execution.ExecutionResult;
+import org.gradle.internal.execution.UnitOfWork;
+import org.gradle.internal.snapshot.FileSystemSnapshot;
+
+import java.util.Optional;
+
+/**
+ * Ends a chain of steps that only resolves the state of the work, without executing it.
+ */
+public class SkipExecutionStep<C extends Context> implements Step<C, UpToDateResult> {
+
+    @Override
+    public UpToDateResult execute(UnitOfWork work, C context) {
+        return new UpToDateResult() {
+            @Override
+            public ImmutableList<String> getExecutionReasons() {
+                return ImmutableList.of();
+            }
+
+            @Override
+            public Optional<OriginMetadata> getReusedOutputOriginMetadata() {
+                return Optional.empty();
+            }
+
+            @Override
+            public ImmutableSortedMap<String, FileSystemSnapshot> getOutputFilesProduceByWork() {
+                return ImmutableSortedMap.of();
+            }
+
+            @Override
+            public Try<ExecutionResult> getExecutionResult() {
+                return Try.failure(new IllegalStateException(work.getDisplayName() + " has not been executed."));
+            }
+        };
+    }
+}
@@ -86,6 +86,30 @@ class DefaultCachingStateBuilderTest extends Specification {
         cachingState.disabledReasons*.message == ["Non-cacheable inputs: property 'input.invalid' was loaded with an unknown classloader (class 'org.gradle.WorkType')."]
     }
 
+    def "entry format is added to the cache key"() {
+        withValidInputs()
+        def keyWithoutFormat = builder.build().key.get()
+
+        when:
+        builder = new DefaultCachingStateBuilder(null)
+        withValidInputs()
+        then:
+        builder.build().key.get().hashCode == keyWithoutFormat.hashCode
+
+        when:
+        builder = new DefaultCachingStateBuilder("entry-format-1-snappy")
+        withValidInputs()
+        def keyWithFormat = builder.build().key.get()
+        then:
+        keyWithFormat.hashCode != keyWithoutFormat.hashCode
+
+        when:
+        builder = new DefaultCachingStateBuilder("entry-format-1-snappy")
+        withValidInputs()
+        then:
+        builder.build().key.get().hashCode == keyWithFormat.hashCode
+    }
+
     def withValidInputs() {
         builder.withImplementation(
             implementation
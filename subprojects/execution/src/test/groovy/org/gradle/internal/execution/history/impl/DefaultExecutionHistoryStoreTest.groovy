@@ -0,0 +1,181 @@
+/*
+ * Copyright 2021 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.internal.execution.history.impl
+
+import com.google.common.collect.ImmutableList
+import com.google.common.collect.ImmutableMultimap
+import com.google.common.collect.ImmutableSortedMap
+import org.gradle.api.internal.cache.StringInterner
+import org.gradle.cache.PersistentCache
+import org.gradle.cache.PersistentIndexedCacheParameters
+import org.gradle.cache.internal.InMemoryCacheDecoratorFactory
+import org.gradle.caching.internal.origin.OriginMetadata
+import org.gradle.internal.file.FileType
+import org.gradle.internal.fingerprint.CurrentFileCollectionFingerprint
+import org.gradle.internal.fingerprint.impl.DefaultFileSystemLocationFingerprint
+import org.gradle.internal.hash.HashCode
+import org.gradle.internal.snapshot.impl.ImplementationSnapshot
+import org.gradle.testfixtures.internal.TestInMemoryPersistentIndexedCache
+import spock.lang.Specification
+
+class DefaultExecutionHistoryStoreTest extends Specification {
+    def caches = [:]
+    def cacheAccess = Stub(PersistentCache) {
+        createCache(_) >> { PersistentIndexedCacheParameters parameters ->
+            caches[parameters.cacheName] = new TestInMemoryPersistentIndexedCache(parameters.valueSerializer)
+        }
+    }
+    def inMemoryCacheDecoratorFactory = Stub(InMemoryCacheDecoratorFactory)
+
+    def "stores states inline by default"() {
+        def store = new DefaultExecutionHistoryStore({ cacheAccess }, inMemoryCacheDecoratorFactory, new StringInterner(), false)
+
+        when:
+        storeState(store, "a", fingerprint("a.txt", 1))
+
+        then:
+        caches.keySet() == ["executionHistory"] as Set
+        contentHashOf(store, "a", "a.txt") == HashCode.fromInt(1)
+    }
+
+    def "stores identical fingerprints only once"() {
+        def store = deduplicatingStore()
+
+        when:
+        storeState(store, "a", fingerprint("shared.txt", 1))
+        storeState(store, "b", fingerprint("shared.txt", 1))
+
+        then:
+        fingerprints.keySet().size() == 1
+        contentHashOf(store, "a", "shared.txt") == HashCode.fromInt(1)
+        contentHashOf(store, "b", "shared.txt") == HashCode.fromInt(1)
+    }
+
+    def "keeps fingerprints as long as a state refers to them"() {
+        def store = deduplicatingStore()
+        storeState(store, "a", fingerprint("shared.txt", 1))
+        storeState(store, "b", fingerprint("shared.txt", 1))
+
+        when:
+        store.remove("a")
+
+        then:
+        fingerprints.keySet().size() == 1
+        !store.load("a").present
+        contentHashOf(store, "b", "shared.txt") == HashCode.fromInt(1)
+
+        when:
+        store.remove("b")
+
+        then:
+        fingerprints.keySet().empty
+        states.keySet().empty
+    }
+
+    def "overwriting a state updates the references to its fingerprints"() {
+        def store = deduplicatingStore()
+        storeState(store, "a", fingerprint("shared.txt", 1))
+        storeState(store, "b", fingerprint("shared.txt", 1))
+
+        when:
+        storeState(store, "a", fingerprint("shared.txt", 1))
+
+        then:
+        fingerprints.keySet().size() == 1
+
+        when:
+        storeState(store, "a", fingerprint("shared.txt", 2))
+
+        then:
+        fingerprints.keySet().size() == 2
+        contentHashOf(store, "a", "shared.txt") == HashCode.fromInt(2)
+        contentHashOf(store, "b", "shared.txt") == HashCode.fromInt(1)
+
+        when:
+        storeState(store, "b", fingerprint("shared.txt", 2))
+
+        then:
+        fingerprints.keySet().size() == 1
+        contentHashOf(store, "b", "shared.txt") == HashCode.fromInt(2)
+
+        when:
+        store.remove("a")
+        store.remove("b")
+
+        then:
+        fingerprints.keySet().empty
+    }
+
+    def "treats a state referring to a missing fingerprint as absent"() {
+        def store = deduplicatingStore()
+        storeState(store, "a", fingerprint("a.txt", 1))
+
+        when:
+        fingerprints.keySet().each { fingerprints.remove(it) }
+
+        then:
+        !store.load("a").present
+
+        when:
+        storeState(store, "a", fingerprint("a.txt", 1))
+
+        then:
+        contentHashOf(store, "a", "a.txt") == HashCode.fromInt(1)
+
+        when:
+        store.remove("a")
+
+        then:
+        fingerprints.keySet().empty
+    }
+
+    private DefaultExecutionHistoryStore deduplicatingStore() {
+        new DefaultExecutionHistoryStore({ cacheAccess }, inMemoryCacheDecoratorFactory, new StringInterner(), true)
+    }
+
+    private TestInMemoryPersistentIndexedCache getStates() {
+        caches["executionHistoryStates"]
+    }
+
+    private TestInMemoryPersistentIndexedCache getFingerprints() {
+        caches["executionHistoryFingerprints"]
+    }
+
+    private static HashCode contentHashOf(DefaultExecutionHistoryStore store, String key, String fileName) {
+        store.load(key).get().inputFileProperties["input"].fingerprints["/$fileName".toString()].normalizedContentHash
+    }
+
+    private static void storeState(DefaultExecutionHistoryStore store, String key, CurrentFileCollectionFingerprint inputFingerprint) {
+        store.store(
+            key,
+            new OriginMetadata("build-id", 1234),
+            ImplementationSnapshot.of("MyWork", HashCode.fromInt(5678)),
+            ImmutableList.of(),
+            ImmutableSortedMap.of(),
+            ImmutableSortedMap.of("input", inputFingerprint),
+            ImmutableSortedMap.of(),
+            true
+        )
+    }
+
+    private CurrentFileCollectionFingerprint fingerprint(String fileName, int contentHash) {
+        Stub(CurrentFileCollectionFingerprint) {
+            getFingerprints() >> ["/$fileName".toString(): new DefaultFileSystemLocationFingerprint(fileName, FileType.RegularFile, HashCode.fromInt(contentHash))]
+            getRootHashes() >> ImmutableMultimap.of("/$fileName".toString(), HashCode.fromInt(contentHash))
+        }
+    }
+}
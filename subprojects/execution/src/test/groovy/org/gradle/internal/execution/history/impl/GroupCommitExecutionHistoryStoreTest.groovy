@@ -0,0 +1,146 @@
+/*
+ * Copyright 2021 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.internal.execution.history.impl
+
+import com.google.common.collect.ImmutableList
+import com.google.common.collect.ImmutableMultimap
+import com.google.common.collect.ImmutableSortedMap
+import org.gradle.api.internal.cache.StringInterner
+import org.gradle.cache.PersistentCache
+import org.gradle.cache.PersistentIndexedCacheParameters
+import org.gradle.cache.internal.InMemoryCacheDecoratorFactory
+import org.gradle.caching.internal.origin.OriginMetadata
+import org.gradle.internal.file.FileType
+import org.gradle.internal.fingerprint.CurrentFileCollectionFingerprint
+import org.gradle.internal.fingerprint.impl.DefaultFileSystemLocationFingerprint
+import org.gradle.internal.hash.HashCode
+import org.gradle.internal.snapshot.impl.ImplementationSnapshot
+import org.gradle.testfixtures.internal.TestInMemoryPersistentIndexedCache
+import spock.lang.Specification
+
+class GroupCommitExecutionHistoryStoreTest extends Specification {
+    def caches = [:]
+    def lockCount = 0
+    def cacheAccess = Stub(PersistentCache) {
+        createCache(_) >> { PersistentIndexedCacheParameters parameters ->
+            caches[parameters.cacheName] = new TestInMemoryPersistentIndexedCache(parameters.valueSerializer)
+        }
+        useCache(_ as Runnable) >> { Runnable action ->
+            lockCount++
+            action.run()
+        }
+    }
+    def inMemoryCacheDecoratorFactory = Stub(InMemoryCacheDecoratorFactory)
+    def store = new GroupCommitExecutionHistoryStore({ cacheAccess }, inMemoryCacheDecoratorFactory, new StringInterner())
+
+    def "stored states can be loaded before and after they are committed"() {
+        when:
+        store("a", fingerprint("a.txt", 1))
+
+        then:
+        store.load("a").get().inputFileProperties["input"].fingerprints.keySet() == ["/a.txt"] as Set
+        states.keySet().empty
+
+        when:
+        store.close()
+
+        then:
+        states.keySet() == ["a"] as Set
+        def loaded = store.load("a").get()
+        loaded.inputFileProperties["input"].fingerprints["/a.txt"].normalizedContentHash == HashCode.fromInt(1)
+        loaded.implementation.typeName == "MyWork"
+        !store.load("b").present
+    }
+
+    def "writes each group while holding the cache lock once"() {
+        when:
+        store("a", fingerprint("a.txt", 1))
+        store("b", fingerprint("b.txt", 2))
+
+        then:
+        lockCount == 0
+
+        when:
+        store.close()
+
+        then:
+        lockCount == 1
+        states.keySet() == ["a", "b"] as Set
+    }
+
+    def "stores identical fingerprints only once"() {
+        when:
+        store("a", fingerprint("shared.txt", 1))
+        store("b", fingerprint("shared.txt", 1))
+        store.close()
+
+        then:
+        fingerprints.keySet().size() == 1
+        store.load("a").get().inputFileProperties["input"].fingerprints.keySet() == ["/shared.txt"] as Set
+        store.load("b").get().inputFileProperties["input"].fingerprints.keySet() == ["/shared.txt"] as Set
+    }
+
+    def "removes fingerprints no state refers to anymore"() {
+        store("a", fingerprint("shared.txt", 1))
+        store("b", fingerprint("shared.txt", 1))
+        store.close()
+
+        when:
+        store("a", fingerprint("shared.txt", 2))
+        store.close()
+
+        then:
+        fingerprints.keySet().size() == 2
+
+        when:
+        store.remove("b")
+        store.close()
+
+        then:
+        fingerprints.keySet().size() == 1
+        !store.load("b").present
+        store.load("a").get().inputFileProperties["input"].fingerprints["/shared.txt"].normalizedContentHash == HashCode.fromInt(2)
+    }
+
+    private TestInMemoryPersistentIndexedCache getStates() {
+        caches["executionHistoryStates"]
+    }
+
+    private TestInMemoryPersistentIndexedCache getFingerprints() {
+        caches["executionHistoryFingerprints"]
+    }
+
+    private void store(String key, CurrentFileCollectionFingerprint inputFingerprint) {
+        store.store(
+            key,
+            new OriginMetadata("build-id", 1234),
+            ImplementationSnapshot.of("MyWork", HashCode.fromInt(5678)),
+            ImmutableList.of(),
+            ImmutableSortedMap.of(),
+            ImmutableSortedMap.of("input", inputFingerprint),
+            ImmutableSortedMap.of(),
+            true
+        )
+    }
+
+    private CurrentFileCollectionFingerprint fingerprint(String fileName, int contentHash) {
+        Stub(CurrentFileCollectionFingerprint) {
+            getFingerprints() >> ["/$fileName".toString(): new DefaultFileSystemLocationFingerprint(fileName, FileType.RegularFile, HashCode.fromInt(contentHash))]
+            getRootHashes() >> ImmutableMultimap.of("/$fileName".toString(), HashCode.fromInt(contentHash))
+        }
+    }
+}
@@ -20,6 +20,7 @@ dependencies {
     testImplementation(project(":persistent-cache"))
     testImplementation(project(":build-option"))
     testImplementation(testFixtures(project(":core")))
+    testImplementation(testFixtures(project(":snapshots")))
     testImplementation(testFixtures(project(":file-collections")))
     testImplementation(testFixtures(project(":tooling-api")))
     testImplementation(testFixtures(project(":launcher")))
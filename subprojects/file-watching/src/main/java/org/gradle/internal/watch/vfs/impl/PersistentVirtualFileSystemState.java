@@ -0,0 +1,323 @@
+/*
+ * Copyright 2021 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.internal.watch.vfs.impl;
+
+import com.google.common.collect.Interner;
+import org.gradle.internal.file.FileMetadata;
+import org.gradle.internal.file.impl.DefaultFileMetadata;
+import org.gradle.internal.hash.HashCode;
+import org.gradle.internal.snapshot.DirectorySnapshot;
+import org.gradle.internal.snapshot.FileSystemLocationSnapshot;
+import org.gradle.internal.snapshot.MissingFileSnapshot;
+import org.gradle.internal.snapshot.PathUtil;
+import org.gradle.internal.snapshot.RegularFileSnapshot;
+import org.gradle.internal.snapshot.SnapshotHierarchy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.annotation.Nullable;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * Stores the snapshots retained in the virtual file system in a compact binary file, so they can be reused by the next daemon.
+ *
+ * Next to the snapshots, the file contains the timestamps of the snapshotted directories and the file keys (inodes) of the regular files.
+ * Together with the timestamps and sizes of the regular files, this allows finding the locations which changed while no daemon was watching them.
+ */
+public class PersistentVirtualFileSystemState {
+    private static final Logger LOGGER = LoggerFactory.getLogger(PersistentVirtualFileSystemState.class);
+
+    private static final int MAGIC = 0x47564653;
+    private static final int FORMAT_VERSION = 1;
+
+    private static final byte DIRECTORY = 0;
+    private static final byte REGULAR_FILE = 1;
+    private static final byte MISSING = 2;
+
+    private final File stateFile;
+    private final String compatibilityKey;
+    private final Interner<String> stringInterner;
+
+    /**
+     * @param compatibilityKey identifies the Gradle version and content hash function the snapshots have been created with. State written with a different key is ignored.
+     */
+    public PersistentVirtualFileSystemState(File stateFile, String compatibilityKey, Interner<String> stringInterner) {
+        this.stateFile = stateFile;
+        this.compatibilityKey = compatibilityKey;
+        this.stringInterner = stringInterner;
+    }
+
+    /**
+     * Writes the snapshot roots of the hierarchy, replacing any previously written state.
+     */
+    public void write(SnapshotHierarchy root) {
+        List<FileSystemLocationSnapshot> snapshotRoots = new ArrayList<>();
+        root.visitSnapshotRoots(snapshotRoots::add);
+        File tempFile = null;
+        try {
+            Files.createDirectories(stateFile.getParentFile().toPath());
+            // Use a file per writer, as several daemons may write the state at the same time
+            tempFile = Files.createTempFile(stateFile.getParentFile().toPath(), stateFile.getName(), ".tmp").toFile();
+            try (DataOutputStream output = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tempFile.toPath())))) {
+                output.writeInt(MAGIC);
+                output.writeInt(FORMAT_VERSION);
+                output.writeUTF(compatibilityKey);
+                output.writeInt(snapshotRoots.size());
+                for (FileSystemLocationSnapshot snapshotRoot : snapshotRoots) {
+                    writeEntry(output, snapshotRoot, snapshotRoot.getAbsolutePath());
+                }
+            }
+            Files.move(tempFile.toPath(), stateFile.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            LOGGER.info("Persisted {} virtual file system roots to {}", snapshotRoots.size(), stateFile);
+        } catch (IOException e) {
+            LOGGER.info("Could not persist virtual file system state to {}", stateFile, e);
+            if (tempFile != null) {
+                tempFile.delete();
+            }
+        }
+    }
+
+    private static void writeEntry(DataOutputStream output, FileSystemLocationSnapshot snapshot, String name) throws IOException {
+        if (snapshot instanceof DirectorySnapshot) {
+            DirectorySnapshot directorySnapshot = (DirectorySnapshot) snapshot;
+            output.writeByte(DIRECTORY);
+            writeHeader(output, directorySnapshot, name);
+            writeHashCode(output, directorySnapshot.getHash());
+            BasicFileAttributes attributes = readAttributes(directorySnapshot.getAbsolutePath());
+            output.writeLong(attributes == null ? -1 : attributes.lastModifiedTime().toMillis());
+            List<FileSystemLocationSnapshot> children = directorySnapshot.getChildren();
+            output.writeInt(children.size());
+            for (FileSystemLocationSnapshot child : children) {
+                writeEntry(output, child, child.getName());
+            }
+        } else if (snapshot instanceof RegularFileSnapshot) {
+            RegularFileSnapshot fileSnapshot = (RegularFileSnapshot) snapshot;
+            output.writeByte(REGULAR_FILE);
+            writeHeader(output, fileSnapshot, name);
+            writeHashCode(output, fileSnapshot.getHash());
+            output.writeLong(fileSnapshot.getMetadata().getLastModified());
+            output.writeLong(fileSnapshot.getMetadata().getLength());
+            output.writeInt(fileKey(readAttributes(fileSnapshot.getAbsolutePath())));
+        } else if (snapshot instanceof MissingFileSnapshot) {
+            output.writeByte(MISSING);
+            writeHeader(output, snapshot, name);
+        } else {
+            throw new IllegalArgumentException("Unknown snapshot type: " + snapshot.getClass().getName());
+        }
+    }
+
+    private static void writeHeader(DataOutputStream output, FileSystemLocationSnapshot snapshot, String name) throws IOException {
+        output.writeByte(snapshot.getAccessType().ordinal());
+        output.writeUTF(name);
+    }
+
+    private static void writeHashCode(DataOutputStream output, HashCode hashCode) throws IOException {
+        output.writeByte(hashCode.length());
+        output.write(hashCode.toByteArray());
+    }
+
+    /**
+     * Reads the persisted snapshot roots.
+     *
+     * Returns an empty list when there is no compatible state.
+     * The returned roots still need to be checked against the file system via {@link PersistedRoot#findChangedLocations(Consumer)}.
+     */
+    public List<PersistedRoot> read() {
+        if (!stateFile.isFile()) {
+            return Collections.emptyList();
+        }
+        try (DataInputStream input = new DataInputStream(new BufferedInputStream(Files.newInputStream(stateFile.toPath())))) {
+            if (input.readInt() != MAGIC || input.readInt() != FORMAT_VERSION || !compatibilityKey.equals(input.readUTF())) {
+                LOGGER.info("Ignoring incompatible virtual file system state in {}", stateFile);
+                return Collections.emptyList();
+            }
+            int rootCount = input.readInt();
+            List<PersistedRoot> roots = new ArrayList<>(rootCount);
+            for (int i = 0; i < rootCount; i++) {
+                PersistedRoot root = new PersistedRoot();
+                root.snapshot = readEntry(input, null, root);
+                roots.add(root);
+            }
+            return roots;
+        } catch (IOException | RuntimeException e) {
+            LOGGER.info("Could not read virtual file system state from {}", stateFile, e);
+            return Collections.emptyList();
+        }
+    }
+
+    private FileSystemLocationSnapshot readEntry(DataInputStream input, @Nullable String parentPath, PersistedRoot root) throws IOException {
+        byte type = input.readByte();
+        FileMetadata.AccessType accessType = FileMetadata.AccessType.values()[input.readByte()];
+        String path = input.readUTF();
+        String absolutePath;
+        String name;
+        if (parentPath == null) {
+            absolutePath = stringInterner.intern(path);
+            name = stringInterner.intern(PathUtil.getFileName(absolutePath));
+        } else {
+            absolutePath = stringInterner.intern(parentPath.endsWith(File.separator) ? parentPath + path : parentPath + File.separatorChar + path);
+            name = stringInterner.intern(path);
+        }
+        switch (type) {
+            case DIRECTORY:
+                HashCode merkleHash = readHashCode(input);
+                root.addDirectoryTimestamp(input.readLong());
+                int childCount = input.readInt();
+                List<FileSystemLocationSnapshot> children = new ArrayList<>(childCount);
+                for (int i = 0; i < childCount; i++) {
+                    children.add(readEntry(input, absolutePath, root));
+                }
+                return new DirectorySnapshot(absolutePath, name, accessType, merkleHash, children);
+            case REGULAR_FILE:
+                HashCode contentHash = readHashCode(input);
+                long lastModified = input.readLong();
+                long length = input.readLong();
+                root.addFileKey(input.readInt());
+                return new RegularFileSnapshot(absolutePath, name, contentHash, DefaultFileMetadata.file(lastModified, length, accessType));
+            case MISSING:
+                return new MissingFileSnapshot(absolutePath, name, accessType);
+            default:
+                throw new IOException("Unknown entry type: " + type);
+        }
+    }
+
+    private static HashCode readHashCode(DataInputStream input) throws IOException {
+        byte[] bytes = new byte[input.readUnsignedByte()];
+        input.readFully(bytes);
+        return HashCode.fromBytes(bytes);
+    }
+
+    @Nullable
+    private static BasicFileAttributes readAttributes(String absolutePath) {
+        try {
+            return Files.readAttributes(Paths.get(absolutePath), BasicFileAttributes.class);
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    private static int fileKey(@Nullable BasicFileAttributes attributes) {
+        Object fileKey = attributes == null ? null : attributes.fileKey();
+        return fileKey == null ? 0 : fileKey.hashCode();
+    }
+
+    /**
+     * A snapshot root read from the persisted state, together with the metadata needed to check it against the file system.
+     */
+    public static class PersistedRoot {
+        private FileSystemLocationSnapshot snapshot;
+        private long[] directoryTimestamps = new long[16];
+        private int directoryCount;
+        private int[] fileKeys = new int[16];
+        private int fileCount;
+
+        public FileSystemLocationSnapshot getSnapshot() {
+            return snapshot;
+        }
+
+        private void addDirectoryTimestamp(long timestamp) {
+            if (directoryCount == directoryTimestamps.length) {
+                directoryTimestamps = Arrays.copyOf(directoryTimestamps, directoryCount * 2);
+            }
+            directoryTimestamps[directoryCount++] = timestamp;
+        }
+
+        private void addFileKey(int fileKey) {
+            if (fileCount == fileKeys.length) {
+                fileKeys = Arrays.copyOf(fileKeys, fileCount * 2);
+            }
+            fileKeys[fileCount++] = fileKey;
+        }
+
+        /**
+         * Reports the locations in the snapshot which don't match the file system any more.
+         *
+         * Only the topmost changed location of a hierarchy is reported.
+         */
+        public void findChangedLocations(Consumer<String> changedLocations) {
+            new ChangeDetector(changedLocations).check(snapshot, false);
+        }
+
+        private class ChangeDetector {
+            private final Consumer<String> changedLocations;
+            private int directoryIndex;
+            private int fileIndex;
+
+            public ChangeDetector(Consumer<String> changedLocations) {
+                this.changedLocations = changedLocations;
+            }
+
+            private void check(FileSystemLocationSnapshot snapshot, boolean parentChanged) {
+                boolean changed;
+                if (snapshot instanceof DirectorySnapshot) {
+                    long expectedTimestamp = directoryTimestamps[directoryIndex++];
+                    changed = !parentChanged && isDirectoryChanged(snapshot.getAbsolutePath(), expectedTimestamp);
+                    reportIfChanged(snapshot, changed);
+                    // Keep visiting the children of changed directories, so the recorded metadata stays aligned with the visited snapshots
+                    for (FileSystemLocationSnapshot child : ((DirectorySnapshot) snapshot).getChildren()) {
+                        check(child, parentChanged || changed);
+                    }
+                } else if (snapshot instanceof RegularFileSnapshot) {
+                    int expectedFileKey = fileKeys[fileIndex++];
+                    changed = !parentChanged && isFileChanged((RegularFileSnapshot) snapshot, expectedFileKey);
+                    reportIfChanged(snapshot, changed);
+                } else {
+                    changed = !parentChanged && Files.exists(Paths.get(snapshot.getAbsolutePath()));
+                    reportIfChanged(snapshot, changed);
+                }
+            }
+
+            private void reportIfChanged(FileSystemLocationSnapshot snapshot, boolean changed) {
+                if (changed) {
+                    changedLocations.accept(snapshot.getAbsolutePath());
+                }
+            }
+
+            private boolean isDirectoryChanged(String absolutePath, long expectedTimestamp) {
+                BasicFileAttributes attributes = readAttributes(absolutePath);
+                return attributes == null
+                    || !attributes.isDirectory()
+                    || expectedTimestamp == -1
+                    || attributes.lastModifiedTime().toMillis() != expectedTimestamp;
+            }
+
+            private boolean isFileChanged(RegularFileSnapshot snapshot, int expectedFileKey) {
+                BasicFileAttributes attributes = readAttributes(snapshot.getAbsolutePath());
+                FileMetadata metadata = snapshot.getMetadata();
+                return attributes == null
+                    || !attributes.isRegularFile()
+                    || attributes.lastModifiedTime().toMillis() != metadata.getLastModified()
+                    || attributes.size() != metadata.getLength()
+                    || fileKey(attributes) != expectedFileKey;
+            }
+        }
+    }
+}
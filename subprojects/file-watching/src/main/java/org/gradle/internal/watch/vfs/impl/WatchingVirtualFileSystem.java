@@ -22,6 +22,7 @@
 import org.gradle.internal.operations.BuildOperationDescriptor;
 import org.gradle.internal.operations.BuildOperationRunner;
 import org.gradle.internal.operations.CallableBuildOperation;
+import org.gradle.internal.snapshot.FileSystemLocationSnapshot;
 import org.gradle.internal.snapshot.FileSystemNode;
 import org.gradle.internal.snapshot.SnapshotHierarchy;
 import org.gradle.internal.vfs.impl.AbstractVirtualFileSystem;
@@ -42,11 +43,15 @@
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import javax.annotation.Nullable;
 import java.io.Closeable;
 import java.io.File;
 import java.io.IOException;
 import java.nio.file.Path;
+import java.util.ArrayList;
 import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
 import java.util.Set;
 import java.util.function.Supplier;
 
@@ -60,9 +65,13 @@ public class WatchingVirtualFileSystem extends AbstractVirtualFileSystem impleme
     private final LocationsWrittenByCurrentBuild locationsWrittenByCurrentBuild;
     private final Set<File> watchableHierarchies = new HashSet<>();
     private final WatchableFileSystemDetector watchableFileSystemDetector;
+    @Nullable
+    private final PersistentVirtualFileSystemState persistentState;
 
     private FileWatcherRegistry watchRegistry;
     private Exception reasonForNotWatchingFiles;
+    private boolean persistentStateRestored;
+    private final List<PersistentVirtualFileSystemState.PersistedRoot> pendingPersistedRoots = new ArrayList<>();
 
     public WatchingVirtualFileSystem(
         FileWatcherRegistryFactory watcherRegistryFactory,
@@ -70,12 +79,28 @@ public WatchingVirtualFileSystem(
         DaemonDocumentationIndex daemonDocumentationIndex,
         LocationsWrittenByCurrentBuild locationsWrittenByCurrentBuild,
         WatchableFileSystemDetector watchableFileSystemDetector
+    ) {
+        this(watcherRegistryFactory, rootReference, daemonDocumentationIndex, locationsWrittenByCurrentBuild, watchableFileSystemDetector, null);
+    }
+
+    /**
+     * Creates a virtual file system which restores the state persisted by a previous daemon when the hierarchies are registered for watching,
+     * and persists its retained state when it is closed.
+     */
+    public WatchingVirtualFileSystem(
+        FileWatcherRegistryFactory watcherRegistryFactory,
+        VfsRootReference rootReference,
+        DaemonDocumentationIndex daemonDocumentationIndex,
+        LocationsWrittenByCurrentBuild locationsWrittenByCurrentBuild,
+        WatchableFileSystemDetector watchableFileSystemDetector,
+        @Nullable PersistentVirtualFileSystemState persistentState
     ) {
         super(rootReference);
         this.watcherRegistryFactory = watcherRegistryFactory;
         this.daemonDocumentationIndex = daemonDocumentationIndex;
         this.locationsWrittenByCurrentBuild = locationsWrittenByCurrentBuild;
         this.watchableFileSystemDetector = watchableFileSystemDetector;
+        this.persistentState = persistentState;
     }
 
     @Override
@@ -102,8 +127,13 @@ public SnapshotHierarchy call(BuildOperationContext context) {
                     FileSystemWatchingStatistics statisticsSinceLastBuild;
                     if (watchRegistry == null) {
                         context.setStatus("Starting file system watching");
+                        List<File> hierarchiesRegisteredBeforeWatching = new ArrayList<>(watchableHierarchies);
                         startWatching(currentRoot);
                         newRoot = currentRoot.empty();
+                        readPersistentState();
+                        for (File watchableHierarchy : hierarchiesRegisteredBeforeWatching) {
+                            newRoot = restorePersistentState(watchableHierarchy, newRoot);
+                        }
                         statisticsSinceLastBuild = null;
                     } else {
                         FileWatcherRegistry.FileWatchingStatistics statistics = watchRegistry.getAndResetStatistics();
@@ -167,10 +197,11 @@ public void registerWatchableHierarchy(File watchableHierarchy) {
                 watchableHierarchies.add(watchableHierarchy);
                 return currentRoot;
             }
-            return withWatcherChangeErrorHandling(
+            SnapshotHierarchy newRoot = withWatcherChangeErrorHandling(
                 currentRoot,
                 () -> watchRegistry.registerWatchableHierarchy(watchableHierarchy, currentRoot)
             );
+            return restorePersistentState(watchableHierarchy, newRoot);
         });
     }
 
@@ -180,6 +211,8 @@ public void beforeBuildFinished(WatchMode watchMode, VfsLogging vfsLogging, Watc
             @Override
             public SnapshotHierarchy call(BuildOperationContext context) {
                 watchableHierarchies.clear();
+                // Persisted state outside of the hierarchies registered during the first build is not watched, so drop it
+                pendingPersistedRoots.clear();
                 if (watchMode.isEnabled()) {
                     if (reasonForNotWatchingFiles != null) {
                         // Log exception again so it doesn't get lost.
@@ -276,6 +309,70 @@ public void stopWatchingAfterError() {
         }
     }
 
+    /**
+     * Reads the state persisted by a previous daemon once per daemon.
+     *
+     * The persisted snapshots are only restored once their hierarchy has been registered for watching, see {@link #restorePersistentState(File, SnapshotHierarchy)}.
+     */
+    private void readPersistentState() {
+        if (persistentState == null || persistentStateRestored || watchRegistry == null) {
+            return;
+        }
+        persistentStateRestored = true;
+        pendingPersistedRoots.addAll(persistentState.read());
+    }
+
+    /**
+     * Restores the persisted snapshots within a hierarchy which has just been registered for watching.
+     *
+     * The restored snapshots are stored before checking them against the file system, so they are already watched during the check.
+     * That way, all changes are either detected by the check or reported by the watcher.
+     */
+    private SnapshotHierarchy restorePersistentState(File watchableHierarchy, SnapshotHierarchy currentRoot) {
+        if (pendingPersistedRoots.isEmpty() || watchRegistry == null) {
+            return currentRoot;
+        }
+        String hierarchyPath = watchableHierarchy.toPath().toAbsolutePath().toString();
+        List<PersistentVirtualFileSystemState.PersistedRoot> persistedRoots = new ArrayList<>();
+        for (Iterator<PersistentVirtualFileSystemState.PersistedRoot> iterator = pendingPersistedRoots.iterator(); iterator.hasNext(); ) {
+            PersistentVirtualFileSystemState.PersistedRoot persistedRoot = iterator.next();
+            if (isWithin(persistedRoot.getSnapshot().getAbsolutePath(), hierarchyPath)) {
+                persistedRoots.add(persistedRoot);
+                iterator.remove();
+            }
+        }
+        if (persistedRoots.isEmpty()) {
+            return currentRoot;
+        }
+        SnapshotHierarchy newRoot = currentRoot;
+        for (PersistentVirtualFileSystemState.PersistedRoot persistedRoot : persistedRoots) {
+            SnapshotHierarchy root = newRoot;
+            FileSystemLocationSnapshot snapshot = persistedRoot.getSnapshot();
+            newRoot = updateNotifyingListeners(diffListener -> root.store(snapshot.getAbsolutePath(), snapshot, diffListener));
+        }
+        List<String> changedLocations = new ArrayList<>();
+        persistedRoots.forEach(persistedRoot -> persistedRoot.findChangedLocations(changedLocations::add));
+        for (String changedLocation : changedLocations) {
+            SnapshotHierarchy root = newRoot;
+            newRoot = updateNotifyingListeners(diffListener -> root.invalidate(changedLocation, diffListener));
+        }
+        if (watchRegistry == null) {
+            // Watching failed while restoring, so the restored state can't be trusted
+            return currentRoot.empty();
+        }
+        LOGGER.info("Restored {} virtual file system roots in {} from a previous daemon, {} locations changed since", persistedRoots.size(), hierarchyPath, changedLocations.size());
+        return newRoot;
+    }
+
+    private static boolean isWithin(String path, String hierarchyPath) {
+        if (!path.startsWith(hierarchyPath)) {
+            return false;
+        }
+        return path.length() == hierarchyPath.length()
+            || hierarchyPath.endsWith(File.separator)
+            || path.charAt(hierarchyPath.length()) == File.separatorChar;
+    }
+
     private static class VfsChangeLoggingNodeDiffListener implements SnapshotHierarchy.NodeDiffListener {
         private final FileWatcherRegistry.Type type;
         private final Path path;
@@ -377,6 +474,10 @@ private boolean hasDroppedStateBecauseOfErrorsReceivedWhileWatching(FileWatcherR
     @Override
     public void close() {
         rootReference.update(currentRoot -> {
+            if (persistentState != null && watchRegistry != null) {
+                // Only the state of a watched file system is known to be up-to-date
+                persistentState.write(currentRoot);
+            }
             closeUnderLock();
             return currentRoot.empty();
         });
@@ -0,0 +1,109 @@
+/*
+ * Copyright 2021 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.internal.watch.vfs.impl
+
+import org.gradle.api.internal.cache.StringInterner
+import org.gradle.api.internal.file.TestFiles
+import org.gradle.internal.snapshot.CaseSensitivity
+import org.gradle.internal.snapshot.DirectorySnapshot
+import org.gradle.internal.snapshot.SnapshotHierarchy
+import org.gradle.internal.snapshot.SnapshotVisitorUtil
+import org.gradle.internal.snapshot.impl.DirectorySnapshotter
+import org.gradle.internal.snapshot.impl.DirectorySnapshotterStatistics
+import org.gradle.internal.vfs.impl.DefaultSnapshotHierarchy
+import org.gradle.test.fixtures.file.CleanupTestDirectory
+import org.gradle.test.fixtures.file.TestNameTestDirectoryProvider
+import org.junit.Rule
+import spock.lang.Specification
+
+import java.util.concurrent.atomic.AtomicBoolean
+
+@CleanupTestDirectory
+class PersistentVirtualFileSystemStateTest extends Specification {
+    @Rule
+    TestNameTestDirectoryProvider temporaryFolder = new TestNameTestDirectoryProvider(getClass())
+
+    def directorySnapshotter = new DirectorySnapshotter(TestFiles.fileHasher(), new StringInterner(), [], Stub(DirectorySnapshotterStatistics.Collector))
+    def stateFile = temporaryFolder.file("state/vfs.bin")
+    def persistentState = new PersistentVirtualFileSystemState(stateFile, "MD5", new StringInterner())
+
+    def "restores persisted snapshots"() {
+        def rootDir = temporaryFolder.createDir("root")
+        rootDir.file("a/b/c.txt").text = "c"
+        rootDir.file("a/d.txt").text = "d"
+        def snapshot = snapshot(rootDir)
+
+        when:
+        persistentState.write(hierarchyWith(snapshot))
+        def restored = persistentState.read()
+
+        then:
+        restored.size() == 1
+        def restoredSnapshot = restored[0].snapshot as DirectorySnapshot
+        restoredSnapshot.hash == snapshot.hash
+        SnapshotVisitorUtil.getAbsolutePaths(restoredSnapshot, true) == SnapshotVisitorUtil.getAbsolutePaths(snapshot, true)
+        changedLocations(restored[0]).empty
+    }
+
+    def "detects changes made while the state was not watched"() {
+        def rootDir = temporaryFolder.createDir("root")
+        def changedFile = rootDir.file("a/changed.txt")
+        changedFile.text = "original"
+        rootDir.file("b/unchanged.txt").text = "unchanged"
+        def directoryWithNewFile = rootDir.createDir("c")
+        directoryWithNewFile.makeOlder()
+        persistentState.write(hierarchyWith(snapshot(rootDir)))
+
+        when:
+        changedFile.text = "changed content"
+        directoryWithNewFile.file("new.txt").text = "new"
+        def restored = persistentState.read()
+
+        then:
+        changedLocations(restored[0]) == [changedFile.absolutePath, directoryWithNewFile.absolutePath]
+    }
+
+    def "ignores state written for a different content hash"() {
+        def rootDir = temporaryFolder.createDir("root")
+        rootDir.file("a.txt").text = "a"
+        persistentState.write(hierarchyWith(snapshot(rootDir)))
+
+        expect:
+        new PersistentVirtualFileSystemState(stateFile, "MURMUR3", new StringInterner()).read().empty
+    }
+
+    def "ignores corrupt state"() {
+        stateFile.text = "corrupt"
+
+        expect:
+        persistentState.read().empty
+    }
+
+    private DirectorySnapshot snapshot(File rootDir) {
+        directorySnapshotter.snapshot(rootDir.absolutePath, null, new AtomicBoolean()) as DirectorySnapshot
+    }
+
+    private static SnapshotHierarchy hierarchyWith(DirectorySnapshot snapshot) {
+        DefaultSnapshotHierarchy.empty(CaseSensitivity.CASE_SENSITIVE).store(snapshot.absolutePath, snapshot, SnapshotHierarchy.NodeDiffListener.NOOP)
+    }
+
+    private static List<String> changedLocations(PersistentVirtualFileSystemState.PersistedRoot root) {
+        def changedLocations = []
+        root.findChangedLocations { changedLocations.add(it) }
+        return changedLocations
+    }
+}
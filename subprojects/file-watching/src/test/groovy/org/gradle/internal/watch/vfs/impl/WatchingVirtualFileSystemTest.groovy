@@ -16,9 +16,13 @@
 
 package org.gradle.internal.watch.vfs.impl
 
+import org.gradle.api.internal.cache.StringInterner
+import org.gradle.api.internal.file.TestFiles
 import org.gradle.internal.operations.TestBuildOperationExecutor
 import org.gradle.internal.snapshot.CaseSensitivity
 import org.gradle.internal.snapshot.SnapshotHierarchy
+import org.gradle.internal.snapshot.impl.DirectorySnapshotter
+import org.gradle.internal.snapshot.impl.DirectorySnapshotterStatistics
 import org.gradle.internal.vfs.impl.DefaultSnapshotHierarchy
 import org.gradle.internal.vfs.impl.VfsRootReference
 import org.gradle.internal.watch.registry.FileWatcherRegistry
@@ -28,9 +32,18 @@ import org.gradle.internal.watch.vfs.VfsLogging
 import org.gradle.internal.watch.vfs.WatchLogging
 import org.gradle.internal.watch.vfs.WatchMode
 import org.gradle.internal.watch.vfs.WatchableFileSystemDetector
+import org.gradle.test.fixtures.file.CleanupTestDirectory
+import org.gradle.test.fixtures.file.TestNameTestDirectoryProvider
+import org.junit.Rule
 import spock.lang.Specification
 
+import java.util.concurrent.atomic.AtomicBoolean
+
+@CleanupTestDirectory
 class WatchingVirtualFileSystemTest extends Specification {
+    @Rule
+    TestNameTestDirectoryProvider temporaryFolder = new TestNameTestDirectoryProvider(getClass())
+
     def watcherRegistryFactory = Mock(FileWatcherRegistryFactory)
     def watcherRegistry = Mock(FileWatcherRegistry)
     def emptySnapshotHierarchy = DefaultSnapshotHierarchy.empty(CaseSensitivity.CASE_SENSITIVE)
@@ -42,6 +55,7 @@ class WatchingVirtualFileSystemTest extends Specification {
     def locationsUpdatedByCurrentBuild = Mock(LocationsWrittenByCurrentBuild)
     def buildOperationRunner = new TestBuildOperationExecutor()
     def watchableFileSystemDetector = Stub(WatchableFileSystemDetector)
+    def directorySnapshotter = new DirectorySnapshotter(TestFiles.fileHasher(), new StringInterner(), [], Stub(DirectorySnapshotterStatistics.Collector))
     def watchingVirtualFileSystem = new WatchingVirtualFileSystem(
         watcherRegistryFactory,
         rootReference,
@@ -154,4 +168,56 @@ class WatchingVirtualFileSystemTest extends Specification {
         then:
         1 * watcherRegistry.registerWatchableHierarchy(newWatchableHierarchy, _)
     }
+
+    def "restores persisted state once its hierarchy is registered for watching"() {
+        def rootDir = temporaryFolder.createDir("root")
+        rootDir.file("a.txt").text = "a"
+        def otherDir = temporaryFolder.createDir("other")
+        otherDir.file("b.txt").text = "b"
+        def persistentState = new PersistentVirtualFileSystemState(temporaryFolder.file("state/vfs.bin"), "MD5", new StringInterner())
+        def hierarchy = [rootDir, otherDir].inject(emptySnapshotHierarchy) { SnapshotHierarchy root, File dir ->
+            def snapshot = directorySnapshotter.snapshot(dir.absolutePath, null, new AtomicBoolean())
+            root.store(dir.absolutePath, snapshot, SnapshotHierarchy.NodeDiffListener.NOOP)
+        }
+        persistentState.write(hierarchy)
+        def restoringVirtualFileSystem = new WatchingVirtualFileSystem(
+            watcherRegistryFactory,
+            rootReference,
+            daemonDocumentationIndex,
+            locationsUpdatedByCurrentBuild,
+            watchableFileSystemDetector,
+            persistentState
+        )
+
+        when:
+        restoringVirtualFileSystem.afterBuildStarted(WatchMode.ENABLED, VfsLogging.NORMAL, WatchLogging.NORMAL, buildOperationRunner)
+        then:
+        1 * watcherRegistryFactory.createFileWatcherRegistry(_) >> watcherRegistry
+        1 * watcherRegistry.setDebugLoggingEnabled(false)
+        0 * _
+        rootReference.getRoot() == emptySnapshotHierarchy
+
+        when:
+        restoringVirtualFileSystem.registerWatchableHierarchy(rootDir)
+        then:
+        1 * watcherRegistry.registerWatchableHierarchy(rootDir, _)
+        then:
+        1 * watcherRegistry.virtualFileSystemContentsChanged(_, { it*.absolutePath == [rootDir.absolutePath] }, _)
+        0 * _
+        rootReference.getRoot().getSnapshot(rootDir.file("a.txt").absolutePath).present
+        !rootReference.getRoot().getSnapshot(otherDir.file("b.txt").absolutePath).present
+
+        when:
+        restoringVirtualFileSystem.beforeBuildFinished(WatchMode.ENABLED, VfsLogging.NORMAL, WatchLogging.NORMAL, buildOperationRunner, Integer.MAX_VALUE)
+        then:
+        1 * watcherRegistry.getAndResetStatistics() >> Stub(FileWatcherRegistry.FileWatchingStatistics)
+        1 * watcherRegistry.buildFinished(_, WatchMode.ENABLED, Integer.MAX_VALUE) >> { args -> args[0] }
+
+        when:
+        restoringVirtualFileSystem.registerWatchableHierarchy(otherDir)
+        then:
+        1 * watcherRegistry.registerWatchableHierarchy(otherDir, _)
+        0 * _
+        !rootReference.getRoot().getSnapshot(otherDir.file("b.txt").absolutePath).present
+    }
 }
@@ -0,0 +1,67 @@
+/*
+ * Copyright 2021 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.internal.hash;
+
+import java.util.Locale;
+
+/**
+ * The hash function used to hash the contents of files for internal fingerprints,
+ * like the virtual file system, the execution history and transform workspaces.
+ *
+ * The function can be changed via the {@value #SYSTEM_PROPERTY} system property.
+ * Hashes produced by different functions never match, so changing the function invalidates
+ * previously recorded file hashes. Build cache keys are always calculated from MD5 hashes of
+ * the file contents, so they stay the same regardless of the function chosen here.
+ */
+public enum FileContentHashFunction {
+    MD5(Hashing.md5(), ""),
+    MURMUR3(Hashing.murmur3(), "-murmur3");
+
+    public static final String SYSTEM_PROPERTY = "org.gradle.internal.hash.file-content";
+
+    private final HashFunction function;
+    private final String cacheNameSuffix;
+
+    FileContentHashFunction(HashFunction function, String cacheNameSuffix) {
+        this.function = function;
+        this.cacheNameSuffix = cacheNameSuffix;
+    }
+
+    public HashFunction getFunction() {
+        return function;
+    }
+
+    /**
+     * Returns the name to use for a persistent cache storing hashes produced by this function,
+     * so that hashes from different functions are never mixed.
+     */
+    public String cacheName(String baseName) {
+        return baseName + cacheNameSuffix;
+    }
+
+    public static FileContentHashFunction fromSystemProperties() {
+        String value = System.getProperty(SYSTEM_PROPERTY);
+        if (value == null || value.isEmpty()) {
+            return MD5;
+        }
+        try {
+            return valueOf(value.toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException(String.format("Unknown file content hash function '%s' set via system property '%s'.", value, SYSTEM_PROPERTY), e);
+        }
+    }
+}
@@ -42,6 +42,8 @@ private Hashing() {}
 
     private static final HashFunction SHA512 = MessageDigestHashFunction.of("SHA-512");
 
+    private static final HashFunction MURMUR3 = new Murmur3HashFunction();
+
     private static final HashFunction DEFAULT = MD5;
 
     /**
@@ -138,6 +140,47 @@ public static HashFunction sha512() {
         return SHA512;
     }
 
+    /**
+     * 128-bit MurmurHash3 hashing function.
+     *
+     * Much faster than the other functions, but not a cryptographic hash function.
+     * Only use it for fingerprints that stay on the local machine.
+     */
+    public static HashFunction murmur3() {
+        return MURMUR3;
+    }
+
+    private static class Murmur3HashFunction implements HashFunction {
+        @Override
+        public PrimitiveHasher newPrimitiveHasher() {
+            return new Murmur3Hasher();
+        }
+
+        @Override
+        public Hasher newHasher() {
+            return new DefaultHasher(newPrimitiveHasher());
+        }
+
+        @Override
+        public HashCode hashBytes(byte[] bytes) {
+            PrimitiveHasher hasher = newPrimitiveHasher();
+            hasher.putBytes(bytes);
+            return hasher.hash();
+        }
+
+        @Override
+        public HashCode hashString(CharSequence string) {
+            PrimitiveHasher hasher = newPrimitiveHasher();
+            hasher.putString(string);
+            return hasher.hash();
+        }
+
+        @Override
+        public int getHexDigits() {
+            return 32;
+        }
+    }
+
     private static abstract class MessageDigestHashFunction implements HashFunction {
         private final int hexDigits;
 
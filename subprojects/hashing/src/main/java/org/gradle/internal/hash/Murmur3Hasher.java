@@ -0,0 +1,215 @@
+/*
+ * Copyright 2021 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.internal.hash;
+
+import com.google.common.base.Charsets;
+
+/**
+ * Streaming implementation of the 128-bit x64 variant of MurmurHash3 with a seed of zero.
+ * Produces the same hashes as Guava's {@code Hashing.murmur3_128()}.
+ *
+ * Not a cryptographic hash function, so it must only be used for fingerprints that are never shared between machines.
+ */
+class Murmur3Hasher implements PrimitiveHasher {
+    private static final int CHUNK_SIZE = 16;
+    private static final long C1 = 0x87c37b91114253d5L;
+    private static final long C2 = 0x4cf5ad432745937fL;
+
+    private final byte[] buffer = new byte[CHUNK_SIZE];
+    private int bufferSize;
+    private long h1;
+    private long h2;
+    private long length;
+    private boolean done;
+
+    @Override
+    public void putByte(byte value) {
+        checkNotDone();
+        buffer[bufferSize++] = value;
+        if (bufferSize == CHUNK_SIZE) {
+            bmix(getLongLittleEndian(buffer, 0), getLongLittleEndian(buffer, 8));
+            bufferSize = 0;
+        }
+    }
+
+    @Override
+    public void putBytes(byte[] bytes) {
+        putBytes(bytes, 0, bytes.length);
+    }
+
+    @Override
+    public void putBytes(byte[] bytes, int off, int len) {
+        checkNotDone();
+        int end = off + len;
+        // Fill up a partially filled buffer first
+        if (bufferSize > 0) {
+            int count = Math.min(CHUNK_SIZE - bufferSize, len);
+            System.arraycopy(bytes, off, buffer, bufferSize, count);
+            bufferSize += count;
+            off += count;
+            if (bufferSize < CHUNK_SIZE) {
+                return;
+            }
+            bmix(getLongLittleEndian(buffer, 0), getLongLittleEndian(buffer, 8));
+            bufferSize = 0;
+        }
+        // Process whole chunks straight from the input
+        while (end - off >= CHUNK_SIZE) {
+            bmix(getLongLittleEndian(bytes, off), getLongLittleEndian(bytes, off + 8));
+            off += CHUNK_SIZE;
+        }
+        // Keep the rest for later
+        bufferSize = end - off;
+        System.arraycopy(bytes, off, buffer, 0, bufferSize);
+    }
+
+    @Override
+    public void putInt(int value) {
+        putByte((byte) value);
+        putByte((byte) (value >>> 8));
+        putByte((byte) (value >>> 16));
+        putByte((byte) (value >>> 24));
+    }
+
+    @Override
+    public void putLong(long value) {
+        putInt((int) value);
+        putInt((int) (value >>> 32));
+    }
+
+    @Override
+    public void putDouble(double value) {
+        putLong(Double.doubleToRawLongBits(value));
+    }
+
+    @Override
+    public void putBoolean(boolean value) {
+        putByte((byte) (value ? 1 : 0));
+    }
+
+    @Override
+    public void putString(CharSequence value) {
+        putBytes(value.toString().getBytes(Charsets.UTF_8));
+    }
+
+    @Override
+    public void putHash(HashCode hashCode) {
+        putBytes(hashCode.getBytes());
+    }
+
+    @Override
+    public HashCode hash() {
+        checkNotDone();
+        done = true;
+        if (bufferSize > 0) {
+            processRemaining();
+        }
+        h1 ^= length;
+        h2 ^= length;
+
+        h1 += h2;
+        h2 += h1;
+
+        h1 = fmix64(h1);
+        h2 = fmix64(h2);
+
+        h1 += h2;
+        h2 += h1;
+
+        byte[] bytes = new byte[CHUNK_SIZE];
+        putLongLittleEndian(bytes, 0, h1);
+        putLongLittleEndian(bytes, 8, h2);
+        return HashCode.fromBytesNoCopy(bytes);
+    }
+
+    private void checkNotDone() {
+        if (done) {
+            throw new IllegalStateException("Cannot reuse hasher!");
+        }
+    }
+
+    private void bmix(long k1, long k2) {
+        h1 ^= mixK1(k1);
+
+        h1 = Long.rotateLeft(h1, 27);
+        h1 += h2;
+        h1 = h1 * 5 + 0x52dce729;
+
+        h2 ^= mixK2(k2);
+
+        h2 = Long.rotateLeft(h2, 31);
+        h2 += h1;
+        h2 = h2 * 5 + 0x38495ab5;
+
+        length += CHUNK_SIZE;
+    }
+
+    private void processRemaining() {
+        long k1 = 0;
+        long k2 = 0;
+        for (int i = bufferSize - 1; i >= 8; i--) {
+            k2 ^= ((long) buffer[i] & 0xff) << ((i - 8) * 8);
+        }
+        for (int i = Math.min(bufferSize, 8) - 1; i >= 0; i--) {
+            k1 ^= ((long) buffer[i] & 0xff) << (i * 8);
+        }
+        h1 ^= mixK1(k1);
+        h2 ^= mixK2(k2);
+        length += bufferSize;
+        bufferSize = 0;
+    }
+
+    private static long mixK1(long k1) {
+        k1 *= C1;
+        k1 = Long.rotateLeft(k1, 31);
+        k1 *= C2;
+        return k1;
+    }
+
+    private static long mixK2(long k2) {
+        k2 *= C2;
+        k2 = Long.rotateLeft(k2, 33);
+        k2 *= C1;
+        return k2;
+    }
+
+    private static long fmix64(long k) {
+        k ^= k >>> 33;
+        k *= 0xff51afd7ed558ccdL;
+        k ^= k >>> 33;
+        k *= 0xc4ceb9fe1a85ec53L;
+        k ^= k >>> 33;
+        return k;
+    }
+
+    private static long getLongLittleEndian(byte[] bytes, int off) {
+        return ((long) bytes[off] & 0xff)
+            | ((long) bytes[off + 1] & 0xff) << 8
+            | ((long) bytes[off + 2] & 0xff) << 16
+            | ((long) bytes[off + 3] & 0xff) << 24
+            | ((long) bytes[off + 4] & 0xff) << 32
+            | ((long) bytes[off + 5] & 0xff) << 40
+            | ((long) bytes[off + 6] & 0xff) << 48
+            | ((long) bytes[off + 7] & 0xff) << 56;
+    }
+
+    private static void putLongLittleEndian(byte[] bytes, int off, long value) {
+        for (int i = 0; i < 8; i++) {
+            bytes[off + i] = (byte) (value >>> (i * 8));
+        }
+    }
+}
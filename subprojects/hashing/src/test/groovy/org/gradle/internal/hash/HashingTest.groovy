@@ -109,6 +109,58 @@ class HashingTest extends Specification {
         hashStrings(["abc", "de"]) != hashStrings(["ab", "cde"])
     }
 
+    def 'murmur3 produces same hashes as Guava for #length bytes fed in chunks of #chunkSize'() {
+        given:
+        def bytes = new byte[length]
+        new Random(length).nextBytes(bytes)
+        def hasher = Hashing.murmur3().newPrimitiveHasher()
+
+        when:
+        for (int off = 0; off < length; off += chunkSize) {
+            hasher.putBytes(bytes, off, Math.min(chunkSize, length - off))
+        }
+
+        then:
+        hasher.hash().toByteArray() == com.google.common.hash.Hashing.murmur3_128().hashBytes(bytes).asBytes()
+
+        where:
+        [length, chunkSize] << [[0, 1, 7, 8, 15, 16, 17, 31, 100, 8192], [1, 3, 16, 1000]].combinations()
+    }
+
+    def 'murmur3 hashes primitives like Guava'() {
+        given:
+        def hasher = Hashing.murmur3().newPrimitiveHasher()
+        def guavaHasher = com.google.common.hash.Hashing.murmur3_128().newHasher()
+
+        when:
+        hasher.putInt(123)
+        guavaHasher.putInt(123)
+        hasher.putByte(7 as byte)
+        guavaHasher.putByte(7 as byte)
+        hasher.putLong(Long.MAX_VALUE - 5)
+        guavaHasher.putLong(Long.MAX_VALUE - 5)
+        hasher.putBoolean(true)
+        guavaHasher.putBoolean(true)
+        hasher.putString("hello")
+        guavaHasher.putString("hello", com.google.common.base.Charsets.UTF_8)
+
+        then:
+        hasher.hash().toByteArray() == guavaHasher.hash().asBytes()
+    }
+
+    def 'cannot reuse murmur3 hasher'() {
+        given:
+        def hasher = Hashing.murmur3().newHasher()
+        hasher.putInt(1)
+        hasher.hash()
+
+        when:
+        hasher.putInt(2)
+
+        then:
+        thrown(IllegalStateException)
+    }
+
     def hashStrings(List<String> strings) {
         def hasher = Hashing.newHasher()
         strings.each { hasher.putString(it) }
@@ -32,6 +32,7 @@ import org.gradle.internal.classloader.ClasspathHasher
 import org.gradle.internal.classpath.CachedClasspathTransformer
 import org.gradle.internal.event.ListenerManager
 import org.gradle.internal.execution.ExecutionEngine
+import org.gradle.internal.execution.caching.CacheKeyFileHasher
 import org.gradle.internal.execution.fingerprint.FileCollectionSnapshotter
 import org.gradle.internal.execution.fingerprint.InputFingerprinter
 import org.gradle.internal.fingerprint.classpath.ClasspathFingerprinter
@@ -135,7 +136,8 @@ object BuildServices {
         fileCollectionSnapshotter: FileCollectionSnapshotter,
         stringInterner: StringInterner,
         fileCollectionFactory: FileCollectionFactory,
-        classpathFingerprinter: ClasspathFingerprinter
+        classpathFingerprinter: ClasspathFingerprinter,
+        cacheKeyFileHasher: CacheKeyFileHasher
     ) =
         if (BUILDSCRIPT_COMPILE_AVOIDANCE_ENABLED)
             CompileClasspathHasher(
@@ -147,7 +149,7 @@ object BuildServices {
                 fileCollectionFactory
             )
         else
-            DefaultClasspathHasher(classpathFingerprinter, fileCollectionFactory)
+            DefaultClasspathHasher(classpathFingerprinter, fileCollectionFactory, cacheKeyFileHasher)
 
     @Suppress("unused")
     fun createKotlinCompilerContextDisposer(listenerManager: ListenerManager) =
@@ -1,5 +1,6 @@
 plugins {
     id("gradlebuild.distribution.api-java")
+    id("gradlebuild.jmh")
 }
 
 dependencies {
@@ -15,6 +16,8 @@ dependencies {
     implementation(libs.commonsIo)
     implementation(libs.commonsLang)
 
+    jmhImplementation(platform(project(":distributions-dependencies")))
+
     testImplementation(project(":core-api"))
     testImplementation(testFixtures(project(":core")))
 
@@ -0,0 +1,177 @@
+/*
+ * Copyright 2021 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.cache.internal.btree;
+
+import org.gradle.internal.serialize.BaseSerializerFactory;
+import org.gradle.internal.serialize.Serializer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Random;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Compares the block stores backing {@link BTreePersistentIndexedCache}.
+ *
+ * The concurrent lookups only run in parallel with the memory-mapped store, the BTree serializes lookups for stores that can not be read concurrently.
+ */
+@Fork(1)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+@State(Scope.Benchmark)
+public class BlockStoreBenchmark {
+    private static final Serializer<String> STRING_SERIALIZER = BaseSerializerFactory.STRING_SERIALIZER;
+    private static final Serializer<byte[]> BYTES_SERIALIZER = BaseSerializerFactory.BYTE_ARRAY_SERIALIZER;
+
+    @Param({"file", "mapped"})
+    String storeType;
+
+    @Param({"10000"})
+    int entryCount;
+
+    @Param({"512"})
+    int valueSize;
+
+    File tempDir;
+    BTreePersistentIndexedCache<String, byte[]> cache;
+    BlockStore rawStore;
+    BlockPointer[] rawBlocks;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        tempDir = Files.createTempDirectory("block-store").toFile();
+        File cacheFile = new File(tempDir, "cache.bin");
+        cache = new BTreePersistentIndexedCache<>(cacheFile, STRING_SERIALIZER, BYTES_SERIALIZER, (short) 512, 512, createStore(cacheFile));
+        Random random = new Random(1234L);
+        for (int i = 0; i < entryCount; i++) {
+            byte[] value = new byte[valueSize];
+            random.nextBytes(value);
+            cache.put(key(i), value);
+        }
+
+        File rawFile = new File(tempDir, "raw.bin");
+        rawStore = createStore(rawFile);
+        rawStore.open(() -> {}, type -> new ValueBlock(valueSize));
+        rawBlocks = new BlockPointer[entryCount];
+        for (int i = 0; i < entryCount; i++) {
+            ValueBlock block = new ValueBlock(valueSize);
+            rawStore.attach(block);
+            rawStore.write(block);
+            rawBlocks[i] = block.getPos();
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        cache.close();
+        rawStore.close();
+        for (File file : tempDir.listFiles()) {
+            file.delete();
+        }
+        tempDir.delete();
+    }
+
+    private BlockStore createStore(File file) {
+        return storeType.equals("mapped") ? new MemoryMappedBlockStore(file) : new FileBackedBlockStore(file);
+    }
+
+    private static String key(int i) {
+        return "key-" + i;
+    }
+
+    @Benchmark
+    @Threads(1)
+    public void lookup(Blackhole blackhole) {
+        blackhole.consume(cache.get(key(ThreadLocalRandom.current().nextInt(entryCount))));
+    }
+
+    @Benchmark
+    @Threads(4)
+    public void concurrentLookup(Blackhole blackhole) {
+        blackhole.consume(cache.get(key(ThreadLocalRandom.current().nextInt(entryCount))));
+    }
+
+    @Benchmark
+    @Threads(1)
+    public void update() {
+        byte[] value = new byte[valueSize];
+        ThreadLocalRandom.current().nextBytes(value);
+        cache.put(key(ThreadLocalRandom.current().nextInt(entryCount)), value);
+    }
+
+    @Benchmark
+    @Threads(4)
+    public void concurrentBlockRead(Blackhole blackhole) {
+        if (storeType.equals("file")) {
+            // The file backed store has a single file position, so it can only be read under a lock
+            synchronized (rawStore) {
+                blackhole.consume(readRandomBlock());
+            }
+        } else {
+            blackhole.consume(readRandomBlock());
+        }
+    }
+
+    private ValueBlock readRandomBlock() {
+        return rawStore.read(rawBlocks[ThreadLocalRandom.current().nextInt(entryCount)], ValueBlock.class);
+    }
+
+    private static class ValueBlock extends BlockPayload {
+        private byte[] value;
+
+        ValueBlock(int size) {
+            this.value = new byte[size];
+        }
+
+        @Override
+        protected int getSize() {
+            return Block.INT_SIZE + value.length;
+        }
+
+        @Override
+        protected byte getType() {
+            return 0x42;
+        }
+
+        @Override
+        protected void read(DataInputStream inputStream) throws Exception {
+            value = new byte[inputStream.readInt()];
+            inputStream.readFully(value);
+        }
+
+        @Override
+        protected void write(DataOutputStream outputStream) throws Exception {
+            outputStream.writeInt(value.length);
+            outputStream.write(value);
+        }
+    }
+}
@@ -25,6 +25,7 @@
 import org.gradle.internal.time.CountdownTimer;
 import org.gradle.internal.time.Time;
 
+import javax.annotation.Nullable;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.concurrent.ArrayBlockingQueue;
@@ -39,6 +40,7 @@ class CacheAccessWorker implements Runnable, Stoppable, AsyncCacheAccess {
     private final BlockingQueue<Runnable> workQueue;
     private final String displayName;
     private final CacheAccess cacheAccess;
+    private final SharedReadAccess sharedReadAccess;
     private final long batchWindowMillis;
     private final long maximumLockingTimeMillis;
     private boolean closed;
@@ -48,8 +50,16 @@ class CacheAccessWorker implements Runnable, Stoppable, AsyncCacheAccess {
     private final ExecutorPolicy.CatchAndRecordFailures failureHandler = new ExecutorPolicy.CatchAndRecordFailures();
 
     CacheAccessWorker(String displayName, CacheAccess cacheAccess) {
+        this(displayName, cacheAccess, null);
+    }
+
+    /**
+     * @param sharedReadAccess when not null, consecutive reads that are queued while the worker holds the cache are run at the same time on the threads that requested them.
+     */
+    CacheAccessWorker(String displayName, CacheAccess cacheAccess, @Nullable SharedReadAccess sharedReadAccess) {
         this.displayName = displayName;
         this.cacheAccess = cacheAccess;
+        this.sharedReadAccess = sharedReadAccess;
         this.batchWindowMillis = 200;
         this.maximumLockingTimeMillis = 5000;
         HeapProportionalCacheSizer heapProportionalCacheSizer = new HeapProportionalCacheSizer();
@@ -81,7 +91,13 @@ public T call() throws Exception {
                 return task.create();
             }
         });
-        addToQueue(futureTask);
+        if (sharedReadAccess == null) {
+            addToQueue(futureTask);
+        } else {
+            ReadOperation readOperation = new ReadOperation(futureTask, Thread.currentThread());
+            addToQueue(readOperation);
+            readOperation.runWhenHandedOver();
+        }
         try {
             return futureTask.get();
         } catch (ExecutionException e) {
@@ -158,6 +174,8 @@ public void run() {
                 if (runnable instanceof FlushOperationsCommand) {
                     FlushOperationsCommand flushOperationsCommand = (FlushOperationsCommand) runnable;
                     flushOperationsCommand.completed();
+                } else if (runnable instanceof ReadOperation) {
+                    ((ReadOperation) runnable).cancel();
                 }
             }
             workerCompleted = true;
@@ -177,12 +195,12 @@ private void flushOperations(final Runnable updateOperation) {
                 public void run() {
                     CountdownTimer timer = Time.startCountdownTimer(maximumLockingTimeMillis, TimeUnit.MILLISECONDS);
                     if (updateOperation != null) {
-                        failureHandler.onExecute(updateOperation);
+                        execute(updateOperation);
                     }
                     Runnable otherOperation;
                     try {
                         while ((otherOperation = workQueue.poll(batchWindowMillis, TimeUnit.MILLISECONDS)) != null) {
-                            failureHandler.onExecute(otherOperation);
+                            execute(otherOperation);
                             final Class<? extends Runnable> runnableClass = otherOperation.getClass();
                             if (runnableClass == FlushOperationsCommand.class) {
                                 flushOperations.add((FlushOperationsCommand) otherOperation);
@@ -208,6 +226,138 @@ public void run() {
         }
     }
 
+    private void execute(Runnable operation) {
+        if (operation instanceof ReadOperation) {
+            List<ReadOperation> reads = new ArrayList<ReadOperation>();
+            reads.add((ReadOperation) operation);
+            while (workQueue.peek() instanceof ReadOperation) {
+                reads.add((ReadOperation) workQueue.poll());
+            }
+            if (reads.size() > 1 && sharedReadAccess.canShareReads()) {
+                executeShared(reads);
+            } else {
+                for (ReadOperation read : reads) {
+                    failureHandler.onExecute(read);
+                }
+            }
+        } else {
+            failureHandler.onExecute(operation);
+        }
+    }
+
+    private void executeShared(List<ReadOperation> reads) {
+        List<Thread> readers = new ArrayList<Thread>(reads.size());
+        try {
+            for (ReadOperation read : reads) {
+                sharedReadAccess.grantReadAccess(read.reader);
+                readers.add(read.reader);
+            }
+            for (ReadOperation read : reads) {
+                read.handOver();
+            }
+            for (ReadOperation read : reads) {
+                read.awaitCompletion();
+            }
+        } finally {
+            for (Thread reader : readers) {
+                sharedReadAccess.revokeReadAccess(reader);
+            }
+            // Run whatever has not been handed over on the worker itself
+            for (ReadOperation read : reads) {
+                if (!read.isHandedOver()) {
+                    failureHandler.onExecute(read);
+                }
+            }
+        }
+    }
+
+    /**
+     * Allows threads other than the one holding the cache to read from it.
+     */
+    interface SharedReadAccess {
+        /**
+         * Whether the caches can currently be read by several threads at the same time.
+         */
+        boolean canShareReads();
+
+        void grantReadAccess(Thread reader);
+
+        void revokeReadAccess(Thread reader);
+    }
+
+    /**
+     * A read that is either run by the worker, or handed back to the thread that requested it while the worker holds the cache.
+     */
+    private static class ReadOperation implements Runnable {
+        private final FutureTask<?> task;
+        private final Thread reader;
+        private final CountDownLatch handedOver = new CountDownLatch(1);
+        private final CountDownLatch completed = new CountDownLatch(1);
+        private volatile boolean runOnReaderThread;
+
+        ReadOperation(FutureTask<?> task, Thread reader) {
+            this.task = task;
+            this.reader = reader;
+        }
+
+        @Override
+        public void run() {
+            try {
+                task.run();
+            } finally {
+                handedOver.countDown();
+            }
+        }
+
+        void handOver() {
+            runOnReaderThread = true;
+            handedOver.countDown();
+        }
+
+        void cancel() {
+            task.cancel(false);
+            handedOver.countDown();
+        }
+
+        boolean isHandedOver() {
+            return runOnReaderThread;
+        }
+
+        /**
+         * Called by the reader: waits until the worker has either run the read, or handed it over to the reader.
+         */
+        void runWhenHandedOver() {
+            // The worker may be waiting for this reader, so keep waiting when interrupted
+            boolean interrupted = false;
+            while (true) {
+                try {
+                    handedOver.await();
+                    break;
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+            if (runOnReaderThread) {
+                try {
+                    task.run();
+                } finally {
+                    completed.countDown();
+                }
+            }
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        void awaitCompletion() {
+            try {
+                completed.await();
+            } catch (InterruptedException e) {
+                throw UncheckedException.throwAsUncheckedException(e);
+            }
+        }
+    }
+
     @Override
     public synchronized void stop() {
         if (!closed && !workerCompleted) {
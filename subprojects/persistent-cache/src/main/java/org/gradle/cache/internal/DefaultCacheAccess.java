@@ -31,6 +31,9 @@
 import org.gradle.cache.MultiProcessSafePersistentIndexedCache;
 import org.gradle.cache.PersistentIndexedCacheParameters;
 import org.gradle.cache.internal.btree.BTreePersistentIndexedCache;
+import org.gradle.cache.internal.btree.BlockStore;
+import org.gradle.cache.internal.btree.FileBackedBlockStore;
+import org.gradle.cache.internal.btree.MemoryMappedBlockStore;
 import org.gradle.cache.internal.cacheops.CacheAccessOperationsStack;
 import org.gradle.internal.Cast;
 import org.gradle.internal.Factories;
@@ -49,12 +52,16 @@
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.Callable;
 import java.util.concurrent.locks.Condition;
 import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReadWriteLock;
 import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
 
 import static org.gradle.cache.FileLockManager.LockMode.Exclusive;
 
@@ -76,11 +83,13 @@ public class DefaultCacheAccess implements CacheCoordinator {
 
     private ManagedExecutor cacheUpdateExecutor;
     private CacheAccessWorker cacheAccessWorker;
+    private volatile boolean memoryMappedCaches;
     private final Lock stateLock = new ReentrantLock(); // protects the following state
     private final Condition condition = stateLock.newCondition();
 
     private boolean open;
     private Thread owner;
+    private final Set<Thread> sharedReaders = new HashSet<Thread>();
     private FileLock fileLock;
     private FileLock.State stateAtOpen;
     private Runnable fileLockHeldByOwner;
@@ -120,7 +129,7 @@ public DefaultCacheAccess(String cacheDisplayName, File lockTarget, LockOptions
 
     private synchronized AsyncCacheAccess getCacheAccessWorker() {
         if (cacheAccessWorker == null) {
-            cacheAccessWorker = new CacheAccessWorker(cacheDisplayName, this);
+            cacheAccessWorker = new CacheAccessWorker(cacheDisplayName, this, new SharedReads());
             cacheUpdateExecutor = executorFactory.create("Cache worker for " + cacheDisplayName);
             cacheUpdateExecutor.execute(cacheAccessWorker);
         }
@@ -282,7 +291,10 @@ public <K, V> MultiProcessSafePersistentIndexedCache<K, V> newCache(final Persis
             if (entry == null) {
                 File cacheFile = findCacheFile(parameters);
                 LOG.debug("Creating new cache for {}, path {}, access {}", parameters.getCacheName(), cacheFile, this);
-                Factory<BTreePersistentIndexedCache<K, V>> indexedCacheFactory = () -> doCreateCache(cacheFile, parameters.getKeySerializer(), parameters.getValueSerializer());
+                if (parameters.isMemoryMapped()) {
+                    memoryMappedCaches = true;
+                }
+                Factory<BTreePersistentIndexedCache<K, V>> indexedCacheFactory = () -> doCreateCache(cacheFile, parameters.getKeySerializer(), parameters.getValueSerializer(), parameters.isMemoryMapped());
 
                 MultiProcessSafePersistentIndexedCache<K, V> indexedCache = new DefaultMultiProcessSafePersistentIndexedCache<K, V>(indexedCacheFactory, fileAccess);
                 CacheDecorator decorator = parameters.getCacheDecorator();
@@ -307,7 +319,8 @@ public <K, V> MultiProcessSafePersistentIndexedCache<K, V> newCache(final Persis
     }
 
     private <K, V> File findCacheFile(PersistentIndexedCacheParameters<K, V> parameters) {
-        return new File(baseDir, parameters.getCacheName() + ".bin");
+        // Memory mapped caches use a different file format, so keep them apart from the block-by-block ones
+        return new File(baseDir, parameters.getCacheName() + (parameters.isMemoryMapped() ? ".mapped.bin" : ".bin"));
     }
 
     @Override
@@ -315,8 +328,9 @@ public <K, V> boolean cacheExists(PersistentIndexedCacheParameters<K, V> paramet
         return findCacheFile(parameters).exists();
     }
 
-    <K, V> BTreePersistentIndexedCache<K, V> doCreateCache(File cacheFile, Serializer<K> keySerializer, Serializer<V> valueSerializer) {
-        return new BTreePersistentIndexedCache<>(cacheFile, keySerializer, valueSerializer);
+    <K, V> BTreePersistentIndexedCache<K, V> doCreateCache(File cacheFile, Serializer<K> keySerializer, Serializer<V> valueSerializer, boolean memoryMapped) {
+        BlockStore fileStore = memoryMapped ? new MemoryMappedBlockStore(cacheFile) : new FileBackedBlockStore(cacheFile);
+        return new BTreePersistentIndexedCache<>(cacheFile, keySerializer, valueSerializer, fileStore);
     }
 
     /**
@@ -391,7 +405,7 @@ private boolean onEndWork() {
     private FileLock getFileLock() {
         stateLock.lock();
         try {
-            if (Thread.currentThread() != owner) {
+            if (Thread.currentThread() != owner && !sharedReaders.contains(Thread.currentThread())) {
                 throw new IllegalStateException(String.format("The %s has not been locked for this thread. File lock: %s, owner: %s", cacheDisplayName, fileLock != null, owner));
             }
         } finally {
@@ -428,7 +442,41 @@ public void writeFile(Runnable action) throws LockTimeoutException, Insufficient
         }
     }
 
+    /**
+     * Lets the threads whose reads are run by the cache access worker use the file lock held by the worker.
+     */
+    private class SharedReads implements CacheAccessWorker.SharedReadAccess {
+        @Override
+        public boolean canShareReads() {
+            // Only memory mapped caches can be read concurrently, sharing the other caches would only add hand-overs
+            return memoryMappedCaches;
+        }
+
+        @Override
+        public void grantReadAccess(Thread reader) {
+            stateLock.lock();
+            try {
+                sharedReaders.add(reader);
+            } finally {
+                stateLock.unlock();
+            }
+        }
+
+        @Override
+        public void revokeReadAccess(Thread reader) {
+            stateLock.lock();
+            try {
+                sharedReaders.remove(reader);
+            } finally {
+                stateLock.unlock();
+            }
+        }
+    }
+
     private class UnitOfWorkFileAccess extends AbstractFileAccess {
+        // Reads can happen concurrently when the worker shares the file lock, modifications change the lock state so need to happen alone
+        private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
         @Override
         public String toString() {
             return cacheDisplayName;
@@ -436,17 +484,35 @@ public String toString() {
 
         @Override
         public <T> T readFile(Factory<? extends T> action) throws LockTimeoutException {
-            return getFileLock().readFile(action);
+            FileLock fileLock = getFileLock();
+            lock.readLock().lock();
+            try {
+                return fileLock.readFile(action);
+            } finally {
+                lock.readLock().unlock();
+            }
         }
 
         @Override
         public void updateFile(Runnable action) throws LockTimeoutException {
-            getFileLock().updateFile(action);
+            FileLock fileLock = getFileLock();
+            lock.writeLock().lock();
+            try {
+                fileLock.updateFile(action);
+            } finally {
+                lock.writeLock().unlock();
+            }
         }
 
         @Override
         public void writeFile(Runnable action) throws LockTimeoutException {
-            getFileLock().writeFile(action);
+            FileLock fileLock = getFileLock();
+            lock.writeLock().lock();
+            try {
+                fileLock.writeFile(action);
+            } finally {
+                lock.writeLock().unlock();
+            }
         }
     }
 
@@ -482,6 +548,7 @@ void assertCompatibleCacheParameters(PersistentIndexedCacheParameters<K, V> para
             checkCompatibleKeySerializer(faultMessages, parameters.getKeySerializer());
             checkCompatibleValueSerializer(faultMessages, parameters.getValueSerializer());
             checkCompatibleCacheDecorator(faultMessages, parameters.getCacheDecorator());
+            checkCompatibleMemoryMapping(faultMessages, parameters.isMemoryMapped());
 
             if (!faultMessages.isEmpty()) {
                 String lineSeparator = SystemProperties.getInstance().getLineSeparator();
@@ -524,6 +591,14 @@ private void checkCompatibleCacheDecorator(Collection<String> faultMessages, Cac
                         cacheDecorator, parameters.getCacheDecorator()));
             }
         }
+
+        private void checkCompatibleMemoryMapping(Collection<String> faultMessages, boolean memoryMapped) {
+            if (memoryMapped != parameters.isMemoryMapped()) {
+                faultMessages.add(
+                    String.format(" * Requested memory mapping (%s) doesn't match current memory mapping (%s)",
+                        memoryMapped, parameters.isMemoryMapped()));
+            }
+        }
     }
 
     @VisibleForTesting
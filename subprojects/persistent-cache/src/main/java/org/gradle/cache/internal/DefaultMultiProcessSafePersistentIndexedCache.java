@@ -80,7 +80,7 @@ public void afterLockAcquire(FileLock.State currentCacheState) {
     }
 
     @Override
-    public void finishWork() {
+    public synchronized void finishWork() {
         if (cache != null) {
             try {
                 fileAccess.writeFile(() -> cache.close());
@@ -94,7 +94,7 @@ public void finishWork() {
     public void beforeLockRelease(FileLock.State currentCacheState) {
     }
 
-    private BTreePersistentIndexedCache<K, V> getCache() {
+    private synchronized BTreePersistentIndexedCache<K, V> getCache() {
         if (cache == null) {
             // Use writeFile because the cache can internally recover from datafile
             // corruption, so we don't care at this level if it's corrupt
@@ -25,6 +25,8 @@
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import javax.annotation.Nullable;
+
 import java.io.DataInputStream;
 import java.io.DataOutputStream;
 import java.io.File;
@@ -34,12 +36,15 @@
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
 
 // todo - stream serialised value to file
 // todo - handle hash collisions (properly, this time)
 // todo - don't store null links to child blocks in leaf index blocks
 // todo - align block boundaries
-// todo - thread safety control
 // todo - merge small values into a single data block
 // todo - discard when file corrupt
 // todo - include data directly in index entry when serializer can guarantee small fixed sized data
@@ -55,6 +60,11 @@
     private final short maxChildIndexEntries;
     private final int minIndexChildNodes;
     private final StateCheckBlockStore store;
+    // Lookups only take the read lock when the underlying store can be read concurrently, everything else takes the write lock
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private final Lock readLock;
+    private final Lock writeLock = lock.writeLock();
+    private final AtomicInteger generation = new AtomicInteger();
     private HeaderBlock header;
 
     public BTreePersistentIndexedCache(File cacheFile, Serializer<K> keySerializer, Serializer<V> valueSerializer) {
@@ -63,13 +73,23 @@ public BTreePersistentIndexedCache(File cacheFile, Serializer<K> keySerializer,
 
     public BTreePersistentIndexedCache(File cacheFile, Serializer<K> keySerializer, Serializer<V> valueSerializer,
                                        short maxChildIndexEntries, int maxFreeListEntries) {
+        this(cacheFile, keySerializer, valueSerializer, maxChildIndexEntries, maxFreeListEntries, new FileBackedBlockStore(cacheFile));
+    }
+
+    public BTreePersistentIndexedCache(File cacheFile, Serializer<K> keySerializer, Serializer<V> valueSerializer, BlockStore fileStore) {
+        this(cacheFile, keySerializer, valueSerializer, (short) 512, 512, fileStore);
+    }
+
+    public BTreePersistentIndexedCache(File cacheFile, Serializer<K> keySerializer, Serializer<V> valueSerializer,
+                                       short maxChildIndexEntries, int maxFreeListEntries, BlockStore fileStore) {
         this.cacheFile = cacheFile;
         this.keyHasher = new KeyHasher<K>(keySerializer);
         this.serializer = valueSerializer;
         this.maxChildIndexEntries = maxChildIndexEntries;
         this.minIndexChildNodes = maxChildIndexEntries / 2;
-        BlockStore cachingStore = new CachingBlockStore(new FileBackedBlockStore(cacheFile), ImmutableSet.of(IndexBlock.class, FreeListBlockStore.FreeListBlock.class));
+        BlockStore cachingStore = new CachingBlockStore(fileStore, ImmutableSet.of(IndexBlock.class, FreeListBlockStore.FreeListBlock.class));
         this.store = new StateCheckBlockStore(new FreeListBlockStore(cachingStore, maxFreeListEntries));
+        this.readLock = fileStore.supportsConcurrentReads() ? lock.readLock() : writeLock;
         try {
             open();
         } catch (Exception e) {
@@ -122,15 +142,29 @@ public void run() {
     }
 
     public V get(K key) {
+        int observedGeneration = generation.get();
         try {
             try {
-                DataBlock block = header.getRoot().get(key);
-                if (block != null) {
-                    return block.getValue();
+                readLock.lock();
+                try {
+                    DataBlock block = lookup(key);
+                    if (block != null) {
+                        return block.getValue();
+                    }
+                    return null;
+                } finally {
+                    readLock.unlock();
                 }
-                return null;
             } catch (CorruptedCacheException e) {
-                rebuild();
+                writeLock.lock();
+                try {
+                    // Another reader may have run into the same problem and discarded the cache already
+                    if (observedGeneration == generation.get()) {
+                        rebuild();
+                    }
+                } finally {
+                    writeLock.unlock();
+                }
                 return null;
             }
         } catch (Exception e) {
@@ -138,7 +172,30 @@ public V get(K key) {
         }
     }
 
+    /**
+     * Finds the data block for the given key. Unlike {@link IndexBlock#find(long)}, this does not track the parents of the
+     * visited index blocks, so that several threads can look up keys at the same time.
+     */
+    @Nullable
+    private DataBlock lookup(K key) throws Exception {
+        long hashCode = keyHasher.getHashCode(key);
+        IndexBlock block = store.read(header.index.rootPos, IndexBlock.class);
+        while (true) {
+            int index = Collections.binarySearch(block.entries, new IndexEntry(hashCode));
+            if (index >= 0) {
+                return store.read(block.entries.get(index).dataBlock, DataBlock.class);
+            }
+            index = -index - 1;
+            BlockPointer childBlockPos = index == block.entries.size() ? block.tailPos : block.entries.get(index).childIndexBlock;
+            if (childBlockPos.isNull()) {
+                return null;
+            }
+            block = store.read(childBlockPos, IndexBlock.class);
+        }
+    }
+
     public void put(K key, V value) {
+        writeLock.lock();
         try {
             long hashCode = keyHasher.getHashCode(key);
             Lookup lookup = header.getRoot().find(hashCode);
@@ -160,10 +217,13 @@ public void put(K key, V value) {
             store.flush();
         } catch (Exception e) {
             throw new UncheckedIOException(String.format("Could not add entry '%s' to %s.", key, this), e);
+        } finally {
+            writeLock.unlock();
         }
     }
 
     public void remove(K key) {
+        writeLock.lock();
         try {
             Lookup lookup = header.getRoot().find(key);
             if (lookup.entry == null) {
@@ -175,6 +235,8 @@ public void remove(K key) {
             store.flush();
         } catch (Exception e) {
             throw new UncheckedIOException(String.format("Could not remove entry '%s' from %s.", key, this), e);
+        } finally {
+            writeLock.unlock();
         }
     }
 
@@ -187,20 +249,26 @@ private IndexBlock load(BlockPointer pos, IndexRoot root, IndexBlock parent, int
     }
 
     public void reset() {
-        close();
+        writeLock.lock();
         try {
+            close();
             open();
         } catch (Exception e) {
             throw new UncheckedIOException(e);
+        } finally {
+            writeLock.unlock();
         }
     }
 
     public void close() {
         LOGGER.debug("Closing {}", this);
+        writeLock.lock();
         try {
             store.close();
         } catch (Exception e) {
             throw new UncheckedIOException(e);
+        } finally {
+            writeLock.unlock();
         }
     }
 
@@ -210,6 +278,7 @@ public boolean isOpen() {
 
     private void rebuild() {
         LOGGER.warn("{} is corrupt. Discarding.", this);
+        generation.incrementAndGet();
         try {
             clear();
         } catch (Exception e) {
@@ -219,11 +288,14 @@ private void rebuild() {
     }
 
     public void verify() {
+        writeLock.lock();
         try {
             doVerify();
         } catch (Exception e) {
             throw new UncheckedIOException(String.format("Some problems were found when checking the integrity of %s.",
                     this), e);
+        } finally {
+            writeLock.unlock();
         }
     }
 
@@ -291,12 +363,15 @@ private void verifyTree(IndexBlock current, String prefix, Collection<BlockPaylo
     }
 
     public void clear() {
-        store.clear();
-        close();
+        writeLock.lock();
         try {
+            store.clear();
+            close();
             doOpen();
         } catch (Exception e) {
             throw UncheckedException.throwAsUncheckedException(e);
+        } finally {
+            writeLock.unlock();
         }
     }
 
@@ -62,6 +62,13 @@ public interface BlockStore {
      */
     void flush();
 
+    /**
+     * Whether {@link #read(BlockPointer, Class)} can be called by several threads at the same time, as long as no thread modifies this store.
+     */
+    default boolean supportsConcurrentReads() {
+        return false;
+    }
+
     interface Factory {
         Object create(Class<? extends BlockPayload> type);
     }
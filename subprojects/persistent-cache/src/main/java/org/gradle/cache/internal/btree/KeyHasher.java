@@ -35,7 +35,7 @@ public KeyHasher(Serializer<K> serializer) {
         this.serializer = serializer;
     }
 
-    long getHashCode(K key) throws Exception {
+    synchronized long getHashCode(K key) throws Exception {
         serializer.write(encoder, key);
         encoder.flush();
         return digestStream.getChecksum();
@@ -0,0 +1,535 @@
+/*
+ * Copyright 2021 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.gradle.cache.internal.btree;
+
+import org.gradle.api.UncheckedIOException;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * A {@link BlockStore} that memory-maps the backing file in fixed-size regions and serves reads straight from the mapped pages.
+ *
+ * <p>Access to blocks is guarded by a set of striped read-write locks, keyed by the region a block starts in. Blocks never overlap,
+ * so readers of different blocks never wait for each other, and a reader only waits for a writer of a block starting in the same stripe.
+ * Growing the mapping takes an exclusive lock over all regions.</p>
+ *
+ * <p>Mapped regions always cover whole regions of the file, so the file is padded with zeroes beyond the last block. The file starts
+ * with a header that records the logical length of the store, so the padding is ignored when the file is opened again, and nothing
+ * ever needs to be truncated. That is important on Windows, where a file cannot be truncated while parts of it are still mapped.
+ * Because of the header, the files written by this store can not be read by {@link FileBackedBlockStore}, and the other way round.
+ * A file in the wrong format is reported as corrupt.</p>
+ */
+public class MemoryMappedBlockStore implements BlockStore {
+    public static final int DEFAULT_REGION_SIZE = 1024 * 1024;
+    private static final long MAGIC = 0x47524d4d41504231L;
+    private static final int FILE_HEADER_SIZE = 2 * Block.LONG_SIZE; // magic, logical length
+    private static final int LENGTH_OFFSET = Block.LONG_SIZE;
+    private static final int LOCK_STRIPES = 16;
+    private static final MappedByteBuffer[] NO_REGIONS = new MappedByteBuffer[0];
+
+    private final File cacheFile;
+    private final int regionSize;
+    private final int regionShift;
+    private final ReadWriteLock mappingLock = new ReentrantReadWriteLock();
+    private final ReadWriteLock[] stripes;
+    private RandomAccessFile file;
+    private FileChannel channel;
+    private boolean readOnly;
+    private volatile MappedByteBuffer[] regions = NO_REGIONS;
+    private volatile long length;
+    private long nextBlock;
+    private Factory factory;
+
+    public MemoryMappedBlockStore(File cacheFile) {
+        this(cacheFile, DEFAULT_REGION_SIZE);
+    }
+
+    public MemoryMappedBlockStore(File cacheFile, int regionSize) {
+        if (regionSize < FILE_HEADER_SIZE || Integer.bitCount(regionSize) != 1) {
+            throw new IllegalArgumentException("Region size must be a power of two of at least " + FILE_HEADER_SIZE + ", but was " + regionSize);
+        }
+        this.cacheFile = cacheFile;
+        this.regionSize = regionSize;
+        this.regionShift = Integer.numberOfTrailingZeros(regionSize);
+        this.stripes = new ReadWriteLock[LOCK_STRIPES];
+        for (int i = 0; i < stripes.length; i++) {
+            stripes[i] = new ReentrantReadWriteLock();
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "memory-mapped cache '" + cacheFile + "'";
+    }
+
+    @Override
+    public void open(Runnable runnable, Factory factory) {
+        this.factory = factory;
+        try {
+            cacheFile.getParentFile().mkdirs();
+            file = openRandomAccessFile();
+            channel = file.getChannel();
+            long fileSize = file.length();
+            if (fileSize == 0) {
+                ensureMapped(FILE_HEADER_SIZE);
+                writeHeader(0);
+                runnable.run();
+                return;
+            }
+            if (fileSize < FILE_HEADER_SIZE) {
+                throw corruptedException();
+            }
+            ensureMapped(fileSize);
+            ByteBuffer header = regions[0].duplicate();
+            long recordedLength = header.getLong(LENGTH_OFFSET);
+            if (header.getLong(0) != MAGIC || recordedLength < 0 || recordedLength > fileSize - FILE_HEADER_SIZE) {
+                throw corruptedException();
+            }
+            length = recordedLength;
+            nextBlock = recordedLength;
+            if (recordedLength == 0) {
+                // Cleared, or never written to
+                runnable.run();
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private RuntimeException corruptedException() {
+        return new CorruptedCacheException(String.format("Unexpected header found in %s.", this));
+    }
+
+    /**
+     * Records the logical length of the store, the padding after it is never read.
+     */
+    private void writeHeader(long length) {
+        ByteBuffer header = regions[0].duplicate();
+        header.putLong(0, MAGIC);
+        header.putLong(LENGTH_OFFSET, length);
+        this.length = length;
+    }
+
+    private synchronized void extendTo(long end) {
+        if (end > length) {
+            writeHeader(end);
+        }
+    }
+
+    private RandomAccessFile openRandomAccessFile() throws FileNotFoundException {
+        try {
+            readOnly = false;
+            return new RandomAccessFile(cacheFile, "rw");
+        } catch (FileNotFoundException e) {
+            readOnly = true;
+            return new RandomAccessFile(cacheFile, "r");
+        }
+    }
+
+    @Override
+    public void close() {
+        mappingLock.writeLock().lock();
+        try {
+            regions = NO_REGIONS;
+            file.close();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } finally {
+            mappingLock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public void clear() {
+        try {
+            ensureMapped(FILE_HEADER_SIZE);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        mappingLock.writeLock().lock();
+        try {
+            synchronized (this) {
+                // The old blocks stay in the file, but lie beyond the logical length and are overwritten as new blocks are added
+                nextBlock = 0;
+                writeHeader(0);
+            }
+        } finally {
+            mappingLock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public void attach(BlockPayload block) {
+        if (block.getBlock() == null) {
+            block.setBlock(new BlockImpl(block));
+        }
+    }
+
+    @Override
+    public void remove(BlockPayload block) {
+        BlockImpl blockImpl = (BlockImpl) block.getBlock();
+        blockImpl.detach();
+    }
+
+    @Override
+    public void flush() {
+    }
+
+    @Override
+    public boolean supportsConcurrentReads() {
+        return true;
+    }
+
+    @Override
+    public <T extends BlockPayload> T readFirst(Class<T> payloadType) {
+        return read(BlockPointer.pos(0), payloadType);
+    }
+
+    @Override
+    public <T extends BlockPayload> T read(BlockPointer pos, Class<T> payloadType) {
+        assert !pos.isNull();
+        try {
+            T payload = payloadType.cast(factory.create(payloadType));
+            BlockImpl block = new BlockImpl(payload, pos);
+            block.read();
+            return payload;
+        } catch (CorruptedCacheException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Override
+    public void write(BlockPayload block) {
+        BlockImpl blockImpl = (BlockImpl) block.getBlock();
+        try {
+            blockImpl.write();
+        } catch (CorruptedCacheException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private synchronized long alloc(long length) {
+        long pos = nextBlock;
+        nextBlock += length;
+        return pos;
+    }
+
+    private Lock stripeFor(long pos, boolean exclusive) {
+        ReadWriteLock stripe = stripes[(int) ((pos >>> regionShift) & (LOCK_STRIPES - 1))];
+        return exclusive ? stripe.writeLock() : stripe.readLock();
+    }
+
+    /**
+     * Makes sure that all regions up to the given file offset are mapped.
+     */
+    private void ensureMapped(long limit) throws IOException {
+        int requiredRegions = (int) ((limit + regionSize - 1) >>> regionShift);
+        if (regions.length >= requiredRegions) {
+            return;
+        }
+        mappingLock.writeLock().lock();
+        try {
+            MappedByteBuffer[] current = regions;
+            if (current.length >= requiredRegions) {
+                return;
+            }
+            MappedByteBuffer[] grown = Arrays.copyOf(current, requiredRegions);
+            for (int i = 0; i < requiredRegions; i++) {
+                // The last region of a read-only file may be partial, so always remap it
+                if (grown[i] == null || grown[i].capacity() < regionSize) {
+                    grown[i] = mapRegion(i);
+                }
+            }
+            regions = grown;
+        } finally {
+            mappingLock.writeLock().unlock();
+        }
+    }
+
+    private MappedByteBuffer mapRegion(int index) throws IOException {
+        long start = (long) index << regionShift;
+        if (readOnly) {
+            long size = Math.min(regionSize, channel.size() - start);
+            return channel.map(FileChannel.MapMode.READ_ONLY, start, size);
+        }
+        return channel.map(FileChannel.MapMode.READ_WRITE, start, regionSize);
+    }
+
+    private final class BlockImpl extends Block {
+        private static final int HEADER_SIZE = 1 + INT_SIZE; // type, payload size
+        private static final int TAIL_SIZE = INT_SIZE;
+
+        private BlockPointer pos;
+        private int payloadSize;
+
+        private BlockImpl(BlockPayload payload, BlockPointer pos) {
+            this(payload);
+            setPos(pos);
+        }
+
+        public BlockImpl(BlockPayload payload) {
+            super(payload);
+            pos = null;
+            payloadSize = -1;
+        }
+
+        @Override
+        public boolean hasPos() {
+            return pos != null;
+        }
+
+        @Override
+        public BlockPointer getPos() {
+            if (pos == null) {
+                pos = BlockPointer.pos(alloc(getSize()));
+            }
+            return pos;
+        }
+
+        @Override
+        public void setPos(BlockPointer pos) {
+            assert this.pos == null && !pos.isNull();
+            this.pos = pos;
+        }
+
+        @Override
+        public int getSize() {
+            if (payloadSize < 0) {
+                payloadSize = getPayload().getSize();
+            }
+            return payloadSize + HEADER_SIZE + TAIL_SIZE;
+        }
+
+        @Override
+        public void setSize(int size) {
+            int newPayloadSize = size - HEADER_SIZE - TAIL_SIZE;
+            assert newPayloadSize >= payloadSize;
+            payloadSize = newPayloadSize;
+        }
+
+        public void write() throws Exception {
+            long pos = FILE_HEADER_SIZE + getPos().getPos();
+            long finalSize = pos + getSize();
+            ensureMapped(finalSize);
+
+            Lock lock = stripeFor(pos, true);
+            mappingLock.readLock().lock();
+            lock.lock();
+            try {
+                RegionOutputStream output = new RegionOutputStream(pos, finalSize);
+                DataOutputStream outputStream = new DataOutputStream(output);
+
+                BlockPayload payload = getPayload();
+
+                // Write header
+                outputStream.writeByte(payload.getType());
+                outputStream.writeInt(payloadSize);
+
+                // Write body
+                payload.write(outputStream);
+
+                // Write count
+                long bytesWritten = output.getPosition() - pos;
+                if (bytesWritten > Integer.MAX_VALUE) {
+                    throw new IllegalArgumentException("Block payload exceeds maximum size");
+                }
+                outputStream.writeInt((int) bytesWritten);
+            } finally {
+                lock.unlock();
+                mappingLock.readLock().unlock();
+            }
+
+            extendTo(finalSize - FILE_HEADER_SIZE);
+        }
+
+        public void read() throws Exception {
+            assert getPos().getPos() >= 0;
+            long pos = FILE_HEADER_SIZE + getPos().getPos();
+            long fileSize = FILE_HEADER_SIZE + length;
+            if (pos + HEADER_SIZE >= fileSize) {
+                throw blockCorruptedException();
+            }
+
+            Lock lock = stripeFor(pos, false);
+            mappingLock.readLock().lock();
+            lock.lock();
+            try {
+                RegionInputStream input = new RegionInputStream(pos, fileSize);
+                DataInputStream inputStream = new DataInputStream(input);
+
+                BlockPayload payload = getPayload();
+
+                // Read header
+                byte type = inputStream.readByte();
+                if (type != payload.getType()) {
+                    throw blockCorruptedException();
+                }
+
+                // Read body
+                payloadSize = inputStream.readInt();
+                if (pos + HEADER_SIZE + TAIL_SIZE + payloadSize > fileSize) {
+                    throw blockCorruptedException();
+                }
+                payload.read(inputStream);
+
+                // Read and verify count
+                long actualCount = input.getPosition() - pos;
+                long count = inputStream.readInt();
+                if (actualCount != count) {
+                    throw blockCorruptedException();
+                }
+            } finally {
+                lock.unlock();
+                mappingLock.readLock().unlock();
+            }
+        }
+
+        @Override
+        public RuntimeException blockCorruptedException() {
+            return new CorruptedCacheException(String.format("Corrupted %s found in %s.", this,
+                    MemoryMappedBlockStore.this));
+        }
+    }
+
+    /**
+     * Reads from the mapped regions, starting at a given offset. Each stream works on its own view of the regions, so
+     * that concurrent readers do not interfere with each other.
+     */
+    private class RegionInputStream extends InputStream {
+        private final MappedByteBuffer[] regions = MemoryMappedBlockStore.this.regions;
+        private final long limit;
+        private long position;
+        private ByteBuffer current;
+
+        RegionInputStream(long position, long limit) {
+            this.position = position;
+            this.limit = limit;
+        }
+
+        long getPosition() {
+            return position;
+        }
+
+        @Override
+        public int read() throws IOException {
+            if (position >= limit) {
+                return -1;
+            }
+            ByteBuffer buffer = currentRegion();
+            position++;
+            return buffer.get() & 0xff;
+        }
+
+        @Override
+        public int read(byte[] bytes, int offset, int length) throws IOException {
+            if (length == 0) {
+                return 0;
+            }
+            if (position >= limit) {
+                return -1;
+            }
+            ByteBuffer buffer = currentRegion();
+            int count = (int) Math.min(Math.min(length, buffer.remaining()), limit - position);
+            buffer.get(bytes, offset, count);
+            position += count;
+            return count;
+        }
+
+        private ByteBuffer currentRegion() throws IOException {
+            if (current == null || !current.hasRemaining()) {
+                int index = (int) (position >>> regionShift);
+                if (index >= regions.length) {
+                    throw new EOFException();
+                }
+                current = regions[index].duplicate();
+                current.position((int) (position & (regionSize - 1)));
+            }
+            return current;
+        }
+    }
+
+    /**
+     * Writes to the mapped regions, starting at a given offset. Refuses to write past the space allocated for the block.
+     */
+    private class RegionOutputStream extends OutputStream {
+        private final MappedByteBuffer[] regions = MemoryMappedBlockStore.this.regions;
+        private final long limit;
+        private long position;
+        private ByteBuffer current;
+
+        RegionOutputStream(long position, long limit) {
+            this.position = position;
+            this.limit = limit;
+        }
+
+        long getPosition() {
+            return position;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            checkCapacity(1);
+            currentRegion().put((byte) b);
+            position++;
+        }
+
+        @Override
+        public void write(byte[] bytes, int offset, int length) throws IOException {
+            checkCapacity(length);
+            while (length > 0) {
+                ByteBuffer buffer = currentRegion();
+                int count = Math.min(length, buffer.remaining());
+                buffer.put(bytes, offset, count);
+                position += count;
+                offset += count;
+                length -= count;
+            }
+        }
+
+        private void checkCapacity(int length) {
+            if (position + length > limit) {
+                throw new IllegalArgumentException("Block payload exceeds allocated size");
+            }
+        }
+
+        private ByteBuffer currentRegion() {
+            if (current == null || !current.hasRemaining()) {
+                current = regions[(int) (position >>> regionShift)].duplicate();
+                current.position((int) (position & (regionSize - 1)));
+            }
+            return current;
+        }
+    }
+}
@@ -47,6 +47,71 @@ class CacheAccessWorkerTest extends ConcurrentSpec {
         cacheAccessWorker?.stop()
     }
 
+    def "runs consecutive reads at the same time on the reading threads when reads can be shared"() {
+        given:
+        def sharedReadAccess = Mock(CacheAccessWorker.SharedReadAccess)
+        def worker = new CacheAccessWorker("<cache>", cacheAccess, sharedReadAccess)
+        worker.enqueue {
+            // Hold on to the cache until both reads are queued
+            while (worker.workQueue.size() < 2) {
+                Thread.sleep(10)
+            }
+        }
+        start(worker)
+        def firstReader
+        def firstResult
+        def secondReader
+        def secondResult
+
+        when:
+        async {
+            start {
+                firstReader = Thread.currentThread()
+                firstResult = worker.read {
+                    instant.first
+                    thread.blockUntil.second
+                    Thread.currentThread()
+                }
+            }
+            start {
+                secondReader = Thread.currentThread()
+                secondResult = worker.read {
+                    instant.second
+                    thread.blockUntil.first
+                    Thread.currentThread()
+                }
+            }
+        }
+
+        then:
+        firstResult == firstReader
+        secondResult == secondReader
+        1 * sharedReadAccess.canShareReads() >> true
+        2 * sharedReadAccess.grantReadAccess(_)
+        2 * sharedReadAccess.revokeReadAccess(_)
+
+        cleanup:
+        worker?.stop()
+    }
+
+    def "runs a single read on the worker"() {
+        given:
+        def sharedReadAccess = Stub(CacheAccessWorker.SharedReadAccess) {
+            canShareReads() >> false
+        }
+        def worker = new CacheAccessWorker("<cache>", cacheAccess, sharedReadAccess)
+        start(worker)
+
+        when:
+        def result = worker.read { Thread.currentThread() }
+
+        then:
+        result != Thread.currentThread()
+
+        cleanup:
+        worker?.stop()
+    }
+
     def "read propagates failure"() {
         given:
         def failure = new RuntimeException()
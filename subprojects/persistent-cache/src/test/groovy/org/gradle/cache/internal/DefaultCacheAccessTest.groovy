@@ -55,7 +55,7 @@ class DefaultCacheAccessTest extends ConcurrentSpec {
     private DefaultCacheAccess newAccess(FileLockManager.LockMode lockMode) {
         new DefaultCacheAccess("<display-name>", lockFile, mode(lockMode), cacheDir, lockManager, initializationAction, cleanupAction, executorFactory) {
             @Override
-            <K, V> BTreePersistentIndexedCache<K, V> doCreateCache(File cacheFile, Serializer<K> keySerializer, Serializer<V> valueSerializer) {
+            <K, V> BTreePersistentIndexedCache<K, V> doCreateCache(File cacheFile, Serializer<K> keySerializer, Serializer<V> valueSerializer, boolean memoryMapped) {
                 return backingCache
             }
         }
@@ -0,0 +1,205 @@
+/*
+ * Copyright 2021 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.cache.internal.btree
+
+import org.gradle.internal.serialize.DefaultSerializer
+import org.gradle.test.fixtures.file.TestNameTestDirectoryProvider
+import org.junit.Rule
+import spock.lang.Specification
+
+import java.util.concurrent.Callable
+import java.util.concurrent.Executors
+
+class MemoryMappedBlockStoreTest extends Specification {
+    @Rule
+    TestNameTestDirectoryProvider tmpDir = new TestNameTestDirectoryProvider(getClass())
+    def cacheFile = tmpDir.file("cache.bin")
+
+    def "rejects region size which is not a power of two"() {
+        when:
+        new MemoryMappedBlockStore(cacheFile, 1000)
+
+        then:
+        thrown(IllegalArgumentException)
+    }
+
+    def "can add and read entries spanning several regions"() {
+        def cache = createCache(new MemoryMappedBlockStore(cacheFile, 128))
+
+        when:
+        (1..500).each { cache.put("key-$it".toString(), "value-$it" * 10) }
+
+        then:
+        (1..500).every { cache.get("key-$it".toString()) == "value-$it" * 10 }
+        cache.verify()
+
+        cleanup:
+        cache?.close()
+    }
+
+    def "does not grow the file when reopened"() {
+        def cache = createCache(new MemoryMappedBlockStore(cacheFile, 64 * 1024))
+        cache.put("key-0", "value-0")
+        cache.close()
+        def length = cacheFile.length()
+
+        when:
+        (1..5).each {
+            cache = createCache(new MemoryMappedBlockStore(cacheFile, 64 * 1024))
+            cache.put("key-$it".toString(), "value-$it")
+            cache.close()
+        }
+        cache = createCache(new MemoryMappedBlockStore(cacheFile, 64 * 1024))
+
+        then:
+        cacheFile.length() == length
+        (0..5).every { cache.get("key-$it".toString()) == "value-$it" }
+        cache.verify()
+
+        cleanup:
+        cache?.close()
+    }
+
+    def "discards cache written by file backed store"() {
+        def cache = createCache(new FileBackedBlockStore(cacheFile))
+        (1..100).each { cache.put("key-$it".toString(), "value-$it") }
+        cache.close()
+
+        when:
+        cache = createCache(new MemoryMappedBlockStore(cacheFile, 256))
+
+        then:
+        cache.get("key-1") == null
+
+        when:
+        cache.put("key-1", "other")
+
+        then:
+        cache.get("key-1") == "other"
+        cache.verify()
+
+        cleanup:
+        cache?.close()
+    }
+
+    def "can clear entries"() {
+        def cache = createCache(new MemoryMappedBlockStore(cacheFile, 128))
+        (1..100).each { cache.put("key-$it".toString(), "value-$it") }
+
+        when:
+        cache.clear()
+        cache.put("key-1", "other")
+
+        then:
+        cache.get("key-1") == "other"
+        cache.get("key-2") == null
+
+        when:
+        cache.close()
+        cache = createCache(new MemoryMappedBlockStore(cacheFile, 128))
+
+        then:
+        cache.get("key-1") == "other"
+        (2..100).every { cache.get("key-$it".toString()) == null }
+        cache.verify()
+
+        cleanup:
+        cache?.close()
+    }
+
+    def "can look up entries from multiple threads concurrently"() {
+        def cache = createCache(new MemoryMappedBlockStore(cacheFile, 256))
+        (1..200).each { cache.put("key-$it".toString(), "value-$it") }
+        def executor = Executors.newFixedThreadPool(4)
+
+        when:
+        def results = executor.invokeAll((1..400).collect { i ->
+            { ->
+                cache.get("key-${i % 200 + 1}".toString())
+            } as Callable<String>
+        })
+
+        then:
+        results.withIndex().every { result, i -> result.get() == "value-${(i + 1) % 200 + 1}" }
+        cache.verify()
+
+        cleanup:
+        executor.shutdown()
+        cache?.close()
+    }
+
+    def "can read blocks from multiple threads concurrently"() {
+        def store = new MemoryMappedBlockStore(cacheFile, 256)
+        def cache = createCache(store)
+        (1..200).each { cache.put("key-$it".toString(), "value-$it") }
+        cache.close()
+        store.open({}, { type -> type.newInstance() } as BlockStore.Factory)
+        def blocks = (0..10).collect { new TestBlock(it) }
+        blocks.each { store.attach(it); store.write(it) }
+        def executor = Executors.newFixedThreadPool(4)
+
+        when:
+        def results = executor.invokeAll((1..100).collect { i ->
+            { ->
+                def block = blocks[i % blocks.size()]
+                store.read(block.pos, TestBlock).value
+            } as Callable<Integer>
+        })
+
+        then:
+        results.withIndex().every { result, i -> result.get() == (i + 1) % blocks.size() }
+
+        cleanup:
+        executor.shutdown()
+        store.close()
+    }
+
+    private BTreePersistentIndexedCache<String, String> createCache(BlockStore store) {
+        new BTreePersistentIndexedCache<String, String>(cacheFile, new DefaultSerializer<String>(), new DefaultSerializer<String>(), (short) 4, 100, store)
+    }
+
+    static class TestBlock extends BlockPayload {
+        int value
+
+        TestBlock() {
+        }
+
+        TestBlock(int value) {
+            this.value = value
+        }
+
+        @Override
+        protected int getSize() {
+            return Block.INT_SIZE
+        }
+
+        @Override
+        protected byte getType() {
+            return 0x55
+        }
+
+        @Override
+        protected void read(DataInputStream inputStream) throws Exception {
+            value = inputStream.readInt()
+        }
+
+        @Override
+        protected void write(DataOutputStream outputStream) throws Exception {
+            outputStream.writeInt(value)
+        }
+    }
+}
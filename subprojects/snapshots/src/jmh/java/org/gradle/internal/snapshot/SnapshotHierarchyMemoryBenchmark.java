@@ -0,0 +1,156 @@
+/*
+ * Copyright 2021 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.internal.snapshot;
+
+import org.gradle.internal.file.FileMetadata.AccessType;
+import org.gradle.internal.file.impl.DefaultFileMetadata;
+import org.gradle.internal.hash.HashCode;
+import org.gradle.internal.hash.Hashing;
+import org.gradle.internal.vfs.impl.DefaultSnapshotHierarchy;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.File;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Compares the retained snapshot hierarchy for a synthetic tree of a million files,
+ * with the children of directories kept as snapshot objects and packed via {@link PackedChildMap}.
+ *
+ * The retained heap is printed during setup; run with a large enough heap, e.g. {@code -Xmx4g}.
+ */
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@State(Scope.Benchmark)
+public class SnapshotHierarchyMemoryBenchmark {
+    private static final String ROOT = File.separator + "synthetic";
+
+    @Param({"objects", "packed"})
+    String representation;
+
+    @Param({"100"})
+    int projectCount;
+
+    @Param({"10"})
+    int directoriesPerProject;
+
+    @Param({"1000"})
+    int filesPerDirectory;
+
+    SnapshotHierarchy hierarchy;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        long heapBefore = retainedHeap();
+        DirectorySnapshot root = createTree();
+        hierarchy = DefaultSnapshotHierarchy.empty(CaseSensitivity.CASE_SENSITIVE)
+            .store(root.getAbsolutePath(), root, SnapshotHierarchy.NodeDiffListener.NOOP);
+        long heapAfter = retainedHeap();
+        System.out.printf("%n%s: retained %d MB for %d files%n",
+            representation,
+            (heapAfter - heapBefore) / (1024 * 1024),
+            (long) projectCount * directoriesPerProject * filesPerDirectory);
+    }
+
+    private DirectorySnapshot createTree() {
+        List<FileSystemLocationSnapshot> projects = new ArrayList<>(projectCount);
+        for (int project = 0; project < projectCount; project++) {
+            String projectPath = ROOT + File.separator + projectName(project);
+            List<FileSystemLocationSnapshot> directories = new ArrayList<>(directoriesPerProject);
+            for (int directory = 0; directory < directoriesPerProject; directory++) {
+                String directoryPath = projectPath + File.separator + directoryName(directory);
+                List<FileSystemLocationSnapshot> files = new ArrayList<>(filesPerDirectory);
+                for (int file = 0; file < filesPerDirectory; file++) {
+                    String fileName = fileName(file);
+                    String filePath = directoryPath + File.separator + fileName;
+                    files.add(new RegularFileSnapshot(filePath, fileName, Hashing.hashString(filePath), DefaultFileMetadata.file(file, 1024 + file, AccessType.DIRECT)));
+                }
+                directories.add(directory(directoryPath, directoryName(directory), files));
+            }
+            projects.add(directory(projectPath, projectName(project), directories));
+        }
+        return directory(ROOT, "synthetic", projects);
+    }
+
+    private DirectorySnapshot directory(String absolutePath, String name, List<FileSystemLocationSnapshot> children) {
+        HashCode hash = Hashing.hashString(absolutePath);
+        return representation.equals("packed")
+            ? new DirectorySnapshot(absolutePath, name, AccessType.DIRECT, hash, PackedChildMap.pack(absolutePath, children))
+            : new DirectorySnapshot(absolutePath, name, AccessType.DIRECT, hash, ChildMapFactory.childMapFromSorted(toEntries(children)));
+    }
+
+    private static List<ChildMap.Entry<FileSystemLocationSnapshot>> toEntries(List<FileSystemLocationSnapshot> children) {
+        List<ChildMap.Entry<FileSystemLocationSnapshot>> entries = new ArrayList<>(children.size());
+        for (FileSystemLocationSnapshot child : children) {
+            entries.add(new ChildMap.Entry<>(child.getName(), child));
+        }
+        return entries;
+    }
+
+    private static String projectName(int project) {
+        return String.format("project-%03d", project);
+    }
+
+    private static String directoryName(int directory) {
+        return String.format("dir-%02d", directory);
+    }
+
+    private static String fileName(int file) {
+        return String.format("File%04d.java", file);
+    }
+
+    private static long retainedHeap() {
+        MemoryMXBean memoryBean = ManagementFactory.getMemoryMXBean();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        return memoryBean.getHeapMemoryUsage().getUsed();
+    }
+
+    @Benchmark
+    public void lookupFile(Blackhole blackhole) {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        String path = ROOT + File.separator + projectName(random.nextInt(projectCount))
+            + File.separator + directoryName(random.nextInt(directoriesPerProject))
+            + File.separator + fileName(random.nextInt(filesPerDirectory));
+        blackhole.consume(hierarchy.getMetadata(path));
+    }
+
+    @Benchmark
+    public void visitAllFiles(Blackhole blackhole) {
+        hierarchy.visitSnapshotRoots(root -> root.accept(new FileSystemSnapshotHierarchyVisitor() {
+            @Override
+            public SnapshotVisitResult visitEntry(FileSystemLocationSnapshot snapshot) {
+                blackhole.consume(snapshot.getHash());
+                return SnapshotVisitResult.CONTINUE;
+            }
+        }));
+    }
+}
@@ -18,6 +18,9 @@
 
 import org.gradle.internal.hash.HashCode;
 import org.gradle.internal.snapshot.FileSystemSnapshot;
+import org.gradle.internal.snapshot.RegularFileSnapshot;
+
+import java.util.function.Function;
 
 /**
  * A file collection fingerprint taken during this build.
@@ -36,4 +39,12 @@ public interface CurrentFileCollectionFingerprint extends FileCollectionFingerpr
     FileSystemSnapshot getSnapshot();
 
     boolean isEmpty();
+
+    /**
+     * Returns a fingerprint where the normalized content hash of each regular file is replaced by the given hash of its contents.
+     *
+     * Only fingerprints that use the content hash of the file snapshot are replaced; hashes derived in another way,
+     * like ABI hashes or hashes of the entries of archives, are kept.
+     */
+    CurrentFileCollectionFingerprint withRegularFileContentHashes(Function<RegularFileSnapshot, HashCode> contentHasher);
 }
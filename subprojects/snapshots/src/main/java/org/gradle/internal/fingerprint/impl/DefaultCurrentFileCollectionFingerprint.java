@@ -17,6 +17,7 @@
 package org.gradle.internal.fingerprint.impl;
 
 import com.google.common.collect.ImmutableMultimap;
+import org.gradle.internal.file.FileType;
 import org.gradle.internal.fingerprint.CurrentFileCollectionFingerprint;
 import org.gradle.internal.fingerprint.FileSystemLocationFingerprint;
 import org.gradle.internal.fingerprint.FingerprintHashingStrategy;
@@ -25,9 +26,14 @@
 import org.gradle.internal.hash.Hasher;
 import org.gradle.internal.hash.Hashing;
 import org.gradle.internal.snapshot.FileSystemSnapshot;
+import org.gradle.internal.snapshot.RegularFileSnapshot;
 import org.gradle.internal.snapshot.SnapshotUtil;
+import org.gradle.internal.snapshot.SnapshotVisitResult;
 
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.Map;
+import java.util.function.Function;
 
 public class DefaultCurrentFileCollectionFingerprint implements CurrentFileCollectionFingerprint {
 
@@ -50,11 +56,15 @@ public static CurrentFileCollectionFingerprint from(FileSystemSnapshot roots, Fi
     }
 
     private DefaultCurrentFileCollectionFingerprint(Map<String, FileSystemLocationFingerprint> fingerprints, FingerprintHashingStrategy hashingStrategy, String identifier, FileSystemSnapshot roots) {
+        this(fingerprints, hashingStrategy, identifier, roots, SnapshotUtil.getRootHashes(roots));
+    }
+
+    private DefaultCurrentFileCollectionFingerprint(Map<String, FileSystemLocationFingerprint> fingerprints, FingerprintHashingStrategy hashingStrategy, String identifier, FileSystemSnapshot roots, ImmutableMultimap<String, HashCode> rootHashes) {
         this.fingerprints = fingerprints;
         this.hashingStrategy = hashingStrategy;
         this.identifier = identifier;
         this.roots = roots;
-        this.rootHashes = SnapshotUtil.getRootHashes(roots);
+        this.rootHashes = rootHashes;
     }
 
     @Override
@@ -93,6 +103,33 @@ public FileSystemSnapshot getSnapshot() {
         return roots;
     }
 
+    @Override
+    public CurrentFileCollectionFingerprint withRegularFileContentHashes(Function<RegularFileSnapshot, HashCode> contentHasher) {
+        Map<String, RegularFileSnapshot> regularFiles = new HashMap<>();
+        roots.accept(snapshot -> {
+            if (snapshot instanceof RegularFileSnapshot) {
+                regularFiles.put(snapshot.getAbsolutePath(), (RegularFileSnapshot) snapshot);
+            }
+            return SnapshotVisitResult.CONTINUE;
+        });
+        Map<String, FileSystemLocationFingerprint> rehashedFingerprints = new LinkedHashMap<>();
+        fingerprints.forEach((absolutePath, fingerprint) -> {
+            RegularFileSnapshot snapshot = regularFiles.get(absolutePath);
+            boolean usesContentHash = snapshot != null && fingerprint.getNormalizedContentHash().equals(snapshot.getHash());
+            rehashedFingerprints.put(absolutePath, usesContentHash
+                ? withContentHash(fingerprint, contentHasher.apply(snapshot))
+                : fingerprint);
+        });
+        return new DefaultCurrentFileCollectionFingerprint(rehashedFingerprints, hashingStrategy, identifier, roots, rootHashes);
+    }
+
+    private static FileSystemLocationFingerprint withContentHash(FileSystemLocationFingerprint fingerprint, HashCode contentHash) {
+        if (fingerprint instanceof IgnoredPathFileSystemLocationFingerprint) {
+            return IgnoredPathFileSystemLocationFingerprint.create(FileType.RegularFile, contentHash);
+        }
+        return new DefaultFileSystemLocationFingerprint(fingerprint.getNormalizedPath(), FileType.RegularFile, contentHash);
+    }
+
     @Override
     public String toString() {
         return identifier + fingerprints;
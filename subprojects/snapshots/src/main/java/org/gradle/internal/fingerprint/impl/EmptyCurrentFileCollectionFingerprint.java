@@ -23,9 +23,11 @@
 import org.gradle.internal.hash.HashCode;
 import org.gradle.internal.hash.Hashing;
 import org.gradle.internal.snapshot.FileSystemSnapshot;
+import org.gradle.internal.snapshot.RegularFileSnapshot;
 
 import java.util.Collections;
 import java.util.Map;
+import java.util.function.Function;
 
 public class EmptyCurrentFileCollectionFingerprint implements CurrentFileCollectionFingerprint {
 
@@ -72,6 +74,11 @@ public String getStrategyIdentifier() {
         return identifier;
     }
 
+    @Override
+    public CurrentFileCollectionFingerprint withRegularFileContentHashes(Function<RegularFileSnapshot, HashCode> contentHasher) {
+        return this;
+    }
+
     @Override
     public String toString() {
         return identifier + "{EMPTY}";
@@ -102,7 +102,7 @@ public ChildMap<T> store(VfsRelativePath targetPath, CaseSensitivity caseSensiti
             return entries.get(childIndex).handlePath(targetPath, caseSensitivity, new AbstractStorePathRelationshipHandler<T>(caseSensitivity, storeHandler) {
                 @Override
                 public ChildMap<T> withReplacedChild(T newChild) {
-                    return withReplacedChild(entries.get(childIndex).getPath(), newChild);
+                    return withReplacedChild(getChildPath(childIndex), newChild);
                 }
 
                 @Override
@@ -121,6 +121,13 @@ public ChildMap<T> withNewChild(String newChildPath, T newChild) {
         }
     }
 
+    /**
+     * Returns the path of the child at the given index, without necessarily looking up the child itself.
+     */
+    protected String getChildPath(int childIndex) {
+        return entries.get(childIndex).getPath();
+    }
+
     protected ChildMap<T> withNewChild(int insertBefore, String path, T newChild) {
         List<Entry<T>> newChildren = new ArrayList<>(entries);
         newChildren.add(insertBefore, new Entry<>(path, newChild));
@@ -128,8 +135,7 @@ protected ChildMap<T> withNewChild(int insertBefore, String path, T newChild) {
     }
 
     protected ChildMap<T> withReplacedChild(int childIndex, String newPath, T newChild) {
-        Entry<T> oldEntry = entries.get(childIndex);
-        if (oldEntry.getPath().equals(newPath) && oldEntry.getValue().equals(newChild)) {
+        if (getChildPath(childIndex).equals(newPath) && entries.get(childIndex).getValue().equals(newChild)) {
             return this;
         }
         List<Entry<T>> newChildren = new ArrayList<>(entries);
@@ -0,0 +1,234 @@
+/*
+ * Copyright 2021 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.internal.snapshot;
+
+import org.gradle.internal.file.FileMetadata.AccessType;
+import org.gradle.internal.file.impl.DefaultFileMetadata;
+import org.gradle.internal.hash.HashCode;
+
+import java.io.File;
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.RandomAccess;
+import java.util.function.BiConsumer;
+import java.util.stream.Collectors;
+
+/**
+ * A compact {@link ChildMap} for the children of a {@link DirectorySnapshot}.
+ *
+ * The regular files directly accessed in the directory are not kept as {@link RegularFileSnapshot} objects.
+ * Instead, their content hashes and metadata are packed into primitive arrays, and their absolute paths are derived from the path of the directory.
+ * The snapshots of these files are only created when they are requested from the map,
+ * and the snapshot created last is kept, so that looking up the same child repeatedly while traversing the map creates it only once.
+ * Lookups which only need the names of the children do not create any snapshots.
+ * Other children are kept as they are.
+ */
+public class PackedChildMap extends AbstractListChildMap<FileSystemLocationSnapshot> {
+    /**
+     * Enables packing the children of directory snapshots.
+     */
+    public static final String PACK_SNAPSHOTS_PROPERTY = "org.gradle.vfs.compact";
+
+    private static final boolean PACK_SNAPSHOTS = Boolean.getBoolean(PACK_SNAPSHOTS_PROPERTY);
+    private static final int MINIMUM_PACKED_FILE_COUNT = 2;
+
+    private final PackedEntries packedEntries;
+
+    private PackedChildMap(PackedEntries packedEntries) {
+        super(packedEntries);
+        this.packedEntries = packedEntries;
+    }
+
+    /**
+     * Creates the child map of a directory snapshot, packing the children when enabled via {@link #PACK_SNAPSHOTS_PROPERTY}.
+     */
+    public static ChildMap<FileSystemLocationSnapshot> childMapOf(String parentPath, List<FileSystemLocationSnapshot> sortedChildren) {
+        return PACK_SNAPSHOTS
+            ? pack(parentPath, sortedChildren)
+            : ChildMapFactory.childMapFromSorted(toEntries(sortedChildren));
+    }
+
+    /**
+     * Packs the children of a directory snapshot, if there are enough regular files to pack.
+     */
+    public static ChildMap<FileSystemLocationSnapshot> pack(String parentPath, List<FileSystemLocationSnapshot> sortedChildren) {
+        int size = sortedChildren.size();
+        int hashLength = -1;
+        int packableCount = 0;
+        for (FileSystemLocationSnapshot child : sortedChildren) {
+            if (isPackable(parentPath, child)) {
+                int childHashLength = child.getHash().length();
+                if (hashLength == -1) {
+                    hashLength = childHashLength;
+                }
+                if (childHashLength == hashLength) {
+                    packableCount++;
+                }
+            }
+        }
+        if (packableCount < MINIMUM_PACKED_FILE_COUNT) {
+            return ChildMapFactory.childMapFromSorted(toEntries(sortedChildren));
+        }
+
+        String[] names = new String[size];
+        @SuppressWarnings("unchecked")
+        Entry<FileSystemLocationSnapshot>[] unpackedEntries = new Entry[size];
+        byte[] hashes = new byte[size * hashLength];
+        long[] metadata = new long[size * 2];
+        for (int i = 0; i < size; i++) {
+            FileSystemLocationSnapshot child = sortedChildren.get(i);
+            names[i] = child.getName();
+            if (isPackable(parentPath, child) && child.getHash().length() == hashLength) {
+                RegularFileSnapshot fileSnapshot = (RegularFileSnapshot) child;
+                System.arraycopy(fileSnapshot.getHash().toByteArray(), 0, hashes, i * hashLength, hashLength);
+                metadata[2 * i] = fileSnapshot.getMetadata().getLastModified();
+                metadata[2 * i + 1] = fileSnapshot.getMetadata().getLength();
+            } else {
+                unpackedEntries[i] = new Entry<>(child.getName(), child);
+            }
+        }
+        return new PackedChildMap(new PackedEntries(parentPath, names, unpackedEntries, hashLength, hashes, metadata));
+    }
+
+    private static boolean isPackable(String parentPath, FileSystemLocationSnapshot child) {
+        return child instanceof RegularFileSnapshot
+            && child.getAccessType() == AccessType.DIRECT
+            && isChildPath(parentPath, child.getName(), child.getAbsolutePath());
+    }
+
+    private static boolean isChildPath(String parentPath, String name, String absolutePath) {
+        int separatorLength = hasTrailingSeparator(parentPath) ? 0 : 1;
+        return absolutePath.length() == parentPath.length() + separatorLength + name.length()
+            && absolutePath.startsWith(parentPath)
+            && (separatorLength == 0 || absolutePath.charAt(parentPath.length()) == File.separatorChar)
+            && absolutePath.endsWith(name);
+    }
+
+    private static boolean hasTrailingSeparator(String path) {
+        return !path.isEmpty() && path.charAt(path.length() - 1) == File.separatorChar;
+    }
+
+    private static List<Entry<FileSystemLocationSnapshot>> toEntries(List<FileSystemLocationSnapshot> children) {
+        return children.stream()
+            .map(it -> new Entry<>(it.getName(), it))
+            .collect(Collectors.toList());
+    }
+
+    @Override
+    public <RESULT> RESULT withNode(VfsRelativePath targetPath, CaseSensitivity caseSensitivity, NodeHandler<FileSystemLocationSnapshot, RESULT> handler) {
+        int childIndex = findChildIndexWithCommonPrefix(targetPath, caseSensitivity);
+        if (childIndex >= 0) {
+            return entries.get(childIndex).withNode(targetPath, caseSensitivity, handler);
+        }
+        return handler.handleUnrelatedToAnyChild();
+    }
+
+    @Override
+    protected int findChildIndexWithCommonPrefix(VfsRelativePath targetPath, CaseSensitivity caseSensitivity) {
+        // Search the names, so no snapshots are created for the visited children
+        return SearchUtil.binarySearch(
+            Arrays.asList(packedEntries.names),
+            candidate -> targetPath.compareToFirstSegment(candidate, caseSensitivity)
+        );
+    }
+
+    @Override
+    protected String getChildPath(int childIndex) {
+        return packedEntries.names[childIndex];
+    }
+
+    @Override
+    public void visitChildren(BiConsumer<String, ? super FileSystemLocationSnapshot> visitor) {
+        for (int i = 0; i < packedEntries.size(); i++) {
+            visitor.accept(packedEntries.names[i], packedEntries.getSnapshot(i));
+        }
+    }
+
+    private static class PackedEntries extends AbstractList<Entry<FileSystemLocationSnapshot>> implements RandomAccess {
+        private final String parentPath;
+        private final String[] names;
+        private final Entry<FileSystemLocationSnapshot>[] unpackedEntries;
+        private final int hashLength;
+        private final byte[] hashes;
+        private final long[] metadata;
+        // The entry created last, shared between threads without synchronization since it is immutable
+        private MaterializedEntry lastMaterialized;
+
+        public PackedEntries(String parentPath, String[] names, Entry<FileSystemLocationSnapshot>[] unpackedEntries, int hashLength, byte[] hashes, long[] metadata) {
+            this.parentPath = parentPath;
+            this.names = names;
+            this.unpackedEntries = unpackedEntries;
+            this.hashLength = hashLength;
+            this.hashes = hashes;
+            this.metadata = metadata;
+        }
+
+        @Override
+        public Entry<FileSystemLocationSnapshot> get(int index) {
+            Entry<FileSystemLocationSnapshot> unpackedEntry = unpackedEntries[index];
+            if (unpackedEntry != null) {
+                return unpackedEntry;
+            }
+            MaterializedEntry materialized = lastMaterialized;
+            if (materialized == null || materialized.index != index) {
+                materialized = new MaterializedEntry(index, new Entry<>(names[index], materialize(index)));
+                lastMaterialized = materialized;
+            }
+            return materialized.entry;
+        }
+
+        @Override
+        public int size() {
+            return names.length;
+        }
+
+        /**
+         * Returns the snapshot of the child at the given index, without keeping a newly created snapshot.
+         */
+        public FileSystemLocationSnapshot getSnapshot(int index) {
+            Entry<FileSystemLocationSnapshot> unpackedEntry = unpackedEntries[index];
+            if (unpackedEntry != null) {
+                return unpackedEntry.getValue();
+            }
+            MaterializedEntry materialized = lastMaterialized;
+            if (materialized != null && materialized.index == index) {
+                return materialized.entry.getValue();
+            }
+            return materialize(index);
+        }
+
+        private RegularFileSnapshot materialize(int index) {
+            String name = names[index];
+            String absolutePath = hasTrailingSeparator(parentPath)
+                ? parentPath + name
+                : parentPath + File.separatorChar + name;
+            HashCode contentHash = HashCode.fromBytes(Arrays.copyOfRange(hashes, index * hashLength, (index + 1) * hashLength));
+            return new RegularFileSnapshot(absolutePath, name, contentHash, DefaultFileMetadata.file(metadata[2 * index], metadata[2 * index + 1], AccessType.DIRECT));
+        }
+    }
+
+    private static class MaterializedEntry {
+        private final int index;
+        private final Entry<FileSystemLocationSnapshot> entry;
+
+        MaterializedEntry(int index, Entry<FileSystemLocationSnapshot> entry) {
+            this.index = index;
+            this.entry = entry;
+        }
+    }
+}
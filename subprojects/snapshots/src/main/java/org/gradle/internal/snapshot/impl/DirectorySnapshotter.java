@@ -50,12 +50,18 @@
 import java.nio.file.Paths;
 import java.nio.file.attribute.BasicFileAttributes;
 import java.util.ArrayDeque;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Deque;
 import java.util.EnumSet;
 import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
 import java.util.function.Predicate;
+import java.util.function.Supplier;
 
 import static org.gradle.internal.snapshot.MerkleDirectorySnapshotBuilder.EmptyDirectoryHandlingStrategy.INCLUDE_EMPTY_DIRS;
 
@@ -84,25 +90,74 @@ public Iterable<String> getRemappedSegments(Iterable<String> segments) {
     private final Interner<String> stringInterner;
     private final DefaultExcludes defaultExcludes;
     private final DirectorySnapshotterStatistics.Collector collector;
+    private final FileHashingPool hashingPool;
 
     public DirectorySnapshotter(FileHasher hasher, Interner<String> stringInterner, Collection<String> defaultExcludes, DirectorySnapshotterStatistics.Collector collector) {
+        this(hasher, stringInterner, defaultExcludes, collector, FileHashingPool.SEQUENTIAL);
+    }
+
+    /**
+     * Creates a snapshotter which hashes regular files with the given pool.
+     *
+     * When the pool is parallel, the walking thread only collects the metadata of the visited files and leaves the hashing to the pool.
+     * The resulting snapshots are identical to the ones created by hashing the files on the walking thread.
+     */
+    public DirectorySnapshotter(FileHasher hasher, Interner<String> stringInterner, Collection<String> defaultExcludes, DirectorySnapshotterStatistics.Collector collector, FileHashingPool hashingPool) {
         this.hasher = hasher;
         this.stringInterner = stringInterner;
         this.defaultExcludes = new DefaultExcludes(defaultExcludes);
         this.collector = collector;
+        this.hashingPool = hashingPool;
     }
 
     public FileSystemLocationSnapshot snapshot(String absolutePath, @Nullable SnapshottingFilter.DirectoryWalkerPredicate predicate, final AtomicBoolean hasBeenFiltered) {
+        ParallelHashing parallelHashing = hashingPool.isParallel()
+            ? new ParallelHashing(hashingPool.getPool())
+            : null;
         try {
             Path rootPath = Paths.get(absolutePath);
-            PathVisitor visitor = new PathVisitor(predicate, hasBeenFiltered, hasher, stringInterner, defaultExcludes, collector, EMPTY_SYMBOLIC_LINK_MAPPING);
+            PathVisitor visitor = new PathVisitor(predicate, hasBeenFiltered, hasher, stringInterner, defaultExcludes, collector, EMPTY_SYMBOLIC_LINK_MAPPING, parallelHashing);
             Files.walkFileTree(rootPath, DONT_FOLLOW_SYMLINKS, Integer.MAX_VALUE, visitor);
-            return visitor.getResult();
+            FileSystemLocationSnapshot result = visitor.getResult();
+            if (parallelHashing != null) {
+                parallelHashing.recordStatistics(collector);
+            }
+            return result;
         } catch (IOException e) {
             throw new UncheckedIOException(String.format("Could not list contents of directory '%s'.", absolutePath), e);
         }
     }
 
+    /**
+     * Tracks the files hashed in parallel for a single snapshot.
+     */
+    private static class ParallelHashing {
+        private final ForkJoinPool pool;
+        private final long startTime = System.nanoTime();
+        private final AtomicLong hashedFiles = new AtomicLong();
+        private final AtomicLong hashingTime = new AtomicLong();
+
+        public ParallelHashing(ForkJoinPool pool) {
+            this.pool = pool;
+        }
+
+        public ForkJoinTask<FileSystemLeafSnapshot> submit(Supplier<FileSystemLeafSnapshot> hashing) {
+            return pool.submit(() -> {
+                long start = System.nanoTime();
+                try {
+                    return hashing.get();
+                } finally {
+                    hashingTime.addAndGet(System.nanoTime() - start);
+                    hashedFiles.incrementAndGet();
+                }
+            });
+        }
+
+        public void recordStatistics(DirectorySnapshotterStatistics.Collector collector) {
+            collector.recordParallelHashing(hashedFiles.get(), hashingTime.get(), System.nanoTime() - startTime);
+        }
+    }
+
     private interface SymbolicLinkMapping {
         String remapAbsolutePath(Path path);
         @CheckReturnValue
@@ -230,6 +285,10 @@ private static class PathVisitor extends DirectorySnapshotterStatistics.Collecti
         private final DefaultExcludes defaultExcludes;
         private final SymbolicLinkMapping symbolicLinkMapping;
         private final Deque<String> parentDirectories = new ArrayDeque<>();
+        @Nullable
+        private final ParallelHashing parallelHashing;
+        @Nullable
+        private final List<Consumer<MerkleDirectorySnapshotBuilder>> pendingSteps;
 
         public PathVisitor(
             @Nullable SnapshottingFilter.DirectoryWalkerPredicate predicate,
@@ -238,7 +297,8 @@ public PathVisitor(
             Interner<String> stringInterner,
             DefaultExcludes defaultExcludes,
             DirectorySnapshotterStatistics.Collector statisticsCollector,
-            SymbolicLinkMapping symbolicLinkMapping
+            SymbolicLinkMapping symbolicLinkMapping,
+            @Nullable ParallelHashing parallelHashing
         ) {
             super(statisticsCollector);
             this.builder = MerkleDirectorySnapshotBuilder.sortingRequired();
@@ -248,6 +308,20 @@ public PathVisitor(
             this.stringInterner = stringInterner;
             this.defaultExcludes = defaultExcludes;
             this.symbolicLinkMapping = symbolicLinkMapping;
+            this.parallelHashing = parallelHashing;
+            this.pendingSteps = parallelHashing == null ? null : new ArrayList<>();
+        }
+
+        /**
+         * Applies a step to the Merkle builder. When hashing in parallel, the step is deferred until
+         * the walk is complete, since the hashes of directories can only be calculated once all their files have been hashed.
+         */
+        private void record(Consumer<MerkleDirectorySnapshotBuilder> step) {
+            if (pendingSteps == null) {
+                step.accept(builder);
+            } else {
+                pendingSteps.add(step);
+            }
         }
 
         @Override
@@ -255,7 +329,8 @@ protected FileVisitResult doPreVisitDirectory(Path dir, BasicFileAttributes attr
             String fileName = getInternedFileName(dir);
             pathTracker.enter(fileName);
             if (pathTracker.isRoot() || shouldVisit(dir, fileName, true, pathTracker.getSegments())) {
-                builder.enterDirectory(AccessType.DIRECT, intern(symbolicLinkMapping.remapAbsolutePath(dir)), fileName, INCLUDE_EMPTY_DIRS);
+                String internedAbsolutePath = intern(symbolicLinkMapping.remapAbsolutePath(dir));
+                record(builder -> builder.enterDirectory(AccessType.DIRECT, internedAbsolutePath, fileName, INCLUDE_EMPTY_DIRS));
                 parentDirectories.addFirst(dir.toString());
                 return FileVisitResult.CONTINUE;
             } else {
@@ -286,17 +361,20 @@ protected FileVisitResult doVisitFile(Path file, BasicFileAttributes attrs) {
                                     stringInterner,
                                     defaultExcludes,
                                     collector,
-                                    symbolicLinkMapping.withNewMapping(file.toString(), targetDirString, pathTracker)
+                                    symbolicLinkMapping.withNewMapping(file.toString(), targetDirString, pathTracker),
+                                    parallelHashing
                                 );
                                 Files.walkFileTree(targetDir, EnumSet.noneOf(FileVisitOption.class), Integer.MAX_VALUE, subtreeVisitor);
-                                DirectorySnapshot result = (DirectorySnapshot) subtreeVisitor.getResult();
-                                builder.visitDirectory(new DirectorySnapshot(
-                                    result.getAbsolutePath(),
-                                    internedFileName,
-                                    AccessType.VIA_SYMLINK,
-                                    result.getHash(),
-                                    result.getChildren()
-                                ));
+                                record(builder -> {
+                                    DirectorySnapshot result = (DirectorySnapshot) subtreeVisitor.getResult();
+                                    builder.visitDirectory(new DirectorySnapshot(
+                                        result.getAbsolutePath(),
+                                        internedFileName,
+                                        AccessType.VIA_SYMLINK,
+                                        result.getHash(),
+                                        result.getChildren()
+                                    ));
+                                });
                             }
                         } catch (IOException e) {
                             throw new UncheckedIOException(String.format("Could not list contents of directory '%s'.", file), e);
@@ -320,7 +398,13 @@ private boolean introducesCycle(String targetDirString) {
         private void visitResolvedFile(Path file, BasicFileAttributes targetAttributes, AccessType accessType) {
             String internedName = intern(file.getFileName().toString());
             if (shouldVisit(file, internedName, false, pathTracker.getSegments())) {
-                builder.visitLeafElement(snapshotFile(file, internedName, targetAttributes, accessType));
+                if (parallelHashing != null && targetAttributes.isRegularFile()) {
+                    ForkJoinTask<FileSystemLeafSnapshot> snapshot = parallelHashing.submit(() -> snapshotFile(file, internedName, targetAttributes, accessType));
+                    record(builder -> builder.visitLeafElement(snapshot.join()));
+                } else {
+                    FileSystemLeafSnapshot snapshot = snapshotFile(file, internedName, targetAttributes, accessType);
+                    record(builder -> builder.visitLeafElement(snapshot));
+                }
             }
         }
 
@@ -364,7 +448,8 @@ protected FileVisitResult doVisitFileFailed(Path file, IOException exc) {
                     if (shouldVisit(file, internedFileName, isDirectory, pathTracker.getSegments())) {
                         LOGGER.info("Could not read file path '{}'.", file);
                         String internedAbsolutePath = intern(file.toString());
-                        builder.visitLeafElement(new MissingFileSnapshot(internedAbsolutePath, internedFileName, AccessType.DIRECT));
+                        MissingFileSnapshot snapshot = new MissingFileSnapshot(internedAbsolutePath, internedFileName, AccessType.DIRECT);
+                        record(builder -> builder.visitLeafElement(snapshot));
                     }
                 }
                 return FileVisitResult.CONTINUE;
@@ -382,7 +467,7 @@ protected FileVisitResult doPostVisitDirectory(Path dir, IOException exc) {
             if (isNotFileSystemLoopException(exc)) {
                 throw new UncheckedIOException(String.format("Could not read directory path '%s'.", dir), exc);
             }
-            builder.leaveDirectory();
+            record(MerkleDirectorySnapshotBuilder::leaveDirectory);
             parentDirectories.removeFirst();
             return FileVisitResult.CONTINUE;
         }
@@ -425,6 +510,13 @@ private String getInternedFileName(Path dir) {
         }
 
         public FileSystemLocationSnapshot getResult() {
+            if (pendingSteps != null) {
+                // Replay the walk in the original order, so the result is the same as when hashing sequentially
+                for (Consumer<MerkleDirectorySnapshotBuilder> step : pendingSteps) {
+                    step.accept(builder);
+                }
+                pendingSteps.clear();
+            }
             return builder.getResult();
         }
     }
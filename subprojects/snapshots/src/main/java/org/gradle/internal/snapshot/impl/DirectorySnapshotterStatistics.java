@@ -22,6 +22,7 @@
 import java.nio.file.Path;
 import java.nio.file.attribute.BasicFileAttributes;
 import java.text.MessageFormat;
+import java.time.Duration;
 import java.util.concurrent.atomic.AtomicLong;
 
 public interface DirectorySnapshotterStatistics {
@@ -45,11 +46,35 @@ public interface DirectorySnapshotterStatistics {
      */
     long getFailedFiles();
 
+    /**
+     * The number of files hashed in parallel to walking the directory trees.
+     */
+    long getFilesHashedInParallel();
+
+    /**
+     * The accumulated time spent hashing files in parallel, over all threads.
+     */
+    Duration getParallelHashingTime();
+
+    /**
+     * The wall clock time spent snapshotting directory trees while hashing files in parallel.
+     */
+    Duration getParallelSnapshottingTime();
+
+    /**
+     * How many times faster hashing in parallel was compared to hashing on a single thread.
+     * Returns 0 if no files have been hashed in parallel.
+     */
+    double getParallelHashingSpeedup();
+
     class Collector {
         private final AtomicLong hierarchyCount = new AtomicLong();
         private final AtomicLong directoryCount = new AtomicLong();
         private final AtomicLong fileCount = new AtomicLong();
         private final AtomicLong failedFileCount = new AtomicLong();
+        private final AtomicLong parallelHashedFileCount = new AtomicLong();
+        private final AtomicLong parallelHashingNanos = new AtomicLong();
+        private final AtomicLong parallelSnapshottingNanos = new AtomicLong();
 
         public void recordVisitHierarchy() {
             hierarchyCount.incrementAndGet();
@@ -67,11 +92,23 @@ public void recordVisitFileFailed() {
             failedFileCount.incrementAndGet();
         }
 
+        public void recordParallelHashing(long hashedFileCount, long hashingNanos, long snapshottingNanos) {
+            parallelHashedFileCount.addAndGet(hashedFileCount);
+            parallelHashingNanos.addAndGet(hashingNanos);
+            parallelSnapshottingNanos.addAndGet(snapshottingNanos);
+        }
+
         public DirectorySnapshotterStatistics collect() {
             long hierarchyCount = this.hierarchyCount.getAndSet(0);
             long directoryCount = this.directoryCount.getAndSet(0);
             long fileCount = this.fileCount.getAndSet(0);
             long failedFileCount = this.failedFileCount.getAndSet(0);
+            long parallelHashedFileCount = this.parallelHashedFileCount.getAndSet(0);
+            Duration parallelHashingTime = Duration.ofNanos(this.parallelHashingNanos.getAndSet(0));
+            Duration parallelSnapshottingTime = Duration.ofNanos(this.parallelSnapshottingNanos.getAndSet(0));
+            double parallelHashingSpeedup = parallelSnapshottingTime.isZero()
+                ? 0
+                : (double) parallelHashingTime.toNanos() / parallelSnapshottingTime.toNanos();
 
             return new DirectorySnapshotterStatistics() {
                 @Override
@@ -94,10 +131,35 @@ public long getFailedFiles() {
                     return failedFileCount;
                 }
 
+                @Override
+                public long getFilesHashedInParallel() {
+                    return parallelHashedFileCount;
+                }
+
+                @Override
+                public Duration getParallelHashingTime() {
+                    return parallelHashingTime;
+                }
+
+                @Override
+                public Duration getParallelSnapshottingTime() {
+                    return parallelSnapshottingTime;
+                }
+
+                @Override
+                public double getParallelHashingSpeedup() {
+                    return parallelHashingSpeedup;
+                }
+
                 @Override
                 public String toString() {
-                    return MessageFormat.format("Snapshot {0,number,integer} directory hierarchies (visited {1,number,integer} directories, {2,number,integer} files and {3,number,integer} failed files)",
+                    String summary = MessageFormat.format("Snapshot {0,number,integer} directory hierarchies (visited {1,number,integer} directories, {2,number,integer} files and {3,number,integer} failed files)",
                         hierarchyCount, directoryCount, fileCount, failedFileCount);
+                    if (parallelHashedFileCount == 0) {
+                        return summary;
+                    }
+                    return summary + MessageFormat.format(", hashed {0,number,integer} files in parallel ({1,number,integer} ms hashing in {2,number,integer} ms, {3,number,#.##}x speedup)",
+                        parallelHashedFileCount, parallelHashingTime.toMillis(), parallelSnapshottingTime.toMillis(), parallelHashingSpeedup);
                 }
             };
         }
@@ -0,0 +1,83 @@
+/*
+ * Copyright 2021 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.internal.snapshot.impl;
+
+import javax.annotation.Nullable;
+import java.io.Closeable;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.function.Supplier;
+
+/**
+ * A bounded pool of threads used by {@link DirectorySnapshotter} to hash regular files while walking a directory tree,
+ * and to write and hash the files of unpacked build cache entries.
+ */
+public class FileHashingPool implements Closeable {
+    /**
+     * Hashes files on the thread walking the directory tree.
+     */
+    public static final FileHashingPool SEQUENTIAL = new FileHashingPool(null);
+
+    @Nullable
+    private final ForkJoinPool pool;
+
+    private FileHashingPool(@Nullable ForkJoinPool pool) {
+        this.pool = pool;
+    }
+
+    public static FileHashingPool withParallelism(int parallelism) {
+        if (parallelism <= 1) {
+            return SEQUENTIAL;
+        }
+        return new FileHashingPool(new ForkJoinPool(parallelism, FileHashingPool::newThread, null, false));
+    }
+
+    private static ForkJoinWorkerThread newThread(ForkJoinPool pool) {
+        ForkJoinWorkerThread thread = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(pool);
+        thread.setName("File hashing thread " + thread.getPoolIndex());
+        thread.setDaemon(true);
+        return thread;
+    }
+
+    public boolean isParallel() {
+        return pool != null;
+    }
+
+    ForkJoinPool getPool() {
+        if (pool == null) {
+            throw new IllegalStateException("Files are hashed sequentially");
+        }
+        return pool;
+    }
+
+    /**
+     * Runs the given task in the pool.
+     *
+     * @throws IllegalStateException when files are hashed sequentially.
+     */
+    public <T> ForkJoinTask<T> submit(Supplier<T> task) {
+        return getPool().submit(task::get);
+    }
+
+    @Override
+    public void close() {
+        if (pool != null) {
+            pool.shutdownNow();
+        }
+    }
+}
@@ -0,0 +1,96 @@
+/*
+ * Copyright 2021 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.internal.snapshot
+
+import org.gradle.internal.file.FileMetadata.AccessType
+import org.gradle.internal.file.impl.DefaultFileMetadata
+import org.gradle.internal.hash.HashCode
+import org.gradle.internal.vfs.impl.DefaultSnapshotHierarchy
+import spock.lang.Specification
+
+import static org.gradle.internal.snapshot.CaseSensitivity.CASE_SENSITIVE
+
+class PackedChildMapTest extends Specification {
+    def parentPath = new File("/root/some/dir").absolutePath
+    def fileA = regularFile("a.txt", 1)
+    def fileB = regularFile("b.txt", 2)
+    def subDir = new DirectorySnapshot(childPath("c"), "c", AccessType.DIRECT, HashCode.fromInt(3), [])
+    def symlinkedFile = new RegularFileSnapshot(childPath("d.txt"), "d.txt", HashCode.fromInt(4), DefaultFileMetadata.file(4, 4, AccessType.VIA_SYMLINK))
+    def fileE = regularFile("e.txt", 5)
+    def children = [fileA, fileB, subDir, symlinkedFile, fileE]
+
+    def "packed children are equal to the original snapshots"() {
+        when:
+        def childMap = PackedChildMap.pack(parentPath, children)
+
+        then:
+        childMap instanceof PackedChildMap
+        childMap.values() == children
+        childMap.entries()*.path == ["a.txt", "b.txt", "c", "d.txt", "e.txt"]
+        childMap.values()[2].is(subDir)
+        childMap.values()[3].is(symlinkedFile)
+        def visited = [:]
+        childMap.visitChildren { name, child -> visited[name] = child }
+        visited.values() as List == children
+    }
+
+    def "creates the snapshot of a packed child only once while it is looked up repeatedly"() {
+        def childMap = PackedChildMap.pack(parentPath, children)
+
+        when:
+        def first = childMap.entries()[1]
+        def second = childMap.entries()[1]
+        def other = childMap.entries()[0]
+
+        then:
+        first.is(second)
+        first.value == fileB
+        !other.is(first)
+        other.value == fileA
+    }
+
+    def "does not pack children without enough regular files"() {
+        expect:
+        !(PackedChildMap.pack(parentPath, [fileA, subDir]) instanceof PackedChildMap)
+    }
+
+    def "can query and invalidate packed snapshots in the hierarchy"() {
+        def directory = new DirectorySnapshot(parentPath, "dir", AccessType.DIRECT, HashCode.fromInt(1234), PackedChildMap.pack(parentPath, children))
+        def hierarchy = DefaultSnapshotHierarchy.empty(CASE_SENSITIVE).store(parentPath, directory, SnapshotHierarchy.NodeDiffListener.NOOP)
+
+        expect:
+        hierarchy.getMetadata(fileB.absolutePath).get() == fileB
+        hierarchy.getMetadata(fileE.absolutePath).get().hash == fileE.hash
+        hierarchy.getMetadata(childPath("missing.txt")).get() instanceof MissingFileSnapshot
+
+        when:
+        def invalidated = hierarchy.invalidate(fileB.absolutePath, SnapshotHierarchy.NodeDiffListener.NOOP)
+
+        then:
+        !invalidated.getMetadata(fileB.absolutePath).present
+        invalidated.getMetadata(fileA.absolutePath).get() == fileA
+        invalidated.getMetadata(fileE.absolutePath).get() == fileE
+    }
+
+    private RegularFileSnapshot regularFile(String name, int value) {
+        new RegularFileSnapshot(childPath(name), name, HashCode.fromInt(value), DefaultFileMetadata.file(value, value * 10, AccessType.DIRECT))
+    }
+
+    private String childPath(String name) {
+        parentPath + File.separator + name
+    }
+}
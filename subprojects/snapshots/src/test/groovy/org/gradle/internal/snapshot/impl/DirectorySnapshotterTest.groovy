@@ -403,6 +403,31 @@ class DirectorySnapshotterTest extends Specification {
         !defaultExcludes.excludeFile('#some')
     }
 
+    def "hashing files in parallel produces the same snapshot as hashing sequentially"() {
+        def rootDir = tmpDir.createDir("root")
+        (1..20).each { dir ->
+            (1..10).each { file ->
+                rootDir.file("dir${dir}/sub/file${file}.txt").text = "content ${dir} ${file}"
+            }
+        }
+        rootDir.file("dir3/empty").createDir()
+        def hashingPool = FileHashingPool.withParallelism(4)
+        def collector = new DirectorySnapshotterStatistics.Collector()
+        def parallelSnapshotter = new DirectorySnapshotter(fileHasher, new StringInterner(), [], collector, hashingPool)
+
+        when:
+        def sequential = directorySnapshotter.snapshot(rootDir.absolutePath, null, actuallyFiltered) as DirectorySnapshot
+        def parallel = parallelSnapshotter.snapshot(rootDir.absolutePath, null, actuallyFiltered) as DirectorySnapshot
+
+        then:
+        parallel.hash == sequential.hash
+        SnapshotVisitorUtil.getAbsolutePaths(parallel, true) == SnapshotVisitorUtil.getAbsolutePaths(sequential, true)
+        collector.collect().filesHashedInParallel == 200
+
+        cleanup:
+        hashingPool.close()
+    }
+
     private static String fileSystemRoot() {
         "${Paths.get("").toAbsolutePath().root}"
     }